@@ -122,6 +122,7 @@ public class UiConstants {
 	// Others
 	public static final DateFormat CLOCK_DATE_FORMAT = new SimpleDateFormat("dd MMM yyyy");
 	public static final int UPDATE_SERVICE_INTERVAL = 300000; // in milliseconds (5 minutes)
+	public static final int RELOAD_POLL_INTERVAL = 1000; // in milliseconds; how often to check for edited savefiles
 	public static final int DEFAULT_ANIM_DURATION = 1000; // How long to play an animation
 	public static final int DEFAULT_FADE_START_DELAY = 2000; 
 	public static final int DEFAULT_SHAKE_DISTANCE = 10;
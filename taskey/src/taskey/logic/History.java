@@ -1,147 +1,584 @@
 package taskey.logic;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.NoSuchElementException;
+import java.util.Arrays;
+import java.util.logging.Level;
 
+import taskey.logger.TaskeyLog;
+import taskey.logger.TaskeyLog.LogSystems;
 import taskey.messenger.TagCategory;
 import taskey.messenger.Task;
+import taskey.storage.ArchiveList;
 
 /**
  * @@author A0121618M
  * This class is used by Logic for the undo and redo commands.
- * Every time the task lists are updated, they are pushed onto the taskStack.
- * At the same time, the tag list is also pushed onto the tagStack.
- * 
- * The undo command pops the most recently added task and tag data from the main stack
- * and pushes them onto the redo stack, to be held there until new data is added to History
- * (whereupon the redo stack is cleared), or the user invokes the redo command.
- * 
- * This class's redo method does the reverse of the undo routine: 
- * it pops the previously "undone" data from the redo stack and pushes them back onto the main stack.
- * Logic can then peek at the main stack to get the data for the redo command.
+ * Every time the task lists are updated, Logic adds the TaskChanges that the command made to them, as recorded by
+ * TaskStore, and a copy of the tag list to History.
+ *
+ * History does not keep the task lists themselves, only the tag list as it is after the most recent command.
+ * For every earlier state, the undo stack holds a Delta, i.e. the TaskChanges of the next command and the tag lists
+ * before and after it if the command changed them, so that each entry costs time and memory in proportion to the
+ * tasks the command changed, rather than to the number of tasks.
+ *
+ * The undo method pops the most recent Delta, which Logic undoes in LogicMemory, and pushes it onto the redo stack,
+ * to be held there until new data is added to History (whereupon the redo stack is cleared), or the user invokes
+ * the redo command. The redo method does the reverse: it pushes the Delta back onto the undo stack, for Logic to make
+ * its changes again.
+ *
+ * History is bounded by a maximum number of undo entries and a memory budget for its Deltas, which are read from
+ * the system properties below. When it is over its budget, the oldest Deltas are moved to a HistorySpill on disk, 
+ * from which undo takes them back when it reaches them, or dropped if spilling is turned off or fails. 
+ * The number of entries is capped whether they are in memory or on disk. The memory used by each Delta is estimated 
+ * when it is created, counting every task it records a change to in full, although some are shared with the task
+ * lists.
  */
 class History {
-	// The main History stack
-	private ArrayDeque<ArrayList<ArrayList<Task>>> taskStack;
-	private ArrayDeque<ArrayList<TagCategory>> tagStack;
-	
-	// The redo stack that temporarily holds data popped from the main stack
-	private ArrayDeque<ArrayList<ArrayList<Task>>> redoTaskStack;
-	private ArrayDeque<ArrayList<TagCategory>> redoTagStack;
+	public static final String PROPERTY_MAX_ENTRIES = "taskey.history.maxentries"; //e.g. -Dtaskey.history.maxentries=100
+	public static final String PROPERTY_MAX_BYTES = "taskey.history.maxbytes"; //e.g. -Dtaskey.history.maxbytes=1048576
+	public static final String PROPERTY_SPILL = "taskey.history.spill"; //e.g. -Dtaskey.history.spill=false
+	static final int DEFAULT_MAX_ENTRIES = 1000;
+	static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
 
-	History() {
-		taskStack = new ArrayDeque<ArrayList<ArrayList<Task>>>();
-		tagStack = new ArrayDeque<ArrayList<TagCategory>>();
-		
-		redoTaskStack = new ArrayDeque<ArrayList<ArrayList<Task>>>();
-		redoTagStack = new ArrayDeque<ArrayList<TagCategory>>();
+	// Rough sizes of objects on the heap, for estimating the memory used by a Delta
+	private static final long BYTES_OBJECT = 16;
+	private static final long BYTES_REFERENCE = 8;
+	private static final long BYTES_TASK = 240; // A task, its date arrays, its TimeConverter and its tag list
+	private static final long BYTES_STRING = 40; // A string, without its characters
+
+	// Kinds of TaskChanges in a spilled entry
+	private static final byte CHANGES_RECORDED = 1;
+	private static final byte CHANGES_REPLACED = 2;
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final boolean canSpill;
+
+	// The tag list as it is after the last command that has not been undone
+	private ArrayList<TagCategory> tagCategoryList;
+
+	// The changes made by each command, most recent first; the undo stack continues in the spill
+	private ArrayDeque<Delta> undoStack;
+	private ArrayDeque<Delta> redoStack;
+	private HistorySpill spill;
+	private long bytesInMemory; // Estimated memory used by the Deltas in both stacks
+
+	/**
+	 * The changes that one command made to the task lists and tag list.
+	 * The tag lists are null if the tag list was not changed.
+	 */
+	private static class Delta {
+		private final TaskChanges taskChanges;
+		private final ArrayList<TagCategory> oldTagCategoryList;
+		private final ArrayList<TagCategory> newTagCategoryList;
+		private final long estimatedBytes;
+
+		private Delta(TaskChanges taskChanges, ArrayList<TagCategory> oldTagCategoryList,
+		              ArrayList<TagCategory> newTagCategoryList) {
+			this.taskChanges = taskChanges;
+			this.oldTagCategoryList = oldTagCategoryList;
+			this.newTagCategoryList = newTagCategoryList;
+			this.estimatedBytes = estimateBytes();
+		}
+
+		/**
+		 * The tasks in replaced task lists are mostly shared with other lists, so only the lists themselves are counted.
+		 */
+		private long estimateBytes() {
+			long bytes = 2 * BYTES_OBJECT;
+			if (taskChanges.isReplaced()) {
+				bytes += estimateListBytes(taskChanges.getOldLists()) + estimateListBytes(taskChanges.getNewLists());
+			} else {
+				bytes += 5 * taskChanges.size() + estimateTaskBytes(taskChanges.getTasks());
+			}
+			if (oldTagCategoryList != null) {
+				bytes += estimateTagBytes(oldTagCategoryList) + estimateTagBytes(newTagCategoryList);
+			}
+			return bytes;
+		}
+
+		/**
+		 * Returns false if the Delta holds an archive that has not been loaded, which cannot be written to disk
+		 * without loading it.
+		 */
+		private boolean canSpill() {
+			if (!taskChanges.isReplaced()) {
+				return true;
+			}
+			for (ArrayList<ArrayList<Task>> lists : Arrays.asList(taskChanges.getOldLists(), taskChanges.getNewLists())) {
+				for (ArrayList<Task> list : lists) {
+					if (isUnloadedArchive(list)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
 	}
 
-	boolean taskStackIsEmpty() {
-		return taskStack.isEmpty();
+	/**
+	 * Creates a History bounded by the system properties PROPERTY_MAX_ENTRIES and PROPERTY_MAX_BYTES, which default
+	 * to DEFAULT_MAX_ENTRIES and DEFAULT_MAX_BYTES. Spilling to disk is on unless PROPERTY_SPILL is false.
+	 */
+	History() {
+		this(Integer.getInteger(PROPERTY_MAX_ENTRIES, DEFAULT_MAX_ENTRIES), 
+		     Long.getLong(PROPERTY_MAX_BYTES, DEFAULT_MAX_BYTES),
+		     !"false".equalsIgnoreCase(System.getProperty(PROPERTY_SPILL)));
 	}
-	
-	boolean tagStackIsEmpty() {
-		return tagStack.isEmpty();
+
+	/**
+	 * @param maxEntries the most undo entries kept, in memory and on disk
+	 * @param maxBytes the estimated memory that the undo and redo entries may use
+	 * @param canSpill true to move the oldest undo entries to disk when over maxBytes, instead of dropping them
+	 */
+	History(int maxEntries, long maxBytes, boolean canSpill) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.canSpill = canSpill;
+		undoStack = new ArrayDeque<Delta>();
+		redoStack = new ArrayDeque<Delta>();
+		spill = new HistorySpill();
 	}
 
 	/*========*
 	 * Adders *
 	 *========*/
 	/**
-	 * @@author A0134177E
-	 * Pushes the given task lists to History.
-	 * @param taskLists
-	 */
-	void addTaskLists(ArrayList<ArrayList<Task>> taskLists) {
-		taskStack.push(taskLists);
-		redoTaskStack.clear();
-	}
-	
-	/**
-	 * Pushes the given tag category list to History.
-	 * @param tagCategoryList
+	 * Adds the changes that the command that was just executed made to the task lists, and the tag list after it, 
+	 * to History. The first call after History is created or cleared only sets the tag list to start from.
+	 * History keeps both, so Logic must not change them afterwards.
+	 * @param taskChanges the changes taken from LogicMemory after the command
+	 * @param newTagCategoryList a copy of the tag list after the command
 	 */
-	void addTagCategoryList(ArrayList<TagCategory> tagCategoryList) {
-		tagStack.push(tagCategoryList);
-		redoTagStack.clear();
+	void add(TaskChanges taskChanges, ArrayList<TagCategory> newTagCategoryList) {
+		redoStack.clear();
+		if (tagCategoryList != null) {
+			if (isSameTagCategoryList(tagCategoryList, newTagCategoryList)) {
+				undoStack.push(new Delta(taskChanges, null, null));
+			} else {
+				undoStack.push(new Delta(taskChanges, tagCategoryList, newTagCategoryList));
+			}
+		}
+		tagCategoryList = newTagCategoryList;
+		enforceLimits();
 	}
 
 	/*=========*
 	 * Getters *
 	 *=========*/
 	/**
-	 * Peeks at the last added task lists in History.
-	 * @return
+	 * Returns the current tag category list in History. This must not be changed; Logic restores a copy of it.
 	 */
-	ArrayList<ArrayList<Task>> peekTaskStack() {
-		return taskStack.peek();
+	ArrayList<TagCategory> getTagCategoryList() {
+		return tagCategoryList;
 	}
 
+	/*=================*
+	 * For undo / redo *
+	 *=================*/
 	/**
-	 * Peeks at the last added tag category list in History.
-	 * @return
+	 * Reverts the current tag list in History to the state before the last command, and returns the changes that the
+	 * command made to the task lists, for Logic to undo.
+	 * @return null if there is nothing to undo
 	 */
-	ArrayList<TagCategory> peekTagStack() {
-		return tagStack.peek();
+	TaskChanges undo() {
+		if (undoStack.isEmpty()) {
+			takeBackFromSpill();
+		}
+		if (undoStack.isEmpty()) {
+			return null;
+		}
+		Delta delta = undoStack.pop();
+		if (delta.oldTagCategoryList != null) {
+			tagCategoryList = delta.oldTagCategoryList;
+		}
+		redoStack.push(delta);
+		enforceLimits();
+		return delta.taskChanges;
 	}
 
+	/**
+	 * Applies the last undone command to the current tag list in History again, and returns the changes that the
+	 * command made to the task lists, for Logic to make again.
+	 * @return null if there is nothing to redo
+	 */
+	TaskChanges redo() {
+		if (redoStack.isEmpty()) {
+			return null;
+		}
+		Delta delta = redoStack.pop();
+		if (delta.newTagCategoryList != null) {
+			tagCategoryList = delta.newTagCategoryList;
+		}
+		undoStack.push(delta);
+		enforceLimits();
+		return delta.taskChanges;
+	}
 
-	/*==========*
-	 * For undo *
-	 *==========*/
 	/**
-	 * Pop the last added task lists from History.
-	 * @return 
+	 * Clear history. This is done after Logic loads from a new directory.
+	 * Logic must call its updateHistory() method immediately after History is cleared,
+	 * to ensure that History isn't left empty.
 	 */
-	ArrayList<ArrayList<Task>> popTaskStack() {
-		ArrayList<ArrayList<Task>> popped = taskStack.pop();
-		redoTaskStack.push(popped);
-		return popped;
+	void clear() {
+		tagCategoryList = null;
+		undoStack.clear();
+		redoStack.clear();
+		spill.close();
 	}
 
+	/*========*
+	 * Limits *
+	 *========*/
 	/**
-	 * Pop the last added tag category list from History.
-	 * @return 
+	 * Moves or drops the oldest undo entries until History is within maxEntries and maxBytes.
+	 * If the undo entries alone are within maxBytes, the redo entries furthest from the current state are dropped.
 	 */
-	ArrayList<TagCategory> popTagStack() {
-		ArrayList<TagCategory> popped = tagStack.pop();
-		redoTagStack.push(popped);
-		return popped;
+	private void enforceLimits() {
+		while (undoStack.size() + spill.size() > maxEntries) {
+			if (spill.size() > 0) {
+				dropOldestSpilled();
+			} else {
+				undoStack.pollLast();
+			}
+		}
+		bytesInMemory = sumBytes(undoStack) + sumBytes(redoStack);
+		while (bytesInMemory > maxBytes && !undoStack.isEmpty()) {
+			Delta oldest = undoStack.pollLast();
+			bytesInMemory -= oldest.estimatedBytes;
+			moveToSpill(oldest);
+		}
+		while (bytesInMemory > maxBytes && !redoStack.isEmpty()) {
+			bytesInMemory -= redoStack.pollLast().estimatedBytes;
+		}
 	}
 
-	/*==========*
-	 * For redo *
-	 *==========*/
 	/**
-	 * @@author A0121618M
-	 * This method pops the last undid task lists and tag list from their respective redo stacks,
-	 * and pushes them back onto the main history stacks.
-	 * Logic can then peek at the main stack to redo the previously undid command.
-	 * @return false if there is nothing to redo; true if successful
+	 * Writes the given Delta to the spill, as its newest entry. If it cannot be written, it is dropped along with
+	 * all the older entries in the spill, since undo can no longer reach them.
 	 */
-	boolean redo() {	
+	private void moveToSpill(Delta delta) {
+		if (canSpill && delta.canSpill()) {
+			try {
+				spill.push(encode(delta));
+				return;
+			} catch (IOException e) {
+				TaskeyLog.getInstance().log(LogSystems.LOGIC, "Could not spill History: " + e.getMessage(), Level.WARNING);
+			}
+		}
+		spill.close();
+	}
+
+	private void dropOldestSpilled() {
 		try {
-			ArrayList<ArrayList<Task>> undidTasks = redoTaskStack.pop();
-			ArrayList<TagCategory> undidTags = redoTagStack.pop();
-			taskStack.push(undidTasks);
-			tagStack.push(undidTags);
-		} catch (NoSuchElementException e) {
+			spill.dropOldest();
+		} catch (IOException e) {
+			TaskeyLog.getInstance().log(LogSystems.LOGIC, "Could not compact History: " + e.getMessage(), Level.WARNING);
+			spill.close();
+		}
+	}
+
+	/**
+	 * Moves the newest entry in the spill back onto the undo stack, if there is one.
+	 * If it cannot be read, the spill is discarded, and there is nothing more to undo.
+	 */
+	private void takeBackFromSpill() {
+		try {
+			byte[] entry = spill.pop();
+			if (entry != null) {
+				undoStack.push(decode(entry));
+			}
+		} catch (IOException e) {
+			TaskeyLog.getInstance().log(LogSystems.LOGIC, "Could not read History: " + e.getMessage(), Level.WARNING);
+			spill.close();
+		}
+	}
+
+	private static long sumBytes(ArrayDeque<Delta> stack) {
+		long bytes = 0;
+		for (Delta delta : stack) {
+			bytes += delta.estimatedBytes;
+		}
+		return bytes;
+	}
+
+	/*=======*
+	 * Stats *
+	 *=======*/
+	/**
+	 * Returns the number of undo and redo entries held in memory.
+	 */
+	int getEntryCount() {
+		return undoStack.size() + redoStack.size();
+	}
+
+	/**
+	 * Returns the estimated memory used by the undo and redo entries held in memory.
+	 */
+	long getEstimatedBytes() {
+		return bytesInMemory;
+	}
+
+	/**
+	 * Returns the number of undo entries spilled to disk.
+	 */
+	int getSpilledEntryCount() {
+		return spill.size();
+	}
+
+	/**
+	 * Returns the size of the spill file on disk.
+	 */
+	long getSpilledBytes() {
+		return spill.getFileBytes();
+	}
+
+	/**
+	 * Returns a one-line summary of History's footprint, e.g. for the stats command.
+	 */
+	String getSummary() {
+		return String.format("History: %d undo, %d redo (%.1f KB), %d on disk (%.1f KB)", undoStack.size(), 
+		                     redoStack.size(), bytesInMemory / 1024.0, spill.size(), spill.getFileBytes() / 1024.0);
+	}
+
+	/*=========*
+	 * Helpers *
+	 *=========*/
+	private static boolean isUnloadedArchive(ArrayList<Task> list) {
+		return (list instanceof ArchiveList) && !((ArchiveList) list).isLoaded();
+	}
+
+	private static boolean isSameTagCategoryList(ArrayList<TagCategory> oldList, ArrayList<TagCategory> newList) {
+		if (oldList.size() != newList.size()) {
 			return false;
 		}
+		for (int i = 0; i < oldList.size(); i++) {
+			if (!oldList.get(i).equals(newList.get(i))
+				|| oldList.get(i).getNumTags() != newList.get(i).getNumTags()) {
+				return false;
+			}
+		}
 		return true;
 	}
-	
+
+	/*==========*
+	 * Spilling *
+	 *==========*/
+	private static byte[] encode(Delta delta) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		TaskChanges taskChanges = delta.taskChanges;
+		if (taskChanges.isReplaced()) {
+			out.writeByte(CHANGES_REPLACED);
+			writeTaskLists(out, taskChanges.getOldLists());
+			writeTaskLists(out, taskChanges.getNewLists());
+		} else {
+			out.writeByte(CHANGES_RECORDED);
+			out.writeInt(taskChanges.size());
+			for (int i = 0; i < taskChanges.size(); i++) {
+				out.writeBoolean(taskChanges.isAddition(i));
+				out.writeInt(taskChanges.getLists(i));
+			}
+			writeTasks(out, taskChanges.getTasks());
+		}
+		out.writeBoolean(delta.oldTagCategoryList != null);
+		if (delta.oldTagCategoryList != null) {
+			writeTags(out, delta.oldTagCategoryList);
+			writeTags(out, delta.newTagCategoryList);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static Delta decode(byte[] entry) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+		TaskChanges taskChanges = new TaskChanges();
+		switch (in.readByte()) {
+			case CHANGES_RECORDED:
+				int size = in.readInt();
+				boolean[] isAddition = new boolean[size];
+				int[] lists = new int[size];
+				for (int i = 0; i < size; i++) {
+					isAddition[i] = in.readBoolean();
+					lists[i] = in.readInt();
+				}
+				ArrayList<Task> tasks = readTasks(in);
+				for (int i = 0; i < size; i++) {
+					if (isAddition[i]) {
+						taskChanges.recordAddition(lists[i], tasks.get(i));
+					} else {
+						taskChanges.recordRemoval(lists[i], tasks.get(i));
+					}
+				}
+				break;
+			case CHANGES_REPLACED:
+				taskChanges.recordReplaced(readTaskLists(in));
+				taskChanges.setNewLists(readTaskLists(in));
+				break;
+			default:
+				throw new IOException("Invalid History entry");
+		}
+		if (in.readBoolean()) {
+			return new Delta(taskChanges, readTags(in), readTags(in));
+		}
+		return new Delta(taskChanges, null, null);
+	}
+
+	private static void writeTaskLists(DataOutputStream out, ArrayList<ArrayList<Task>> lists) throws IOException {
+		out.writeInt(lists.size());
+		for (ArrayList<Task> list : lists) {
+			writeTasks(out, list);
+		}
+	}
+
+	private static ArrayList<ArrayList<Task>> readTaskLists(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		ArrayList<ArrayList<Task>> lists = new ArrayList<ArrayList<Task>>(size);
+		for (int i = 0; i < size; i++) {
+			lists.add(readTasks(in));
+		}
+		return lists;
+	}
+
 	/**
-	 * Clear history's stacks. This is done after Logic loads from a new directory.
-	 * Logic must call its updateHistory() method immediately after History is cleared,
-	 * to ensure that History isn't left empty.
+	 * Writes the fields of each task that Task's copy constructor copies.
 	 */
-	void clear() {
-		taskStack.clear();
-		tagStack.clear();
-		redoTaskStack.clear();
-		redoTagStack.clear();
+	private static void writeTasks(DataOutputStream out, ArrayList<Task> tasks) throws IOException {
+		out.writeInt(tasks.size());
+		for (Task task : tasks) {
+			out.writeLong(task.getId());
+			writeString(out, task.getTaskName());
+			ArrayList<String> tags = task.getTaskTags();
+			out.writeInt((tags == null) ? -1 : tags.size());
+			if (tags != null) {
+				for (String tag : tags) {
+					writeString(out, tag);
+				}
+			}
+			out.writeInt(task.getPriority());
+			writeString(out, task.getTaskType());
+			long[] datesEpoch = task.getDatesEpoch();
+			String[] datesHuman = task.getDatesHuman(); // Kept as they are, since they may not match the epoch dates
+			out.writeInt(datesEpoch.length);
+			for (int j = 0; j < datesEpoch.length; j++) {
+				out.writeLong(datesEpoch[j]);
+				writeString(out, datesHuman[j]);
+			}
+		}
+	}
+
+	private static ArrayList<Task> readTasks(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		ArrayList<Task> tasks = new ArrayList<Task>(size);
+		for (int i = 0; i < size; i++) {
+			long id = in.readLong();
+			Task task = new Task(readString(in));
+			task.setId(id);
+			int numTags = in.readInt();
+			if (numTags >= 0) {
+				ArrayList<String> tags = new ArrayList<String>(numTags);
+				for (int j = 0; j < numTags; j++) {
+					tags.add(readString(in));
+				}
+				task.setTaskTags(tags);
+			}
+			task.setPriority(in.readInt());
+			String taskType = readString(in);
+			if (taskType != null) {
+				task.setTaskType(taskType.intern());
+			}
+			int numDates = in.readInt();
+			long[] datesEpoch = new long[numDates];
+			String[] datesHuman = new String[numDates];
+			for (int j = 0; j < numDates; j++) {
+				datesEpoch[j] = in.readLong();
+				datesHuman[j] = readString(in);
+			}
+			task.setDates(datesEpoch, datesHuman);
+			tasks.add(task);
+		}
+		return tasks;
+	}
+
+	private static void writeTags(DataOutputStream out, ArrayList<TagCategory> tags) throws IOException {
+		out.writeInt(tags.size());
+		for (TagCategory tag : tags) {
+			writeString(out, tag.getTagName());
+			out.writeInt(tag.getNumTags());
+		}
+	}
+
+	private static ArrayList<TagCategory> readTags(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		ArrayList<TagCategory> tags = new ArrayList<TagCategory>(size);
+		for (int i = 0; i < size; i++) {
+			TagCategory tag = new TagCategory(readString(in));
+			tag.setNumTags(in.readInt());
+			tags.add(tag);
+		}
+		return tags;
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/*============*
+	 * Estimation *
+	 *============*/
+	private static long estimateTaskBytes(ArrayList<Task> tasks) {
+		long bytes = BYTES_OBJECT + BYTES_REFERENCE * tasks.size();
+		for (Task task : tasks) {
+			bytes += BYTES_TASK + estimateStringBytes(task.getTaskName());
+			if (task.getTaskTags() != null) {
+				for (String tag : task.getTaskTags()) {
+					bytes += BYTES_REFERENCE + estimateStringBytes(tag);
+				}
+			}
+		}
+		return bytes;
+	}
+
+	private static long estimateListBytes(ArrayList<ArrayList<Task>> lists) {
+		long bytes = BYTES_OBJECT + BYTES_REFERENCE * lists.size();
+		for (ArrayList<Task> list : lists) {
+			bytes += BYTES_OBJECT + BYTES_REFERENCE * list.size();
+		}
+		return bytes;
+	}
+
+	private static long estimateTagBytes(ArrayList<TagCategory> tags) {
+		long bytes = BYTES_OBJECT + BYTES_REFERENCE * tags.size();
+		for (TagCategory tag : tags) {
+			bytes += BYTES_OBJECT + estimateStringBytes(tag.getTagName());
+		}
+		return bytes;
+	}
+
+	private static long estimateStringBytes(String string) {
+		return (string == null) ? 0 : BYTES_STRING + 2 * string.length();
 	}
-}
\ No newline at end of file
+}
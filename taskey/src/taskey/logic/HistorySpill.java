@@ -0,0 +1,132 @@
+package taskey.logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+
+/**
+ * @@author A0121618M
+ * This class is the on-disk part of History's undo stack. History moves its oldest entries here when it is over
+ * its memory budget, and takes them back one at a time when the user undoes that far.
+ * <p>The entries are kept in a temp file, each as its length followed by its bytes, oldest first, so that taking back
+ * the newest entry only truncates the file. Dropping the oldest entry only forgets its offset; the file is compacted
+ * once more than half of it is taken up by dropped entries. The file is deleted when the spill is closed or emptied,
+ * and on exit, since undo history is not kept between sessions.
+ */
+class HistorySpill {
+	private static final String FILE_PREFIX = "taskey_history";
+	private static final String FILE_SUFFIX = ".tmp";
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private File file; // null until the first entry is spilled
+	private RandomAccessFile raf;
+	private ArrayDeque<Long> offsets = new ArrayDeque<Long>(); // Offset of each entry in the file, oldest first
+	private long end = 0; // End of the newest entry
+
+	/**
+	 * Appends an entry, as the newest one.
+	 * @throws IOException if the temp file could not be created or written
+	 */
+	void push(byte[] entry) throws IOException {
+		if (raf == null) {
+			file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX);
+			file.deleteOnExit();
+			raf = new RandomAccessFile(file, "rw");
+		}
+		raf.seek(end);
+		raf.writeInt(entry.length);
+		raf.write(entry);
+		offsets.addLast(end);
+		end = raf.getFilePointer();
+	}
+
+	/**
+	 * Removes and returns the newest entry, or returns null if there is none.
+	 * @throws IOException if the entry could not be read
+	 */
+	byte[] pop() throws IOException {
+		if (offsets.isEmpty()) {
+			return null;
+		}
+		long offset = offsets.pollLast();
+		raf.seek(offset);
+		byte[] entry = new byte[raf.readInt()];
+		raf.readFully(entry);
+		end = offset;
+		if (offsets.isEmpty()) {
+			close();
+		} else {
+			raf.setLength(end);
+		}
+		return entry;
+	}
+
+	/**
+	 * Forgets the oldest entry.
+	 * @throws IOException if the file could not be compacted
+	 */
+	void dropOldest() throws IOException {
+		if (offsets.isEmpty()) {
+			return;
+		}
+		offsets.pollFirst();
+		if (offsets.isEmpty()) {
+			close();
+		} else if (offsets.peekFirst() > end - offsets.peekFirst()) {
+			compact();
+		}
+	}
+
+	/**
+	 * Moves the entries that have not been dropped to the start of the file.
+	 */
+	private void compact() throws IOException {
+		long shift = offsets.peekFirst();
+		byte[] buffer = new byte[COPY_BUFFER_SIZE];
+		for (long position = shift; position < end; position += buffer.length) {
+			int length = (int) Math.min(buffer.length, end - position);
+			raf.seek(position);
+			raf.readFully(buffer, 0, length);
+			raf.seek(position - shift);
+			raf.write(buffer, 0, length);
+		}
+		ArrayDeque<Long> shifted = new ArrayDeque<Long>();
+		for (long offset : offsets) {
+			shifted.addLast(offset - shift);
+		}
+		offsets = shifted;
+		end -= shift;
+		raf.setLength(end);
+	}
+
+	int size() {
+		return offsets.size();
+	}
+
+	/**
+	 * Returns the size of the temp file, including dropped entries that have not been compacted away.
+	 */
+	long getFileBytes() {
+		return end;
+	}
+
+	/**
+	 * Forgets every entry and deletes the temp file.
+	 */
+	void close() {
+		offsets.clear();
+		end = 0;
+		if (raf == null) {
+			return;
+		}
+		try {
+			raf.close();
+		} catch (IOException e) {
+			// The file is deleted below, or on exit
+		}
+		file.delete();
+		raf = null;
+		file = null;
+	}
+}
@@ -4,22 +4,22 @@ import java.util.ArrayList;
 
 import taskey.messenger.TagCategory;
 import taskey.messenger.Task;
+import taskey.storage.ArchiveList;
 
 /** 
  * @@author A0134177E
- * This class provides methods for creating deep copies of ArrayList<Task>, ArrayList<ArrayList<Task>>, and
+ * This class provides methods for creating copies of ArrayList<Task>, ArrayList<ArrayList<Task>>, and
  * ArrayList<TagCategory> objects.
+ * Copies of task lists share their Task objects with the original lists, since LogicMemory never changes a task
+ * once it is in a task list. Tag categories are deep-copied, since their counts are changed in place.
  */
 public class ListCloner {
 	
 	public static ArrayList<Task> cloneTaskList(ArrayList<Task> taskList) {
-		ArrayList<Task> clone = new ArrayList<Task>();
-		
-		for (Task t : taskList) {
-			clone.add(new Task(t));
+		if (taskList instanceof ArchiveList) {
+			return ((ArchiveList) taskList).copy(); //does not load the archive if it has not been loaded yet
 		}
-		
-		return clone;
+		return new ArrayList<Task>(taskList);
 	}
 	
 	public static ArrayList<ArrayList<Task>> cloneTaskLists(ArrayList<ArrayList<Task>> taskLists) {
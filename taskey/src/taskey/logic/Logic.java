@@ -15,6 +15,7 @@ import taskey.messenger.TagCategory;
 import taskey.messenger.Task;
 import taskey.parser.AutoComplete;
 import taskey.parser.Parser;
+import taskey.storage.StorageMetrics;
 
 /**
  * @@author A0134177E
@@ -55,10 +56,11 @@ public class Logic {
     //================================================================================
 	
 	/**
-	 * Returns a (sorted) deep copy of all task lists.
+	 * Returns a (sorted) snapshot of all task lists. The lists and tasks in it are shared with History and with 
+	 * other snapshots, so they must not be modified.
 	 */
 	public ArrayList<ArrayList<Task>> getAllTaskLists() {
-		return ListCloner.cloneTaskLists(logicMemory.getTaskLists());
+		return logicMemory.getTaskLists();
 	}
 	
 	/**
@@ -74,13 +76,27 @@ public class Logic {
 	
 	/**
 	 * Executes the user supplied command.
+	 * If the savefiles failed to move to the directory given by an earlier setdir command, which moves them in the 
+	 * background, the failure is reported instead of the command's own message.
+	 * Changes to the task lists that the command did not add to History, e.g. to the action list by a view command,
+	 * are discarded afterwards, so they are not undone along with the next command.
 	 *
 	 * @param currentContent specifies the current tab that user is in.
 	 * @param input			 the input String entered by the user
 	 * @return               an object encapsulating the information required to update UI display
 	 */
 	public LogicFeedback executeCommand(ContentBox currentContent, String input) {
-    	ProcessedObject po = parser.parseInput(input);
+		LogicFeedback feedback = executeCommand(currentContent, parser.parseInput(input));
+		logicMemory.takeTaskChanges();
+		try {
+			logicMemory.checkSaveDirectoryChanged();
+		} catch (LogicException le) { // The savefiles failed to move in the background after an earlier setdir
+			return new LogicFeedback(feedback.getTaskLists(), feedback.getPo(), le);
+		}
+		return feedback;
+	}
+	
+	private LogicFeedback executeCommand(ContentBox currentContent, ProcessedObject po) {
     	String command = po.getCommand();
     	Command cmd;
   
@@ -128,6 +144,9 @@ public class Logic {
 				cmd = new Search(po.getSearchPhrase());
 				return executeSearch(po, cmd);
 				
+			case "STATS":
+				return executeStats(po);
+				
 			case "UNDO":
 				return executeUndo(po);
 				
@@ -234,23 +253,30 @@ public class Logic {
 		return executeView(po, cmd);
 	}
 	
+	/**
+	 * @@author A0121618M
+	 * Shows a summary of Storage's I/O metrics and of History's footprint as the feedback message, 
+	 * and prints the full I/O report to the console.
+	 */
+	private LogicFeedback executeStats(ProcessedObject po) {
+		StorageMetrics metrics = StorageMetrics.getInstance();
+		metrics.printReport();
+		return new LogicFeedback(getAllTaskLists(), po, 
+		                         new LogicException(metrics.getSummary() + " | " + history.getSummary()));
+	}
+	
+	// @@author A0134177E
 	private LogicFeedback executeUndo(ProcessedObject po) {
-		// History stacks must always have at least one item, which is inserted at startup
-		assert(!history.taskStackIsEmpty());
-		assert(!history.tagStackIsEmpty()); 
-		ArrayList<ArrayList<Task>> currentTaskLists = history.popTaskStack();
-		ArrayList<ArrayList<Task>> previousTaskLists = history.peekTaskStack();
-		ArrayList<TagCategory> currentTagCategoryList = history.popTagStack();
-		ArrayList<TagCategory> previousTagCategoryList = history.peekTagStack();
-		
-		if (previousTaskLists == null) {
-			history.addTaskLists(currentTaskLists);
-			history.addTagCategoryList(currentTagCategoryList);
+		// History must always have the tag list inserted at startup, so the first command can be undone
+		assert(history.getTagCategoryList() != null);
+		TaskChanges changes = history.undo();
+		if (changes == null) {
 			return new LogicFeedback(getAllTaskLists(), po, new LogicException(LogicException.MSG_ERROR_UNDO));
 		}
 		
-		logicMemory.setTaskLists(ListCloner.cloneTaskLists(previousTaskLists));
-		logicMemory.setTagCategoryList(ListCloner.cloneTagCategoryList(previousTagCategoryList));
+		logicMemory.undoTaskChanges(changes);
+		logicMemory.setTagCategoryList(ListCloner.cloneTagCategoryList(history.getTagCategoryList()));
+		logicMemory.commitJournalRecord();
 		
 		return new LogicFeedback(getAllTaskLists(), po, new LogicException(LogicException.MSG_SUCCESS_UNDO));
 	}
@@ -281,12 +307,43 @@ public class Logic {
     // Miscellaneous
     //================================================================================
 	
-	// Push the latest task lists and tag category list to history.
+	// Add the changes to the task lists and the latest tag category list to history, and end the journal record of 
+	// the last command.
 	private void updateHistory() {
-		history.addTaskLists(getAllTaskLists());
-		history.addTagCategoryList(getTagCategoryList());
+		logicMemory.commitJournalRecord();
+		history.add(logicMemory.takeTaskChanges(), getTagCategoryList());
+	}
+	
+	/**
+	 * Blocks until all saves have been written to disk. UI must call this before exiting.
+	 */
+	public void flushSaves() {
+		logicMemory.flushSaves();
 	}
 	
+	/**
+	 * @@author A0121618M
+	 * Starts watching the savefiles for changes made outside Taskey, e.g. by the user in a text editor.
+	 * UI calls this once at startup, and then polls {@link #reloadExternalChanges()}.
+	 */
+	public void watchSavefiles() {
+		logicMemory.watchSavefiles();
+	}
+	
+	/**
+	 * Applies the changes made to the savefiles outside Taskey since the last call, without reloading the task lists.
+	 * The result is pushed to History, so that it can be undone like a command.
+	 * @return true if the task lists changed, in which case UI should update its display
+	 */
+	public boolean reloadExternalChanges() {
+		if (!logicMemory.applyExternalChanges()) {
+			return false;
+		}
+		updateHistory();
+		return true;
+	}
+	
+	// @@author A0134177E
 	public ArrayList<String> autoCompleteLine(String line, ContentBox currentContent) {
 		ProcessedAC pac = autoComplete.getSuggestions(line, getTagCategoryList());
 		String pacCommand = pac.getCommand();
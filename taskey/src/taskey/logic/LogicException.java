@@ -40,6 +40,7 @@ public class LogicException extends Exception {
 	public static final String MSG_ERROR_PRIORITY_NOT_FOUND = "There are no pending/expired tasks with that priority level.";
 	public static final String MSG_ERROR_SAVE = "Error occurred during save.";
 	public static final String MSG_ERROR_SETDIR = "Error changing save directory!";
+	public static final String MSG_ERROR_SETDIR_MOVE = "Could not move savefiles to the new directory: %1$s";
 	public static final String MSG_ERROR_VIEWTYPE = "Error: \"%1$s\" is not a valid category";
 	
     //================================================================================
@@ -9,6 +9,8 @@ import java.nio.file.NotDirectoryException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.logging.Level;
 
@@ -18,13 +20,22 @@ import taskey.logger.TaskeyLog.LogSystems;
 import taskey.messenger.TagCategory;
 import taskey.messenger.Task;
 import taskey.parser.TimeConverter;
+import taskey.storage.ArchiveList;
+import taskey.storage.JournalRecord;
+import taskey.storage.PersistenceService;
+import taskey.storage.SavefileChange;
+import taskey.storage.StateImage;
 import taskey.storage.Storage;
+import taskey.storage.StorageBackend;
+import taskey.storage.Storage.TasklistEnum;
 
 /**
  * @@author A0134177E
  * This class serves as the memory component for the Logic class. It holds references to all the Task and TagCategory
  * objects in use for the session. Each time a command is executed, the data in this component will be modified. 
  * Note that the data in this component will not be saved to disk unless the user enters the "save" command.  
+ * Changes made to the saved task lists are recorded as journal records, so that a save only needs to append the
+ * changes since the last save instead of rewriting every task.
  */
 public class LogicMemory {
 	
@@ -49,9 +60,14 @@ public class LogicMemory {
     // Fields
     //================================================================================
 	
-	private Storage storage;
-	private ArrayList<ArrayList<Task>> taskLists;
+	private StorageBackend storage; // Chosen by the taskey.backend system property, e.g. memory for benchmarks
+	private PersistenceService persistence; // Writes saves to storage in the background
+	private TaskStore taskStore; // Holds the tasks in all the task lists
 	private ArrayList<TagCategory> tagCategoryList;
+	private ArrayList<JournalRecord> journalRecords; // Records of the commands executed since the last save
+	private JournalRecord currentRecord; // Record of the command that is currently being executed
+	private boolean needsFullSave; // True if the task lists were replaced wholesale, e.g. by clear
+	private EnumSet<TasklistEnum> changedLists; // Lists changed since they were last written to their savefiles
 	
     //================================================================================
     // Constructors
@@ -60,7 +76,8 @@ public class LogicMemory {
 	LogicMemory() {
 		TaskeyLog.getInstance().removeHandlers(LogSystems.LOGIC);
 		TaskeyLog.getInstance().addHandler(LogSystems.LOGIC, "LogicLog.txt", 1);
-		storage = new Storage();
+		storage = Storage.createBackend(System.getProperty(Storage.PROPERTY_BACKEND));
+		persistence = PersistenceService.getInstance();
 		initializeTaskLists();
 		TaskeyLog.getInstance().log(LogSystems.LOGIC, "Successfully initialized task lists in LogicMemory.", Level.ALL);
 		initializeTagCategoryList();
@@ -71,19 +88,25 @@ public class LogicMemory {
     // Accessors
     //================================================================================
 
+	/**
+	 * @@author A0121618M
+	 * Returns the sorted task lists, e.g. for History, LogicFeedback, UI or a background save.
+	 * The lists are built from TaskStore's indexes and are never modified afterwards, so they can be shared as a 
+	 * snapshot. A list that did not change since the last call is returned as the same object, so a command only 
+	 * costs a copy of the lists it changed. Only the outer list belongs to the caller.
+	 */
 	ArrayList<ArrayList<Task>> getTaskLists() {
-		assert(taskLists != null);
-		assert(!taskLists.contains(null));
-		assert(taskLists.size() == NUM_TASK_LISTS);
-		sortTaskLists();
-		return taskLists;
+		assert(taskStore != null);
+		return taskStore.getLists();
 	}
-
+	
+	// @@author A0134177E
 	void setTaskLists(ArrayList<ArrayList<Task>> taskLists) {
 		assert(taskLists != null);
 		assert(!taskLists.contains(null));
 		assert(taskLists.size() == NUM_TASK_LISTS);
-		this.taskLists = taskLists;
+		taskStore = new TaskStore(taskLists);
+		discardJournalRecords(); // The replaced lists cannot be expressed as changes to the previous ones
 	}
 
 	ArrayList<TagCategory> getTagCategoryList() {
@@ -113,8 +136,9 @@ public class LogicMemory {
 			throw new LogicException(LogicException.MSG_ERROR_DUPLICATE_TASKS);
 		}
 		
-		taskLists.get(INDEX_PENDING).add(taskToAdd);
-		taskLists.get(INDEX_FLOATING).add(taskToAdd);
+		taskStore.add(INDEX_PENDING, taskToAdd);
+		taskStore.add(INDEX_FLOATING, taskToAdd);
+		recordAddition(TasklistEnum.PENDING, taskToAdd);
 		clearActionList(); // Action list not relevant for "add" command.
 	}
 	
@@ -131,16 +155,18 @@ public class LogicMemory {
 		clearActionList(); // Action list not relevant for "add" command.
 		
 		if (taskToAdd.isExpired()) {
-			taskLists.get(INDEX_EXPIRED).add(taskToAdd);
+			taskStore.add(INDEX_EXPIRED, taskToAdd);
+			recordAddition(TasklistEnum.EXPIRED, taskToAdd);
 			addTags(taskToAdd.getTaskTags());
 			throw new LogicException(LogicException.MSG_SUCCESS_ADD_EXPIRED);
 		}
 		
-		taskLists.get(INDEX_PENDING).add(taskToAdd);
-		taskLists.get(INDEX_DEADLINE).add(taskToAdd);
+		taskStore.add(INDEX_PENDING, taskToAdd);
+		taskStore.add(INDEX_DEADLINE, taskToAdd);
+		recordAddition(TasklistEnum.PENDING, taskToAdd);
 	
 		if (taskToAdd.isThisWeek()) {
-			taskLists.get(INDEX_THIS_WEEK).add(taskToAdd);
+			taskStore.add(INDEX_THIS_WEEK, taskToAdd);
 		}
 	}
 	
@@ -157,16 +183,18 @@ public class LogicMemory {
 		clearActionList(); // Action list not relevant for "add" command.
 		
 		if (taskToAdd.isExpired()) {
-			taskLists.get(INDEX_EXPIRED).add(taskToAdd);
+			taskStore.add(INDEX_EXPIRED, taskToAdd);
+			recordAddition(TasklistEnum.EXPIRED, taskToAdd);
 			addTags(taskToAdd.getTaskTags());
 			throw new LogicException(LogicException.MSG_SUCCESS_ADD_EXPIRED);
 		}
 		
-		taskLists.get(INDEX_PENDING).add(taskToAdd);
-		taskLists.get(INDEX_EVENT).add(taskToAdd);
+		taskStore.add(INDEX_PENDING, taskToAdd);
+		taskStore.add(INDEX_EVENT, taskToAdd);
+		recordAddition(TasklistEnum.PENDING, taskToAdd);
 
 		if (taskToAdd.isThisWeek()) {
-			taskLists.get(INDEX_THIS_WEEK).add(taskToAdd);
+			taskStore.add(INDEX_THIS_WEEK, taskToAdd);
 		}
 	}
 	
@@ -179,6 +207,7 @@ public class LogicMemory {
 	 * 						  savefiles already exist in the given directory (this is a signal for Logic to load these files)
 	 */
 	void changeSaveDirectory(String pathName) throws LogicException {
+		persistence.flush(); // Savefiles must be fully written before they are moved
 		try {
 			storage.setDirectory(pathName, true); //true to move files
 		} catch (FileAlreadyExistsException fae) { //new directory contains existing tasks data files
@@ -215,6 +244,20 @@ public class LogicMemory {
 		}
 	}
 	
+	/**
+	 * @@author A0121618M
+	 * Reports a failure to move the savefiles by an earlier {@link #changeSaveDirectory(String)}, which returns before
+	 * the savefiles are moved in the background. The savefiles are then still in the previous directory, which
+	 * Storage keeps using.
+	 * @throws LogicException if the savefiles could not be moved since this method was last called
+	 */
+	void checkSaveDirectoryChanged() throws LogicException {
+		Exception failure = storage.checkMigrationFailed();
+		if (failure != null) {
+			throw new LogicException(String.format(LogicException.MSG_ERROR_SETDIR_MOVE, failure.getMessage()));
+		}
+	}
+	
 	/**
 	 * @@author A0134177E
 	 * Removes an indexed task from the specified task list, and deletes all its tags from the tag category list.
@@ -224,7 +267,7 @@ public class LogicMemory {
 	 * @throws LogicException if the index is invalid
 	 */
 	Task deleteByIndex(ContentBox contentBox, int taskIndex) throws LogicException {
-		ArrayList<Task> targetList = taskLists.get(getListIndex(contentBox));
+		ArrayList<Task> targetList = taskStore.getList(getListIndex(contentBox));
 		
 		if (taskIndex >= targetList.size() || taskIndex < 0) {
 			throw new LogicException(LogicException.MSG_ERROR_INVALID_INDEX);
@@ -232,7 +275,7 @@ public class LogicMemory {
 		
 		Task toDelete = targetList.get(taskIndex);
 
-		if (!taskLists.get(INDEX_COMPLETED).contains(toDelete)) { // Completed tasks already have their tags removed.
+		if (!taskStore.isCompleted(toDelete)) { // Completed tasks already have their tags removed.
 			removeTaskTags(toDelete.getTaskTags());
 		}
 		
@@ -252,8 +295,8 @@ public class LogicMemory {
 	 * @throws LogicException if the tag name was not found in the expired and pending lists
 	 */
 	void deleteByTagName(String tagName) throws LogicException {
-		boolean tagFound = removeTaggedTasks(taskLists.get(INDEX_EXPIRED), tagName);
-		tagFound = tagFound || removeTaggedTasks(taskLists.get(INDEX_PENDING), tagName);
+		boolean tagFound = removeTaggedTasks(taskStore.getList(INDEX_EXPIRED), tagName);
+		tagFound = tagFound || removeTaggedTasks(taskStore.getList(INDEX_PENDING), tagName);
 		
 		if (!tagFound) {
 			throw new LogicException(LogicException.MSG_ERROR_TAG_NOT_FOUND);
@@ -269,7 +312,7 @@ public class LogicMemory {
 	 * @throws LogicException if index is invalid or the user is trying to mark an archived task as done
 	 */
 	void doneByIndex(ContentBox contentBox, int taskIndex) throws LogicException {
-		ArrayList<Task> targetList = taskLists.get(getListIndex(contentBox));
+		ArrayList<Task> targetList = taskStore.getList(getListIndex(contentBox));
 		
 		if (taskIndex >= targetList.size() || taskIndex < 0) {
 			throw new LogicException(LogicException.MSG_ERROR_INVALID_INDEX);
@@ -277,12 +320,13 @@ public class LogicMemory {
 		
 		Task toComplete = targetList.get(taskIndex);
 		
-		if (taskLists.get(INDEX_COMPLETED).contains(toComplete)) {
+		if (taskStore.isCompleted(toComplete)) {
 			throw new LogicException(LogicException.MSG_ERROR_DONE_INVALID);
 		}
 		
 		removeFromAllLists(toComplete);
-		taskLists.get(INDEX_COMPLETED).add(toComplete);
+		taskStore.add(INDEX_COMPLETED, toComplete);
+		recordAddition(TasklistEnum.COMPLETED, toComplete);
 		removeTaskTags(toComplete.getTaskTags());
 		
 		if (!contentBox.equals(ContentBox.ACTION)) { // User not in ACTION tab, clear it to remove clutter
@@ -299,7 +343,7 @@ public class LogicMemory {
 	 * @throws LogicException if the index is invalid, or the updated task is a duplicate or expired
 	 */
 	void updateByIndexChangeBoth(ContentBox contentBox, int taskIndex, String newName, Task newTask) throws LogicException {
-		ArrayList<Task> targetList = taskLists.get(getListIndex(contentBox));
+		ArrayList<Task> targetList = taskStore.getList(getListIndex(contentBox));
 		
 		if (taskIndex >= targetList.size() || taskIndex < 0) {
 			throw new LogicException(LogicException.MSG_ERROR_INVALID_INDEX);
@@ -307,11 +351,12 @@ public class LogicMemory {
 		
 		Task toUpdate = targetList.get(taskIndex);
 		
-		if (taskLists.get(INDEX_COMPLETED).contains(toUpdate)) {
+		if (taskStore.isCompleted(toUpdate)) {
 			throw new LogicException(LogicException.MSG_ERROR_UPDATE_INVALID);
 		}
 		
 		newTask.setTaskName(newName);
+		newTask.setId(toUpdate.getId()); // The updated task is still the same task
 		if (toUpdate.getTaskTags() != null) {
 			newTask.setTaskTags(new ArrayList<String>(toUpdate.getTaskTags()));
 		}
@@ -340,7 +385,7 @@ public class LogicMemory {
 	 * @throws LogicException if the index is invalid, or the updated task is a duplicate or expired
 	 */
 	void updateByIndexChangeDate(ContentBox contentBox, int taskIndex, Task newTask) throws LogicException {
-		ArrayList<Task> targetList = taskLists.get(getListIndex(contentBox));
+		ArrayList<Task> targetList = taskStore.getList(getListIndex(contentBox));
 		
 		if (taskIndex >= targetList.size() || taskIndex < 0) {
 			throw new LogicException(LogicException.MSG_ERROR_INVALID_INDEX);
@@ -358,7 +403,7 @@ public class LogicMemory {
 	 * @throws LogicException if the index is invalid, or the updated task is a duplicate or expired
 	 */
 	void updateByIndexChangeName(ContentBox contentBox, int taskIndex, String newName) throws LogicException {
-		ArrayList<Task> targetList = taskLists.get(getListIndex(contentBox));
+		ArrayList<Task> targetList = taskStore.getList(getListIndex(contentBox));
 		
 		if (taskIndex >= targetList.size() || taskIndex < 0) {
 			throw new LogicException(LogicException.MSG_ERROR_INVALID_INDEX);
@@ -370,7 +415,7 @@ public class LogicMemory {
 	}
 	
 	void updateByIndexChangePriority(ContentBox contentBox, int taskIndex, int newPriority) throws LogicException {
-		ArrayList<Task> targetList = taskLists.get(getListIndex(contentBox));
+		ArrayList<Task> targetList = taskStore.getList(getListIndex(contentBox));
 		
 		if (taskIndex >= targetList.size() || taskIndex < 0) {
 			throw new LogicException(LogicException.MSG_ERROR_INVALID_INDEX);
@@ -378,13 +423,14 @@ public class LogicMemory {
 		
 		Task toUpdate = targetList.get(taskIndex);
 		
-		if (taskLists.get(INDEX_COMPLETED).contains(toUpdate)) {
+		if (taskStore.isCompleted(toUpdate)) {
 			throw new LogicException(LogicException.MSG_ERROR_UPDATE_INVALID);
 		}
 		
 		removeFromAllLists(toUpdate);
-		toUpdate.setPriority(newPriority);
-		addTaskToLists(contentBox, toUpdate);
+		Task updated = new Task(toUpdate); // Tasks in the task lists are never changed, as snapshots share them
+		updated.setPriority(newPriority);
+		addTaskToLists(contentBox, updated);
 		
 		if (!contentBox.equals(ContentBox.ACTION)) { // User not in ACTION tab, clear it to remove clutter
 			clearActionList();
@@ -393,27 +439,114 @@ public class LogicMemory {
 	
 	/**
 	 * Saves the current task lists and tag category list in memory to disk.
-	 * @throws LogicException if error occurred during save
+	 * Normally only the journal records of the commands executed since the last save are written. All the task lists 
+	 * are rewritten instead if they were replaced since the last save, or if Storage's journal is due for compaction. 
+	 * In that case, only the lists that changed since they were last written are rewritten, from a snapshot of the task
+	 * lists, which PersistenceService can read in the background since the lists in a snapshot are never modified.
+	 * The save is written to disk in the background by PersistenceService, so this method does not wait for disk I/O.
+	 * @throws LogicException if an earlier save failed to be written; the current save will rewrite all task lists
 	 */
 	void save() throws LogicException {
-		try {
-			storage.saveAllTasklists(ListCloner.cloneTaskLists(taskLists));
-			storage.saveTaglist(ListCloner.cloneTagCategoryList(tagCategoryList));
-		} catch (Exception e) {
+		commitJournalRecord();
+		
+		boolean hasFailed = persistence.checkFailed();
+		if (hasFailed) { // The changes in the failed save were lost, so rewrite all the task lists
+			discardJournalRecords();
+		}
+		
+		EnumMap<TasklistEnum, ArrayList<Task>> listsToSave = null; // null if only the journal records are saved
+		ArrayList<JournalRecord> recordsToSave = new ArrayList<JournalRecord>(journalRecords);
+		if (needsFullSave || storage.journalNeedsCompaction()) {
+			ArrayList<ArrayList<Task>> snapshot = getTaskLists();
+			listsToSave = new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+			for (TasklistEnum list : storage.getTasklistsToSave(changedLists)) {
+				ArrayList<Task> listToSave = snapshot.get(list.index());
+				if (listToSave instanceof ArchiveList && !((ArchiveList) listToSave).isLoaded()) {
+					listToSave = ListCloner.cloneTaskList(listToSave); // Storage may load it on its own thread
+				}
+				listsToSave.put(list, listToSave);
+			}
+			needsFullSave = false;
+			changedLists.clear();
+			recordsToSave.clear(); // The snapshot already includes these changes, and the full save clears the journal
+		}
+		
+		persistence.save(storage, listsToSave, recordsToSave, ListCloner.cloneTagCategoryList(tagCategoryList));
+		journalRecords.clear();
+		
+		if (hasFailed) {
 			throw new LogicException(LogicException.MSG_ERROR_SAVE);
 		}
 	}
 	
 	/**
+	 * Blocks until all saves have been written to disk. This must be called before exiting.
+	 * If every change has been saved, Storage also writes a state image of the sorted task lists, 
+	 * which the next launch loads instead of the savefiles.
+	 */
+	void flushSaves() {
+		persistence.flush();
+		if (persistence.checkFailed()) { // The failed save must be rewritten in full, so there is no image to write
+			discardJournalRecords();
+			return;
+		}
+		if (journalRecords.isEmpty() && currentRecord.isEmpty() && !needsFullSave) {
+			storage.saveStateImage(getTaskLists());
+		}
+	}
+	
+	/**
+	 * @@author A0121618M
+	 * Starts watching the savefiles for changes made outside Taskey, which are then applied by 
+	 * {@link #applyExternalChanges()}.
+	 */
+	void watchSavefiles() {
+		storage.startWatching();
+	}
+	
+	/**
+	 * Applies the changes made to the savefiles outside Taskey since the last call, on top of the task lists in memory,
+	 * so that changes made in Taskey since the last save are kept as well. Each removed task is deleted, and each added
+	 * task is added to the lists it belongs to, as the del and add commands would, along with their tags.
+	 * The changes are therefore journaled with the next save like any other command.
+	 * @return true if any task list was changed
+	 */
+	boolean applyExternalChanges() {
+		boolean hasChanged = false;
+		
+		for (SavefileChange change : storage.pollExternalChanges()) {
+			for (Task removed : change.getRemovedTasks()) {
+				Task toRemove = taskStore.findPendingOrExpired(removed);
+				if (toRemove != null) {
+					removeTaskTags(toRemove.getTaskTags());
+					removeFromAllLists(toRemove);
+					hasChanged = true;
+				}
+			}
+			
+			for (Task added : change.getAddedTasks()) {
+				if (!taskAlreadyExists(added)) {
+					Task toAdd = new Task(added); // The task in the change is kept by Storage, so it must not be modified
+					addTaskToLists(ContentBox.PENDING, toAdd);
+					addTags(toAdd.getTaskTags());
+					hasChanged = true;
+				}
+			}
+		}
+		
+		return hasChanged;
+	}
+	
+	/**
+	 * @@author A0134177E
 	 * Search for all expired and pending tasks via the given search phrase (not case sensitive).
 	 * @param searchPhrase
 	 * @throws LogicException if no matches were found
 	 */
 	void search(String searchPhrase) throws LogicException {
-		ArrayList<Task> actionList = taskLists.get(INDEX_ACTION);
 		clearActionList();
-		//actionList.addAll(getSearchResults(taskLists.get(INDEX_EXPIRED), searchPhrase));
-		actionList.addAll(getSearchResults(taskLists.get(INDEX_PENDING), searchPhrase));
+		//addToActionList(getSearchResults(taskStore.getList(INDEX_EXPIRED), searchPhrase));
+		addToActionList(getSearchResults(taskStore.getList(INDEX_PENDING), searchPhrase));
 		String exceptionMsg = String.format(LogicException.MSG_SUCCESS_SEARCH, searchPhrase);
 		throw new LogicException(exceptionMsg);
 	}
@@ -429,28 +562,27 @@ public class LogicMemory {
 		
 		switch (viewType) {
 			case "general":
-				taskLists.set(INDEX_ACTION, new ArrayList<Task>(taskLists.get(INDEX_FLOATING)));
+				setActionList(taskStore.getList(INDEX_FLOATING));
 				exceptionMsg = String.format(LogicException.MSG_SUCCESS_VIEW, viewType) + " tasks.";
 				throw new LogicException(exceptionMsg);
 			
 			case "deadlines":
-				taskLists.set(INDEX_ACTION, new ArrayList<Task>(taskLists.get(INDEX_DEADLINE)));
+				setActionList(taskStore.getList(INDEX_DEADLINE));
 				break;
 				
 			case "events":
-				taskLists.set(INDEX_ACTION, new ArrayList<Task>(taskLists.get(INDEX_EVENT)));
+				setActionList(taskStore.getList(INDEX_EVENT));
 				break;
 				
 			case "archive":
-				taskLists.set(INDEX_ACTION, new ArrayList<Task>(taskLists.get(INDEX_COMPLETED)));
+				setActionList(taskStore.getList(INDEX_COMPLETED));
 				break;
 				
 			case "high":
 			case "medium":
 			case "low":
 				clearActionList();
-				// viewPriority(taskLists.get(INDEX_EXPIRED), viewType);
-				viewPriority(taskLists.get(INDEX_PENDING), viewType);
+				viewPriority(viewType);
 				exceptionMsg = String.format(LogicException.MSG_SUCCESS_VIEW_PRIORITY, viewType);
 				throw new LogicException(exceptionMsg);
 							
@@ -460,12 +592,12 @@ public class LogicMemory {
 			
 			case "today":
 				clearActionList();
-				viewToday(taskLists.get(INDEX_PENDING));
+				viewToday(taskStore.getList(INDEX_PENDING));
 				throw new LogicException(LogicException.MSG_SUCCESS_VIEW_TODAY);
 			
 			case "tomorrow":
 				clearActionList();
-				viewTomorrow(taskLists.get(INDEX_PENDING));
+				viewTomorrow(taskStore.getList(INDEX_PENDING));
 				throw new LogicException(LogicException.MSG_SUCCESS_VIEW_TOMORROW);
 			
 			default: // Should not reach this point
@@ -485,8 +617,8 @@ public class LogicMemory {
 	 */
 	void viewTags(ArrayList<String> tagNames) throws LogicException {
 		clearActionList();
-		//boolean tagFound = viewTaggedTasks(taskLists.get(INDEX_EXPIRED), tagNames);
-		boolean tagFound = viewTaggedTasks(taskLists.get(INDEX_PENDING), tagNames);
+		//boolean tagFound = viewTaggedTasks(taskStore.getList(INDEX_EXPIRED), tagNames);
+		boolean tagFound = viewTaggedTasks(taskStore.getList(INDEX_PENDING), tagNames);
 		
 		throw new LogicException(LogicException.MSG_SUCCESS_VIEW_TAGS);
 	}
@@ -496,15 +628,25 @@ public class LogicMemory {
     //================================================================================
 	
 	private void initializeTaskLists() {
-		taskLists = storage.loadAllTasklists();
+		persistence.flush(); // Pending saves must be written before the savefiles are read
+		StateImage image = storage.loadStateImage(); // Pre-sorted lists from the last clean exit, if still valid
+		TimeConverter tc = new TimeConverter();
+		boolean hasThisWeekList = (image != null && tc.isSameWeek(image.getCreatedTime(), tc.getCurrTime()));
+		ArrayList<ArrayList<Task>> taskLists = (image != null) ? image.getTaskLists() : storage.loadAllTasklists();
 		assert(taskLists != null);
+		journalRecords = new ArrayList<JournalRecord>();
+		currentRecord = new JournalRecord();
+		needsFullSave = false;
+		changedLists = EnumSet.noneOf(TasklistEnum.class);
 		
 		// THIS_WEEK and ACTION lists are not loaded from storage and hence must be manually added.
-		taskLists.add(INDEX_THIS_WEEK, new ArrayList<Task>());
+		// The THIS_WEEK list in the image can be used as long as it is still the same week.
+		taskLists.add(INDEX_THIS_WEEK, hasThisWeekList ? image.getThisWeekList() : new ArrayList<Task>());
 		taskLists.add(INDEX_ACTION, new ArrayList<Task>());
 		assert(taskLists.size() == NUM_TASK_LISTS);
+		taskStore = new TaskStore(taskLists);
 		
-		synchroniseTaskLists();
+		synchroniseTaskLists(!hasThisWeekList);
 	}
 	
 	private void initializeTagCategoryList() {
@@ -514,47 +656,111 @@ public class LogicMemory {
 	/** Updates all the lists based on the current time on the user's computer clock. For example, deadline tasks that
 	 *  are newly expired will be removed from the DEADLINE list and PENDING lists and added to the EXPIRED list. The 
 	 *  tag category list is not affected.
+	 *  @param shouldFindThisWeek true if the THIS_WEEK list is empty and should be filled; false if it is already filled
 	 */
-	private void synchroniseTaskLists() {
-		ArrayList<Task> thisWeekList = taskLists.get(INDEX_THIS_WEEK);
-		ArrayList<Task> expiredList = taskLists.get(INDEX_EXPIRED);
-		ArrayList<Task> pendingList = taskLists.get(INDEX_PENDING);
-
-		for (Iterator<Task> it = pendingList.iterator(); it.hasNext();) { // Iterator is used for safe removal of
-			                                                              // elements while iterating
-			Task task = it.next();
-			
+	private void synchroniseTaskLists(boolean shouldFindThisWeek) {
+		for (Task task : taskStore.getList(INDEX_PENDING)) { // The sorted list is not changed by the removals below
 			if (task.isExpired()) {
-				it.remove();
 				removeFromAllLists(task);
-				expiredList.add(task);
-			} else if (task.isThisWeek()) {
-				thisWeekList.add(task);
+				taskStore.add(INDEX_EXPIRED, task);
+				recordAddition(TasklistEnum.EXPIRED, task);
+			} else if (shouldFindThisWeek && task.isThisWeek()) {
+				taskStore.add(INDEX_THIS_WEEK, task);
 			}
 		}
 	}
 	
 	void clearAllTaskLists() {
-		for (int i = 0; i < taskLists.size(); i++) {
-			taskLists.get(i).clear();
+		taskStore.clearAll();
+		discardJournalRecords();
+	}
+	
+	/**
+	 * Ends the journal record of the command that was just executed, and keeps it until the next save.
+	 * Logic calls this once after every command that modified the task lists.
+	 */
+	void commitJournalRecord() {
+		if (!currentRecord.isEmpty()) {
+			journalRecords.add(currentRecord);
+			currentRecord = new JournalRecord();
 		}
 	}
 	
+	/**
+	 * @@author A0121618M
+	 * Returns the changes made to the task lists since this method was last called, e.g. for History.
+	 */
+	TaskChanges takeTaskChanges() {
+		return taskStore.takeChanges();
+	}
+
+	/**
+	 * Undoes the given changes, taken from History, by making the inverse changes in reverse order. These are
+	 * journaled like the changes of any other command, so only the saved lists they change are saved again.
+	 * Task lists that were replaced wholesale, e.g. by the clear command, are restored wholesale, which needs a full save.
+	 */
+	void undoTaskChanges(TaskChanges changes) {
+		if (changes.isReplaced()) {
+			setTaskLists(ListCloner.cloneTaskLists(changes.getOldLists()));
+			return;
+		}
+		for (int i = changes.size() - 1; i >= 0; i--) {
+			Task task = changes.getTask(i);
+			if (changes.isAddition(i)) {
+				int removedFrom = 0;
+				for (int listIndex = 0; listIndex < NUM_TASK_LISTS; listIndex++) {
+					if (TaskStore.isIn(changes.getLists(i), listIndex) && taskStore.remove(listIndex, task)) {
+						removedFrom |= 1 << listIndex;
+					}
+				}
+				recordRemoval(removedFrom, task);
+			} else {
+				for (int listIndex = 0; listIndex < NUM_TASK_LISTS; listIndex++) {
+					if (TaskStore.isIn(changes.getLists(i), listIndex)) {
+						taskStore.add(listIndex, task);
+						recordAddition(TasklistEnum.enumOf(listIndex), task);
+					}
+				}
+			}
+		}
+	}
+
+	// @@author A0134177E
+	/**
+	 * Discards all journal records since the last save, and marks the task lists to be saved in full on the next save.
+	 */
+	private void discardJournalRecords() {
+		journalRecords.clear();
+		currentRecord = new JournalRecord();
+		needsFullSave = true;
+		changedLists = EnumSet.allOf(TasklistEnum.class);
+	}
+	
 	private void clearActionList() {
-		taskLists.get(INDEX_ACTION).clear();
+		taskStore.clear(INDEX_ACTION);
 	}
 	
-	void clearTagCategoryList() {
-		tagCategoryList.clear();
+	/**
+	 * @@author A0121618M
+	 * Replaces the tasks in the action list with the given tasks.
+	 */
+	private void setActionList(ArrayList<Task> tasks) {
+		clearActionList();
+		addToActionList(tasks);
 	}
 	
-	private void sortTaskLists() {
-		for (ArrayList<Task> list : taskLists) {
-			Collections.sort(list, Collections.reverseOrder()); // Sort in reverse order because compareTo logic in
-			                                                    // Task.java is reversed
+	private void addToActionList(ArrayList<Task> tasks) {
+		for (Task task : tasks) {
+			taskStore.add(INDEX_ACTION, task);
 		}
 	}
 	
+	// @@author A0134177E
+	
+	void clearTagCategoryList() {
+		tagCategoryList.clear();
+	}
+	
 	private void sortTagCategoryList() {
 		Collections.sort(tagCategoryList); 
 	}
@@ -589,9 +795,10 @@ public class LogicMemory {
 	 * @param newTask
 	 */
 	private void addTaskToLists(ContentBox contentBox, Task newTask) {
-		for (int i = 0; i < taskLists.size(); i++) {
+		for (int i = 0; i < NUM_TASK_LISTS; i++) {
 			if (belongsToList(contentBox, i, newTask)) {
-				taskLists.get(i).add(newTask);
+				taskStore.add(i, newTask);
+				recordAddition(TasklistEnum.enumOf(i), newTask);
 			}
 		}
 	}
@@ -628,14 +835,39 @@ public class LogicMemory {
 	}
 	
 	private void removeFromAllLists(Task toRemove) {
-		taskLists.get(INDEX_THIS_WEEK).remove(toRemove);
-		taskLists.get(INDEX_PENDING).remove(toRemove);
-		taskLists.get(INDEX_EXPIRED).remove(toRemove);
-		taskLists.get(INDEX_FLOATING).remove(toRemove);
-		taskLists.get(INDEX_DEADLINE).remove(toRemove);
-		taskLists.get(INDEX_EVENT).remove(toRemove);
-		taskLists.get(INDEX_COMPLETED).remove(toRemove);
-		taskLists.get(INDEX_ACTION).remove(toRemove);
+		recordRemoval(taskStore.removeFromAll(toRemove), toRemove);
+	}
+	
+	/**
+	 * @@author A0121618M
+	 * Records the removal of the given task in the current journal record, and marks the lists it was removed from as
+	 * changed, if it was removed from any saved list.
+	 * @param removedFrom the bits of the lists the task was removed from, as returned by TaskStore.removeFromAll
+	 * @param task
+	 */
+	private void recordRemoval(int removedFrom, Task task) {
+		for (int listIndex : new int[] {INDEX_PENDING, INDEX_EXPIRED, INDEX_COMPLETED}) {
+			if (TaskStore.isIn(removedFrom, listIndex)) {
+				changedLists.add(TasklistEnum.enumOf(listIndex));
+				currentRecord.removeTask(task); // Removes the task from every saved list
+				return;
+			}
+		}
+	}
+	
+	// @@author A0134177E
+	
+	/**
+	 * Records the addition of the given task to the given list in the current journal record, and marks the list as
+	 * changed.
+	 * @param list the list the task was added to, or null if the list is not known to Storage (e.g. THIS_WEEK)
+	 * @param task
+	 */
+	private void recordAddition(TasklistEnum list, Task task) {
+		if (list != null) {
+			currentRecord.addTask(list, task);
+			changedLists.add(list);
+		}
 	}
 	
 	/** 
@@ -650,13 +882,10 @@ public class LogicMemory {
 	private boolean removeTaggedTasks(ArrayList<Task> list, String tagName) {
 		boolean taskRemoved = false;
 		
-		for (Iterator<Task> it = list.iterator(); it.hasNext();) { // Iterator is for save removal of elements while 
-			                                                       // iterating
-			Task task = it.next();
+		for (Task task : list) { // The sorted list is not changed by the removals below
 			ArrayList<String> taskTags = task.getTaskTags();
 			if (taskTags != null && taskTags.contains(tagName)) {
-				it.remove();
-				removeFromAllLists(task); // This is safe because the task has already been removed from the current list.
+				removeFromAllLists(task);
 				removeTaskTags(task.getTaskTags());
 				taskRemoved = true;
 			}
@@ -681,7 +910,7 @@ public class LogicMemory {
 			for (String s : tagNames) {
 				ArrayList<String> taskTags = task.getTaskTags();
 				if (taskTags != null && taskTags.contains(s)) {
-					taskLists.get(INDEX_ACTION).add(task);
+					taskStore.add(INDEX_ACTION, task);
 					taskFound = true;
 					break;
 				}
@@ -692,13 +921,12 @@ public class LogicMemory {
 	}
 	
 	/** 
-	 * Views all tasks from the given list which are of the specified priority. 
+	 * Views all pending tasks which are of the specified priority, using the priority index of the task store. 
 	 * 
-	 * @param list
 	 * @param priority
 	 * @return true if and only if at least one task was found with the specified priority
 	 */
-	private boolean viewPriority(ArrayList<Task> list, String priority) {
+	private boolean viewPriority(String priority) {
 		boolean priorityFound = false;
 		int priorityNumber;
 		
@@ -710,13 +938,9 @@ public class LogicMemory {
 			priorityNumber = 1;
 		}
 		
-		for (Iterator<Task> it = list.iterator(); it.hasNext();) { 
-			Task task = it.next();
-			
-			if (task.getPriority() == priorityNumber) {
-				taskLists.get(INDEX_ACTION).add(task);
-				priorityFound = true;
-			}
+		for (Task task : taskStore.getPendingByPriority(priorityNumber)) {
+			taskStore.add(INDEX_ACTION, task);
+			priorityFound = true;
 		}
 		
 		return priorityFound;
@@ -731,7 +955,7 @@ public class LogicMemory {
 		
 		for (Task t : list) {
 			if (t.getTaskType().equals("DEADLINE") && tc.isToday(t.getDeadlineEpoch())) {
-				taskLists.get(INDEX_ACTION).add(t);
+				taskStore.add(INDEX_ACTION, t);
 			} else if (t.getTaskType().equals("EVENT")) {
 				long currTime = tc.getCurrTime();
 				long startDate = t.getStartDateEpoch();
@@ -739,7 +963,7 @@ public class LogicMemory {
 				
 				if (tc.isToday(startDate) || tc.isToday(endDate)
 				    || (startDate <= currTime && currTime <= endDate)) {
-					taskLists.get(INDEX_ACTION).add(t);
+					taskStore.add(INDEX_ACTION, t);
 				}
 			}
 		}
@@ -754,7 +978,7 @@ public class LogicMemory {
 		
 		for (Task t : list) {
 			if (t.getTaskType().equals("DEADLINE") && tc.isTmr(t.getDeadlineEpoch())) {
-				taskLists.get(INDEX_ACTION).add(t);
+				taskStore.add(INDEX_ACTION, t);
 			} else if (t.getTaskType().equals("EVENT")) {
 				long tmrTime = tc.getCurrTime() + NUM_SECONDS_1_DAY;
 				long startDate = t.getStartDateEpoch();
@@ -762,7 +986,7 @@ public class LogicMemory {
 				
 				if (tc.isTmr(startDate) || tc.isTmr(endDate)
 				    || (startDate <= tmrTime && tmrTime <= endDate)) {
-					taskLists.get(INDEX_ACTION).add(t);
+					taskStore.add(INDEX_ACTION, t);
 				}
 			}
 		}
@@ -796,12 +1020,12 @@ public class LogicMemory {
 	
 	/**
 	 *  Returns true if and only if the given task already exists in any of the task lists.
+	 *  The task store and the archive look the task up by its hash, so this does not depend on the number of tasks.
 	 * @param task
 	 * @return
 	 */
 	private boolean taskAlreadyExists(Task task) {
-		return (taskLists.get(INDEX_PENDING).contains(task) || taskLists.get(INDEX_COMPLETED).contains(task)
-				|| taskLists.get(INDEX_EXPIRED).contains(task));
+		return (taskStore.findPendingOrExpired(task) != null || taskStore.isCompleted(task));
 	}
 	
 	/**
@@ -0,0 +1,402 @@
+package taskey.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import taskey.messenger.Task;
+
+/**
+ * @@author A0121618M
+ * This class is a sorted task list as handed out by TaskStore. It is a snapshot of a persistent balanced tree of the
+ * tasks in their sorted order, so it never changes: adding a task to it or removing a task from it returns a new
+ * SortedTaskList in O(log n) time, which shares all but O(log n) of its nodes with this one.
+ * <p>The following read the tree directly:
+ * <br>- size() and isEmpty()
+ * <br>- get(int), in O(log n) time
+ * <p>Every other method first copies the tasks into the list itself, once, after which the SortedTaskList behaves as
+ * a normal ArrayList. A SortedTaskList must not be modified, as the other task lists handed out by TaskStore.
+ */
+@SuppressWarnings("serial")
+class SortedTaskList extends ArrayList<Task> {
+	private final Comparator<? super Task> order;
+	private final Node root;
+	private boolean isCopied = false; //true once the tasks have been copied into the list itself
+
+	/**
+	 * A node of an AVL tree that is never changed once it is built, holding the size of its subtree so that tasks
+	 * can be found by their index.
+	 */
+	private static class Node {
+		private final Task task;
+		private final Node left;
+		private final Node right;
+		private final int size;
+		private final int height;
+
+		private Node(Task task, Node left, Node right) {
+			this.task = task;
+			this.left = left;
+			this.right = right;
+			this.size = size(left) + size(right) + 1;
+			this.height = Math.max(height(left), height(right)) + 1;
+		}
+	}
+
+	private SortedTaskList(Comparator<? super Task> order, Node root) {
+		this.order = order;
+		this.root = root;
+	}
+
+	/**
+	 * Returns the given tasks sorted in the given order. Tasks that sort the same are kept in the order given.
+	 */
+	static SortedTaskList of(Collection<Task> tasks, Comparator<? super Task> order) {
+		Task[] sorted = tasks.toArray(new Task[tasks.size()]);
+		Arrays.sort(sorted, order); //stable
+		return new SortedTaskList(order, build(sorted, 0, sorted.length));
+	}
+
+	/**
+	 * Returns a copy of this list with the given task added after any tasks that sort the same, i.e. where a stable
+	 * sort of the tasks in the order they were added would put it.
+	 */
+	SortedTaskList with(Task task) {
+		return new SortedTaskList(order, insert(root, countBefore(task, true), task));
+	}
+
+	/**
+	 * Returns a copy of this list without the given task, or null if the task is not in this list. The task is matched
+	 * by identity among the tasks that sort the same, or by equality if matchEqual is true.
+	 */
+	SortedTaskList without(Task task, boolean matchEqual) {
+		for (int i = countBefore(task, false); i < size(root); i++) {
+			Task sortedTask = get(root, i);
+			if (order.compare(sortedTask, task) != 0) {
+				break;
+			}
+			if (sortedTask == task || (matchEqual && sortedTask.equals(task))) {
+				return new SortedTaskList(order, remove(root, i));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of tasks that sort before the given task, including those that sort the same if orSame is true.
+	 */
+	private int countBefore(Task task, boolean orSame) {
+		int count = 0;
+		Node node = root;
+		while (node != null) {
+			int comparison = order.compare(node.task, task);
+			if (comparison < 0 || (orSame && comparison == 0)) {
+				count += size(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return count;
+	}
+
+	/*======*
+	 * Tree *
+	 *======*/
+	private static int size(Node node) {
+		return (node == null) ? 0 : node.size;
+	}
+
+	private static int height(Node node) {
+		return (node == null) ? 0 : node.height;
+	}
+
+	private static Node build(Task[] sorted, int from, int to) {
+		if (from >= to) {
+			return null;
+		}
+		int mid = (from + to) >>> 1;
+		return new Node(sorted[mid], build(sorted, from, mid), build(sorted, mid + 1, to));
+	}
+
+	private static Task get(Node node, int index) {
+		while (true) {
+			int leftSize = size(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				node = node.right;
+			} else {
+				return node.task;
+			}
+		}
+	}
+
+	private static Node insert(Node node, int index, Task task) {
+		if (node == null) {
+			return new Node(task, null, null);
+		}
+		int leftSize = size(node.left);
+		if (index <= leftSize) {
+			return balance(node.task, insert(node.left, index, task), node.right);
+		}
+		return balance(node.task, node.left, insert(node.right, index - leftSize - 1, task));
+	}
+
+	private static Node remove(Node node, int index) {
+		int leftSize = size(node.left);
+		if (index < leftSize) {
+			return balance(node.task, remove(node.left, index), node.right);
+		} else if (index > leftSize) {
+			return balance(node.task, node.left, remove(node.right, index - leftSize - 1));
+		} else if (node.left == null) {
+			return node.right;
+		} else if (node.right == null) {
+			return node.left;
+		}
+		return balance(get(node.right, 0), node.left, remove(node.right, 0));
+	}
+
+	/**
+	 * Returns a new node with the given task and subtrees, rotated so that their heights differ by at most one.
+	 */
+	private static Node balance(Task task, Node left, Node right) {
+		if (height(left) > height(right) + 1) {
+			if (height(left.left) < height(left.right)) {
+				left = rotateLeft(left.task, left.left, left.right);
+			}
+			return rotateRight(task, left, right);
+		} else if (height(right) > height(left) + 1) {
+			if (height(right.right) < height(right.left)) {
+				right = rotateRight(right.task, right.left, right.right);
+			}
+			return rotateLeft(task, left, right);
+		}
+		return new Node(task, left, right);
+	}
+
+	private static Node rotateRight(Task task, Node left, Node right) {
+		return new Node(left.task, left.left, new Node(task, left.right, right));
+	}
+
+	private static Node rotateLeft(Task task, Node left, Node right) {
+		return new Node(right.task, new Node(task, left, right.left), right.right);
+	}
+
+	/**
+	 * Copies the tasks in the tree into the list itself, if they have not been copied yet.
+	 */
+	private void copyTasks() {
+		if (!isCopied) {
+			isCopied = true;
+			super.ensureCapacity(size(root));
+			copyTasks(root);
+		}
+	}
+
+	private void copyTasks(Node node) {
+		if (node != null) {
+			copyTasks(node.left);
+			super.add(node.task);
+			copyTasks(node.right);
+		}
+	}
+
+	/*===================================*
+	 * Methods that do not copy the tasks *
+	 *===================================*/
+	@Override
+	public int size() {
+		return isCopied ? super.size() : size(root);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public Task get(int index) {
+		if (isCopied) {
+			return super.get(index);
+		}
+		if (index < 0 || index >= size(root)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+		}
+		return get(root, index);
+	}
+
+	/*============================*
+	 * Methods that copy the tasks *
+	 *============================*/
+	@Override
+	public Task set(int index, Task element) {
+		copyTasks();
+		return super.set(index, element);
+	}
+
+	@Override
+	public boolean add(Task task) {
+		copyTasks();
+		return super.add(task);
+	}
+
+	@Override
+	public void add(int index, Task element) {
+		copyTasks();
+		super.add(index, element);
+	}
+
+	@Override
+	public Task remove(int index) {
+		copyTasks();
+		return super.remove(index);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		copyTasks();
+		return super.remove(o);
+	}
+
+	@Override
+	public void clear() {
+		copyTasks();
+		super.clear();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Task> c) {
+		copyTasks();
+		return super.addAll(c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends Task> c) {
+		copyTasks();
+		return super.addAll(index, c);
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		copyTasks();
+		return super.removeAll(c);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		copyTasks();
+		return super.retainAll(c);
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super Task> filter) {
+		copyTasks();
+		return super.removeIf(filter);
+	}
+
+	@Override
+	public void replaceAll(UnaryOperator<Task> operator) {
+		copyTasks();
+		super.replaceAll(operator);
+	}
+
+	@Override
+	public void sort(Comparator<? super Task> c) {
+		copyTasks();
+		super.sort(c);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		copyTasks();
+		return super.contains(o);
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		copyTasks();
+		return super.indexOf(o);
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		copyTasks();
+		return super.lastIndexOf(o);
+	}
+
+	@Override
+	public Object[] toArray() {
+		copyTasks();
+		return super.toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		copyTasks();
+		return super.toArray(a);
+	}
+
+	@Override
+	public Iterator<Task> iterator() {
+		copyTasks();
+		return super.iterator();
+	}
+
+	@Override
+	public ListIterator<Task> listIterator() {
+		copyTasks();
+		return super.listIterator();
+	}
+
+	@Override
+	public ListIterator<Task> listIterator(int index) {
+		copyTasks();
+		return super.listIterator(index);
+	}
+
+	@Override
+	public List<Task> subList(int fromIndex, int toIndex) {
+		copyTasks();
+		return super.subList(fromIndex, toIndex);
+	}
+
+	@Override
+	public void forEach(Consumer<? super Task> action) {
+		copyTasks();
+		super.forEach(action);
+	}
+
+	@Override
+	public Spliterator<Task> spliterator() {
+		copyTasks();
+		return super.spliterator();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		copyTasks();
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		copyTasks();
+		return super.hashCode();
+	}
+
+	@Override
+	public Object clone() {
+		copyTasks();
+		return super.clone();
+	}
+}
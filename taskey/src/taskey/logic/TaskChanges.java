@@ -0,0 +1,105 @@
+package taskey.logic;
+
+import java.util.ArrayList;
+
+import taskey.messenger.Task;
+
+/**
+ * @@author A0121618M
+ * This class holds the changes that TaskStore recorded while a command was executed, in the order they were made.
+ * Each change is either a task added to one list, or a task removed from all the lists it was in. History keeps these
+ * as its undo entries, so an entry costs memory in proportion to the tasks the command changed, and LogicMemory undoes
+ * them by making the inverse changes in reverse order, which are journaled like those of any other command.
+ * <p>If the task lists were replaced wholesale instead, e.g. by the clear command, only the task lists as they were
+ * before and after the command are kept, and the other changes are not recorded.
+ */
+class TaskChanges {
+	private ArrayList<Task> tasks = new ArrayList<Task>();
+	private ArrayList<Integer> lists = new ArrayList<Integer>(); // One bit per list index; see TaskStore.isIn(int, int)
+	private ArrayList<Boolean> isAddition = new ArrayList<Boolean>();
+	private ArrayList<ArrayList<Task>> oldLists; // null unless the task lists were replaced
+	private ArrayList<ArrayList<Task>> newLists;
+
+	/**
+	 * Records that the given task was added to the lists given by their bits, which is a single list for a change
+	 * recorded by TaskStore.
+	 */
+	void recordAddition(int addedTo, Task task) {
+		record(true, addedTo, task);
+	}
+
+	/**
+	 * Records that the given task was removed from the lists given by their bits.
+	 */
+	void recordRemoval(int removedFrom, Task task) {
+		record(false, removedFrom, task);
+	}
+
+	private void record(boolean isAdded, int changedLists, Task task) {
+		if (oldLists == null && changedLists != 0) {
+			tasks.add(task);
+			lists.add(changedLists);
+			isAddition.add(isAdded);
+		}
+	}
+
+	/**
+	 * Records that the task lists were replaced wholesale, and were the given lists before. Changes recorded earlier
+	 * are discarded, and later ones are not recorded, since the lists before and after are kept instead.
+	 * @param lists snapshots of all the task lists that are never modified
+	 */
+	void recordReplaced(ArrayList<ArrayList<Task>> lists) {
+		if (oldLists == null) {
+			oldLists = lists;
+			tasks.clear();
+			this.lists.clear();
+			isAddition.clear();
+		}
+	}
+
+	/**
+	 * Sets the task lists as they were after the command, if they were replaced.
+	 */
+	void setNewLists(ArrayList<ArrayList<Task>> lists) {
+		assert (oldLists != null);
+		newLists = lists;
+	}
+
+	boolean isReplaced() {
+		return oldLists != null;
+	}
+
+	ArrayList<ArrayList<Task>> getOldLists() {
+		return oldLists;
+	}
+
+	ArrayList<ArrayList<Task>> getNewLists() {
+		return newLists;
+	}
+
+	/**
+	 * Returns the number of changes recorded, which is 0 if the task lists were replaced.
+	 */
+	int size() {
+		return tasks.size();
+	}
+
+	Task getTask(int i) {
+		return tasks.get(i);
+	}
+
+	ArrayList<Task> getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * Returns the bits of the lists that the i-th change added the task to or removed it from.
+	 */
+	int getLists(int i) {
+		return lists.get(i);
+	}
+
+	boolean isAddition(int i) {
+		return isAddition.get(i);
+	}
+}
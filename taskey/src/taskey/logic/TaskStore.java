@@ -0,0 +1,449 @@
+package taskey.logic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+import taskey.messenger.Task;
+import taskey.storage.ArchiveList;
+
+/**
+ * @@author A0121618M
+ * This class holds the tasks in LogicMemory's task lists. Each task is stored once, under its id, together with the
+ * lists it is in. Each list is an index of the ids of its tasks, in the order they were added, so a task is added to or
+ * removed from a list in constant time. The indexes are the lists themselves: by state (PENDING, EXPIRED, COMPLETED),
+ * by type (FLOATING, DEADLINE, EVENT), by week (THIS_WEEK) and the ACTION list, plus an index of the PENDING tasks by
+ * priority and an index of all the stored tasks by their contents, which is used to find duplicates.
+ * <p>If the COMPLETED list is an ArchiveList, it is kept as it was given instead, so that the archive is still only
+ * loaded when it is needed. An archived task is therefore only in the store if it is also in another list, e.g. ACTION,
+ * and the ArchiveList finds duplicates with its own index.
+ * <p>The sorted task lists are built from the indexes the first time they are asked for, and are then kept sorted as
+ * tasks are added and removed. Each is a SortedTaskList, a snapshot of a persistent balanced tree, so adding or
+ * removing a task makes a new snapshot in O(log n) time without copying the list, and a list that has been handed out
+ * never changes. A list that did not change is handed out again as the same object.
+ * <p>Every change made to the lists is recorded in a TaskChanges, which LogicMemory takes after each command for
+ * History.
+ */
+class TaskStore {
+	private static final int NUM_TASK_LISTS = LogicMemory.NUM_TASK_LISTS;
+	private static final int INDEX_COMPLETED = LogicMemory.INDEX_COMPLETED;
+	private static final Comparator<Task> SORT_ORDER = Collections.reverseOrder(); // Reversed because compareTo logic
+	                                                                                // in Task.java is reversed
+
+	/**
+	 * A task in the store, with its key and the lists it is in, one bit per list index. The key is the task's id,
+	 * unless another task with the same id is already in the store, e.g. a copy of it, or a task copied by hand in a
+	 * savefile. The task is then stored under a negative key of its own.
+	 */
+	private static class Entry {
+		private final long id;
+		private final Task task;
+		private int lists = 0;
+
+		private Entry(long id, Task task) {
+			this.id = id;
+			this.task = task;
+		}
+
+		private boolean isIn(int listIndex) {
+			return (lists & bit(listIndex)) != 0;
+		}
+	}
+
+	private long nextLocalId = -1;
+	private HashMap<Long, Entry> entries = new HashMap<Long, Entry>(); // The primary store, by id
+	private IdentityHashMap<Task, Entry> entriesByTask = new IdentityHashMap<Task, Entry>();
+	private HashMap<Task, ArrayList<Entry>> entriesByContent = new HashMap<Task, ArrayList<Entry>>();
+	private ArrayList<LinkedHashMap<Long, Task>> indexes = new ArrayList<LinkedHashMap<Long, Task>>(); // null for archive
+	private HashMap<Integer, LinkedHashMap<Long, Task>> pendingByPriority = new HashMap<Integer, LinkedHashMap<Long, Task>>();
+	private ArchiveList archive; // The COMPLETED list if it is an ArchiveList, or null if it is indexed like the others
+	private ArrayList<ArrayList<Task>> sortedLists = new ArrayList<ArrayList<Task>>(); // null for a list to be rebuilt
+	private TaskChanges changes = new TaskChanges(); // The changes made since they were last taken
+
+	/**
+	 * Creates a store holding the tasks in the given task lists. Equal tasks in different lists are stored as the same
+	 * task, as they are when the lists were read back from History or from file. If the given COMPLETED list is an
+	 * ArchiveList, it is kept as it is and is modified by the store, so it must belong to the caller.
+	 * @param taskLists all the task lists, in the order of LogicMemory's list indices
+	 */
+	TaskStore(ArrayList<ArrayList<Task>> taskLists) {
+		assert(taskLists.size() == NUM_TASK_LISTS);
+		if (taskLists.get(INDEX_COMPLETED) instanceof ArchiveList) {
+			archive = (ArchiveList) taskLists.get(INDEX_COMPLETED);
+		}
+		for (int i = 0; i < NUM_TASK_LISTS; i++) {
+			indexes.add((i == INDEX_COMPLETED && archive != null) ? null : new LinkedHashMap<Long, Task>());
+			sortedLists.add(null);
+		}
+
+		for (int i = 0; i < NUM_TASK_LISTS; i++) {
+			if (indexes.get(i) == null) {
+				continue;
+			}
+			for (Task task : taskLists.get(i)) {
+				Entry entry = entriesByTask.get(task);
+				if (entry == null || entry.isIn(i)) {
+					entry = findEqualEntryNotIn(i, task);
+				}
+				if (entry == null) { // Not stored yet, or every equal task is already in this list
+					entry = newEntry(task);
+				}
+				addToIndex(i, entry);
+			}
+		}
+	}
+
+	/**
+	 * Returns the given task list, sorted. The returned list must not be modified.
+	 */
+	ArrayList<Task> getList(int listIndex) {
+		if (sortedLists.get(listIndex) == null) {
+			ArrayList<Task> sorted;
+			if (indexes.get(listIndex) != null) {
+				sorted = SortedTaskList.of(indexes.get(listIndex).values(), SORT_ORDER);
+			} else if (!archive.isLoaded()) {
+				Collections.sort(archive, SORT_ORDER); // Neither sorting nor copying the archive loads it
+				sorted = archive.copy();
+			} else {
+				sorted = SortedTaskList.of(archive, SORT_ORDER);
+			}
+			sortedLists.set(listIndex, sorted);
+		}
+		return sortedLists.get(listIndex);
+	}
+
+	/**
+	 * Returns all the task lists, sorted. Only the outer list belongs to the caller.
+	 */
+	ArrayList<ArrayList<Task>> getLists() {
+		ArrayList<ArrayList<Task>> taskLists = new ArrayList<ArrayList<Task>>(NUM_TASK_LISTS);
+		for (int i = 0; i < NUM_TASK_LISTS; i++) {
+			taskLists.add(getList(i));
+		}
+		return taskLists;
+	}
+
+	/**
+	 * Returns the PENDING tasks with the given priority, in the order they were added.
+	 */
+	ArrayList<Task> getPendingByPriority(int priority) {
+		LinkedHashMap<Long, Task> index = pendingByPriority.get(priority);
+		return (index == null) ? new ArrayList<Task>() : new ArrayList<Task>(index.values());
+	}
+
+	/**
+	 * Returns the task in the PENDING or EXPIRED list that is equal to the given task, or null if there is none.
+	 */
+	Task findPendingOrExpired(Task task) {
+		Entry entry = findEqualEntry(task);
+		boolean isPendingOrExpired = (entry != null) && (entry.isIn(LogicMemory.INDEX_PENDING)
+		                                                 || entry.isIn(LogicMemory.INDEX_EXPIRED));
+		return isPendingOrExpired ? entry.task : null;
+	}
+
+	/**
+	 * Returns true if the given task is in the COMPLETED list. The archive is only searched, and possibly loaded, if
+	 * the task is not known to be in another list that a completed task cannot be in.
+	 */
+	boolean isCompleted(Task task) {
+		Entry entry = entriesByTask.get(task);
+		if (entry != null && (entry.isIn(INDEX_COMPLETED) || entry.isIn(LogicMemory.INDEX_PENDING)
+		                      || entry.isIn(LogicMemory.INDEX_EXPIRED))) {
+			return entry.isIn(INDEX_COMPLETED);
+		}
+		if (archive != null) {
+			return archive.contains(task);
+		}
+		ArrayList<Entry> equalEntries = entriesByContent.get(task);
+		if (equalEntries != null) {
+			for (Entry equalEntry : equalEntries) {
+				if (equalEntry.isIn(INDEX_COMPLETED)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the given task to the given list, unless it is already in that list.
+	 */
+	void add(int listIndex, Task task) {
+		Entry entry = entriesByTask.get(task);
+		if (entry == null) {
+			entry = newEntry(task);
+		} else if (entry.isIn(listIndex)) {
+			return;
+		}
+		if (listIndex == INDEX_COMPLETED && archive != null) {
+			archive.add(task);
+		}
+		addToIndex(listIndex, entry);
+		addToSortedList(listIndex, task);
+		changes.recordAddition(bit(listIndex), task);
+	}
+
+	/**
+	 * Removes the given task from the given list only. A task that is not in the store, e.g. one read back from
+	 * History's spill, is removed as a task in that list that is equal to it.
+	 * @return true if the task or an equal task was removed from the list
+	 */
+	boolean remove(int listIndex, Task task) {
+		Entry entry = entriesByTask.get(task);
+		if (entry == null || !entry.isIn(listIndex)) {
+			entry = findEqualEntryIn(listIndex, task);
+		}
+		if (listIndex == INDEX_COMPLETED && archive != null) {
+			if (!archive.remove(task)) {
+				return false;
+			}
+			removeFromSortedList(listIndex, task);
+		} else if (entry == null) {
+			return false;
+		} else {
+			removeFromSortedList(listIndex, entry.task);
+		}
+		if (entry != null) {
+			removeFromIndex(listIndex, entry);
+			if (entry.lists == 0) {
+				removeEntry(entry);
+			}
+		}
+		changes.recordRemoval(bit(listIndex), (entry == null) ? task : entry.task);
+		return true;
+	}
+
+	/**
+	 * Removes the given task from every list it is in. A task that is not in the store, e.g. one read back from file,
+	 * is removed as the task in the store that is equal to it.
+	 * @return the lists the task was removed from, one bit per list index; see {@link #isIn(int, int)}
+	 */
+	int removeFromAll(Task task) {
+		Entry entry = entriesByTask.get(task);
+		if (entry == null) {
+			entry = findEqualEntry(task);
+		}
+		int removedFrom = 0;
+		if (archive != null) {
+			boolean mayBeCompleted = (entry == null) || entry.isIn(INDEX_COMPLETED)
+			                         || !(entry.isIn(LogicMemory.INDEX_PENDING) || entry.isIn(LogicMemory.INDEX_EXPIRED));
+			if (mayBeCompleted && archive.remove(task)) {
+				removedFrom |= bit(INDEX_COMPLETED);
+				removeFromSortedList(INDEX_COMPLETED, task);
+			}
+		}
+		if (entry == null) {
+			changes.recordRemoval(removedFrom, task);
+			return removedFrom;
+		}
+		for (int i = 0; i < NUM_TASK_LISTS; i++) {
+			if (entry.isIn(i)) {
+				removeFromIndex(i, entry);
+				if (indexes.get(i) != null) { // The archive was already changed above
+					removeFromSortedList(i, entry.task);
+				}
+				removedFrom |= bit(i);
+			}
+		}
+		removeEntry(entry);
+		changes.recordRemoval(removedFrom, entry.task);
+		return removedFrom;
+	}
+
+	/**
+	 * Removes every task from the given list, which must not be the COMPLETED list.
+	 */
+	void clear(int listIndex) {
+		assert(listIndex != INDEX_COMPLETED);
+		LinkedHashMap<Long, Task> index = indexes.get(listIndex);
+		if (index.isEmpty()) {
+			return;
+		}
+		for (Long id : new ArrayList<Long>(index.keySet())) {
+			Entry entry = entries.get(id);
+			removeFromIndex(listIndex, entry);
+			if (entry.lists == 0) {
+				removeEntry(entry);
+			}
+			changes.recordRemoval(bit(listIndex), entry.task);
+		}
+		sortedLists.set(listIndex, null);
+	}
+
+	/**
+	 * Removes every task from every list, including the archive. This is recorded as replacing the task lists.
+	 */
+	void clearAll() {
+		changes.recordReplaced(getLists());
+		for (int i = 0; i < NUM_TASK_LISTS; i++) {
+			if (indexes.get(i) != null) {
+				indexes.get(i).clear();
+			}
+			sortedLists.set(i, null);
+		}
+		pendingByPriority.clear();
+		entries.clear();
+		entriesByTask.clear();
+		entriesByContent.clear();
+		if (archive != null) {
+			archive.clear();
+		}
+	}
+
+	/**
+	 * Returns the changes made to the task lists since this method was last called, and starts recording anew.
+	 */
+	TaskChanges takeChanges() {
+		TaskChanges taken = changes;
+		changes = new TaskChanges();
+		if (taken.isReplaced()) {
+			taken.setNewLists(getLists());
+		}
+		return taken;
+	}
+
+	/**
+	 * Returns true if the given bits of list indices, as returned by {@link #removeFromAll(Task)}, include the given
+	 * list.
+	 */
+	static boolean isIn(int lists, int listIndex) {
+		return (lists & bit(listIndex)) != 0;
+	}
+
+	private static int bit(int listIndex) {
+		return 1 << listIndex;
+	}
+
+	private Entry newEntry(Task task) {
+		long id = entries.containsKey(task.getId()) ? nextLocalId-- : task.getId();
+		Entry entry = new Entry(id, task);
+		entries.put(entry.id, entry);
+		entriesByTask.put(task, entry);
+		if (!entriesByContent.containsKey(task)) {
+			entriesByContent.put(task, new ArrayList<Entry>(1));
+		}
+		entriesByContent.get(task).add(entry);
+		return entry;
+	}
+
+	private void removeEntry(Entry entry) {
+		entries.remove(entry.id);
+		entriesByTask.remove(entry.task);
+		ArrayList<Entry> equalEntries = entriesByContent.get(entry.task);
+		equalEntries.remove(entry);
+		if (equalEntries.isEmpty()) {
+			entriesByContent.remove(entry.task);
+		}
+	}
+
+	private void addToIndex(int listIndex, Entry entry) {
+		entry.lists |= bit(listIndex);
+		if (indexes.get(listIndex) == null) {
+			return;
+		}
+		indexes.get(listIndex).put(entry.id, entry.task);
+		if (listIndex == LogicMemory.INDEX_PENDING) {
+			int priority = entry.task.getPriority();
+			if (!pendingByPriority.containsKey(priority)) {
+				pendingByPriority.put(priority, new LinkedHashMap<Long, Task>());
+			}
+			pendingByPriority.get(priority).put(entry.id, entry.task);
+		}
+	}
+
+	private void removeFromIndex(int listIndex, Entry entry) {
+		entry.lists &= ~bit(listIndex);
+		if (indexes.get(listIndex) == null) {
+			return;
+		}
+		indexes.get(listIndex).remove(entry.id);
+		if (listIndex == LogicMemory.INDEX_PENDING) {
+			pendingByPriority.get(entry.task.getPriority()).remove(entry.id);
+		}
+	}
+
+	/**
+	 * Returns the stored task that is equal to the given task, preferring one in the PENDING or EXPIRED list,
+	 * or null if there is none.
+	 */
+	private Entry findEqualEntry(Task task) {
+		ArrayList<Entry> equalEntries = entriesByContent.get(task);
+		if (equalEntries == null) {
+			return null;
+		}
+		for (Entry entry : equalEntries) {
+			if (entry.isIn(LogicMemory.INDEX_PENDING) || entry.isIn(LogicMemory.INDEX_EXPIRED)) {
+				return entry;
+			}
+		}
+		return equalEntries.get(0);
+	}
+
+	private Entry findEqualEntryIn(int listIndex, Task task) {
+		ArrayList<Entry> equalEntries = entriesByContent.get(task);
+		if (equalEntries != null) {
+			for (Entry entry : equalEntries) {
+				if (entry.isIn(listIndex)) {
+					return entry;
+				}
+			}
+		}
+		return null;
+	}
+
+	private Entry findEqualEntryNotIn(int listIndex, Task task) {
+		ArrayList<Entry> equalEntries = entriesByContent.get(task);
+		if (equalEntries != null) {
+			for (Entry entry : equalEntries) {
+				if (!entry.isIn(listIndex)) {
+					return entry;
+				}
+			}
+		}
+		return null;
+	}
+
+	/*===================*
+	 * Sorted task lists *
+	 *===================*/
+	/**
+	 * Adds the given task to its sorted list, after any tasks that sort the same, i.e. where a stable sort of the tasks
+	 * in the order they were added would put it.
+	 */
+	private void addToSortedList(int listIndex, Task task) {
+		SortedTaskList sorted = getSortedListToChange(listIndex);
+		if (sorted != null) {
+			sortedLists.set(listIndex, sorted.with(task));
+		}
+	}
+
+	/**
+	 * Removes the given task from its sorted list. A task is matched by identity, except in the archive, from which an
+	 * equal task is removed. If the task is not found among the tasks that sort the same, the list is sorted again when
+	 * it is next asked for.
+	 */
+	private void removeFromSortedList(int listIndex, Task task) {
+		SortedTaskList sorted = getSortedListToChange(listIndex);
+		if (sorted != null) {
+			boolean isArchive = (indexes.get(listIndex) == null);
+			sortedLists.set(listIndex, sorted.without(task, isArchive)); // null if not found
+		}
+	}
+
+	/**
+	 * Returns the sorted list with the given index, or null if it will be built again when it is next asked for.
+	 * A copy of the unloaded archive is not changed, since searching it would load it; sorting the archive again only
+	 * sorts the tasks added to it.
+	 */
+	private SortedTaskList getSortedListToChange(int listIndex) {
+		ArrayList<Task> sorted = sortedLists.get(listIndex);
+		if (!(sorted instanceof SortedTaskList)) {
+			sortedLists.set(listIndex, null);
+			return null;
+		}
+		return (SortedTaskList) sorted;
+	}
+}
@@ -3,6 +3,7 @@ package taskey.messenger;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 import taskey.parser.TimeConverter; 
 import static taskey.constants.ParserConstants.DAY_END_SHORT; 
@@ -39,6 +40,14 @@ public class Task implements Comparable<Task> {
 	public static final int NONE = -1; 
 	public static final String EMPTY = ""; 
 	
+	// @@author A0121618M
+	private static final int ID_SEQUENCE_BITS = 12; // Ids are the creation time in ms followed by a sequence number
+	private static final AtomicLong lastId = new AtomicLong(System.currentTimeMillis() << ID_SEQUENCE_BITS);
+	
+	private long id = lastId.incrementAndGet(); // Unique to the task, and kept in the savefiles
+	private int contentHash = 0; // Cached hashCode(), or 0 if it has to be recomputed
+	
+	// @@author A0107345L
 	private String taskName = null;
 	private ArrayList<String> taskTags = null;
 	private String taskType = null; 
@@ -64,6 +73,8 @@ public class Task implements Comparable<Task> {
 	}
 	
 	public Task(Task other) {
+		id = other.id; // A copy is the same task
+		
 		if (other.taskName != null) {
 			taskName = other.taskName;
 		}
@@ -107,6 +118,7 @@ public class Task implements Comparable<Task> {
 	 */
 	public void setTaskName(String taskName) {
 		this.taskName = taskName; 
+		contentHash = 0;
 	}
 	
 	/**
@@ -137,6 +149,7 @@ public class Task implements Comparable<Task> {
 	 */
 	public void setTaskType(String taskType) {
 		this.taskType = taskType; 
+		contentHash = 0;
 	}
 	
 	/**
@@ -225,6 +238,7 @@ public class Task implements Comparable<Task> {
 	 */
 	public void setStartDate(String startDate) {
 		datesHuman[1] = startDate; 
+		contentHash = 0;
 		try {
 			datesEpoch[1] = timeConverter.toEpochTime(startDate);
 		} catch (ParseException error) {
@@ -239,6 +253,7 @@ public class Task implements Comparable<Task> {
 	 */
 	public void setStartDate(long startDate) {
 		datesEpoch[1] = startDate; 
+		contentHash = 0;
 		datesHuman[1] = timeConverter.toHumanTime(startDate); 
 	}
 	
@@ -249,6 +264,7 @@ public class Task implements Comparable<Task> {
 	 */
 	public void setEndDate(String endDate) {
 		datesHuman[2] = endDate; 
+		contentHash = 0;
 		try {
 			datesEpoch[2] = timeConverter.toEpochTime(endDate); 
 		} catch (ParseException error) {
@@ -263,6 +279,7 @@ public class Task implements Comparable<Task> {
 	 */
 	public void setEndDate(long endDate) {
 		datesEpoch[2] = endDate; 
+		contentHash = 0;
 		datesHuman[2] = timeConverter.toHumanTime(endDate); 		
 	}
 	
@@ -273,6 +290,7 @@ public class Task implements Comparable<Task> {
 	 */
 	public void setDeadline(String deadline) {
 		datesHuman[3] = deadline; 
+		contentHash = 0;
 		try {
 			datesEpoch[3] = timeConverter.toEpochTime(deadline); 
 		} catch (ParseException error) {
@@ -287,6 +305,7 @@ public class Task implements Comparable<Task> {
 	 */
 	public void setDeadline(long deadline) {
 		datesEpoch[3] = deadline; 
+		contentHash = 0;
 		datesHuman[3] = timeConverter.toHumanTime(deadline); 	
 		
 	}
@@ -308,6 +327,57 @@ public class Task implements Comparable<Task> {
 		this.priority = priority; 
 	}
 	
+	// @@author A0121618M
+	/**
+	 * @return a copy of the epoch date array, in the format described at the top of this class.
+	 * Used by Storage to serialize the task.
+	 */
+	public long[] getDatesEpoch() {
+		return datesEpoch.clone(); 
+	}
+	
+	/**
+	 * @return a copy of the human date array, in the format described at the top of this class.
+	 * Used by Storage to serialize the task.
+	 */
+	public String[] getDatesHuman() {
+		return datesHuman.clone(); 
+	}
+	
+	/**
+	 * Set the epoch and human date arrays as they are, without converting one into the other.
+	 * Used by Storage when deserializing, so that dates edited by the user in the savefiles can still be detected.
+	 * @param datesEpoch
+	 * @param datesHuman
+	 */
+	public void setDates(long[] datesEpoch, String[] datesHuman) {
+		this.datesEpoch = datesEpoch; 
+		this.datesHuman = datesHuman; 
+		contentHash = 0;
+	}
+	
+	/**
+	 * @return the id of the task, which is unique to it and is kept when it is saved, loaded or copied.
+	 * Unlike equals(), which compares tasks by their contents, the id tells apart two tasks with the same contents.
+	 */
+	public long getId() {
+		return id;
+	}
+	
+	/**
+	 * Set the id of the task, e.g. when it is read back from a savefile. Ids given to new tasks afterwards will be 
+	 * greater than the given id, so that they do not clash with it.
+	 * @param id
+	 */
+	public void setId(long id) {
+		this.id = id;
+		long last = lastId.get();
+		while (last < id && !lastId.compareAndSet(last, id)) {
+			last = lastId.get();
+		}
+	}
+	
+	// @@author A0107345L
 	//NON-BASIC METHODS ==========================================
 	
 	/**
@@ -588,19 +658,28 @@ public class Task implements Comparable<Task> {
 		//return taskName.compareTo(otherTaskName);
 	}
 	
-	// @@author A0134177E
+	// @@author A0121618M
+	// The hash is cached until the name, type or dates are set again, as tasks are hashed on every add and update to 
+	// check for duplicates.
 	@Override
 	public int hashCode() {
+		int result = contentHash;
+		if (result != 0) {
+			return result;
+		}
+		
 		final int prime = 31;
-		int result = 1;
+		result = 1;
 		result = prime * result + Arrays.hashCode(datesEpoch);
 		result = prime * result + Arrays.hashCode(datesHuman);
 		result = prime * result + ((taskName == null) ? 0 : taskName.hashCode());
 		result = prime * result + ((taskType == null) ? 0 : taskType.hashCode());
 		
+		contentHash = result;
 		return result;
 	}
 
+	// @@author A0134177E
 	// Two Tasks are considered to be equal if and only if they have the same name, task type, and dates.
 	@Override
 	public boolean equals(Object obj) {
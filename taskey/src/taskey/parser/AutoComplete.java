@@ -58,6 +58,7 @@ public class AutoComplete {
 		commands.add("undo");
 		commands.add("save");
 		commands.add("clear");
+		commands.add("stats");
 		
 		commandList.put("add","add");
 		commandList.put("view","view");
@@ -69,6 +70,7 @@ public class AutoComplete {
 		commandList.put("setdir","setdir");
 		commandList.put("save","save");
 		commandList.put("clear","clear");
+		commandList.put("stats","stats");
 	}
 
 	/**
@@ -261,6 +263,7 @@ public class AutoComplete {
 			case "setdir":
 			case "save":
 			case "clear": 
+			case "stats":
 				suggestions = new ProcessedAC(ParserConstants.FINISHED_COMMAND);
 				break; 
 				
@@ -0,0 +1,23 @@
+package taskey.parser;
+
+import taskey.messenger.ProcessedObject;
+
+/**
+ * @@author A0121618M
+ * Job of this class is to parse "stats" commands, 
+ * which show the I/O metrics of Storage. 
+ *
+ */
+public class ParseStats extends ParseCommand {
+
+	public ParseStats() {
+		super(); 
+	}
+	
+	protected ProcessedObject processStats(String command) {
+		assert(command != null); 
+		
+		return new ProcessedObject(command.toUpperCase()); 
+	}
+	
+}
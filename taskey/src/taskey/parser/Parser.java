@@ -30,6 +30,7 @@ public class Parser {
 	private ParseFileLocation parseDir = new ParseFileLocation(); 
 	private ParseSave parseSave = new ParseSave(); 
 	private ParseClear parseClear = new ParseClear(); 
+	private ParseStats parseStats = new ParseStats(); 
 	
 	private ParseView parseView = new ParseView();
 	
@@ -70,6 +71,9 @@ public class Parser {
 			case "clear":
 				processed = parseClear.processClear(command);
 				break; 
+			case "stats":
+				processed = parseStats.processStats(command);
+				break; 
 				
 			//need to check date: 
 			case "add":
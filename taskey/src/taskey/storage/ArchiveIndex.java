@@ -0,0 +1,101 @@
+package taskey.storage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import taskey.messenger.Task;
+
+/**
+ * @@author A0121618M
+ * This class is the index of a segment of the archive (the COMPLETED list), as kept in the ArchiveManifest.
+ * It holds the number of tasks in the segment and their sorted hash codes, so that the size of the archive
+ * can be shown, and a task can be checked against the archive, without reading the segment itself.
+ * An index is immutable.
+ *
+ * <p>Layout in the manifest: the number of tasks (int), followed by the sorted hash codes (ints).
+ */
+class ArchiveIndex {
+	private final int[] sortedHashes;
+
+	private ArchiveIndex(int[] sortedHashes) {
+		this.sortedHashes = sortedHashes;
+	}
+
+	/**
+	 * Builds the index of the given tasks.
+	 */
+	static ArchiveIndex build(Collection<Task> tasks) {
+		return new ArchiveIndex(new int[0]).plus(tasks);
+	}
+
+	/**
+	 * Returns the index of the tasks in this index together with the given tasks.
+	 */
+	ArchiveIndex plus(Collection<Task> tasks) {
+		int[] hashes = Arrays.copyOf(sortedHashes, sortedHashes.length + tasks.size());
+		int i = sortedHashes.length;
+		for (Task task : tasks) {
+			hashes[i++] = task.hashCode();
+		}
+		Arrays.sort(hashes);
+		return new ArchiveIndex(hashes);
+	}
+
+	/**
+	 * Reads an index written by {@link #write(DataOutputStream)}.
+	 * @param data the stream to read from
+	 * @param maxSize the largest number of tasks that is accepted, as a sanity check
+	 * @return the index, or null if its size is invalid
+	 * @throws IOException thrown by the stream
+	 */
+	static ArchiveIndex read(DataInputStream data, int maxSize) throws IOException {
+		int size = data.readInt();
+		if (size < 0 || size > maxSize) {
+			return null;
+		}
+		int[] hashes = new int[size];
+		for (int i = 0; i < size; i++) {
+			hashes[i] = data.readInt();
+		}
+		return new ArchiveIndex(hashes);
+	}
+
+	void write(DataOutputStream data) throws IOException {
+		data.writeInt(sortedHashes.length);
+		for (int hash : sortedHashes) {
+			data.writeInt(hash);
+		}
+	}
+
+	/**
+	 * Returns the number of tasks in the segment.
+	 */
+	int size() {
+		return sortedHashes.length;
+	}
+
+	/**
+	 * Returns false if the given task is definitely not in the segment.
+	 * Since different tasks can have the same hash code, true only means that the task may be in the segment.
+	 */
+	boolean mightContain(Task task) {
+		return Arrays.binarySearch(sortedHashes, task.hashCode()) >= 0;
+	}
+
+	/**
+	 * Two indexes are equal if they hold the same hash codes,
+	 * which is taken to mean that their segments hold the same tasks.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof ArchiveIndex) && Arrays.equals(sortedHashes, ((ArchiveIndex) obj).sortedHashes);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(sortedHashes);
+	}
+}
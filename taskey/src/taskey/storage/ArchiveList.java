@@ -0,0 +1,447 @@
+package taskey.storage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import taskey.messenger.Task;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class is the COMPLETED list (the archive) as returned by Storage when the archive has a valid manifest.
+ * The archive only grows, so instead of loading it at startup, an ArchiveList holds just the tasks added
+ * since it was loaded, and reads the archived tasks from file the first time they are needed.
+ * <p>The following do not load the archive:
+ * <br>- size() and isEmpty(), which use the counts in the manifest
+ * <br>- add(Task) and addAll(Collection), which append to the tasks added since startup
+ * <br>- contains(Object) and remove(Object), unless the manifest shows that the task may be archived
+ * <br>- sort(Comparator), which is applied to the archived tasks once they are loaded
+ * <br>- copy(), which Logic uses instead of deep-copying every archived task
+ * <p>Every other method loads the archive first, after which the ArchiveList behaves as a normal ArrayList.
+ * <p>contains(Object) and remove(Object) look the task up in a hash index of the tasks in this list before searching
+ * the list, so that checking a new task for duplicates in the archive does not depend on the size of the archive.
+ */
+@SuppressWarnings("serial")
+public class ArchiveList extends ArrayList<Task> {
+	private Source source; //null once the archived tasks have been loaded into this list
+	private Comparator<? super Task> order; //the last order this list was sorted in before it was loaded
+	private HashMap<Task, Integer> counts; //number of each task in this list, built when first needed
+	private int countsModCount; //modCount when counts was last up to date; counts is rebuilt once they differ
+
+	/**
+	 * The archive's segment files as they were when Storage loaded the archive's manifest.
+	 * A Source is shared by an ArchiveList and all copies of it, and reads each segment from file at most once.
+	 * Storage makes it read a segment before the segment file is overwritten or moved, so that copies made earlier,
+	 * e.g. in History, can still be loaded afterwards.
+	 */
+	static class Source {
+		private final File directory;
+		private final ArchiveManifest manifest;
+		private final TreeMap<Integer, ArrayList<Task>> segments = new TreeMap<Integer, ArrayList<Task>>(); //read so far
+
+		Source(File directory, ArchiveManifest manifest) {
+			this.directory = directory;
+			this.manifest = manifest;
+		}
+
+		ArchiveManifest getManifest() {
+			return manifest;
+		}
+
+		/**
+		 * Returns the tasks in all the segments, in order of their months.
+		 */
+		synchronized ArrayList<Task> getTasks() {
+			long startTime = System.nanoTime();
+			int numRead = manifest.getSegments().size() - segments.size();
+			ArrayList<Task> tasks = new ArrayList<Task>(manifest.size());
+			for (ArchiveManifest.Segment segment : manifest.getSegments()) {
+				tasks.addAll(getSegment(segment.month));
+			}
+			if (numRead > 0) {
+				System.out.println("{Storage} Archive loaded | " + tasks.size() + " entries in "
+						+ (System.nanoTime() - startTime) / 1000000 + " ms");
+			}
+			return tasks;
+		}
+
+		/**
+		 * Returns the tasks in the segment of the given month, or an empty list if there is no such segment.
+		 */
+		synchronized ArrayList<Task> getSegment(int month) {
+			ArchiveManifest.Segment segment = manifest.get(month);
+			if (segment == null) {
+				return new ArrayList<Task>();
+			}
+			if (!segments.containsKey(month)) {
+				File src = new File(directory, segment.filename);
+				segments.put(month, new StorageReader().loadTasklist(src, TasklistEnum.COMPLETED));
+			}
+			return segments.get(month);
+		}
+
+		/**
+		 * Reads the segment of the given month if it has not been read yet, before its file is overwritten.
+		 */
+		void cacheSegment(int month) {
+			getSegment(month);
+		}
+
+		boolean isIn(File dir) {
+			return directory.equals(dir);
+		}
+
+		boolean isReadFrom(File dir, ArchiveManifest otherManifest) {
+			return directory.equals(dir) && manifest.equals(otherManifest);
+		}
+	}
+
+	ArchiveList(Source source) {
+		this.source = source;
+	}
+
+	/**
+	 * Returns true if the archived tasks have been loaded into this list.
+	 */
+	public boolean isLoaded() {
+		return source == null;
+	}
+
+	/**
+	 * Returns a deep copy of this list. If the archive has not been loaded, only the tasks added since startup
+	 * are copied, and the copy loads the archive on its own when needed.
+	 */
+	public ArchiveList copy() {
+		ArchiveList copy = new ArchiveList(source);
+		copy.order = order;
+		for (Task task : super.toArray(new Task[super.size()])) {
+			copy.superAdd(new Task(task));
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns true if this list and the given list are copies of the same archive, neither of which has been loaded,
+	 * and they hold equal tasks, with equal tags, added since startup. Neither archive is loaded to check this.
+	 */
+	public boolean isSameUnloadedArchive(ArchiveList other) {
+		if (source == null || other.source != source) {
+			return false;
+		}
+		Task[] added = superToArray();
+		Task[] otherAdded = other.superToArray();
+		if (added.length != otherAdded.length) {
+			return false;
+		}
+		for (int i = 0; i < added.length; i++) {
+			if (!added[i].equals(otherAdded[i])
+				|| !Objects.equals(added[i].getTaskTags(), otherAdded[i].getTaskTags())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Loads the archived tasks into this list, before the tasks added since startup.
+	 */
+	private void load() {
+		if (source == null) {
+			return;
+		}
+		Task[] added = super.toArray(new Task[super.size()]);
+		super.clear();
+		for (Task task : source.getTasks()) {
+			super.add(new Task(task)); //the source's tasks are shared, so each list needs its own copies
+		}
+		for (Task task : added) {
+			super.add(task);
+		}
+		source = null;
+		if (order != null) {
+			super.sort(order);
+			order = null;
+		}
+	}
+
+	Source getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns the tasks added since the archive was loaded from file. This list must not have been loaded.
+	 */
+	ArrayList<Task> getAdditions() {
+		assert (source != null);
+		return new ArrayList<Task>(Arrays.asList(super.toArray(new Task[super.size()])));
+	}
+
+	private void superAdd(Task task) {
+		super.add(task);
+	}
+
+	private Task[] superToArray() {
+		return super.toArray(new Task[super.size()]);
+	}
+
+	/**
+	 * Returns the number of each task in this list, or in the tasks added since startup if the archive is not loaded.
+	 * The counts are kept up to date by add(Task) and remove(Object), and rebuilt after any other change to this list.
+	 */
+	private HashMap<Task, Integer> getCounts() {
+		if (counts == null || countsModCount != modCount) {
+			counts = new HashMap<Task, Integer>();
+			for (Task task : superToArray()) {
+				addCount(task);
+			}
+			countsModCount = modCount;
+		}
+		return counts;
+	}
+
+	private boolean isCountsUpToDate() {
+		return counts != null && countsModCount == modCount;
+	}
+
+	private void addCount(Task task) {
+		Integer count = counts.get(task);
+		counts.put(task, (count == null) ? 1 : count + 1);
+	}
+
+	private void removeCount(Object o) {
+		Integer count = counts.get(o);
+		if (count == 1) {
+			counts.remove(o);
+		} else {
+			counts.put((Task) o, count - 1);
+		}
+	}
+
+	/*=====================================*
+	 * Methods that do not load the archive *
+	 *=====================================*/
+	@Override
+	public int size() {
+		return (source == null) ? super.size() : source.getManifest().size() + super.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public boolean add(Task task) {
+		boolean isUpToDate = isCountsUpToDate();
+		super.add(task);
+		if (isUpToDate) {
+			addCount(task);
+			countsModCount = modCount;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof Task)) {
+			return false;
+		}
+		if (getCounts().containsKey(o)) { //ArrayList.contains would call indexOf, which loads the archive
+			return true;
+		}
+		if (source != null && source.getManifest().mightContain((Task) o)) {
+			load();
+			return getCounts().containsKey(o);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof Task)) {
+			return false;
+		}
+		if (!getCounts().containsKey(o)) {
+			if (source == null || !source.getManifest().mightContain((Task) o)) {
+				return false;
+			}
+			load();
+			if (!getCounts().containsKey(o)) {
+				return false;
+			}
+		}
+		super.remove(o);
+		removeCount(o);
+		countsModCount = modCount;
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		source = null;
+		order = null;
+		super.clear();
+	}
+
+	@Override
+	public void sort(Comparator<? super Task> c) {
+		if (source != null) {
+			order = c;
+		}
+		boolean isUpToDate = isCountsUpToDate();
+		super.sort(c);
+		if (isUpToDate) { //sorting does not change the number of each task
+			countsModCount = modCount;
+		}
+	}
+
+	/*==============================*
+	 * Methods that load the archive *
+	 *==============================*/
+	@Override
+	public Task get(int index) {
+		load();
+		return super.get(index);
+	}
+
+	@Override
+	public Task set(int index, Task element) {
+		load();
+		counts = null; //ArrayList.set does not change modCount
+		return super.set(index, element);
+	}
+
+	@Override
+	public void add(int index, Task element) {
+		load();
+		super.add(index, element);
+	}
+
+	@Override
+	public Task remove(int index) {
+		load();
+		return super.remove(index);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends Task> c) {
+		load();
+		return super.addAll(index, c);
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		load();
+		return super.removeAll(c);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		load();
+		return super.retainAll(c);
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super Task> filter) {
+		load();
+		return super.removeIf(filter);
+	}
+
+	@Override
+	public void replaceAll(UnaryOperator<Task> operator) {
+		load();
+		super.replaceAll(operator);
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		load();
+		return super.indexOf(o);
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		load();
+		return super.lastIndexOf(o);
+	}
+
+	@Override
+	public Object[] toArray() {
+		load();
+		return super.toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		load();
+		return super.toArray(a);
+	}
+
+	@Override
+	public Iterator<Task> iterator() {
+		load();
+		return super.iterator();
+	}
+
+	@Override
+	public ListIterator<Task> listIterator() {
+		load();
+		return super.listIterator();
+	}
+
+	@Override
+	public ListIterator<Task> listIterator(int index) {
+		load();
+		return super.listIterator(index);
+	}
+
+	@Override
+	public List<Task> subList(int fromIndex, int toIndex) {
+		load();
+		counts = null; //a sublist's set does not change modCount
+		return super.subList(fromIndex, toIndex);
+	}
+
+	@Override
+	public void forEach(Consumer<? super Task> action) {
+		load();
+		super.forEach(action);
+	}
+
+	@Override
+	public Spliterator<Task> spliterator() {
+		load();
+		return super.spliterator();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		load();
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		load();
+		return super.hashCode();
+	}
+
+	@Override
+	public Object clone() {
+		load();
+		return super.clone();
+	}
+}
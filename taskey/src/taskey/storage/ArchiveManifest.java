@@ -0,0 +1,237 @@
+package taskey.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeMap;
+
+import taskey.messenger.Task;
+
+/**
+ * @@author A0121618M
+ * This class is the manifest of the archive's segment files, as written to ARCHIVE.taskeymanifest.
+ * For each segment, it records the segment's month, its file name, the length and last-modified time
+ * of the file when it was written, and the segment's ArchiveIndex.
+ * A manifest is ignored if any of its segment files no longer matches, e.g. after the user edits it,
+ * in which case ArchiveStore rebuilds the manifest from the segment files.
+ *
+ * <p>File layout: the 4 magic bytes "TSKM", 1 version byte, the number of segments (int),
+ * and then for each segment: its month (int), file name (UTF), length and last-modified time (longs), and index.
+ */
+class ArchiveManifest {
+	static final byte[] MAGIC = {'T', 'S', 'K', 'M'};
+	static final int VERSION = 1;
+
+	private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>(); //by month
+
+	/**
+	 * A segment file of the archive, as it was when it was written.
+	 */
+	static class Segment {
+		final int month;
+		final String filename;
+		final long length;
+		final long lastModified;
+		final ArchiveIndex index;
+
+		Segment(int month, File file, ArchiveIndex index) {
+			this(month, file.getName(), file.length(), file.lastModified(), index);
+		}
+
+		private Segment(int month, String filename, long length, long lastModified, ArchiveIndex index) {
+			this.month = month;
+			this.filename = filename;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.index = index;
+		}
+
+		/**
+		 * Returns true if the given file, which should be this segment's file, is unchanged since it was written.
+		 */
+		private boolean matches(File file) {
+			return file.getName().equals(filename) && file.length() == length && file.lastModified() == lastModified;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Segment)) {
+				return false;
+			}
+			Segment other = (Segment) obj;
+			return month == other.month && filename.equals(other.filename) && length == other.length
+					&& lastModified == other.lastModified && index.equals(other.index);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(new Object[] {month, filename, length, lastModified, index});
+		}
+	}
+
+	ArchiveManifest() {
+	}
+
+	ArchiveManifest(ArchiveManifest other) {
+		segments.putAll(other.segments);
+	}
+
+	/**
+	 * Reads the manifest file, and checks that every segment file in it is unchanged since it was written.
+	 * @param manifestFile the manifest file
+	 * @param directory the directory of the segment files
+	 * @return the manifest, or null if the manifest does not exist, is invalid, or is out of date
+	 */
+	static ArchiveManifest read(File manifestFile, File directory) {
+		if (!manifestFile.exists()) {
+			return null;
+		}
+
+		DataInputStream data = null;
+		try {
+			data = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)));
+			byte[] magic = new byte[MAGIC.length];
+			data.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || data.readUnsignedByte() != VERSION) {
+				return null;
+			}
+			int numSegments = data.readInt();
+			if (numSegments < 0) {
+				return null;
+			}
+			ArchiveManifest manifest = new ArchiveManifest();
+			for (int i = 0; i < numSegments; i++) {
+				int month = data.readInt();
+				String filename = data.readUTF();
+				long length = data.readLong();
+				long lastModified = data.readLong();
+				ArchiveIndex index = ArchiveIndex.read(data, BinaryFormat.MAX_LENGTH);
+				Segment segment = new Segment(month, filename, length, lastModified, index);
+				if (index == null || ArchiveStore.parseMonth(filename) != month
+						|| !segment.matches(new File(directory, filename))) {
+					return null;
+				}
+				manifest.put(segment);
+			}
+			return manifest;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (data != null) {
+				try {
+					data.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes this manifest to manifestFile, through a temp file so that the manifest is never partially written.
+	 * @param manifestFile the manifest file
+	 * @throws IOException thrown when writing or moving the file, e.g. if the directory does not exist
+	 */
+	void write(File manifestFile) throws IOException {
+		File temp = new File(manifestFile.getPath() + StorageWriter.TEMP_FILE_SUFFIX);
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			data.write(MAGIC);
+			data.writeByte(VERSION);
+			data.writeInt(segments.size());
+			for (Segment segment : segments.values()) {
+				data.writeInt(segment.month);
+				data.writeUTF(segment.filename);
+				data.writeLong(segment.length);
+				data.writeLong(segment.lastModified);
+				segment.index.write(data);
+			}
+		} finally {
+			data.close();
+		}
+		Files.move(temp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	Segment get(int month) {
+		return segments.get(month);
+	}
+
+	void put(Segment segment) {
+		segments.put(segment.month, segment);
+	}
+
+	void remove(int month) {
+		segments.remove(month);
+	}
+
+	boolean isEmpty() {
+		return segments.isEmpty();
+	}
+
+	/**
+	 * Returns the segments in order of their months.
+	 */
+	Collection<Segment> getSegments() {
+		return new ArrayList<Segment>(segments.values());
+	}
+
+	/**
+	 * Returns the segments of the months from fromMonth to toMonth inclusive, in order of their months.
+	 */
+	Collection<Segment> getSegments(int fromMonth, int toMonth) {
+		if (fromMonth > toMonth) {
+			return new ArrayList<Segment>();
+		}
+		return new ArrayList<Segment>(segments.subMap(fromMonth, true, toMonth, true).values());
+	}
+
+	/**
+	 * Returns the total number of tasks in the archive.
+	 */
+	int size() {
+		int size = 0;
+		for (Segment segment : segments.values()) {
+			size += segment.index.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns false if the given task is definitely not in the archive. See {@link ArchiveIndex#mightContain(Task)}.
+	 */
+	boolean mightContain(Task task) {
+		return findMonth(task) != null;
+	}
+
+	/**
+	 * Returns the month of the latest segment that may contain the given task, or null if no segment contains it.
+	 */
+	Integer findMonth(Task task) {
+		for (Segment segment : segments.descendingMap().values()) {
+			if (segment.index.mightContain(task)) {
+				return segment.month;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof ArchiveManifest) && segments.equals(((ArchiveManifest) obj).segments);
+	}
+
+	@Override
+	public int hashCode() {
+		return segments.hashCode();
+	}
+}
@@ -0,0 +1,427 @@
+package taskey.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import taskey.messenger.Task;
+import taskey.storage.ArchiveManifest.Segment;
+import taskey.storage.Storage.SaveFormat;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class stores the archive (the COMPLETED list) for Storage as one segment file per month,
+ * e.g. ARCHIVE-2016-04.taskey, instead of a single ever-growing ARCHIVE.taskey.
+ * <p>Tasks have no completion date, so a task is kept in the segment of the month in which it was first saved
+ * to the archive. Hence saving newly completed tasks only rewrites the current month's segment,
+ * and the segments of earlier months are left untouched unless tasks are removed from them.
+ * Tasks migrated from an old ARCHIVE.taskey are partitioned by their deadline or end date instead,
+ * and floating tasks among them are put in the current month.
+ * <p>The ArchiveManifest lists every segment with its ArchiveIndex, so that the size of the archive
+ * and whether a task is archived are known without reading any segment, and a range of months can be read
+ * by reading only the segments in that range. If compression is enabled, the segments of earlier months
+ * are compressed with gzip the next time the archive is saved.
+ * <p>Storage must not use this class from more than one thread at a time.
+ */
+class ArchiveStore {
+	static final String FILENAME_MANIFEST = "ARCHIVE.taskeymanifest";
+	private static final String SEGMENT_PREFIX = "ARCHIVE-"; //followed by the year and month, e.g. ARCHIVE-2016-04
+	private static final Pattern SEGMENT_PATTERN = Pattern.compile(
+			"ARCHIVE-(\\d{4})-(\\d{2})\\.taskey(" + BinaryFormat.BINARY_SUFFIX + ")?(\\"
+			+ StorageWriter.COMPRESSED_SUFFIX + ")?");
+
+	private File directory;
+	private SaveFormat saveFormat;
+	private boolean isCompressing = false;
+	private ArchiveManifest manifest; //the manifest of the segments on disk, or null if not read yet
+	private ArchiveList.Source source; //the archive as returned by the last load, if it was not read then
+
+	ArchiveStore(File directory, SaveFormat saveFormat) {
+		this.directory = directory;
+		this.saveFormat = saveFormat;
+	}
+
+	/*========*
+	 * Months *
+	 *========*/
+	/**
+	 * Returns the month of the given epoch time (in seconds) in the default time zone,
+	 * counted as year * 12 + month, with January being month 0.
+	 */
+	static int monthOf(long epochTime) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(epochTime * 1000);
+		return calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+	}
+
+	private static int currentMonth() {
+		return monthOf(System.currentTimeMillis() / 1000);
+	}
+
+	/**
+	 * Returns the month that a task migrated from an old ARCHIVE.taskey is put in, which is the month of its
+	 * deadline or end date, or the current month for floating tasks.
+	 */
+	private static int monthOfDates(Task task) {
+		long epochTime = Task.NONE;
+		if ("DEADLINE".equalsIgnoreCase(task.getTaskType())) {
+			epochTime = task.getDeadlineEpoch();
+		} else if ("EVENT".equalsIgnoreCase(task.getTaskType())) {
+			epochTime = task.getEndDateEpoch();
+		}
+		return (epochTime == Task.NONE) ? currentMonth() : monthOf(epochTime);
+	}
+
+	/**
+	 * Returns the name of the segment file of the given month, e.g. ARCHIVE-2016-04.taskeybin.gz
+	 */
+	static String getSegmentName(int month, SaveFormat format, boolean isCompressed) {
+		String prefix = String.format("%s%04d-%02d", SEGMENT_PREFIX, month / 12, month % 12 + 1);
+		String name = TasklistEnum.COMPLETED.filename(format).replaceFirst("^ARCHIVE", prefix);
+		return isCompressed ? name + StorageWriter.COMPRESSED_SUFFIX : name;
+	}
+
+	/**
+	 * Returns the month of the given segment file name, or -1 if it is not the name of a segment file.
+	 */
+	static int parseMonth(String filename) {
+		Matcher matcher = SEGMENT_PATTERN.matcher(filename);
+		if (!matcher.matches()) {
+			return -1;
+		}
+		int month = Integer.parseInt(matcher.group(2));
+		if (month < 1 || month > 12) {
+			return -1;
+		}
+		return Integer.parseInt(matcher.group(1)) * 12 + month - 1;
+	}
+
+	/*==========*
+	 * Settings *
+	 *==========*/
+	/**
+	 * Changes the directory of the archive. If the files are being moved there, {@link #cacheArchive()}
+	 * must be called before they are moved.
+	 */
+	void setDirectory(File directory) {
+		this.directory = directory;
+		manifest = null;
+	}
+
+	/**
+	 * Sets the format that segments are written in. Existing segments are rewritten the next time they are saved.
+	 */
+	void setSaveFormat(SaveFormat saveFormat) {
+		this.saveFormat = saveFormat;
+	}
+
+	/**
+	 * Sets whether the segments of earlier months are compressed.
+	 * Existing segments are compressed or decompressed the next time the archive is saved.
+	 */
+	void setCompression(boolean isCompressing) {
+		this.isCompressing = isCompressing;
+	}
+
+	/*======*
+	 * Load *
+	 *======*/
+	/**
+	 * Loads the archive. If the manifest is up to date, no segment is read; an ArchiveList is returned instead,
+	 * which reads the segments only when its tasks are needed.
+	 * Otherwise, the manifest is rebuilt from the segment files and any old ARCHIVE.taskey, which is migrated
+	 * into segments, and the archive is returned in full.
+	 * @param reader the StorageReader to read with
+	 * @return the archive
+	 */
+	ArrayList<Task> load(StorageReader reader) {
+		ArchiveManifest loadedManifest = ArchiveManifest.read(getManifestFile(), directory);
+		if (loadedManifest != null && !hasOldArchive()) {
+			manifest = loadedManifest;
+			if (source == null || !source.isReadFrom(directory, manifest)) {
+				cacheArchive(); //lists from the previous load may still need their segments
+				source = new ArchiveList.Source(directory, new ArchiveManifest(manifest));
+			}
+			System.out.println("{Storage} Indexed archive | " + manifest.size() + " entries in "
+					+ manifest.getSegments().size() + " segments, not loaded");
+			return new ArchiveList(source);
+		}
+
+		cacheArchive();
+		try {
+			return rebuild(reader);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("{Storage} Could not rebuild archive");
+			manifest = null;
+			return readAll(reader);
+		}
+	}
+
+	/**
+	 * Returns the archived tasks in the segments of the months from fromMonth to toMonth inclusive,
+	 * as they were last saved. Only the segments in that range are read.
+	 */
+	ArrayList<Task> loadRange(int fromMonth, int toMonth, StorageReader reader) {
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		for (Segment segment : getManifest().getSegments(fromMonth, toMonth)) {
+			tasks.addAll(reader.loadTasklist(new File(directory, segment.filename), TasklistEnum.COMPLETED));
+		}
+		return tasks;
+	}
+
+	/**
+	 * Reads the tasks in every segment file and old ARCHIVE.taskey, and writes them back as segments
+	 * along with a new manifest, after which the old ARCHIVE.taskey is deleted.
+	 * Each task stays in the segment it was read from; tasks read more than once are only kept once.
+	 */
+	private ArrayList<Task> rebuild(StorageReader reader) throws IOException {
+		TreeMap<Integer, LinkedHashSet<Task>> months = new TreeMap<Integer, LinkedHashSet<Task>>();
+		for (File file : listSegmentFiles()) {
+			for (Task task : reader.loadTasklist(file, TasklistEnum.COMPLETED)) {
+				addToMonth(months, parseMonth(file.getName()), task);
+			}
+		}
+		int numMigrated = 0;
+		for (File oldArchive : getOldArchives()) {
+			for (Task task : reader.loadTasklist(oldArchive, TasklistEnum.COMPLETED)) {
+				addToMonth(months, monthOfDates(task), task);
+				numMigrated++;
+			}
+		}
+
+		ArrayList<Task> archive = new ArrayList<Task>();
+		TreeMap<Integer, ArrayList<Task>> partition = new TreeMap<Integer, ArrayList<Task>>();
+		for (Map.Entry<Integer, LinkedHashSet<Task>> entry : months.entrySet()) {
+			partition.put(entry.getKey(), new ArrayList<Task>(entry.getValue()));
+			archive.addAll(entry.getValue());
+		}
+		manifest = new ArchiveManifest(); //no segment on disk is trusted, so all of them are rewritten
+		writeSegments(partition);
+		for (File file : listSegmentFiles()) {
+			Segment segment = manifest.get(parseMonth(file.getName()));
+			if (segment == null || !segment.filename.equals(file.getName())) {
+				Files.delete(file.toPath()); //its tasks are now in the segment of its month in the current format
+			}
+		}
+		for (File oldArchive : getOldArchives()) {
+			Files.delete(oldArchive.toPath());
+			System.out.println("{Storage} Migrated " + oldArchive.getName() + " | " + numMigrated + " entries into "
+					+ partition.size() + " segments");
+		}
+		return archive;
+	}
+
+	private static void addToMonth(TreeMap<Integer, LinkedHashSet<Task>> months, int month, Task task) {
+		if (!months.containsKey(month)) {
+			months.put(month, new LinkedHashSet<Task>());
+		}
+		months.get(month).add(task);
+	}
+
+	/**
+	 * Reads every segment file and old ARCHIVE.taskey, for when the manifest cannot be rebuilt.
+	 */
+	private ArrayList<Task> readAll(StorageReader reader) {
+		LinkedHashSet<Task> tasks = new LinkedHashSet<Task>();
+		for (File file : listSegmentFiles()) {
+			tasks.addAll(reader.loadTasklist(file, TasklistEnum.COMPLETED));
+		}
+		for (File oldArchive : getOldArchives()) {
+			tasks.addAll(reader.loadTasklist(oldArchive, TasklistEnum.COMPLETED));
+		}
+		return new ArrayList<Task>(tasks);
+	}
+
+	/*======*
+	 * Save *
+	 *======*/
+	/**
+	 * Saves the archive. Each archived task stays in the segment it is in on disk, and new tasks are put in
+	 * the current month's segment. Only the segments whose tasks have changed, or which need to be converted
+	 * to the current save format or compression, are rewritten.
+	 * If the archive is an ArchiveList that was never loaded, only the segments of its newly added tasks,
+	 * and any segments changed on disk since it was loaded, are read and rewritten.
+	 * @param archive the COMPLETED list
+	 * @throws IOException when any segment or the manifest could not be written
+	 */
+	void save(ArrayList<Task> archive) throws IOException {
+		ArchiveManifest onDisk = getManifest();
+		int currentMonth = currentMonth();
+		TreeMap<Integer, SegmentPlan> plans = new TreeMap<Integer, SegmentPlan>();
+
+		Collection<Task> tasksToPlace = archive;
+		if (archive instanceof ArchiveList && !((ArchiveList) archive).isLoaded()) {
+			ArchiveList.Source base = ((ArchiveList) archive).getSource();
+			for (Segment segment : base.getManifest().getSegments()) {
+				plans.put(segment.month, new SegmentPlan(base, segment));
+			}
+			tasksToPlace = ((ArchiveList) archive).getAdditions();
+		}
+		for (Task task : tasksToPlace) {
+			Integer month = onDisk.findMonth(task);
+			if (month == null) {
+				month = currentMonth;
+			}
+			if (!plans.containsKey(month)) {
+				plans.put(month, new SegmentPlan(null, null));
+			}
+			plans.get(month).added.add(task);
+		}
+
+		TreeMap<Integer, ArrayList<Task>> changedSegments = new TreeMap<Integer, ArrayList<Task>>();
+		for (Segment segment : onDisk.getSegments()) {
+			if (!plans.containsKey(segment.month)) {
+				changedSegments.put(segment.month, new ArrayList<Task>()); //all its tasks were removed
+			}
+		}
+		for (Map.Entry<Integer, SegmentPlan> entry : plans.entrySet()) {
+			int month = entry.getKey();
+			SegmentPlan plan = entry.getValue();
+			Segment segment = onDisk.get(month);
+			if (segment == null || !segment.index.equals(plan.getIndex())
+					|| !segment.filename.equals(getSegmentName(month, currentMonth))) {
+				changedSegments.put(month, plan.getTasks());
+			}
+		}
+
+		writeSegments(changedSegments);
+	}
+
+	/**
+	 * The tasks to be saved in a segment: the tasks in a segment of an ArchiveList's source, if any,
+	 * followed by the tasks added to it.
+	 */
+	private static class SegmentPlan {
+		private final ArchiveList.Source base;
+		private final Segment baseSegment;
+		private final ArrayList<Task> added = new ArrayList<Task>();
+
+		private SegmentPlan(ArchiveList.Source base, Segment baseSegment) {
+			this.base = base;
+			this.baseSegment = baseSegment;
+		}
+
+		private ArchiveIndex getIndex() {
+			return (baseSegment == null) ? ArchiveIndex.build(added) : baseSegment.index.plus(added);
+		}
+
+		private ArrayList<Task> getTasks() {
+			if (baseSegment == null) {
+				return added;
+			}
+			ArrayList<Task> tasks = new ArrayList<Task>(base.getSegment(baseSegment.month));
+			tasks.addAll(added);
+			return tasks;
+		}
+	}
+
+	/**
+	 * Writes the given segments, or deletes them if they are empty, and then writes the manifest.
+	 * Before a segment file is replaced, it is cached by the source of the last load if that still needs it.
+	 */
+	private void writeSegments(TreeMap<Integer, ArrayList<Task>> segments) throws IOException {
+		StorageWriter writer = new StorageWriter();
+		int currentMonth = currentMonth();
+		for (Map.Entry<Integer, ArrayList<Task>> entry : segments.entrySet()) {
+			int month = entry.getKey();
+			ArrayList<Task> tasks = entry.getValue();
+			Segment oldSegment = manifest.get(month);
+			if (source != null && source.isIn(directory)) {
+				source.cacheSegment(month);
+			}
+
+			File dest = new File(directory, getSegmentName(month, currentMonth));
+			writer.saveTasklist(tasks, dest); //deletes the file if tasks is empty
+			if (oldSegment != null && !oldSegment.filename.equals(dest.getName())) {
+				Files.deleteIfExists(new File(directory, oldSegment.filename).toPath());
+			}
+			if (tasks.isEmpty()) {
+				manifest.remove(month);
+			} else {
+				manifest.put(new Segment(month, dest, ArchiveIndex.build(tasks)));
+			}
+		}
+
+		if (manifest.isEmpty()) {
+			Files.deleteIfExists(getManifestFile().toPath());
+		} else {
+			manifest.write(getManifestFile());
+		}
+	}
+
+	/**
+	 * Returns the name that the segment of the given month should be saved with.
+	 */
+	private String getSegmentName(int month, int currentMonth) {
+		return getSegmentName(month, saveFormat, isCompressing && month < currentMonth);
+	}
+
+	/**
+	 * Reads every segment of the last loaded archive that has not been read yet.
+	 * This must be done before the segment files are moved.
+	 */
+	void cacheArchive() {
+		if (source != null) {
+			source.getTasks();
+			source = null;
+		}
+	}
+
+	/*=======*
+	 * Files *
+	 *=======*/
+	private ArchiveManifest getManifest() {
+		if (manifest == null) {
+			manifest = ArchiveManifest.read(getManifestFile(), directory);
+			if (manifest == null) {
+				manifest = new ArchiveManifest();
+			}
+		}
+		return manifest;
+	}
+
+	private File getManifestFile() {
+		return new File(directory, FILENAME_MANIFEST);
+	}
+
+	private ArrayList<File> listSegmentFiles() {
+		ArrayList<File> files = new ArrayList<File>();
+		File[] allFiles = directory.listFiles();
+		if (allFiles != null) {
+			for (File file : allFiles) {
+				if (parseMonth(file.getName()) != -1) {
+					files.add(file);
+				}
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Returns the archive savefiles from before the archive was split into segments, i.e. ARCHIVE.taskey(bin).
+	 */
+	private ArrayList<File> getOldArchives() {
+		ArrayList<File> files = new ArrayList<File>();
+		for (SaveFormat format : SaveFormat.values()) {
+			File file = new File(directory, TasklistEnum.COMPLETED.filename(format));
+			if (file.exists()) {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	private boolean hasOldArchive() {
+		return !getOldArchives().isEmpty();
+	}
+}
@@ -0,0 +1,731 @@
+package taskey.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.GZIPInputStream;
+
+import taskey.messenger.Task;
+import taskey.storage.VerificationStamps.ChecksumInputStream;
+
+/**
+ * @@author A0121618M
+ * This class reads and writes tasklists in Taskey's compact binary savefile format.
+ * It is used by StorageReader and StorageWriter as an alternative to the JSON format,
+ * for savefiles whose names end with BINARY_SUFFIX.
+ *
+ * <p>File layout (all integers are unsigned varints unless stated otherwise):
+ * <br>- Header: the 4 magic bytes "TSKY", 1 version byte, and the number of records
+ * <br>- String table: the number of strings, followed by each string as its UTF-8 byte length and bytes.
+ * 		 Task names, task types, tags and human dates are all stored once in this table and referred to by index.
+ * <br>- Records: one per task, each as its payload length, the payload, and a 4-byte CRC32 of the payload.
+ *
+ * <p>Record payload:
+ * <br>- task name index, task type index (0 for null, otherwise string index + 1)
+ * <br>- priority (zigzag varint)
+ * <br>- number of tags + 1 (0 for null), followed by each tag's index
+ * <br>- the 4 epoch dates (zigzag varints, since Task.NONE is -1)
+ * <br>- the 4 human date indices
+ * <br>- the task id, since version 2; version 1 files, written before tasks had ids, are still read
+ */
+class BinaryFormat {
+	static final String BINARY_SUFFIX = "bin"; //e.g. PENDING.taskeybin
+	static final byte[] MAGIC = {'T', 'S', 'K', 'Y'};
+	static final int VERSION = 2;
+	static final int VERSION_WITHOUT_IDS = 1;
+	static final int NUM_DATES = 4;
+	static final int MAX_LENGTH = 1 << 24; //sanity limit for lengths and counts read from file
+	static final int MAPPED_READ_THRESHOLD = 1 << 20; //uncompressed files at least this large are memory-mapped
+	public static final String PROPERTY_MAPPED_READS = "taskey.mappedreads"; //e.g. -Dtaskey.mappedreads=false
+	private static final int NULL_INDEX = 0;
+
+	/**
+	 * Thrown when a binary savefile has a bad header, a bad CRC, or ends prematurely.
+	 */
+	@SuppressWarnings("serial")
+	static class InvalidBinaryFileException extends Exception {
+		InvalidBinaryFileException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Thrown when a single record has a bad CRC or cannot be decoded, after the whole record has been read,
+	 * so that the records following it can still be read.
+	 */
+	@SuppressWarnings("serial")
+	private static class CorruptRecordException extends InvalidBinaryFileException {
+		CorruptRecordException(String message) {
+			super(message);
+		}
+	}
+
+	BinaryFormat() {
+	}
+
+	/**
+	 * Returns true if the given tasklist file is in the binary format, i.e. its name ends with BINARY_SUFFIX,
+	 * possibly followed by StorageWriter.COMPRESSED_SUFFIX.
+	 */
+	static boolean isBinaryFile(File file) {
+		String name = file.getName();
+		if (StorageWriter.isCompressed(file)) {
+			name = name.substring(0, name.length() - StorageWriter.COMPRESSED_SUFFIX.length());
+		}
+		return name.endsWith(BINARY_SUFFIX);
+	}
+
+	/*=======*
+	 * Write *
+	 *=======*/
+	/**
+	 * Writes the given tasklist to the stream out in the binary format.
+	 * @param tasks the tasklist to be written
+	 * @param out the stream to write to; it is flushed but not closed
+	 * @throws IOException thrown by the stream
+	 */
+	void writeTasklist(ArrayList<Task> tasks, OutputStream out) throws IOException {
+		// Build the string table first, so that every record can refer to its strings by index
+		HashMap<String, Integer> stringIndices = new HashMap<String, Integer>();
+		ArrayList<String> stringTable = new ArrayList<String>();
+		for (Task task : tasks) {
+			addString(task.getTaskName(), stringIndices, stringTable);
+			addString(task.getTaskType(), stringIndices, stringTable);
+			if (task.getTaskTags() != null) {
+				for (String tag : task.getTaskTags()) {
+					addString(tag, stringIndices, stringTable);
+				}
+			}
+			for (String date : task.getDatesHuman()) {
+				addString(date, stringIndices, stringTable);
+			}
+		}
+
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.write(MAGIC);
+		data.writeByte(VERSION);
+		writeVarLong(data, tasks.size());
+
+		writeVarLong(data, stringTable.size());
+		for (String string : stringTable) {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(data, bytes.length);
+			data.write(bytes);
+		}
+
+		RecordBuffer payload = new RecordBuffer();
+		CRC32 crc = new CRC32();
+		for (Task task : tasks) {
+			payload.reset();
+			encodeTask(task, stringIndices, payload);
+			crc.reset();
+			crc.update(payload.bytes, 0, payload.size);
+			writeVarLong(data, payload.size);
+			data.write(payload.bytes, 0, payload.size);
+			data.writeInt((int) crc.getValue());
+		}
+		data.flush();
+	}
+
+	private void addString(String string, HashMap<String, Integer> stringIndices, ArrayList<String> stringTable) {
+		if (string != null && !stringIndices.containsKey(string)) {
+			stringIndices.put(string, stringTable.size());
+			stringTable.add(string);
+		}
+	}
+
+	private void encodeTask(Task task, HashMap<String, Integer> stringIndices, RecordBuffer payload) {
+		payload.writeVarLong(indexOf(task.getTaskName(), stringIndices));
+		payload.writeVarLong(indexOf(task.getTaskType(), stringIndices));
+		payload.writeVarLong(zigzag(task.getPriority()));
+
+		ArrayList<String> tags = task.getTaskTags();
+		if (tags == null) {
+			payload.writeVarLong(NULL_INDEX);
+		} else {
+			payload.writeVarLong(tags.size() + 1);
+			for (String tag : tags) {
+				payload.writeVarLong(indexOf(tag, stringIndices));
+			}
+		}
+
+		for (long epoch : task.getDatesEpoch()) {
+			payload.writeVarLong(zigzag(epoch));
+		}
+		for (String date : task.getDatesHuman()) {
+			payload.writeVarLong(indexOf(date, stringIndices));
+		}
+		payload.writeVarLong(task.getId());
+	}
+
+	private long indexOf(String string, HashMap<String, Integer> stringIndices) {
+		return (string == null) ? NULL_INDEX : stringIndices.get(string) + 1;
+	}
+
+	/*======*
+	 * Read *
+	 *======*/
+	/**
+	 * Reads a tasklist in the binary format from the file src, which may be compressed.
+	 * Large uncompressed files are memory-mapped and parsed straight from the mapped buffer,
+	 * instead of being copied through a stream; see {@link #readMappedTasklist(File, Checksum)}.
+	 * @param src the binary savefile
+	 * @param checksum updated with the bytes of the whole file; may be null
+	 * @return the tasklist read from file
+	 * @throws FileNotFoundException if the file doesn't exist or access was denied
+	 * @throws InvalidBinaryFileException if the file is not a valid binary savefile
+	 */
+	ArrayList<Task> readTasklist(File src, Checksum checksum) throws FileNotFoundException, InvalidBinaryFileException {
+		if (shouldMap(src)) {
+			return readMappedTasklist(src, checksum);
+		}
+		InputStream in = new FileInputStream(src);
+		if (checksum != null) {
+			in = new ChecksumInputStream(in, checksum);
+		}
+		try {
+			if (StorageWriter.isCompressed(src)) {
+				in = new GZIPInputStream(in);
+			}
+			return readTasklist(new DataInputStream(new BufferedInputStream(in)));
+		} catch (EOFException e) {
+			throw new InvalidBinaryFileException("Unexpected end of file");
+		} catch (IOException e) {
+			throw new InvalidBinaryFileException(e.getMessage());
+		} finally {
+			try {
+				in.close(); //must close the stream to allow deleting/moving of files
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Reads a tasklist written by {@link #writeTasklist(ArrayList, OutputStream)} from the given stream.
+	 * The stream is left positioned after the last record, so that it can be embedded in other files, e.g. StateImage.
+	 */
+	ArrayList<Task> readTasklist(DataInputStream data) throws IOException, InvalidBinaryFileException {
+		return readTasklist(new StreamInput(data));
+	}
+
+	/**
+	 * Reads a whole tasklist from the given input, failing on the first invalid record.
+	 * @throws EOFException if the input ends prematurely
+	 */
+	private ArrayList<Task> readTasklist(BinaryInput input) throws IOException, InvalidBinaryFileException {
+		RecordDecoder decoder = new RecordDecoder(input);
+		ArrayList<Task> tasks = new ArrayList<Task>(decoder.getNumRemaining());
+		while (decoder.hasNext()) {
+			tasks.add(decoder.next());
+		}
+		return tasks;
+	}
+
+	/**
+	 * Returns true if the given binary savefile should be read through a memory mapping.
+	 * Small files are streamed, since mapping a file costs more than reading a few pages of it.
+	 * Since a mapped file cannot be replaced on Windows until it is unmapped, files are only mapped
+	 * where they can be unmapped right after they are read, or on other platforms.
+	 */
+	private static boolean shouldMap(File src) {
+		return !StorageWriter.isCompressed(src) && src.length() >= MAPPED_READ_THRESHOLD
+				&& !"false".equalsIgnoreCase(System.getProperty(PROPERTY_MAPPED_READS))
+				&& (Unmapper.isSupported() || !System.getProperty("os.name", "").startsWith("Windows"));
+	}
+
+	/**
+	 * Reads a tasklist from the uncompressed binary savefile src by memory-mapping it, 
+	 * so that its records are decoded straight from the page cache, without any read calls or stream buffers.
+	 * The mapping is released as soon as the tasklist has been read.
+	 * @param src the binary savefile
+	 * @param checksum updated with the bytes of the whole file; may be null
+	 * @return the tasklist read from file
+	 * @throws FileNotFoundException if the file doesn't exist or access was denied
+	 * @throws InvalidBinaryFileException if the file is not a valid binary savefile
+	 */
+	private ArrayList<Task> readMappedTasklist(File src, Checksum checksum) throws FileNotFoundException, 
+																				  InvalidBinaryFileException {
+		FileInputStream in = new FileInputStream(src);
+		MappedByteBuffer buffer = null;
+		try {
+			FileChannel channel = in.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (checksum != null) {
+				updateChecksum(checksum, buffer.duplicate());
+			}
+			return readTasklist(new BufferInput(buffer));
+		} catch (EOFException e) {
+			throw new InvalidBinaryFileException("Unexpected end of file");
+		} catch (IOException e) {
+			throw new InvalidBinaryFileException(e.getMessage());
+		} finally {
+			if (buffer != null) {
+				Unmapper.unmap(buffer); //no Strings or Tasks refer to the buffer, since its bytes are copied out
+			}
+			try {
+				in.close(); //must close the stream to allow deleting/moving of files
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static void updateChecksum(Checksum checksum, ByteBuffer buffer) {
+		if (checksum instanceof CRC32) {
+			((CRC32) checksum).update(buffer);
+			return;
+		}
+		byte[] chunk = new byte[8192];
+		while (buffer.hasRemaining()) {
+			int length = Math.min(chunk.length, buffer.remaining());
+			buffer.get(chunk, 0, length);
+			checksum.update(chunk, 0, length);
+		}
+	}
+
+	/**
+	 * Reads the valid records of the binary savefile src, which may be compressed, into the given salvager.
+	 * A record whose CRC does not match, or that cannot be decoded, is dropped on its own;
+	 * once a record's length is invalid or the file ends, the remaining records are dropped,
+	 * since the start of the next record can no longer be found.
+	 * Nothing can be recovered if the header or the string table is invalid.
+	 * @param src the binary savefile
+	 * @param salvager collects the records that were read or dropped
+	 * @throws FileNotFoundException if the file doesn't exist or access was denied
+	 */
+	void salvageTasklist(File src, TasklistSalvager salvager) throws FileNotFoundException {
+		InputStream in = new FileInputStream(src);
+		RecordDecoder decoder = null;
+		try {
+			if (StorageWriter.isCompressed(src)) {
+				in = new GZIPInputStream(in);
+			}
+			decoder = new RecordDecoder(new StreamInput(new DataInputStream(new BufferedInputStream(in))));
+			while (decoder.hasNext()) {
+				try {
+					salvager.addRecord(decoder.next(), null);
+				} catch (CorruptRecordException e) {
+					salvager.dropRecord(e.getMessage(), null);
+				}
+			}
+		} catch (EOFException e) {
+			salvager.dropRecords(getNumUnread(decoder), "Unexpected end of file");
+		} catch (IOException | InvalidBinaryFileException e) {
+			salvager.dropRecords(getNumUnread(decoder), String.valueOf(e.getMessage()));
+		} finally {
+			try {
+				in.close(); //must close the stream to allow deleting/moving of files
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of records to report as dropped once salvaging has to stop, which is at least 1,
+	 * even if the header could not be read.
+	 */
+	private static int getNumUnread(RecordDecoder decoder) {
+		return (decoder == null) ? 1 : Math.max(decoder.getNumRemaining(), 1);
+	}
+
+	/**
+	 * Reads the number of records in the binary savefile src, from its header only.
+	 * @param src the binary savefile
+	 * @return the number of tasks in the file
+	 * @throws FileNotFoundException if the file doesn't exist or access was denied
+	 * @throws InvalidBinaryFileException if the header is invalid
+	 */
+	int readRecordCount(File src) throws FileNotFoundException, InvalidBinaryFileException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(src)));
+		try {
+			return readHeader(new StreamInput(data));
+		} catch (IOException e) {
+			throw new InvalidBinaryFileException("Invalid header");
+		} finally {
+			try {
+				data.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Checks the magic bytes and version, and returns the number of records.
+	 */
+	private static int readHeader(BinaryInput input) throws IOException, InvalidBinaryFileException {
+		readVersion(input);
+		return readLength(input);
+	}
+
+	/**
+	 * Checks the magic bytes, and returns the version of the file, which is one that can be read.
+	 */
+	private static int readVersion(BinaryInput input) throws IOException, InvalidBinaryFileException {
+		byte[] magic = new byte[MAGIC.length];
+		input.readFully(magic, 0, magic.length);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new InvalidBinaryFileException("Not a binary savefile");
+		}
+		int version = input.readUnsignedByte();
+		if (version < VERSION_WITHOUT_IDS || version > VERSION) {
+			throw new InvalidBinaryFileException("Unsupported version " + version);
+		}
+		return version;
+	}
+
+	private static String[] readStringTable(BinaryInput input) throws IOException, InvalidBinaryFileException {
+		String[] stringTable = new String[readLength(input)];
+		for (int i = 0; i < stringTable.length; i++) {
+			byte[] bytes = new byte[readLength(input)];
+			input.readFully(bytes, 0, bytes.length);
+			stringTable[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return stringTable;
+	}
+
+	private Task decodeTask(RecordReader record, String[] stringTable, int version) throws InvalidBinaryFileException {
+		Task task = new Task();
+		task.setTaskName(getString(record.readVarLong(), stringTable));
+		task.setTaskType(Interner.internType(getString(record.readVarLong(), stringTable)));
+		task.setPriority((int) unzigzag(record.readVarLong()));
+
+		long numTags = record.readVarLong();
+		if (numTags < 0 || numTags - 1 > record.getRemaining()) { //each tag takes at least 1 byte
+			throw new InvalidBinaryFileException("Invalid number of tags");
+		} else if (numTags != NULL_INDEX) {
+			ArrayList<String> tags = new ArrayList<String>((int) numTags - 1);
+			for (int i = 0; i < numTags - 1; i++) {
+				tags.add(getString(record.readVarLong(), stringTable));
+			}
+			task.setTaskTags(Interner.internTags(tags));
+		}
+
+		long[] datesEpoch = new long[NUM_DATES];
+		for (int i = 0; i < NUM_DATES; i++) {
+			datesEpoch[i] = unzigzag(record.readVarLong());
+		}
+		String[] datesHuman = new String[NUM_DATES];
+		for (int i = 0; i < NUM_DATES; i++) {
+			String date = getString(record.readVarLong(), stringTable);
+			datesHuman[i] = (date == null) ? Task.EMPTY : date;
+		}
+		task.setDates(datesEpoch, datesHuman);
+		if (version != VERSION_WITHOUT_IDS) {
+			task.setId(record.readVarLong());
+		}
+		return task;
+	}
+
+	private String getString(long index, String[] stringTable) throws InvalidBinaryFileException {
+		if (index == NULL_INDEX) {
+			return null;
+		} else if (index < 0 || index > stringTable.length) { //a corrupted varint may be negative
+			throw new InvalidBinaryFileException("String index out of bounds");
+		}
+		return stringTable[(int) index - 1];
+	}
+
+	/**
+	 * Reads a length or count, checking that it is within MAX_LENGTH, 
+	 * so that a corrupted file cannot cause a huge allocation.
+	 */
+	private static int readLength(BinaryInput input) throws IOException, InvalidBinaryFileException {
+		long length = readVarLong(input);
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new InvalidBinaryFileException("Invalid length " + length);
+		}
+		return (int) length;
+	}
+
+	/*=========*
+	 * Varints *
+	 *=========*/
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static void writeVarLong(DataOutputStream data, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			data.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		data.writeByte((int) value);
+	}
+
+	private static long readVarLong(BinaryInput input) throws IOException, InvalidBinaryFileException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = input.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new InvalidBinaryFileException("Malformed varint");
+	}
+
+	/**
+	 * A reusable, growable byte buffer that a record's payload is encoded into before its CRC is computed.
+	 */
+	private static class RecordBuffer {
+		private byte[] bytes = new byte[64];
+		private int size = 0;
+
+		void reset() {
+			size = 0;
+		}
+
+		void writeVarLong(long value) {
+			while ((value & ~0x7FL) != 0) {
+				writeByte((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			writeByte((int) value);
+		}
+
+		private void writeByte(int b) {
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			bytes[size++] = (byte) b;
+		}
+	}
+
+	/**
+	 * The input that a binary tasklist is read from, so that the same decoder reads both from streams
+	 * and straight from memory-mapped buffers. Every method throws EOFException if the input ends prematurely.
+	 */
+	private interface BinaryInput {
+		int readUnsignedByte() throws IOException;
+
+		void readFully(byte[] bytes, int offset, int length) throws IOException;
+
+		int readInt() throws IOException;
+	}
+
+	private static class StreamInput implements BinaryInput {
+		private final DataInputStream data;
+
+		StreamInput(DataInputStream data) {
+			this.data = data;
+		}
+
+		@Override
+		public int readUnsignedByte() throws IOException {
+			return data.readUnsignedByte();
+		}
+
+		@Override
+		public void readFully(byte[] bytes, int offset, int length) throws IOException {
+			data.readFully(bytes, offset, length);
+		}
+
+		@Override
+		public int readInt() throws IOException {
+			return data.readInt();
+		}
+	}
+
+	private static class BufferInput implements BinaryInput {
+		private final ByteBuffer buffer;
+
+		BufferInput(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int readUnsignedByte() throws IOException {
+			checkRemaining(1);
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		public void readFully(byte[] bytes, int offset, int length) throws IOException {
+			checkRemaining(length);
+			buffer.get(bytes, offset, length);
+		}
+
+		@Override
+		public int readInt() throws IOException {
+			checkRemaining(4);
+			return buffer.getInt(); //big-endian, as written by DataOutputStream
+		}
+
+		private void checkRemaining(int length) throws EOFException {
+			if (buffer.remaining() < length) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	/**
+	 * Reads the header and string table of a binary tasklist, and then decodes its records one at a time.
+	 * Each record's CRC is checked before the record is decoded.
+	 */
+	private class RecordDecoder {
+		private final BinaryInput input;
+		private final int version;
+		private final int numRecords;
+		private final String[] stringTable;
+		private final CRC32 crc = new CRC32();
+		private byte[] payload = new byte[64];
+		private int numRead = 0;
+
+		RecordDecoder(BinaryInput input) throws IOException, InvalidBinaryFileException {
+			this.input = input;
+			version = readVersion(input);
+			numRecords = readLength(input);
+			stringTable = readStringTable(input);
+		}
+
+		boolean hasNext() {
+			return numRead < numRecords;
+		}
+
+		int getNumRemaining() {
+			return numRecords - numRead;
+		}
+
+		/**
+		 * Reads and decodes the next record.
+		 * @return the task in the record
+		 * @throws CorruptRecordException if the record's CRC does not match or it cannot be decoded;
+		 * 		   the following records can still be read
+		 * @throws InvalidBinaryFileException if the record's length is invalid
+		 * @throws IOException if the input ends prematurely (EOFException) or cannot be read
+		 */
+		Task next() throws IOException, InvalidBinaryFileException {
+			int length = readLength(input);
+			if (length > payload.length) {
+				payload = new byte[Math.max(length, payload.length * 2)];
+			}
+			input.readFully(payload, 0, length);
+			int expectedCrc = input.readInt();
+			int recordIndex = numRead++;
+
+			crc.reset();
+			crc.update(payload, 0, length);
+			if ((int) crc.getValue() != expectedCrc) {
+				throw new CorruptRecordException("CRC mismatch in record " + recordIndex);
+			}
+			try {
+				return decodeTask(new RecordReader(payload, length), stringTable, version);
+			} catch (InvalidBinaryFileException e) {
+				throw new CorruptRecordException(e.getMessage() + " in record " + recordIndex);
+			}
+		}
+	}
+
+	/**
+	 * Reads varints from a record's payload, checking that they do not run past the end of the record.
+	 */
+	private static class RecordReader {
+		private final byte[] bytes;
+		private final int length;
+		private int position = 0;
+
+		RecordReader(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+		}
+
+		long readVarLong() throws InvalidBinaryFileException {
+			long value = 0;
+			for (int shift = 0; shift < 64 && position < length; shift += 7) {
+				int b = bytes[position++] & 0xFF;
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new InvalidBinaryFileException("Malformed record");
+		}
+
+		int getRemaining() {
+			return length - position;
+		}
+	}
+
+	/**
+	 * Releases the mapping of a MappedByteBuffer right away, instead of when the buffer is garbage collected.
+	 * There is no public API for this, so the JDK's internal cleaner is invoked through reflection:
+	 * sun.misc.Unsafe.invokeCleaner on Java 9 and later, or the buffer's cleaner() on Java 8.
+	 * If neither is available, the mapping is left to the garbage collector.
+	 * The buffer must not be used after it is unmapped.
+	 */
+	private static class Unmapper {
+		private static final Object unsafe; //receiver of cleanMethod, or null to invoke cleaner() on the buffer
+		private static final Method cleanMethod;
+
+		static {
+			Object receiver = null;
+			Method method = null;
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				receiver = theUnsafe.get(null);
+				method = invokeCleaner;
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				try {
+					Class<?> directBuffer = Class.forName("sun.nio.ch.DirectBuffer");
+					method = directBuffer.getMethod("cleaner");
+				} catch (ReflectiveOperationException | RuntimeException java8Exception) {
+					method = null;
+				}
+			}
+			unsafe = receiver;
+			cleanMethod = method;
+		}
+
+		static boolean isSupported() {
+			return cleanMethod != null;
+		}
+
+		static void unmap(MappedByteBuffer buffer) {
+			if (cleanMethod == null) {
+				return;
+			}
+			try {
+				if (unsafe != null) {
+					cleanMethod.invoke(unsafe, buffer);
+				} else {
+					Object cleaner = cleanMethod.invoke(buffer);
+					if (cleaner != null) {
+						cleaner.getClass().getMethod("clean").invoke(cleaner);
+					}
+				}
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				System.err.println("{Storage} Could not unmap buffer; it will be unmapped when garbage collected");
+			}
+		}
+	}
+}
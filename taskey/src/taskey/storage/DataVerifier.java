@@ -35,15 +35,24 @@ class DataVerifier {
 	 */
 	void verifyTasks(ArrayList<Task> tasklist) throws InvalidTaskException {
 		for (Task task : tasklist) {
-			if (task.getTaskType() == null) {
-				throw new InvalidTaskException();
-			} else if (! (task.getTaskType().equalsIgnoreCase("FLOATING")
-					|| task.getTaskType().equalsIgnoreCase("DEADLINE") 
-					|| task.getTaskType().equalsIgnoreCase("EVENT")) ) {
-				throw new InvalidTaskException();
-			}
-			//TODO check and count tags
+			verifyTask(task);
+		}
+	}
+
+	/**
+	 * Checks that the given Task is valid. See {@link #verifyTasks(ArrayList)}.
+	 * @param task the task to be checked
+	 * @throws InvalidTaskException when the taskType is null or invalid
+	 */
+	void verifyTask(Task task) throws InvalidTaskException {
+		if (task.getTaskType() == null) {
+			throw new InvalidTaskException();
+		} else if (! (task.getTaskType().equalsIgnoreCase("FLOATING")
+				|| task.getTaskType().equalsIgnoreCase("DEADLINE") 
+				|| task.getTaskType().equalsIgnoreCase("EVENT")) ) {
+			throw new InvalidTaskException();
 		}
+		//TODO check and count tags
 	}
 	
 	/**
@@ -69,10 +78,12 @@ class DataVerifier {
 	 * The reason this check needs to be done is that Taskey only uses epoch time in its
 	 * internal implementation; without this check, human readable dates would be ignored.
 	 * @param tasklist the list of tasks to be checked
+	 * @return true if any date was changed
 	 */
-	void checkDates(ArrayList<Task> tasklist) {
+	boolean checkDates(ArrayList<Task> tasklist) {
 		String humanTime;
 		long epochTime;
+		boolean wasChanged = false;
 
 		for (Task task : tasklist) {
 			String taskType = task.getTaskType();
@@ -85,6 +96,7 @@ class DataVerifier {
 					if (timeWasEdited(humanTime, epochTime)) {
 						epochTime = getEpochTime(humanTime, epochTime);
 						task.setDeadline(epochTime);
+						wasChanged = true;
 					}
 					break;
 
@@ -95,6 +107,7 @@ class DataVerifier {
 					if (timeWasEdited(humanTime, epochTime)) {
 						epochTime = getEpochTime(humanTime, epochTime);
 						task.setStartDate(epochTime);
+						wasChanged = true;
 					}
 
 					// Check end time of event
@@ -103,10 +116,12 @@ class DataVerifier {
 					if (timeWasEdited(humanTime, epochTime)) {
 						epochTime = getEpochTime(humanTime, epochTime);
 						task.setEndDate(epochTime);
+						wasChanged = true;
 					}
 					break;
 			}
 		}
+		return wasChanged;
 	}
 
 	/**
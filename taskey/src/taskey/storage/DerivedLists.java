@@ -0,0 +1,74 @@
+package taskey.storage;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+
+import taskey.messenger.Task;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class holds the GENERAL, DEADLINE and EVENT lists derived from one PENDING list.
+ * They are not read from, or written to, disk.
+ * <p>Each load partitions its own PENDING list into a new DerivedLists, in a single pass, and the lists
+ * share the same Task objects as the PENDING list. Nothing is kept between loads, so any number of loads,
+ * e.g. by different Storage instances or by a reload on a background thread, can derive their lists at the same time.
+ * An instance is never changed once it has been created, but the lists it returns belong to the caller.
+ */
+class DerivedLists {
+	private final ArrayList<Task> generalList = new ArrayList<Task>();
+	private final ArrayList<Task> deadlineList = new ArrayList<Task>();
+	private final ArrayList<Task> eventList = new ArrayList<Task>();
+
+	private DerivedLists() {
+	}
+
+	/**
+	 * Partitions the given PENDING list by task type into the GENERAL, DEADLINE and EVENT lists.
+	 * Tasks of any other type are left out of all three.
+	 * @param pendingList the PENDING list, after the journal has been replayed on top of it
+	 */
+	static DerivedLists partition(ArrayList<Task> pendingList) {
+		DerivedLists lists = new DerivedLists();
+		for (Task task : pendingList) {
+			switch (task.getTaskType().toUpperCase()) {
+				case "FLOATING":
+					lists.generalList.add(task);
+					break;
+				case "DEADLINE":
+					lists.deadlineList.add(task);
+					break;
+				case "EVENT":
+					lists.eventList.add(task);
+					break;
+			}
+		}
+		return lists;
+	}
+
+	/**
+	 * Returns the derived list of the given type.
+	 * @param listType GENERAL, DEADLINE or EVENT
+	 */
+	ArrayList<Task> get(TasklistEnum listType) {
+		switch (listType) {
+			case GENERAL:
+				return generalList;
+			case DEADLINE:
+				return deadlineList;
+			case EVENT:
+				return eventList;
+			default:
+				throw new IllegalArgumentException(listType + " is not a derived list");
+		}
+	}
+
+	/**
+	 * Puts the three derived lists into the given map of task lists.
+	 */
+	void putInto(EnumMap<TasklistEnum, ArrayList<Task>> lists) {
+		lists.put(TasklistEnum.GENERAL, generalList);
+		lists.put(TasklistEnum.DEADLINE, deadlineList);
+		lists.put(TasklistEnum.EVENT, eventList);
+	}
+}
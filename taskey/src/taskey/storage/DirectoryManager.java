@@ -12,17 +12,17 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.Arrays;
 import java.util.HashSet;
 
 import taskey.storage.Storage.TasklistEnum;
 
 /**
  * @@author A0121618M
- * This class provides two methods to Storage for managing its directory:
+ * This class provides methods to Storage for managing its directory:
  *  - createDirectory(File)
  *  - changeDirectory(File, boolean, File)
+ *  - prepareDirectory(File, boolean, File) and migrateFiles(File, File), to move the savefiles in the background
+ *  - resumeMigration(File), to finish a move that was interrupted
  */
 class DirectoryManager {
 	// For remembering the directories created during runtime,
@@ -87,31 +87,117 @@ class DirectoryManager {
 	 *		   (Passing in false will update Storage's directory and bypass FileAlreadyExistsException.)
 	 * 
 	 * @throws IOException any other IO error not covered above, when creating a new directory, writing to it, or moving files.
-	 * 		   Note that moving is not an atomic operation, so it is possible that some files will have been moved halfway.
+	 * 		   If moving fails, the files that were already copied are deleted again, and the current directory is kept.
 	 */
 	File changeDirectory(File currDir, boolean shouldMove, File newDir) throws InvalidPathException, NotDirectoryException, 
 																			   AccessDeniedException, FileSystemException, 
 																			   FileAlreadyExistsException, IOException {
+		prepareDirectory(currDir, shouldMove, newDir);
+		if (shouldMove) {
+			return migrateFiles(currDir, newDir);
+		}
+		deleteCurrDir(currDir); //delete the old folder if it's currently empty and was created by Taskey during runtime
+		saveNewDir(newDir, currDir);
+		return newDir;
+	}
+
+	/**
+	 * Does the checks of {@link #changeDirectory(File, boolean, File)} without changing the directory,
+	 * so that Storage can report any error right away and then move the files in the background
+	 * with {@link #migrateFiles(File, File)}.
+	 * <br>1. Creates the new directory and checks that it can be written to
+	 * <br>2. If the given boolean argument is true, checks that the new directory does not contain task files
+	 * @throws FileAlreadyExistsException if shouldMove is true and the new directory contains at least one tasklist file
+	 * @throws IOException see {@link #changeDirectory(File, boolean, File)} for the subclasses thrown
+	 */
+	void prepareDirectory(File currDir, boolean shouldMove, File newDir) throws InvalidPathException, IOException {
 		createDirectoryLoudly(newDir);
 		checkCanWriteToDirectory(newDir);
 
-		if (shouldMove) {
+		if (shouldMove && !isSameDirectory(currDir, newDir) && containsExistingTaskFilesIn(newDir)) {
+			// we do not want to inadvertently overwrite them, so we skip the move
+			System.out.println("{Storage} Load from directory | " + newDir.getPath());
+			throw new FileAlreadyExistsException("Load from directory"); //signal Logic to load the existing task files
+		}
+	}
+
+	/**
+	 * Moves the taskey savefiles from currDir to newDir with a DirectoryMigration, and then saves the new directory
+	 * to the directory config file. The files are copied and verified before any of them is deleted,
+	 * and the progress is journaled, so that a move that was interrupted is finished by
+	 * {@link #resumeMigration(File)} the next time Taskey starts.
+	 * This method has no effect on the files if currDir and newDir are the same.
+	 * <p>Pre-condition: {@link #prepareDirectory(File, boolean, File)} has been called for newDir, and
+	 * the savefiles in currDir are not written to until this method returns.
+	 * @return newDir, or currDir if the files could not be moved
+	 * @throws IOException if any file could not be copied; the copies are deleted again and currDir is kept
+	 */
+	File migrateFiles(File currDir, File newDir) throws IOException {
+		if (isSameDirectory(currDir, newDir)) {
+			return newDir;
+		}
+		DirectoryMigration migration = DirectoryMigration.begin(currDir, newDir);
+		try {
+			migration.copyAll();
+		} catch (IOException e) {
+			e.printStackTrace();
+			migration.rollBack();
+			throw e;
+		}
+		return finishMigration(migration, currDir);
+	}
+
+	/**
+	 * Finishes or rolls back the migration that was interrupted in the given directory, if there is one.
+	 * A migration that was committed is finished; otherwise it is resumed if its destination still exists,
+	 * and rolled back if it does not or if the copy fails again.
+	 * Storage calls this on startup, with the directory loaded from the directory config file.
+	 * @param dir the directory that Taskey was started in
+	 * @return the directory that the savefiles are in once the migration is finished or rolled back
+	 */
+	File resumeMigration(File dir) {
+		DirectoryMigration migration = DirectoryMigration.find(dir);
+		if (migration == null) {
+			return dir;
+		}
+		System.out.println("{Storage} Resuming migration | " + migration.getDestination().getPath());
+		if (!migration.isCommitted()) {
 			try {
-				moveFiles(currDir, newDir);
-			} catch (FileAlreadyExistsException e) {
-				System.out.println("{Storage} Load from directory | " + newDir.getPath());
-				throw e; //signal Logic to load the existing task files
+				if (!migration.getDestination().isDirectory()) {
+					throw new NotDirectoryException(migration.getDestination().getPath());
+				}
+				migration.copyAll();
+			} catch (IOException e) {
+				migration.rollBack();
+				return dir;
 			}
 		}
-		deleteCurrDir(currDir); //delete the old folder if it's currently empty and was created by Taskey during runtime
+		return finishMigration(migration, dir);
+	}
 
-		if (shouldSaveNewDir(newDir, currDir)) {
-			storageWriter.saveDirectoryConfigFile(newDir, FILENAME_DIRCONFIG);
+	/**
+	 * Deletes the source files of a committed migration and saves its destination as the new directory.
+	 * The journal is only deleted after the config file is saved, so that Taskey never starts in an emptied directory.
+	 * @return the destination, or currDir if some source files could not be deleted, in which case they are kept
+	 */
+	private File finishMigration(DirectoryMigration migration, File currDir) {
+		File newDir = migration.getDestination();
+		if (!migration.deleteSources()) {
+			System.err.println("{Storage} Savefiles changed or locked during move | " + currDir.getPath());
+			migration.finish();
+			return currDir;
 		}
-
+		saveNewDir(newDir, currDir);
+		migration.finish();
+		System.out.println("{Storage} Files moved");
+		deleteCurrDir(currDir); //delete the old folder if it's currently empty and was created by Taskey during runtime
 		return newDir;
 	}
 
+	private static boolean isSameDirectory(File dir, File otherDir) {
+		return dir.getAbsolutePath().equalsIgnoreCase(otherDir.getAbsolutePath());
+	}
+
 	/**
 	 * This method attempts to create the full directory path of the given abstract pathname and throws exceptions when it fails.
 	 * All known exceptions are enumerated in the throws clause of this method just for documentation purposes;
@@ -169,51 +255,7 @@ class DirectoryManager {
 	}
 
 	/**
-	 * Moves the taskey savefiles from the given source to destination directory.
-	 * This method has no effect if srcDir and destDir are the same.
-	 * Files are moved only if destDir does not contain any tasklist savefiles.
-	 * @param srcDir the source directory
-	 * @param destDir the destination diectory
-	 * @returns true if all the files were moved successfully; false if no files were moved
-	 * @throws IOException thrown by the Files.move method
-	 * @throws FileAlreadyExistsException if tasklist files already exist in destDir
-	 */
-	private boolean moveFiles(File srcDir, File destDir) throws IOException, FileAlreadyExistsException {
-		// Skip the move if srcDir and destDir are the same
-		if (srcDir.getAbsolutePath().equalsIgnoreCase(destDir.getAbsolutePath())) {
-			return false;
-		}
-
-		// If destDir contains pre-existing task file(s)
-		// we do not want to inadvertently overwrite them, so we skip the move
-		if (containsExistingTaskFilesIn(destDir)) {
-			throw new FileAlreadyExistsException("Load from directory");
-		}
-
-		boolean wasMoved = false;
-		for (File srcFile : srcDir.listFiles()) {
-			if (Arrays.asList(Storage.FILENAMES).contains(srcFile.getName())) {
-				Path srcPath = srcFile.toPath();
-				Path destPath = destDir.toPath().resolve(srcFile.getName());
-
-				try {
-					Files.move(srcPath, destPath, StandardCopyOption.REPLACE_EXISTING);
-					wasMoved = true;
-				} catch (IOException e) {
-					e.printStackTrace();
-					throw e;
-				}
-			}
-		}
-
-		if (wasMoved) {
-			System.out.println("{Storage} Files moved");
-		}
-		return wasMoved;
-	}
-
-	/**
-	 * Checks if the given directory contains any tasklist savefile(s).
+	 * Checks if the given directory contains any tasklist savefile(s), including the journal and archive segments.
 	 * @param dir directory to check
 	 * @return true if any tasklist file was found; false otherwise
 	 */
@@ -221,7 +263,8 @@ class DirectoryManager {
 		//EnumSet<TasklistEnum> set = EnumSet.noneOf(TasklistEnum.class);
 		for (String filename : dir.list()) {
 			TasklistEnum listType = TasklistEnum.enumOf(filename);
-			if (TasklistEnum.savedLists.contains(listType)) {
+			if (TasklistEnum.savedLists.contains(listType) || filename.equals(Storage.FILENAME_JOURNAL)
+					|| ArchiveStore.parseMonth(filename) != -1) {
 				return true;
 				//set.add(listType);
 			}
@@ -254,6 +297,15 @@ class DirectoryManager {
 		}
 	}
 
+	/**
+	 * Saves newDir to the directory config file, if it should be saved.
+	 */
+	private void saveNewDir(File newDir, File currDir) {
+		if (shouldSaveNewDir(newDir, currDir)) {
+			storageWriter.saveDirectoryConfigFile(newDir, FILENAME_DIRCONFIG);
+		}
+	}
+
 	/**
 	 * Checks whether the abstract pathname given by dir should be saved to the directory config file.
 	 * @param newDir the candidate directory to be saved
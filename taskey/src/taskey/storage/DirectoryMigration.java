@@ -0,0 +1,307 @@
+package taskey.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import taskey.storage.StorageMetrics.Operation;
+
+/**
+ * @@author A0121618M
+ * This class moves the savefiles from one directory to another for DirectoryManager,
+ * in a way that can be resumed or rolled back if Taskey is closed halfway.
+ * <p>Each savefile is copied with FileChannel.transferTo, which lets the OS copy the bytes without
+ * passing them through Java, and the copy is then verified against the CRC32 of the source.
+ * The source files are only deleted once every copy has been verified and the migration has been committed,
+ * so until then the source directory always holds a complete set of savefiles.
+ * <p>The progress is recorded in a journal in the source directory, which is the directory that Taskey
+ * starts in until the migration is done. It is a text file with one record per line:
+ * <br>- the header, followed by "DEST" and the absolute path of the destination directory
+ * <br>- "COPYING" and the name of a file, before it is copied
+ * <br>- "COPIED", the name, length and CRC32 of a file, once its copy has been verified
+ * <br>- "COMMITTED", once every file has been copied
+ * <br>Each record is forced to disk before the next step, so a record that was cut off is simply ignored.
+ */
+class DirectoryMigration {
+	static final String FILENAME = "MIGRATION.taskeyjournal";
+	private static final String HEADER = "TASKEY MIGRATION 1";
+	private static final String RECORD_DEST = "DEST";
+	private static final String RECORD_COPYING = "COPYING";
+	private static final String RECORD_COPIED = "COPIED";
+	private static final String RECORD_COMMITTED = "COMMITTED";
+	private static final String SEPARATOR = "\t";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File srcDir;
+	private final File destDir;
+	private final File journalFile;
+	private final LinkedHashSet<String> copyingFiles = new LinkedHashSet<String>(); //may have been written to destDir
+	private final LinkedHashMap<String, Checksum> copiedFiles = new LinkedHashMap<String, Checksum>();
+	private boolean isCommitted = false;
+
+	/**
+	 * The length and CRC32 of a file, as verified after it was copied.
+	 */
+	private static class Checksum {
+		private final long length;
+		private final long crc;
+
+		private Checksum(long length, long crc) {
+			this.length = length;
+			this.crc = crc;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Checksum)) {
+				return false;
+			}
+			Checksum other = (Checksum) obj;
+			return length == other.length && crc == other.crc;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (length ^ crc);
+		}
+	}
+
+	private DirectoryMigration(File srcDir, File destDir) {
+		this.srcDir = srcDir;
+		this.destDir = destDir;
+		this.journalFile = new File(srcDir, FILENAME);
+	}
+
+	/**
+	 * Starts a new migration from srcDir to destDir by writing its journal. No files are copied yet.
+	 * @throws IOException if the journal could not be written
+	 */
+	static DirectoryMigration begin(File srcDir, File destDir) throws IOException {
+		DirectoryMigration migration = new DirectoryMigration(srcDir, destDir);
+		Files.deleteIfExists(migration.journalFile.toPath());
+		migration.appendRecord(HEADER);
+		migration.appendRecord(RECORD_DEST + SEPARATOR + destDir.getAbsolutePath());
+		return migration;
+	}
+
+	/**
+	 * Reads the journal of a migration that was interrupted, if there is one in the given directory.
+	 * @param srcDir the directory that Taskey was started in
+	 * @return the migration, or null if there is no journal or it is not valid
+	 */
+	static DirectoryMigration find(File srcDir) {
+		File journalFile = new File(srcDir, FILENAME);
+		if (!journalFile.exists()) {
+			return null;
+		}
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return null;
+		}
+		if (lines.size() < 2 || !lines.get(0).equals(HEADER) || !lines.get(1).startsWith(RECORD_DEST + SEPARATOR)) {
+			System.err.println("{Storage} Invalid migration journal | " + journalFile.getPath());
+			journalFile.delete(); //nothing was copied before the header was written
+			return null;
+		}
+
+		File destDir = new File(lines.get(1).substring(RECORD_DEST.length() + SEPARATOR.length()));
+		DirectoryMigration migration = new DirectoryMigration(srcDir, destDir);
+		for (String line : lines.subList(2, lines.size())) {
+			migration.readRecord(line.split(SEPARATOR));
+		}
+		return migration;
+	}
+
+	private void readRecord(String[] fields) {
+		try {
+			if (fields[0].equals(RECORD_COPYING) && fields.length == 2) {
+				copyingFiles.add(fields[1]);
+			} else if (fields[0].equals(RECORD_COPIED) && fields.length == 4) {
+				copiedFiles.put(fields[1], new Checksum(Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+			} else if (fields[0].equals(RECORD_COMMITTED)) {
+				isCommitted = true;
+			}
+		} catch (NumberFormatException e) {
+			return; //cut off while it was being written
+		}
+	}
+
+	File getDestination() {
+		return destDir;
+	}
+
+	boolean isCommitted() {
+		return isCommitted;
+	}
+
+
+	/*=========*
+	 * Copying *
+	 *=========*/
+	/**
+	 * Copies and verifies every savefile in srcDir that has not been copied yet, and then commits the migration.
+	 * Files that were already copied by an earlier attempt are verified again, and copied again if they differ.
+	 * @throws IOException if any file could not be copied or its copy does not match; nothing is committed then
+	 */
+	void copyAll() throws IOException {
+		for (File srcFile : srcDir.listFiles()) {
+			String filename = srcFile.getName();
+			if (!Storage.isSavefileName(filename) || filename.equals(FILENAME)) {
+				continue;
+			}
+			File destFile = new File(destDir, filename);
+			Checksum copied = copiedFiles.get(filename);
+			if (copied != null && copied.equals(checksum(srcFile)) && copied.equals(checksum(destFile))) {
+				continue; //copied by an earlier attempt
+			}
+			copyFile(srcFile, destFile);
+		}
+		appendRecord(RECORD_COMMITTED);
+		isCommitted = true;
+		System.out.println("{Storage} Files copied | " + copiedFiles.size() + " to " + destDir.getPath());
+	}
+
+	private void copyFile(File srcFile, File destFile) throws IOException {
+		String filename = srcFile.getName();
+		if (copyingFiles.add(filename)) {
+			appendRecord(RECORD_COPYING + SEPARATOR + filename);
+		}
+
+		Checksum srcChecksum = checksum(srcFile);
+		long startTime = System.nanoTime();
+		transfer(srcFile, destFile);
+		StorageMetrics.getInstance().record(Operation.MOVE, srcFile, srcChecksum.length, System.nanoTime() - startTime);
+		Checksum destChecksum = checksum(destFile);
+		if (!srcChecksum.equals(destChecksum)) {
+			throw new IOException("Copy does not match " + srcFile.getPath());
+		}
+		destFile.setLastModified(srcFile.lastModified()); //so that the verification stamps still match
+
+		copiedFiles.put(filename, srcChecksum);
+		appendRecord(RECORD_COPIED + SEPARATOR + filename + SEPARATOR + srcChecksum.length
+					 + SEPARATOR + srcChecksum.crc);
+	}
+
+	/**
+	 * Copies src to dest with FileChannel.transferTo, and forces dest to disk.
+	 */
+	private static void transfer(File src, File dest) throws IOException {
+		FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ);
+		try {
+			FileChannel out = FileChannel.open(dest.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+											   StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				long size = in.size();
+				long position = 0;
+				while (position < size) {
+					position += in.transferTo(position, size - position, out);
+				}
+				out.force(true);
+				StorageMetrics.getInstance().recordFsync(dest);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the length and CRC32 of the given file, or null if it does not exist.
+	 */
+	private static Checksum checksum(File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			long length = 0;
+			int read;
+			while ((read = channel.read(buffer)) != -1) {
+				crc.update(buffer.array(), 0, read);
+				length += read;
+				buffer.clear();
+			}
+			return new Checksum(length, crc.getValue());
+		} finally {
+			in.close();
+		}
+	}
+
+
+	/*====================*
+	 * Finish / Roll back *
+	 *===================*/
+	/**
+	 * Deletes the source files of a committed migration. Only files that are unchanged since they were copied
+	 * are deleted, so a journal left behind by an old migration never deletes newer savefiles.
+	 * @return true if every source file is gone, i.e. the destination holds the only copy of the savefiles
+	 */
+	boolean deleteSources() {
+		assert (isCommitted);
+		boolean isComplete = true;
+		for (String filename : copiedFiles.keySet()) {
+			File srcFile = new File(srcDir, filename);
+			try {
+				if (srcFile.exists() && copiedFiles.get(filename).equals(checksum(srcFile))) {
+					Files.delete(srcFile.toPath());
+				}
+			} catch (IOException e) {
+				System.err.println("{Storage} Could not delete " + srcFile.getPath());
+			}
+			isComplete &= !srcFile.exists();
+		}
+		return isComplete;
+	}
+
+	/**
+	 * Deletes the copies written to the destination, so that it is left as it was before the migration,
+	 * and then deletes the journal. The source files are untouched.
+	 */
+	void rollBack() {
+		assert (!isCommitted);
+		for (String filename : copyingFiles) {
+			File destFile = new File(destDir, filename);
+			if (!destFile.delete() && destFile.exists()) {
+				System.err.println("{Storage} Could not delete " + destFile.getPath());
+			}
+		}
+		finish();
+		System.out.println("{Storage} Migration rolled back | " + srcDir.getPath());
+	}
+
+	/**
+	 * Deletes the journal once the migration is done or rolled back.
+	 */
+	void finish() {
+		if (!journalFile.delete() && journalFile.exists()) {
+			System.err.println("{Storage} Could not delete " + journalFile.getPath());
+		}
+	}
+
+	private void appendRecord(String record) throws IOException {
+		FileOutputStream out = new FileOutputStream(journalFile, true);
+		try {
+			out.write((record + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+			out.getChannel().force(true); //the record must be on disk before the step it records
+			StorageMetrics.getInstance().recordFsync(journalFile);
+		} finally {
+			out.close();
+		}
+	}
+}
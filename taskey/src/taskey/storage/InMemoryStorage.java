@@ -0,0 +1,248 @@
+package taskey.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+
+import taskey.messenger.TagCategory;
+import taskey.messenger.Task;
+import taskey.storage.JournalRecord.InvalidRecordException;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class is a StorageBackend that never touches the disk, for benchmarks and tests that measure Logic
+ * without the noise of disk I/O. It is selected with -Dtaskey.backend=memory; see {@link Storage#createBackend(String)}.
+ * <p>The saved lists and tags are kept as copies, so that the lists loaded from it are never the same objects
+ * as the lists saved to it, just as with savefiles. Journal records are applied to the saved lists as they are appended.
+ * There is no state image, so every load derives the GENERAL, DEADLINE and EVENT lists from the PENDING list.
+ * <p>The data of each directory is shared by all the instances in the JVM, so that a new Logic
+ * finds the data saved by the previous one, as it would on disk. It is lost when the JVM exits.
+ */
+public class InMemoryStorage implements StorageBackend {
+	// Saved data of each directory, by absolute path
+	private static final HashMap<String, SavedData> directories = new HashMap<String, SavedData>();
+
+	private String directory;
+
+	/**
+	 * The saved lists and tags of one directory.
+	 */
+	private static class SavedData {
+		private EnumMap<TasklistEnum, ArrayList<Task>> savedLists =
+				new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+		private ArrayList<TagCategory> tags = new ArrayList<TagCategory>();
+
+		private SavedData() {
+			for (TasklistEnum listType : TasklistEnum.savedLists) {
+				savedLists.put(listType, new ArrayList<Task>());
+			}
+		}
+
+		private boolean isEmpty() {
+			for (ArrayList<Task> list : savedLists.values()) {
+				if (!list.isEmpty()) {
+					return false;
+				}
+			}
+			return tags.isEmpty();
+		}
+	}
+
+	/**
+	 * Creates an InMemoryStorage that starts in Storage.DEFAULT_DIRECTORY. The directory config file is not read.
+	 */
+	public InMemoryStorage() {
+		directory = Storage.DEFAULT_DIRECTORY.getAbsolutePath();
+	}
+
+	private SavedData getSavedData() {
+		SavedData data = directories.get(directory);
+		if (data == null) {
+			data = new SavedData();
+			directories.put(directory, data);
+		}
+		return data;
+	}
+
+	/*=====================*
+	 * Load/Save tasklists *
+	 *=====================*/
+	@Override
+	public ArrayList<ArrayList<Task>> loadAllTasklists() {
+		EnumMap<TasklistEnum, ArrayList<Task>> lists = new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+		synchronized (directories) {
+			EnumMap<TasklistEnum, ArrayList<Task>> savedLists = getSavedData().savedLists;
+			for (TasklistEnum listType : TasklistEnum.savedLists) {
+				lists.put(listType, copyTasklist(savedLists.get(listType)));
+			}
+		}
+		DerivedLists.partition(lists.get(TasklistEnum.PENDING)).putInto(lists);
+
+		ArrayList<ArrayList<Task>> superlist = new ArrayList<ArrayList<Task>>();
+		for (TasklistEnum listType : TasklistEnum.values()) {
+			superlist.add(lists.get(listType));
+		}
+		return superlist;
+	}
+
+	/**
+	 * There is no state image in memory, so this always returns null.
+	 */
+	@Override
+	public StateImage loadStateImage() {
+		return null;
+	}
+
+	@Override
+	public void saveAllTasklists(ArrayList<ArrayList<Task>> superlist) throws IOException {
+		saveTasklists(superlist, TasklistEnum.savedLists);
+	}
+
+	@Override
+	public void saveTasklists(ArrayList<ArrayList<Task>> superlist, EnumSet<TasklistEnum> changedLists) {
+		assert (superlist.size() == Storage.NUM_TASKLISTS_FROM_LOGIC);
+		synchronized (directories) {
+			EnumMap<TasklistEnum, ArrayList<Task>> savedLists = getSavedData().savedLists;
+			for (TasklistEnum listType : getTasklistsToSave(changedLists)) {
+				savedLists.put(listType, copyTasklist(superlist.get(listType.index())));
+			}
+		}
+	}
+
+	/**
+	 * Returns the saved lists in changedLists, since the lists in memory are never out of date.
+	 */
+	@Override
+	public EnumSet<TasklistEnum> getTasklistsToSave(EnumSet<TasklistEnum> changedLists) {
+		EnumSet<TasklistEnum> listsToSave = EnumSet.copyOf(TasklistEnum.savedLists);
+		listsToSave.retainAll(changedLists);
+		return listsToSave;
+	}
+
+	private static ArrayList<Task> copyTasklist(ArrayList<Task> tasklist) {
+		ArrayList<Task> copy = new ArrayList<Task>(tasklist.size());
+		for (Task task : tasklist) {
+			copy.add(new Task(task));
+		}
+		return copy;
+	}
+
+
+	/*=========*
+	 * Journal *
+	 *=========*/
+	/**
+	 * Applies the given journal records to the saved lists right away, since there is no journal file to replay.
+	 * @throws IOException if a record is invalid; the records before it have already been applied
+	 */
+	@Override
+	public void appendToJournal(ArrayList<JournalRecord> records) throws IOException {
+		assert (records != null);
+		synchronized (directories) {
+			EnumMap<TasklistEnum, ArrayList<Task>> savedLists = getSavedData().savedLists;
+			for (JournalRecord record : records) {
+				try {
+					record.applyTo(savedLists); //the tasks in a record are already copies
+				} catch (InvalidRecordException e) {
+					throw new IOException("Invalid journal record");
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean journalNeedsCompaction() {
+		return false;
+	}
+
+	/**
+	 * Does nothing, since there is no state image in memory.
+	 */
+	@Override
+	public void saveStateImage(ArrayList<ArrayList<Task>> superlist) {
+	}
+
+
+	/*================*
+	 * Load/Save tags *
+	 *================*/
+	@Override
+	public ArrayList<TagCategory> loadTaglist() {
+		synchronized (directories) {
+			return copyTaglist(getSavedData().tags);
+		}
+	}
+
+	@Override
+	public void saveTaglist(ArrayList<TagCategory> tags) {
+		assert (tags != null);
+		synchronized (directories) {
+			getSavedData().tags = copyTaglist(tags);
+		}
+	}
+
+	private static ArrayList<TagCategory> copyTaglist(ArrayList<TagCategory> tags) {
+		ArrayList<TagCategory> copy = new ArrayList<TagCategory>(tags.size());
+		for (TagCategory tag : tags) {
+			copy.add(new TagCategory(tag));
+		}
+		return copy;
+	}
+
+
+
+	/*========================*
+	 * Watch external changes *
+	 *========================*/
+	/**
+	 * Does nothing, since the lists in memory cannot be changed outside Taskey.
+	 */
+	@Override
+	public void startWatching() {
+	}
+
+	@Override
+	public ArrayList<SavefileChange> pollExternalChanges() {
+		return new ArrayList<SavefileChange>();
+	}
+
+
+	/*===============*
+	 * Set Directory *
+	 *===============*/
+	/**
+	 * Changes the directory to the given pathname, as {@link Storage#setDirectory(String, boolean)} does,
+	 * except that the directory is only a key for the data in memory, and is never created on disk.
+	 */
+	@Override
+	public void setDirectory(String pathname, boolean shouldMove) throws FileAlreadyExistsException {
+		String newDirectory = new File(pathname).getAbsolutePath();
+		synchronized (directories) {
+			if (newDirectory.equals(directory)) {
+				return;
+			}
+			if (shouldMove) {
+				SavedData existing = directories.get(newDirectory);
+				if (existing != null && !existing.isEmpty()) {
+					throw new FileAlreadyExistsException(newDirectory); //Logic then loads the data in it instead
+				}
+				directories.put(newDirectory, getSavedData());
+				directories.remove(directory);
+			}
+			directory = newDirectory;
+		}
+	}
+
+	/**
+	 * Returns null, since the data in memory is moved before setDirectory returns.
+	 */
+	@Override
+	public Exception checkMigrationFailed() {
+		return null;
+	}
+}
@@ -0,0 +1,86 @@
+package taskey.storage;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @@author A0121618M
+ * This class deduplicates the strings that recur across many tasks as they are read from disk,
+ * so that a large archive does not hold a separate copy of them for every task.
+ * <br>- Task types are replaced with the constants below, which are the same String objects
+ * 		 as the literals "FLOATING", "DEADLINE" and "EVENT" used everywhere else in Taskey.
+ * <br>- Tags are looked up in a tag dictionary shared by all the readers, which also holds the tag names of
+ * 		 the TagCategory objects loaded from the taglist, so that tasks share the strings of their tag categories.
+ * <p>Only the strings are shared. Each task still has its own list of tags, since Task changes that list in place,
+ * but the list is trimmed to its size. The dictionary is thread-safe, since the savefiles are read in parallel.
+ * It stops growing at MAX_TAGS entries, after which new tags are simply kept as they were read.
+ */
+final class Interner {
+	static final String TYPE_FLOATING = "FLOATING";
+	static final String TYPE_DEADLINE = "DEADLINE";
+	static final String TYPE_EVENT = "EVENT";
+	static final int MAX_TAGS = 10000;
+
+	private static final ConcurrentHashMap<String, String> tagDictionary = new ConcurrentHashMap<String, String>();
+
+	private Interner() {
+	}
+
+	/**
+	 * Returns the constant for the given task type, or the given string itself if it is not a known type.
+	 */
+	static String internType(String taskType) {
+		if (taskType == null) {
+			return null;
+		}
+		switch (taskType) {
+			case TYPE_FLOATING:
+				return TYPE_FLOATING;
+			case TYPE_DEADLINE:
+				return TYPE_DEADLINE;
+			case TYPE_EVENT:
+				return TYPE_EVENT;
+			default:
+				return taskType;
+		}
+	}
+
+	/**
+	 * Returns the string in the tag dictionary that is equal to the given tag, adding it if there is none.
+	 */
+	static String internTag(String tag) {
+		if (tag == null) {
+			return null;
+		}
+		String interned = tagDictionary.get(tag);
+		if (interned != null) {
+			return interned;
+		} else if (tagDictionary.size() >= MAX_TAGS) {
+			return tag;
+		}
+		interned = tagDictionary.putIfAbsent(tag, tag);
+		return (interned == null) ? tag : interned;
+	}
+
+	/**
+	 * Interns the tags in the given list in place, and trims the list to its size.
+	 * @return the same list, for chaining
+	 */
+	static ArrayList<String> internTags(ArrayList<String> tags) {
+		if (tags == null) {
+			return null;
+		}
+		for (int i = 0; i < tags.size(); i++) {
+			tags.set(i, internTag(tags.get(i)));
+		}
+		tags.trimToSize();
+		return tags;
+	}
+
+	/**
+	 * Returns the number of tags in the dictionary, for testing.
+	 */
+	static int getTagCount() {
+		return tagDictionary.size();
+	}
+}
@@ -0,0 +1,111 @@
+package taskey.storage;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+
+import taskey.messenger.Task;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class represents one record in the Storage journal.
+ * Logic creates one record per mutating command (add/done/del/set),
+ * holding the changes that the command made to the saved task lists.
+ * <p>Only two kinds of changes are recorded:
+ * <br>- ADD: a task was added to one of the saved lists (PENDING, EXPIRED or COMPLETED)
+ * <br>- REMOVE: a task was removed; it is removed from whichever saved list contains it
+ * <p>Both operations are idempotent, so replaying a record on top of a snapshot
+ * that already contains its changes has no further effect.
+ */
+public class JournalRecord {
+	enum Operation {
+		ADD,
+		REMOVE
+	}
+
+	/**
+	 * A single change made to the saved task lists.
+	 * The list is null for REMOVE operations.
+	 */
+	static class Change {
+		private Operation op;
+		private TasklistEnum list;
+		private Task task;
+
+		Change(Operation op, TasklistEnum list, Task task) {
+			this.op = op;
+			this.list = list;
+			this.task = task;
+		}
+	}
+
+	private ArrayList<Change> changes = new ArrayList<Change>();
+
+	public JournalRecord() {
+	}
+
+	/**
+	 * Records that the given task was added to the given list.
+	 * A copy of the task is kept, so later changes made to it in memory do not affect this record.
+	 * Lists that are not saved to disk are ignored.
+	 * @param list the list that the task was added to
+	 * @param task the task that was added
+	 */
+	public void addTask(TasklistEnum list, Task task) {
+		if (TasklistEnum.savedLists.contains(list)) {
+			changes.add(new Change(Operation.ADD, list, new Task(task)));
+		}
+	}
+
+	/**
+	 * Records that the given task was removed from the saved lists.
+	 * A copy of the task is kept, so later changes made to it in memory do not affect this record.
+	 * @param task the task that was removed
+	 */
+	public void removeTask(Task task) {
+		changes.add(new Change(Operation.REMOVE, null, new Task(task)));
+	}
+
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	/**
+	 * Applies the changes in this record, in order, to the given saved lists.
+	 * @param savedLists the PENDING, EXPIRED and COMPLETED lists loaded from the snapshot files
+	 * @throws InvalidRecordException if the record is missing any of its fields
+	 */
+	void applyTo(EnumMap<TasklistEnum, ArrayList<Task>> savedLists) throws InvalidRecordException {
+		if (changes == null) {
+			throw new InvalidRecordException();
+		}
+
+		for (Change change : changes) {
+			if (change == null || change.op == null || change.task == null || change.task.getTaskType() == null) {
+				throw new InvalidRecordException();
+			}
+
+			switch (change.op) {
+				case ADD:
+					ArrayList<Task> list = savedLists.get(change.list);
+					if (list == null) {
+						throw new InvalidRecordException();
+					}
+					if (!list.contains(change.task)) {
+						list.add(change.task);
+					}
+					break;
+
+				case REMOVE:
+					for (ArrayList<Task> savedList : savedLists.values()) {
+						savedList.remove(change.task);
+					}
+					break;
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	static class InvalidRecordException extends Exception {
+	}
+}
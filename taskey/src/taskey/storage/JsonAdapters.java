@@ -0,0 +1,241 @@
+package taskey.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import taskey.messenger.TagCategory;
+import taskey.messenger.Task;
+
+/**
+ * @@author A0121618M
+ * This class holds the Gson instances used by the storage package, with hand-written TypeAdapters
+ * registered for Task and TagCategory. The Gson instances are thread-safe, so they are created once and shared.
+ * <p>Compared to Gson's default reflective binding, the adapters:
+ * <br>- do not use reflection for every Task and TagCategory read or written
+ * <br>- only write the fields that need to be saved, i.e. not Task's timeConverter and pinTask fields
+ * <br>- ignore unknown fields when reading, so savefiles from older versions of Taskey can still be loaded
+ * <br>- intern the task types and tags they read, see {@link Interner}
+ */
+final class JsonAdapters {
+	// Used for the savefiles, which are meant to be human-readable and editable
+	static final Gson PRETTY_GSON = newGsonBuilder().setPrettyPrinting().serializeNulls().create();
+	// Used where compactness matters more than readability, e.g. the journal
+	static final Gson COMPACT_GSON = newGsonBuilder().create();
+
+	static final String FIELD_TASK_NAME = "taskName";
+	static final String FIELD_TASK_TAGS = "taskTags";
+	static final String FIELD_TASK_TYPE = "taskType";
+	static final String FIELD_DATES_EPOCH = "datesEpoch";
+	static final String FIELD_DATES_HUMAN = "datesHuman";
+	static final String FIELD_PRIORITY = "priority";
+	static final String FIELD_ID = "id";
+	static final String FIELD_TAG_NAME = "tagName";
+	static final String FIELD_NUM_TAGS = "numTags";
+
+	static final int NUM_DATES = 4; //see the date array format in Task
+
+	private JsonAdapters() {
+	}
+
+	private static GsonBuilder newGsonBuilder() {
+		return new GsonBuilder()
+				.registerTypeAdapter(Task.class, new TaskAdapter().nullSafe())
+				.registerTypeAdapter(TagCategory.class, new TagCategoryAdapter().nullSafe());
+	}
+
+	/**
+	 * Reads and writes the name, tags, type, epoch dates, human dates, priority and id of a Task.
+	 * A task read from an older savefile, which has no id, keeps the new id it was created with.
+	 */
+	static class TaskAdapter extends TypeAdapter<Task> {
+		@Override
+		public void write(JsonWriter out, Task task) throws IOException {
+			out.beginObject();
+			out.name(FIELD_TASK_NAME).value(task.getTaskName());
+			out.name(FIELD_TASK_TAGS);
+			writeTags(out, task.getTaskTags());
+			out.name(FIELD_TASK_TYPE).value(task.getTaskType());
+			out.name(FIELD_DATES_EPOCH).beginArray();
+			for (long epoch : task.getDatesEpoch()) {
+				out.value(epoch);
+			}
+			out.endArray();
+			out.name(FIELD_DATES_HUMAN).beginArray();
+			for (String human : task.getDatesHuman()) {
+				out.value(human);
+			}
+			out.endArray();
+			out.name(FIELD_PRIORITY).value(task.getPriority());
+			out.name(FIELD_ID).value(task.getId());
+			out.endObject();
+		}
+
+		@Override
+		public Task read(JsonReader in) throws IOException {
+			Task task = new Task();
+			long[] datesEpoch = task.getDatesEpoch();
+			String[] datesHuman = task.getDatesHuman();
+
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL) {
+					in.nextNull(); //null fields are left as their default values
+					continue;
+				}
+
+				switch (name) {
+					case FIELD_TASK_NAME:
+						task.setTaskName(in.nextString());
+						break;
+					case FIELD_TASK_TAGS:
+						task.setTaskTags(Interner.internTags(readTags(in)));
+						break;
+					case FIELD_TASK_TYPE:
+						task.setTaskType(Interner.internType(in.nextString()));
+						break;
+					case FIELD_DATES_EPOCH:
+						datesEpoch = readEpochs(in);
+						break;
+					case FIELD_DATES_HUMAN:
+						datesHuman = readHumanDates(in);
+						break;
+					case FIELD_PRIORITY:
+						task.setPriority(in.nextInt());
+						break;
+					case FIELD_ID:
+						task.setId(in.nextLong());
+						break;
+					default: //e.g. timeConverter and pinTask in older savefiles
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+
+			task.setDates(datesEpoch, datesHuman);
+			return task;
+		}
+
+		private static void writeTags(JsonWriter out, ArrayList<String> tags) throws IOException {
+			if (tags == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginArray();
+			for (String tag : tags) {
+				out.value(tag);
+			}
+			out.endArray();
+		}
+
+		private static ArrayList<String> readTags(JsonReader in) throws IOException {
+			ArrayList<String> tags = new ArrayList<String>();
+			in.beginArray();
+			while (in.hasNext()) {
+				if (in.peek() == JsonToken.NULL) {
+					in.nextNull();
+					tags.add(null);
+				} else {
+					tags.add(in.nextString());
+				}
+			}
+			in.endArray();
+			return tags;
+		}
+
+		/**
+		 * Reads an array of epoch dates. Missing entries are set to Task.NONE and extra entries are ignored,
+		 * so that the returned array always has the length that Task expects.
+		 */
+		private static long[] readEpochs(JsonReader in) throws IOException {
+			long[] epochs = new long[NUM_DATES];
+			Arrays.fill(epochs, Task.NONE);
+			int i = 0;
+			in.beginArray();
+			while (in.hasNext()) {
+				long epoch = in.nextLong();
+				if (i < NUM_DATES) {
+					epochs[i++] = epoch;
+				}
+			}
+			in.endArray();
+			return epochs;
+		}
+
+		/**
+		 * Reads an array of human dates. Missing entries are set to Task.EMPTY and extra entries are ignored,
+		 * so that the returned array always has the length that Task expects.
+		 */
+		private static String[] readHumanDates(JsonReader in) throws IOException {
+			String[] dates = new String[NUM_DATES];
+			Arrays.fill(dates, Task.EMPTY);
+			int i = 0;
+			in.beginArray();
+			while (in.hasNext()) {
+				String date;
+				if (in.peek() == JsonToken.NULL) {
+					in.nextNull();
+					date = Task.EMPTY;
+				} else {
+					date = in.nextString();
+				}
+				if (i < NUM_DATES) {
+					dates[i++] = date;
+				}
+			}
+			in.endArray();
+			return dates;
+		}
+	}
+
+	/**
+	 * Reads and writes the name and count of a TagCategory.
+	 */
+	static class TagCategoryAdapter extends TypeAdapter<TagCategory> {
+		@Override
+		public void write(JsonWriter out, TagCategory tag) throws IOException {
+			out.beginObject();
+			out.name(FIELD_TAG_NAME).value(tag.getTagName());
+			out.name(FIELD_NUM_TAGS).value(tag.getNumTags());
+			out.endObject();
+		}
+
+		@Override
+		public TagCategory read(JsonReader in) throws IOException {
+			TagCategory tag = new TagCategory((String) null);
+			tag.setNumTags(0);
+
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL) {
+					in.nextNull();
+					continue;
+				}
+
+				switch (name) {
+					case FIELD_TAG_NAME:
+						tag.setTagName(Interner.internTag(in.nextString()));
+						break;
+					case FIELD_NUM_TAGS:
+						tag.setNumTags(in.nextInt());
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return tag;
+		}
+	}
+}
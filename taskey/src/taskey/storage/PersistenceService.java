@@ -0,0 +1,231 @@
+package taskey.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import taskey.messenger.TagCategory;
+import taskey.messenger.Task;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class writes the saves requested by Logic to disk on a dedicated background thread (write-behind),
+ * so that the UI thread never waits for disk I/O when the user saves.
+ * <p>Saves requested within the coalescing window of each other are merged into a single write:
+ * <br>- for each tasklist, only the most recent copy is written
+ * <br>- journal records are appended in the order they were requested,
+ * 		 except for those already covered by a later copy of the tasklists
+ * <br>- only the most recent taglist is written
+ * <p>The lists passed to this class must be copies that are no longer modified by the caller.
+ * Before exiting, or before loading from Storage, {@link #flush()} must be called to write any pending save.
+ */
+public class PersistenceService {
+	public static final String PROPERTY_SAVE_WINDOW = "taskey.savewindow"; //in milliseconds, e.g. -Dtaskey.savewindow=0
+	public static final long DEFAULT_SAVE_WINDOW = 500;
+	private static final String THREAD_NAME = "Taskey-Storage";
+
+	private static PersistenceService instance;
+
+	private final ScheduledExecutorService executor;
+	private long saveWindow;
+	private SaveJob pendingJob; //the save that has been requested but not yet handed to the background thread
+	private ScheduledFuture<?> scheduledWrite;
+	private boolean hasFailed = false;
+
+	/**
+	 * A save waiting to be written, which may be the result of merging several requested saves.
+	 */
+	private static class SaveJob {
+		private final StorageBackend storage;
+		private boolean isFullSave = false;
+		private EnumMap<TasklistEnum, ArrayList<Task>> tasklists =
+				new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+		private ArrayList<JournalRecord> records = new ArrayList<JournalRecord>(); //appended after the tasklists
+		private ArrayList<TagCategory> tags;
+
+		private SaveJob(StorageBackend storage) {
+			this.storage = storage;
+		}
+
+		private void mergeTasklists(EnumMap<TasklistEnum, ArrayList<Task>> newTasklists) {
+			isFullSave = true;
+			tasklists.putAll(newTasklists);
+			records.clear(); //the new copies of the tasklists already include these changes
+		}
+
+		private void write() throws IOException {
+			if (isFullSave) {
+				ArrayList<ArrayList<Task>> superlist = new ArrayList<ArrayList<Task>>();
+				for (int i = 0; i < Storage.NUM_TASKLISTS_FROM_LOGIC; i++) {
+					superlist.add(null); //lists that are not in the job are not read by Storage
+				}
+				for (TasklistEnum listType : tasklists.keySet()) {
+					superlist.set(listType.index(), tasklists.get(listType));
+				}
+				EnumSet<TasklistEnum> changedLists = EnumSet.noneOf(TasklistEnum.class);
+				changedLists.addAll(tasklists.keySet());
+				storage.saveTasklists(superlist, changedLists);
+			}
+			if (!records.isEmpty()) {
+				storage.appendToJournal(records);
+			}
+			if (tags != null) {
+				storage.saveTaglist(tags);
+			}
+		}
+	}
+
+	private PersistenceService() {
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, THREAD_NAME);
+				thread.setDaemon(true); //pending saves are written by flush() on exit, not by keeping the JVM alive
+				return thread;
+			}
+		});
+		saveWindow = Long.getLong(PROPERTY_SAVE_WINDOW, DEFAULT_SAVE_WINDOW);
+	}
+
+	public static synchronized PersistenceService getInstance() {
+		if (instance == null) {
+			instance = new PersistenceService();
+		}
+		return instance;
+	}
+
+
+	/*==================*
+	 * Requesting saves *
+	 *==================*/
+	/**
+	 * Requests a save to the given StorageBackend, which will be written on the background thread
+	 * once the coalescing window has passed.
+	 * @param storage the StorageBackend to save to
+	 * @param tasklists copies of the tasklists to be rewritten, as required by
+	 * 		  {@link StorageBackend#saveTasklists(ArrayList, EnumSet)}, or null to only append the journal records
+	 * @param records the journal records to be appended after the tasklists are rewritten, if any;
+	 * 		  these must not include changes that are already in the given tasklists, or they will be journaled twice
+	 * @param tags copy of the taglist to be saved
+	 */
+	public synchronized void save(StorageBackend storage, EnumMap<TasklistEnum, ArrayList<Task>> tasklists,
+								  ArrayList<JournalRecord> records, ArrayList<TagCategory> tags) {
+		assert (storage != null);
+		if (pendingJob != null && pendingJob.storage != storage) {
+			handOver(); //saves to different Storages are not merged
+		}
+		if (pendingJob == null) {
+			final SaveJob job = new SaveJob(storage);
+			pendingJob = job;
+			scheduledWrite = executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					writeIfPending(job);
+				}
+			}, saveWindow, TimeUnit.MILLISECONDS);
+		}
+
+		if (tasklists != null) {
+			pendingJob.mergeTasklists(tasklists);
+		}
+		pendingJob.records.addAll(records);
+		pendingJob.tags = tags;
+	}
+
+	/**
+	 * Writes any pending save immediately, and waits until all requested saves have been written to disk.
+	 * This should be called before exiting, and before loading from Storage.
+	 */
+	public void flush() {
+		try {
+			handOver();
+			executor.submit(new Runnable() { //runs after every save that was handed over before it
+				@Override
+				public void run() {
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns true if any save has failed to be written since the last call to this method.
+	 * The changes in a failed save are lost, so the caller should save all its tasklists again.
+	 */
+	public synchronized boolean checkFailed() {
+		boolean failed = hasFailed;
+		hasFailed = false;
+		return failed;
+	}
+
+	/**
+	 * Sets the coalescing window, i.e. how long a requested save waits for further saves to be merged into it.
+	 * @param milliseconds the new window; 0 writes each save as soon as the background thread is free
+	 */
+	public synchronized void setSaveWindow(long milliseconds) {
+		assert (milliseconds >= 0);
+		saveWindow = milliseconds;
+	}
+
+
+	/*=========*
+	 * Writing *
+	 *=========*/
+	/**
+	 * Hands the pending save over to the background thread to be written immediately.
+	 * Each job is taken from pendingJob exactly once, either here or in writeIfPending, 
+	 * so jobs are always written in the order they were created.
+	 */
+	private synchronized void handOver() {
+		if (pendingJob == null) {
+			return;
+		}
+		final SaveJob job = pendingJob;
+		pendingJob = null;
+		scheduledWrite.cancel(false); //if it has already started, writeIfPending will find the job taken
+		scheduledWrite = null;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				write(job);
+			}
+		});
+	}
+
+	/**
+	 * Called on the background thread once the coalescing window of the given job has passed.
+	 */
+	private void writeIfPending(SaveJob job) {
+		synchronized (this) {
+			if (pendingJob != job) {
+				return; //already handed over by flush()
+			}
+			pendingJob = null;
+			scheduledWrite = null;
+		}
+		write(job);
+	}
+
+	private void write(SaveJob job) {
+		try {
+			job.write();
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			System.err.println("{Storage} Background save failed");
+			synchronized (this) {
+				hasFailed = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package taskey.storage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import taskey.messenger.Task;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class holds the changes made to a tasklist file outside Taskey, e.g. by the user in a text editor,
+ * as found by the SavefileWatcher. Logic applies them on top of the task lists in memory,
+ * so that changes made in Taskey since the last save are kept as well.
+ * <p>The changes are the tasks added to and removed from the file since Taskey last read or wrote it.
+ * Tasks are compared with {@link Task#equals(Object)}, so an edited task is removed and then added again.
+ */
+public class SavefileChange {
+	private final TasklistEnum listType;
+	private final ArrayList<Task> addedTasks;
+	private final ArrayList<Task> removedTasks;
+
+	SavefileChange(TasklistEnum listType, ArrayList<Task> addedTasks, ArrayList<Task> removedTasks) {
+		this.listType = listType;
+		this.addedTasks = addedTasks;
+		this.removedTasks = removedTasks;
+	}
+
+	/**
+	 * Returns the changes from oldList, the contents of the file when Taskey last read or wrote it,
+	 * to newList, the contents of the file now.
+	 */
+	static SavefileChange diff(TasklistEnum listType, ArrayList<Task> oldList, ArrayList<Task> newList) {
+		HashSet<Task> oldTasks = new HashSet<Task>(oldList);
+		HashSet<Task> newTasks = new HashSet<Task>(newList);
+		ArrayList<Task> addedTasks = new ArrayList<Task>();
+		for (Task task : newList) {
+			if (!oldTasks.contains(task)) {
+				addedTasks.add(task);
+			}
+		}
+		ArrayList<Task> removedTasks = new ArrayList<Task>();
+		for (Task task : oldList) {
+			if (!newTasks.contains(task)) {
+				removedTasks.add(task);
+			}
+		}
+		return new SavefileChange(listType, addedTasks, removedTasks);
+	}
+
+	/**
+	 * Returns the saved list whose file was changed, i.e. PENDING or EXPIRED.
+	 */
+	public TasklistEnum getListType() {
+		return listType;
+	}
+
+	public ArrayList<Task> getAddedTasks() {
+		return addedTasks;
+	}
+
+	public ArrayList<Task> getRemovedTasks() {
+		return removedTasks;
+	}
+
+	public boolean isEmpty() {
+		return addedTasks.isEmpty() && removedTasks.isEmpty();
+	}
+}
@@ -0,0 +1,209 @@
+package taskey.storage;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonParseException;
+
+import taskey.messenger.Task;
+import taskey.storage.BinaryFormat.InvalidBinaryFileException;
+import taskey.storage.DataVerifier.InvalidTaskException;
+import taskey.storage.Storage.SaveFormat;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class watches Storage's directory for changes made to the PENDING and EXPIRED savefiles outside Taskey,
+ * e.g. by the user in a text editor, so that they can be applied to the task lists in memory
+ * instead of being overwritten by the next save.
+ * <p>It keeps the contents of each watched file as Taskey last read or wrote it.
+ * When a file is modified, it waits until the file has settled, and skips it if it still matches
+ * its VerificationStamps, i.e. if Taskey wrote it. Otherwise it reads the file, and queues the differences
+ * from the last known contents as a SavefileChange, which Storage hands to Logic when it polls.
+ * A file that cannot be read, e.g. because it is only half written, is skipped until it is modified again.
+ * <p>Storage holds the write lock while it writes a watched file and updates its contents here,
+ * so that the watcher never mistakes one of Taskey's own saves for an external change.
+ */
+class SavefileWatcher {
+	static final long SETTLE_TIME = 300; //in milliseconds; events within this time of each other are handled together
+	static final EnumSet<TasklistEnum> watchedLists = EnumSet.of(TasklistEnum.PENDING, TasklistEnum.EXPIRED);
+	private static final String THREAD_NAME = "Taskey-Watcher";
+
+	private final File directory;
+	private final SaveFormat saveFormat;
+	private final Object writeLock;
+	// Contents of each watched file when Taskey last read or wrote it; null until the file is first read
+	private final EnumMap<TasklistEnum, ArrayList<Task>> contents =
+			new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+	private final ArrayList<SavefileChange> changes = new ArrayList<SavefileChange>(); //not yet polled by Storage
+	private WatchService watchService;
+
+	/**
+	 * @param directory the directory to watch
+	 * @param saveFormat the format of the savefiles to watch
+	 * @param writeLock the lock that Storage holds while it writes a watched file
+	 */
+	SavefileWatcher(File directory, SaveFormat saveFormat, Object writeLock) {
+		this.directory = directory;
+		this.saveFormat = saveFormat;
+		this.writeLock = writeLock;
+	}
+
+	/**
+	 * Starts watching the directory on a daemon thread, which first reads the current contents of the watched files.
+	 * @throws IOException if the directory could not be watched
+	 */
+	void start() throws IOException {
+		watchService = directory.toPath().getFileSystem().newWatchService();
+		directory.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, THREAD_NAME);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching the directory. Changes that were not polled yet are discarded.
+	 */
+	void close() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Records the given list as the contents of its file, after Storage has written it.
+	 * The caller must hold the write lock, and must not modify the list afterwards.
+	 */
+	void setContents(TasklistEnum listType, ArrayList<Task> tasklist) {
+		if (watchedLists.contains(listType)) {
+			contents.put(listType, tasklist);
+		}
+	}
+
+	/**
+	 * Returns the changes found since the last call, in the order they were found, and clears them.
+	 */
+	synchronized ArrayList<SavefileChange> poll() {
+		ArrayList<SavefileChange> polled = new ArrayList<SavefileChange>(changes);
+		changes.clear();
+		return polled;
+	}
+
+	/*==========*
+	 * Watching *
+	 *==========*/
+	private void watch() {
+		synchronized (writeLock) {
+			for (TasklistEnum listType : watchedLists) {
+				if (!contents.containsKey(listType)) { //not already written by Storage since the watcher started
+					contents.put(listType, readContents(getSavefile(listType)));
+				}
+			}
+		}
+
+		try {
+			while (true) {
+				EnumSet<TasklistEnum> modifiedLists = EnumSet.noneOf(TasklistEnum.class);
+				WatchKey key = watchService.take();
+				while (key != null) { //collect the events until the files have settled
+					addModifiedLists(key, modifiedLists);
+					if (!key.reset()) {
+						return; //the directory is no longer accessible
+					}
+					key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+				}
+				for (TasklistEnum listType : modifiedLists) {
+					checkForChanges(listType);
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			return; //stopped by close()
+		} catch (InterruptedException e) {
+			return;
+		}
+	}
+
+	private void addModifiedLists(WatchKey key, EnumSet<TasklistEnum> modifiedLists) {
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (!(event.context() instanceof Path)) { //events were lost, so check all the watched files
+				modifiedLists.addAll(watchedLists);
+				continue;
+			}
+			TasklistEnum listType = TasklistEnum.enumOf(event.context().toString());
+			if (watchedLists.contains(listType) && event.context().toString().equals(listType.filename(saveFormat))) {
+				modifiedLists.add(listType);
+			}
+		}
+	}
+
+	/**
+	 * Checks the savefile of the given list for changes made outside Taskey, and queues them if there are any.
+	 */
+	private void checkForChanges(TasklistEnum listType) {
+		File src = getSavefile(listType);
+		synchronized (writeLock) {
+			try {
+				if (!src.exists() || VerificationStamps.ofFile(src).matches(src)) {
+					return; //deleted or written by Taskey, which already updated the contents
+				}
+			} catch (IOException e) {
+				return;
+			}
+
+			ArrayList<Task> newContents;
+			try {
+				newContents = new StorageReader().readVerifiedTasklist(src);
+			} catch (FileNotFoundException e) {
+				return;
+			} catch (InvalidTaskException | JsonParseException | InvalidBinaryFileException e) {
+				System.err.println("{Storage} Ignoring invalid external change to " + src.getName());
+				return; //the user may still be editing it; it is read again when it is next modified
+			}
+
+			SavefileChange change = SavefileChange.diff(listType, contents.get(listType), newContents);
+			contents.put(listType, newContents);
+			if (!change.isEmpty()) {
+				synchronized (this) {
+					changes.add(change);
+				}
+				System.out.println("{Storage} External change to " + src.getName() + " | "
+						+ change.getAddedTasks().size() + " added, " + change.getRemovedTasks().size() + " removed");
+			}
+		}
+	}
+
+	/**
+	 * Returns the tasks in the given file, or an empty list if it does not exist or cannot be read.
+	 */
+	private static ArrayList<Task> readContents(File src) {
+		try {
+			return new StorageReader().readVerifiedTasklist(src);
+		} catch (FileNotFoundException | InvalidTaskException | JsonParseException | InvalidBinaryFileException e) {
+			return new ArrayList<Task>();
+		}
+	}
+
+	private File getSavefile(TasklistEnum listType) {
+		return new File(directory, listType.filename(saveFormat));
+	}
+}
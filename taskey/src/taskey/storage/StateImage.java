@@ -0,0 +1,284 @@
+package taskey.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+
+import taskey.messenger.Task;
+import taskey.storage.BinaryFormat.InvalidBinaryFileException;
+import taskey.storage.Storage.SaveFormat;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class is the startup state image, as written to STATE.taskeyimage when Taskey exits cleanly.
+ * It holds Logic's PENDING and EXPIRED lists in their sorted order, along with the GENERAL, DEADLINE, EVENT
+ * and THIS_WEEK lists as indices into the PENDING list, so that the next launch can use them as they are,
+ * instead of parsing and verifying the savefiles, replaying the journal, and deriving and sorting the lists.
+ * The COMPLETED list is not included, since the archive is loaded on demand anyway.
+ * <p>The image is only valid for the savefiles and the journal that it was written with.
+ * It records the length and last-modified time of each of these files, as well as the checksum
+ * in the VerificationStamps of each tasklist file, and is ignored if any of them has changed.
+ * A tasklist file without a matching stamp, e.g. one edited since it was loaded, prevents the image from being written.
+ *
+ * <p>File layout: the 4 magic bytes "TSKI", 1 version byte, the save format (UTF), the time it was written
+ * and the number of journal records (long, int), and the number of input files (int).
+ * Then for each input file: its name (UTF), its length (-1 if it does not exist), last-modified time
+ * and checksum (longs; the checksum is 0 for the journal).
+ * Then the PENDING and EXPIRED lists in the binary format of BinaryFormat,
+ * and for each of THIS_WEEK, GENERAL, DEADLINE and EVENT, the number of tasks and their indices in PENDING (ints).
+ */
+public class StateImage {
+	static final String FILENAME = "STATE.taskeyimage";
+	static final byte[] MAGIC = {'T', 'S', 'K', 'I'};
+	static final int VERSION = 1;
+	static final int INDEX_THIS_WEEK = 0; //index of the THIS_WEEK list in the superlist from Logic
+	private static final TasklistEnum[] DERIVED_LISTS = {TasklistEnum.GENERAL, TasklistEnum.DEADLINE,
+	                                                     TasklistEnum.EVENT};
+
+	private final long createdTime;
+	private final int journalRecordCount;
+	private final EnumMap<TasklistEnum, ArrayList<Task>> lists;
+	private final ArrayList<Task> thisWeekList;
+
+	private StateImage(long createdTime, int journalRecordCount, EnumMap<TasklistEnum, ArrayList<Task>> lists,
+					   ArrayList<Task> thisWeekList) {
+		this.createdTime = createdTime;
+		this.journalRecordCount = journalRecordCount;
+		this.lists = lists;
+		this.thisWeekList = thisWeekList;
+	}
+
+	/**
+	 * Returns the time at which the image was written, in epoch seconds.
+	 * Logic uses this to tell whether the THIS_WEEK list is still for the current week.
+	 */
+	public long getCreatedTime() {
+		return createdTime;
+	}
+
+	/**
+	 * Returns the task lists in the same order as {@link Storage#loadAllTasklists()}.
+	 * Storage sets the COMPLETED list before the image is returned to Logic.
+	 */
+	public ArrayList<ArrayList<Task>> getTaskLists() {
+		ArrayList<ArrayList<Task>> superlist = new ArrayList<ArrayList<Task>>();
+		for (TasklistEnum listType : TasklistEnum.values()) {
+			superlist.add(lists.get(listType));
+		}
+		return superlist;
+	}
+
+	/**
+	 * Returns the THIS_WEEK list as it was when the image was written.
+	 */
+	public ArrayList<Task> getThisWeekList() {
+		return thisWeekList;
+	}
+
+	int getJournalRecordCount() {
+		return journalRecordCount;
+	}
+
+	void setArchive(ArrayList<Task> archive) {
+		lists.put(TasklistEnum.COMPLETED, archive);
+	}
+
+	/*=======*
+	 * Write *
+	 *=======*/
+	/**
+	 * Writes the image of the given superlist from Logic to imageFile, through a temp file.
+	 * @param imageFile the image file
+	 * @param saveFormat the current save format
+	 * @param savefiles the tasklist files of the lists in the image, in both save formats
+	 * @param journalFile the journal file
+	 * @param journalRecordCount the number of records in the journal
+	 * @param superlist the task lists from Logic, with THIS_WEEK at index 0 and the rest at their TasklistEnum index
+	 * @throws IOException if a savefile has no matching stamp, a derived list is not part of the PENDING list,
+	 * 		   or the image could not be written
+	 */
+	static void write(File imageFile, SaveFormat saveFormat, File[] savefiles, File journalFile,
+					  int journalRecordCount, ArrayList<ArrayList<Task>> superlist) throws IOException {
+		ArrayList<Task> pendingList = superlist.get(TasklistEnum.PENDING.index());
+		IdentityHashMap<Task, Integer> pendingIndices = new IdentityHashMap<Task, Integer>();
+		for (int i = 0; i < pendingList.size(); i++) {
+			pendingIndices.put(pendingList.get(i), i);
+		}
+
+		File temp = new File(imageFile.getPath() + StorageWriter.TEMP_FILE_SUFFIX);
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			data.write(MAGIC);
+			data.writeByte(VERSION);
+			data.writeUTF(saveFormat.name());
+			data.writeLong(System.currentTimeMillis() / 1000);
+			data.writeInt(journalRecordCount);
+
+			data.writeInt(savefiles.length + 1);
+			for (File savefile : savefiles) {
+				writeFileStamp(data, savefile, getChecksum(savefile));
+			}
+			writeFileStamp(data, journalFile, 0);
+
+			BinaryFormat binaryFormat = new BinaryFormat();
+			binaryFormat.writeTasklist(pendingList, data);
+			binaryFormat.writeTasklist(superlist.get(TasklistEnum.EXPIRED.index()), data);
+			writeIndices(data, superlist.get(INDEX_THIS_WEEK), pendingIndices);
+			for (TasklistEnum listType : DERIVED_LISTS) {
+				writeIndices(data, superlist.get(listType.index()), pendingIndices);
+			}
+			data.close();
+		} catch (IOException e) {
+			data.close();
+			temp.delete();
+			throw e;
+		}
+		Files.move(temp.toPath(), imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Returns the checksum of the given tasklist file from its VerificationStamps, or 0 if the file does not exist.
+	 * @throws IOException if the file has no stamp that matches its length, i.e. it may not match the loaded lists
+	 */
+	private static long getChecksum(File savefile) throws IOException {
+		if (!savefile.exists()) {
+			return 0;
+		}
+		long[] stamp = VerificationStamps.ofFile(savefile).get(savefile.getName());
+		if (stamp == null || stamp[0] != savefile.length()) {
+			throw new IOException("No verification stamp for " + savefile.getName());
+		}
+		return stamp[1];
+	}
+
+	private static void writeFileStamp(DataOutputStream data, File file, long checksum) throws IOException {
+		data.writeUTF(file.getName());
+		data.writeLong(file.exists() ? file.length() : -1);
+		data.writeLong(file.lastModified());
+		data.writeLong(checksum);
+	}
+
+	private static void writeIndices(DataOutputStream data, ArrayList<Task> list,
+									 IdentityHashMap<Task, Integer> pendingIndices) throws IOException {
+		data.writeInt(list.size());
+		for (Task task : list) {
+			Integer index = pendingIndices.get(task);
+			if (index == null) {
+				throw new IOException("Task is not in the PENDING list: " + task.getTaskName());
+			}
+			data.writeInt(index);
+		}
+	}
+
+	/*======*
+	 * Read *
+	 *======*/
+	/**
+	 * Reads the image file, and checks that it was written with the current save format, savefiles and journal.
+	 * @param imageFile the image file
+	 * @param saveFormat the current save format
+	 * @param savefiles the tasklist files of the lists in the image, in both save formats
+	 * @param journalFile the journal file
+	 * @return the image without the COMPLETED list, or null if the image does not exist, is invalid, or is out of date
+	 */
+	static StateImage read(File imageFile, SaveFormat saveFormat, File[] savefiles, File journalFile) {
+		if (!imageFile.exists()) {
+			return null;
+		}
+
+		DataInputStream data = null;
+		try {
+			data = new DataInputStream(new BufferedInputStream(new FileInputStream(imageFile)));
+			byte[] magic = new byte[MAGIC.length];
+			data.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || data.readUnsignedByte() != VERSION
+					|| !data.readUTF().equals(saveFormat.name())) {
+				return null;
+			}
+			long createdTime = data.readLong();
+			int journalRecordCount = data.readInt();
+
+			if (data.readInt() != savefiles.length + 1) {
+				return null;
+			}
+			for (File savefile : savefiles) {
+				if (!matchesFileStamp(data, savefile, true)) {
+					return null;
+				}
+			}
+			if (!matchesFileStamp(data, journalFile, false)) {
+				return null;
+			}
+
+			BinaryFormat binaryFormat = new BinaryFormat();
+			EnumMap<TasklistEnum, ArrayList<Task>> lists =
+					new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+			ArrayList<Task> pendingList = binaryFormat.readTasklist(data);
+			lists.put(TasklistEnum.PENDING, pendingList);
+			lists.put(TasklistEnum.EXPIRED, binaryFormat.readTasklist(data));
+			ArrayList<Task> thisWeekList = readIndices(data, pendingList);
+			for (TasklistEnum listType : DERIVED_LISTS) {
+				lists.put(listType, readIndices(data, pendingList));
+			}
+			return new StateImage(createdTime, journalRecordCount, lists, thisWeekList);
+		} catch (IOException | InvalidBinaryFileException e) {
+			System.err.println("{Storage} Invalid state image");
+			return null;
+		} finally {
+			if (data != null) {
+				try {
+					data.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the next file stamp in the image, and returns true if the given file still matches it.
+	 * @param hasChecksum true if the file is a tasklist file, whose checksum must still match its VerificationStamps
+	 */
+	private static boolean matchesFileStamp(DataInputStream data, File file, boolean hasChecksum) throws IOException {
+		String filename = data.readUTF();
+		long length = data.readLong();
+		long lastModified = data.readLong();
+		long checksum = data.readLong();
+		if (!filename.equals(file.getName())) {
+			return false;
+		} else if (length == -1) {
+			return !file.exists();
+		} else if (file.length() != length || file.lastModified() != lastModified) {
+			return false;
+		}
+		return !hasChecksum || VerificationStamps.ofFile(file).isVerified(filename, length, checksum);
+	}
+
+	private static ArrayList<Task> readIndices(DataInputStream data, ArrayList<Task> pendingList) throws IOException {
+		int size = data.readInt();
+		if (size < 0 || size > pendingList.size()) {
+			throw new IOException("Invalid list size " + size);
+		}
+		ArrayList<Task> list = new ArrayList<Task>(size);
+		for (int i = 0; i < size; i++) {
+			int index = data.readInt();
+			if (index < 0 || index >= pendingList.size()) {
+				throw new IOException("Invalid index " + index);
+			}
+			list.add(pendingList.get(index));
+		}
+		return list;
+	}
+}
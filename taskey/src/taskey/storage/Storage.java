@@ -6,10 +6,23 @@ import java.io.IOException;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystemException;
+import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.NotDirectoryException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import taskey.messenger.TagCategory;
 import taskey.messenger.Task;
@@ -17,30 +30,102 @@ import taskey.messenger.Task;
 /**
  * @@author A0121618M
  * This class exposes public methods for:
- * - Saving/loading task lists
+ * - Saving/loading task lists, in either the JSON or the binary format
+ * - Journaling the changes made to the task lists between saves
  * - Saving/loading tags
  * - Setting the Storage directory
+ * - Watching the savefiles for changes made outside Taskey
+ * It is the StorageBackend that keeps the savefiles on disk, in the JSON or the binary format.
  */
-public class Storage {
+public class Storage implements StorageBackend {
 	private StorageReader storageReader;
 	private StorageWriter storageWriter;
 	private DirectoryManager directoryManager;
-	private File directory;
+	private StorageJournal journal;
+	private volatile File directory; //set by the migration thread once a move is done
+	private SaveFormat saveFormat;
+	// Saved lists whose savefiles may not match what was last loaded or saved, e.g. after a journal replay.
+	// Synchronized since saves may run on PersistenceService's background thread
+	private Set<TasklistEnum> staleLists = Collections.synchronizedSet(EnumSet.copyOf(TasklistEnum.savedLists));
+	private ExecutorService loadExecutor; //loads the savefiles in parallel
+	private volatile Future<ArrayList<TagCategory>> prefetchedTags; //taglist loaded along with the tasklists
+	private ArchiveStore archiveStore; //saves the COMPLETED list as monthly segments
+	private volatile SavefileWatcher watcher; //null unless Logic has asked for external changes to be watched
+	private final Object writeLock = new Object(); //held while writing a watched savefile
+	private ExecutorService migrationExecutor; //moves the savefiles to a new directory in the background
+	private volatile Future<?> migration; //the last move started by setDirectory; null if there was none
+	private volatile Exception migrationFailure; //why the last move failed, until checkMigrationFailed reports it
 
 	public static final File DEFAULT_DIRECTORY = new File("Taskey savefiles"); //public for unit test
 	public static final String FILENAME_TAGS = "TAGS.taskey";
+	public static final String FILENAME_JOURNAL = "JOURNAL.taskey";
+	public static final String FILENAME_ARCHIVE_MANIFEST = ArchiveStore.FILENAME_MANIFEST;
+	public static final String FILENAME_VERIFICATION_STAMPS = VerificationStamps.FILENAME;
+	public static final String FILENAME_STATE_IMAGE = StateImage.FILENAME;
+	public static final String FILENAME_RECOVERY_REPORT = "RECOVERY.taskeyreport"; //written when a bad tasklist is salvaged
+	public static final String FILENAME_MIGRATION_JOURNAL = DirectoryMigration.FILENAME; //exists while moving the savefiles
 	public static final String FILENAME_DIRCONFIG = "directory_setting.taskeyconfig";
+	public static final String PROPERTY_BACKEND = "taskey.backend"; //e.g. -Dtaskey.backend=memory to skip disk I/O
+	public static final String BACKEND_MEMORY = "memory";
+	public static final String PROPERTY_SAVE_FORMAT = "taskey.saveformat"; //e.g. -Dtaskey.saveformat=binary
+	public static final String PROPERTY_COMPRESS_ARCHIVE = "taskey.compressarchive"; //e.g. -Dtaskey.compressarchive=true
+	public static final String PROPERTY_LOAD_THREADS = "taskey.loadthreads"; //e.g. -Dtaskey.loadthreads=1 to load sequentially
+	public static final int DEFAULT_LOAD_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+	private static final String LOAD_THREAD_NAME = "Taskey-Loader";
+	private static final String MIGRATION_THREAD_NAME = "Taskey-Migration";
 	public static final int NUM_TASKLISTS_FROM_LOGIC = taskey.logic.LogicMemory.NUM_TASK_LISTS;
 	
 	public static final String[] FILENAMES;
 	// This array contains all the savefile names used in storage
 	static {
-		FILENAMES = new String[TasklistEnum.savedLists.size() + 1];
+		FILENAMES = new String[TasklistEnum.savedLists.size() * SaveFormat.values().length + 7];
 		int i = 0;
 		for (TasklistEnum listType : TasklistEnum.savedLists) {
-			FILENAMES[i++] = listType.filename();
+			for (SaveFormat format : SaveFormat.values()) {
+				FILENAMES[i++] = listType.filename(format);
+			}
+		}
+		FILENAMES[i++] = FILENAME_TAGS;
+		FILENAMES[i++] = FILENAME_JOURNAL;
+		FILENAMES[i++] = FILENAME_ARCHIVE_MANIFEST;
+		FILENAMES[i++] = FILENAME_VERIFICATION_STAMPS;
+		FILENAMES[i++] = FILENAME_STATE_IMAGE;
+		FILENAMES[i++] = FILENAME_RECOVERY_REPORT;
+		FILENAMES[i] = FILENAME_MIGRATION_JOURNAL;
+	}
+
+	/**
+	 * Returns true if the given file name is that of a savefile used in storage, 
+	 * i.e. it is in FILENAMES or it is the name of a segment of the archive, e.g. ARCHIVE-2016-04.taskey
+	 */
+	public static boolean isSavefileName(String filename) {
+		return Arrays.asList(FILENAMES).contains(filename) || ArchiveStore.parseMonth(filename) != -1;
+	}
+
+	/**
+	 * The formats that the saved tasklists can be written in. The tags file and the journal are always in JSON.
+	 * JSON savefiles are human-readable and can be edited by the user, 
+	 * while binary savefiles are smaller and faster to load and save.
+	 */
+	public enum SaveFormat {
+		JSON,
+		BINARY;
+
+		/**
+		 * Returns the format named by the given string, ignoring case, or JSON if the string is null or invalid.
+		 */
+		public static SaveFormat parse(String name) {
+			for (SaveFormat format : SaveFormat.values()) {
+				if (format.name().equalsIgnoreCase(name)) {
+					return format;
+				}
+			}
+			return JSON;
+		}
+
+		SaveFormat other() {
+			return (this == JSON) ? BINARY : JSON;
 		}
-		FILENAMES[i] = FILENAME_TAGS;
 	}
 
 	/**
@@ -78,6 +163,13 @@ public class Storage {
 			return filename;
 		}
 
+		/**
+		 * Returns the filename of this list when it is saved in the given format.
+		 */
+		public String filename(SaveFormat format) {
+			return (format == SaveFormat.BINARY) ? filename + BinaryFormat.BINARY_SUFFIX : filename;
+		}
+
 		public int index() {
 			return index;
 		}
@@ -101,7 +193,7 @@ public class Storage {
 		 */
 		public static TasklistEnum enumOf(String fileName) {
 			for (TasklistEnum enumType : TasklistEnum.values()) {
-				if (enumType.filename.equals(fileName)) {
+				if (enumType.filename.equals(fileName) || enumType.filename(SaveFormat.BINARY).equals(fileName)) {
 					return enumType;
 				}
 			}
@@ -114,12 +206,12 @@ public class Storage {
 	 * Storage constructor and initializer.
 	 * Attempts to load and set the last used directory.
 	 * If none was found, DEFAULT_DIRECTORY will be set instead.
+	 * If a move of the savefiles was interrupted when Taskey last ran, it is finished or rolled back first.
+	 * The save format is read from the system property PROPERTY_SAVE_FORMAT, and defaults to JSON.
 	 * Post-condition: all the fields of Storage have been instantiated.
 	 */
 	public Storage() {
-		storageReader = new StorageReader();
-		storageWriter = new StorageWriter();
-		directoryManager = new DirectoryManager();
+		initializeComponents();
 
 		File loadedDirectory = storageReader.loadDirectoryConfigFile(FILENAME_DIRCONFIG);
 		if (loadedDirectory != null) {
@@ -134,6 +226,80 @@ public class Storage {
 			directoryManager.createDirectory(DEFAULT_DIRECTORY);
 			directory = DEFAULT_DIRECTORY;
 		}
+		directory = directoryManager.resumeMigration(directory);
+		initializeArchive();
+	}
+
+	/**
+	 * Creates the StorageBackend named by the given string, ignoring case, which is one of:
+	 * <br>- "json" or "binary": a Storage that saves in that format
+	 * <br>- BACKEND_MEMORY: an InMemoryStorage, which does no disk I/O at all
+	 * <br>Any other name, or null, creates a Storage whose save format is read from PROPERTY_SAVE_FORMAT.
+	 * Logic passes the value of the system property PROPERTY_BACKEND.
+	 * @param name the name of the backend
+	 * @return the new backend
+	 */
+	public static StorageBackend createBackend(String name) {
+		if (BACKEND_MEMORY.equalsIgnoreCase(name)) {
+			return new InMemoryStorage();
+		}
+		Storage storage = new Storage();
+		for (SaveFormat format : SaveFormat.values()) {
+			if (format.name().equalsIgnoreCase(name)) {
+				storage.setSaveFormat(format);
+			}
+		}
+		return storage;
+	}
+
+	/**
+	 * Creates a Storage that uses the given directory, without reading or writing the directory config file.
+	 * This is used by StorageBenchmark, so that benchmarking does not change the user's directory setting.
+	 * @param directory the directory to load from and save to
+	 */
+	Storage(File directory) {
+		initializeComponents();
+		directoryManager.createDirectory(directory);
+		this.directory = directory;
+		initializeArchive();
+	}
+
+	private void initializeComponents() {
+		storageReader = new StorageReader();
+		storageWriter = new StorageWriter();
+		directoryManager = new DirectoryManager();
+		journal = new StorageJournal();
+		saveFormat = SaveFormat.parse(System.getProperty(PROPERTY_SAVE_FORMAT));
+		loadExecutor = createExecutor(Integer.getInteger(PROPERTY_LOAD_THREADS, DEFAULT_LOAD_THREADS), LOAD_THREAD_NAME);
+		migrationExecutor = createExecutor(1, MIGRATION_THREAD_NAME);
+	}
+
+	/**
+	 * Creates the ArchiveStore, once the directory has been set.
+	 * Compression of the archive is read from the system property PROPERTY_COMPRESS_ARCHIVE, and defaults to off.
+	 */
+	private void initializeArchive() {
+		archiveStore = new ArchiveStore(directory, saveFormat);
+		archiveStore.setCompression(Boolean.getBoolean(PROPERTY_COMPRESS_ARCHIVE));
+	}
+
+	/**
+	 * Creates the thread pool used to load the savefiles, or to move them. Its threads are daemons and exit when idle,
+	 * so that a Storage that is no longer used does not keep any threads around.
+	 */
+	private static ExecutorService createExecutor(int numThreads, final String threadName) {
+		numThreads = Math.max(1, numThreads);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, threadName);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
 	}
 
 
@@ -143,6 +309,11 @@ public class Storage {
 	/**
 	 * Returns the list of task lists loaded from Storage.
 	 * Logic calls this on program startup, or when the user loads from a directory using the setdir command.
+	 * The saved lists are read from their snapshot files, after which the journal is replayed on top of them.
+	 * Any saved list that is only found in the other save format is migrated to the current save format.
+	 * The savefiles are read and verified in parallel, and the taglist is loaded along with them,
+	 * so that the following call to {@link #loadTaglist()} need not wait for disk I/O.
+	 * The time taken to load each file is printed.
 	 * <p>Post-conditions:
 	 * <br>- The lists in the returned superlist are in the same order as the enum constants in TasklistEnum.
 	 * <br>- These lists do not include the THIS_WEEK and ACTION list.
@@ -150,20 +321,100 @@ public class Storage {
 	 * @return the list of tasklists read from disk, some or all of which may be empty
 	 */
 	public ArrayList<ArrayList<Task>> loadAllTasklists() {
-		ArrayList<ArrayList<Task>> superlist = new ArrayList<ArrayList<Task>>();
+		awaitMigration();
+		long startTime = System.nanoTime();
+		File journalFile = new File(directory, FILENAME_JOURNAL);
+		final boolean hasJournal = journalFile.exists();
+		staleLists.clear();
+
+		prefetchTaglist();
+		EnumMap<TasklistEnum, Future<ArrayList<Task>>> loadingLists = 
+				new EnumMap<TasklistEnum, Future<ArrayList<Task>>>(TasklistEnum.class);
+		for (final TasklistEnum listType : TasklistEnum.savedLists) {
+			loadingLists.put(listType, loadExecutor.submit(new Callable<ArrayList<Task>>() {
+				@Override
+				public ArrayList<Task> call() {
+					//each thread has its own StorageReader, since DataVerifier is not thread-safe
+					if (listType == TasklistEnum.COMPLETED) {
+						return archiveStore.load(new StorageReader());
+					}
+					return loadSavedList(listType, new StorageReader());
+				}
+			}));
+		}
 
+		EnumMap<TasklistEnum, ArrayList<Task>> savedLists = new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+		for (TasklistEnum listType : TasklistEnum.savedLists) {
+			savedLists.put(listType, getLoaded(loadingLists.get(listType)));
+		}
+
+		// Bring the snapshot up to date before deriving the GENERAL, DEADLINE and EVENT lists from it
+		if (hasJournal && journal.replay(journalFile, savedLists) > 0) {
+			staleLists.addAll(TasklistEnum.savedLists); //the savefiles no longer match the loaded lists
+		}
+		DerivedLists derivedLists = DerivedLists.partition(savedLists.get(TasklistEnum.PENDING));
+
+		ArrayList<ArrayList<Task>> superlist = new ArrayList<ArrayList<Task>>();
 		for (TasklistEnum listType : TasklistEnum.values()) {
-			File src = new File(directory, listType.filename());
-			ArrayList<Task> loadedList = storageReader.loadTasklist(src, listType);
-			superlist.add(loadedList);
+			if (savedLists.containsKey(listType)) {
+				superlist.add(savedLists.get(listType));
+			} else {
+				superlist.add(derivedLists.get(listType));
+			}
 		}
+		System.out.println("{Storage} Tasklists loaded | " + toMillis(System.nanoTime() - startTime) + " ms");
 		return superlist;
 	}
 
+	/**
+	 * Loads the taglist in the background, so that the following call to {@link #loadTaglist()} need not wait for it.
+	 */
+	private void prefetchTaglist() {
+		prefetchedTags = loadExecutor.submit(new Callable<ArrayList<TagCategory>>() {
+			@Override
+			public ArrayList<TagCategory> call() {
+				return loadTaglist(new StorageReader());
+			}
+		});
+	}
+
+	/**
+	 * Waits for the given loading task, or move of the savefiles, to complete and returns its result.
+	 * Since these tasks do not throw checked exceptions, any exception thrown by them is rethrown as is.
+	 */
+	private static <T> T getLoaded(Future<T> future) {
+		boolean isInterrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					isInterrupted = true; //the load must still complete, so keep waiting
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			if (isInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static long toMillis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
 	/**
 	 * Saves the PENDING, EXPIRED and COMPLETED lists of the given superlist to file.
 	 * If any of the above lists are empty, instead of saving an empty list, the file will be deleted instead.
 	 * These savefiles are mutually exclusive hence any one of them can be safely deleted.
+	 * Since the savefiles now form a full snapshot of the task lists, the journal is cleared afterwards.
 	 * <p>Pre-conditions:
 	 * <br>- Starting from index 1, the lists in the given superlist
 	 * 		 must be in the same order as the enum constants in TasklistEnum.
@@ -171,21 +422,302 @@ public class Storage {
 	 * <br>- Index 7 is reserved for the ACTION list and is not saved to disk because it is session-dependent.
 	 * <br>- The GENERAL, DEADLINE and EVENT lists are not saved because they can be derived from the PENDING list.
 	 * @param superlist the list of tasklists to be saved
-	 * @throws IOException when FileWriter fails to write any single list to file
+	 * @throws IOException when any single list could not be written to file
 	 */
 	public void saveAllTasklists(ArrayList<ArrayList<Task>> superlist) throws IOException {
+		saveTasklists(superlist, TasklistEnum.savedLists);
+	}
+
+	/**
+	 * Same as {@link #saveAllTasklists(ArrayList)}, except that only the saved lists in changedLists are rewritten.
+	 * The other saved lists are skipped and not read at all, so Logic need not make copies of them, 
+	 * and they may even be null. See {@link #getTasklistsToSave(EnumSet)} for the lists that will be read.
+	 * Storage still rewrites any list whose savefile it knows to be out of date, e.g. after replaying the journal
+	 * on load or changing the save format; such lists are read from the given superlist as well.
+	 * <p>Pre-condition:
+	 * <br>- The saved lists not in changedLists must be unchanged since they were last loaded or saved.
+	 * @param superlist the list of tasklists to be saved
+	 * @param changedLists the lists that were changed since they were last loaded or saved; 
+	 * 		  lists that are not saved to disk are ignored
+	 * @throws IOException when any single list could not be written to file
+	 */
+	public void saveTasklists(ArrayList<ArrayList<Task>> superlist, EnumSet<TasklistEnum> changedLists) 
+			throws IOException {
 		assert (superlist.size() == NUM_TASKLISTS_FROM_LOGIC);
+		awaitMigration();
 
 		for (TasklistEnum listType : TasklistEnum.savedLists) {
-			File dest = new File(directory, listType.filename());
+			if (!changedLists.contains(listType) && !staleLists.contains(listType)) {
+				continue;
+			}
 			ArrayList<Task> listToSave = superlist.get(listType.index());
 			try {
-				storageWriter.saveTasklist(listToSave, dest);
+				writeSavedList(listType, listToSave);
 			} catch (FileNotFoundException e) {
-				directoryManager.createDirectory(directory);  //in case user deletes the directory during runtime
-				storageWriter.saveTasklist(listToSave, dest); //recreate the directory and try again
+				directoryManager.createDirectory(directory); //in case user deletes the directory during runtime
+				writeSavedList(listType, listToSave);        //recreate the directory and try again
 			}
+			staleLists.remove(listType);
+		}
+		journal.clear(new File(directory, FILENAME_JOURNAL));
+	}
+
+	/**
+	 * Returns the saved lists that {@link #saveTasklists(ArrayList, EnumSet)} would rewrite if given changedLists,
+	 * i.e. the lists in changedLists and any list whose savefile Storage knows to be out of date.
+	 * Logic can use this to copy only the lists that will be read when the save is written in the background.
+	 * @param changedLists the lists that were changed since they were last loaded or saved
+	 * @return a new set of lists, all of which are in TasklistEnum.savedLists
+	 */
+	public EnumSet<TasklistEnum> getTasklistsToSave(EnumSet<TasklistEnum> changedLists) {
+		EnumSet<TasklistEnum> listsToSave = EnumSet.copyOf(TasklistEnum.savedLists);
+		synchronized (staleLists) {
+			for (TasklistEnum listType : TasklistEnum.savedLists) {
+				if (!changedLists.contains(listType) && !staleLists.contains(listType)) {
+					listsToSave.remove(listType);
+				}
+			}
+		}
+		return listsToSave;
+	}
+
+	/**
+	 * Loads the given saved list from its savefile in the current save format.
+	 * If that savefile does not exist but one in the other format does, the list is loaded from the other savefile
+	 * and migrated, i.e. rewritten in the current format, after which the other savefile is deleted.
+	 * @param listType one of the lists in TasklistEnum.savedLists
+	 * @param reader the StorageReader to read with
+	 * @return the tasklist read from file or an empty tasklist if file was not found/is invalid
+	 */
+	private ArrayList<Task> loadSavedList(TasklistEnum listType, StorageReader reader) {
+		long startTime = System.nanoTime();
+		File src = getSavefile(listType, saveFormat);
+		File otherSrc = getSavefile(listType, saveFormat.other());
+		if (src.exists() || !otherSrc.exists()) {
+			ArrayList<Task> tasklist = reader.loadTasklist(src, listType);
+			printLoadTime(src, tasklist.size(), startTime);
+			return tasklist;
+		}
+
+		ArrayList<Task> tasklist = reader.loadTasklist(otherSrc, listType);
+		printLoadTime(otherSrc, tasklist.size(), startTime);
+		try {
+			writeWatchedList(listType, tasklist, src);
+			Files.deleteIfExists(otherSrc.toPath());
+			System.out.println("{Storage} Migrated to " + saveFormat + " | " + src.getName());
+		} catch (IOException e) {
+			System.err.println("{Storage} Could not migrate " + otherSrc.getName());
+			staleLists.add(listType);
 		}
+		return tasklist;
+	}
+
+	/**
+	 * Writes the given saved list to its savefile in the current save format, and deletes any savefile in the other.
+	 * The COMPLETED list is saved by the ArchiveStore instead, which only rewrites the segments that have changed.
+	 */
+	private void writeSavedList(TasklistEnum listType, ArrayList<Task> listToSave) throws IOException {
+		if (listType == TasklistEnum.COMPLETED) {
+			archiveStore.save(listToSave);
+			return;
+		}
+		writeWatchedList(listType, listToSave, getSavefile(listType, saveFormat));
+		Files.deleteIfExists(getSavefile(listType, saveFormat.other()).toPath()); //remove any stale savefile
+	}
+
+	/**
+	 * Writes the given list to dest while holding the write lock, and records a copy of it as the contents
+	 * of dest in the SavefileWatcher, if any, so that the watcher does not mistake this write for an external change.
+	 */
+	private void writeWatchedList(TasklistEnum listType, ArrayList<Task> tasklist, File dest) throws IOException {
+		synchronized (writeLock) {
+			storageWriter.saveTasklist(tasklist, dest);
+			if (watcher != null) {
+				watcher.setContents(listType, copyTasklist(tasklist));
+			}
+		}
+	}
+
+	private static ArrayList<Task> copyTasklist(ArrayList<Task> tasklist) {
+		ArrayList<Task> copy = new ArrayList<Task>(tasklist.size());
+		for (Task task : tasklist) {
+			copy.add(new Task(task));
+		}
+		return copy;
+	}
+
+	private static void printLoadTime(File src, int size, long startTime) {
+		if (src.exists()) {
+			System.out.println("{Storage} Loaded " + src.getName() + " | " + size + " entries in " 
+					+ toMillis(System.nanoTime() - startTime) + " ms");
+		}
+	}
+
+	private File getSavefile(TasklistEnum listType, SaveFormat format) {
+		return new File(directory, listType.filename(format));
+	}
+
+	/**
+	 * Sets the format that the tasklists will be saved in. 
+	 * Existing savefiles in the other format are migrated the next time the tasklists are loaded or saved.
+	 * @param format the new save format
+	 */
+	public void setSaveFormat(SaveFormat format) {
+		assert (format != null);
+		if (format != saveFormat) {
+			staleLists.addAll(TasklistEnum.savedLists);
+		}
+		saveFormat = format;
+		archiveStore.setSaveFormat(format);
+		restartWatching();
+	}
+
+	public SaveFormat getSaveFormat() {
+		return saveFormat;
+	}
+
+	/**
+	 * Sets whether the archive's segments of earlier months are compressed with gzip.
+	 * Existing segments are compressed or decompressed the next time the tasklists are saved.
+	 */
+	public void setArchiveCompression(boolean isCompressing) {
+		archiveStore.setCompression(isCompressing);
+		staleLists.add(TasklistEnum.COMPLETED);
+	}
+
+	/**
+	 * Returns the tasks that were archived in the months from that of fromEpoch to that of toEpoch, 
+	 * as they were last saved. Only the archive's segments for those months are read.
+	 * Tasks migrated from an old ARCHIVE.taskey are in the month of their deadline or end date instead.
+	 * @param fromEpoch epoch time in seconds in the first month
+	 * @param toEpoch epoch time in seconds in the last month
+	 * @return the archived tasks in those months
+	 */
+	public ArrayList<Task> loadArchivedTasks(long fromEpoch, long toEpoch) {
+		awaitMigration();
+		return archiveStore.loadRange(ArchiveStore.monthOf(fromEpoch), ArchiveStore.monthOf(toEpoch), 
+									  new StorageReader());
+	}
+
+
+	/*=========*
+	 * Journal *
+	 *=========*/
+	/**
+	 * Appends the given journal records to the journal file, instead of rewriting all the tasklist files.
+	 * Logic should call {@link #saveAllTasklists(ArrayList)} instead when {@link #journalNeedsCompaction()} is true.
+	 * @param records the records of the commands executed since the last save, in order
+	 * @throws IOException when the journal could not be written to
+	 */
+	public void appendToJournal(ArrayList<JournalRecord> records) throws IOException {
+		assert (records != null);
+		awaitMigration();
+		File dest = new File(directory, FILENAME_JOURNAL);
+		try {
+			journal.append(records, dest);
+		} catch (FileNotFoundException e) {
+			directoryManager.createDirectory(directory); //in case user deletes the directory during runtime
+			journal.append(records, dest);
+		}
+	}
+
+	/**
+	 * Returns true if the journal has grown large enough that it should be folded into the tasklist files,
+	 * by calling {@link #saveAllTasklists(ArrayList)} on the next save.
+	 */
+	public boolean journalNeedsCompaction() {
+		return journal.needsCompaction();
+	}
+
+
+	/*=======================*
+	 * Load/Save state image *
+	 *=======================*/
+	/**
+	 * Returns the StateImage written when Taskey last exited, if it is still valid.
+	 * Logic calls this on program startup, or when the user loads from a directory using the setdir command,
+	 * and only calls {@link #loadAllTasklists()} if this returns null.
+	 * The image is only valid if the savefiles and the journal are unchanged since it was written;
+	 * see {@link StateImage}. The archive is loaded as usual, with the journal replayed onto it,
+	 * and the taglist is loaded along with it.
+	 * <p>Post-condition: Storage is in the same state as after loadAllTasklists, i.e. if the image includes
+	 * journaled changes, the saved lists will be rewritten on the next full save.
+	 * @return the image with its COMPLETED list set, or null if there is no valid image
+	 */
+	public StateImage loadStateImage() {
+		awaitMigration();
+		long startTime = System.nanoTime();
+		StateImage image = StateImage.read(new File(directory, FILENAME_STATE_IMAGE), saveFormat, 
+										   getImageSavefiles(), new File(directory, FILENAME_JOURNAL));
+		if (image == null) {
+			return null;
+		}
+
+		prefetchTaglist();
+		ArrayList<Task> archive = archiveStore.load(new StorageReader());
+		staleLists.clear();
+		if (image.getJournalRecordCount() > 0) {
+			replayOntoArchive(archive);
+			staleLists.addAll(TasklistEnum.savedLists); //as if the journal had been replayed
+		}
+		journal.setRecordCount(image.getJournalRecordCount());
+		image.setArchive(archive);
+		System.out.println("{Storage} State image loaded | " + toMillis(System.nanoTime() - startTime) + " ms");
+		return image;
+	}
+
+	/**
+	 * Replays the journal onto the given archive, which is loaded from its own savefiles rather than the StateImage.
+	 * The image already includes the journaled changes to the PENDING and EXPIRED lists, 
+	 * so these lists are replayed from empty and discarded; only the tasks completed or deleted since the archive
+	 * was last saved are applied.
+	 * @param archive the COMPLETED list loaded by the ArchiveStore
+	 */
+	private void replayOntoArchive(ArrayList<Task> archive) {
+		EnumMap<TasklistEnum, ArrayList<Task>> savedLists = new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+		for (TasklistEnum listType : TasklistEnum.savedLists) {
+			savedLists.put(listType, new ArrayList<Task>());
+		}
+		savedLists.put(TasklistEnum.COMPLETED, archive);
+		journal.replay(new File(directory, FILENAME_JOURNAL), savedLists);
+	}
+
+	/**
+	 * Writes the StateImage of the given superlist from Logic, for the next launch to start from.
+	 * Logic calls this when Taskey exits cleanly, after all saves have been written, 
+	 * so that the superlist matches the savefiles and the journal.
+	 * If the image cannot be written, any previous image is deleted, and the next launch loads the savefiles instead.
+	 * <p>Pre-condition:
+	 * <br>- The lists in the superlist are in the same order as in {@link #saveAllTasklists(ArrayList)},
+	 * 		 with THIS_WEEK at index 0, and should already be sorted.
+	 * @param superlist the list of tasklists from Logic
+	 */
+	public void saveStateImage(ArrayList<ArrayList<Task>> superlist) {
+		assert (superlist.size() == NUM_TASKLISTS_FROM_LOGIC);
+		awaitMigration();
+		File imageFile = new File(directory, FILENAME_STATE_IMAGE);
+		try {
+			StateImage.write(imageFile, saveFormat, getImageSavefiles(), new File(directory, FILENAME_JOURNAL),
+							 journal.getRecordCount(), superlist);
+		} catch (IOException e) {
+			System.err.println("{Storage} Could not write state image: " + e.getMessage());
+			imageFile.delete();
+		}
+	}
+
+	/**
+	 * Returns the savefiles of the lists in the StateImage, i.e. the PENDING and EXPIRED lists, in both save formats.
+	 */
+	private File[] getImageSavefiles() {
+		TasklistEnum[] imageLists = {TasklistEnum.PENDING, TasklistEnum.EXPIRED};
+		File[] savefiles = new File[imageLists.length * SaveFormat.values().length];
+		int i = 0;
+		for (TasklistEnum listType : imageLists) {
+			for (SaveFormat format : SaveFormat.values()) {
+				savefiles[i++] = getSavefile(listType, format);
+			}
+		}
+		return savefiles;
 	}
 
 
@@ -195,21 +727,37 @@ public class Storage {
 	/**
 	 * Returns the ArrayList of Tags loaded from Storage.
 	 * An empty ArrayList is returned if the tags file was not found.
+	 * If the taglist was already loaded along with the tasklists, and has not been saved since, that taglist is returned.
 	 * @return the list of user-defined tags
 	 */
 	public ArrayList<TagCategory> loadTaglist() {
+		awaitMigration();
+		Future<ArrayList<TagCategory>> prefetched = prefetchedTags;
+		prefetchedTags = null;
+		if (prefetched != null) {
+			return getLoaded(prefetched);
+		}
+		return loadTaglist(storageReader);
+	}
+
+	private ArrayList<TagCategory> loadTaglist(StorageReader reader) {
+		long startTime = System.nanoTime();
 		File src = new File(directory, FILENAME_TAGS);
-		return storageReader.loadTaglist(src);
+		ArrayList<TagCategory> tags = reader.loadTaglist(src);
+		printLoadTime(src, tags.size(), startTime);
+		return tags;
 	}
 
 	/**
 	 * Saves the given ArrayList of Tags to Storage.
 	 * If the list is empty, instead of saving an empty list, the file will be deleted instead.
 	 * @param tags the ArrayList containing the user-defined tags
-	 * @throws IOException FileWriter failed
+	 * @throws IOException when the taglist could not be written to file
 	 */
 	public void saveTaglist(ArrayList<TagCategory> tags) throws IOException {
 		assert (tags != null);
+		awaitMigration();
+		prefetchedTags = null; //the prefetched taglist is now out of date
 		File dest = new File(directory, FILENAME_TAGS);
 		storageWriter.saveTaglist(tags, dest);
 	}
@@ -229,6 +777,13 @@ public class Storage {
 	/**
 	 * Changes Storage's directory to the given pathname string.
 	 * See {@link DirectoryManager#changeDirectory(File, boolean, File)}
+	 * <p>If shouldMove is true, the new directory is checked and any error is thrown right away, but the savefiles
+	 * are moved in the background by a DirectoryMigration, so that Logic can keep serving commands from memory.
+	 * Storage switches to the new directory once every file has been copied and verified. Until then,
+	 * every method that reads or writes a savefile waits for the move to finish, so saves requested meanwhile
+	 * are written to the new directory. If the move fails, the copies are deleted again and
+	 * the current directory is kept, with all its savefiles; the failure is then reported by
+	 * {@link #checkMigrationFailed()}.
 	 * @param pathname path of the new directory
 	 * @param shouldMove <code>true</code> if the move operation should be performed; 
 	 * 					 <code>false</code> to set Storage's directory without moving the files.
@@ -236,12 +791,123 @@ public class Storage {
 	public void setDirectory(String pathname, boolean shouldMove) throws InvalidPathException, NotDirectoryException, 
 																		 AccessDeniedException, FileSystemException, 
 																		 FileAlreadyExistsException, IOException {
+		awaitMigration(); //only one move at a time
 		File newDir = new File(pathname);
-		directory = directoryManager.changeDirectory(directory, shouldMove, newDir);
+		if (!shouldMove) {
+			useDirectory(directoryManager.changeDirectory(directory, false, newDir));
+			return;
+		}
+		directoryManager.prepareDirectory(directory, true, newDir);
+		archiveStore.cacheArchive(); //lists that have not read the archive need its segments before they move
+		startMigration(newDir);
+	}
+
+	private void startMigration(final File newDir) {
+		final File currDir = directory;
+		migration = migrationExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					useDirectory(directoryManager.migrateFiles(currDir, newDir));
+				} catch (IOException | RuntimeException e) {
+					e.printStackTrace();
+					System.err.println("{Storage} Could not move savefiles | kept in " + currDir.getPath());
+					migrationFailure = e;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the exception that stopped the savefiles from being moved by the last call to 
+	 * {@link #setDirectory(String, boolean)}, if it failed since the last call to this method; otherwise returns null.
+	 * The savefiles are then still in the directory they were to be moved from.
+	 * Logic calls this after each command, since setDirectory returns before the savefiles are moved.
+	 */
+	public Exception checkMigrationFailed() {
+		Exception failure = migrationFailure;
+		migrationFailure = null;
+		return failure;
+	}
+
+	/**
+	 * Blocks until the savefiles have been moved by the last call to {@link #setDirectory(String, boolean)},
+	 * if it is still moving them. Storage calls this before it reads or writes any savefile.
+	 * A failed move does not throw here, but is reported by {@link #checkMigrationFailed()}.
+	 */
+	public void awaitMigration() {
+		Future<?> pending = migration;
+		if (pending != null) {
+			getLoaded(pending); //the move only ends with an exception on an Error, which is rethrown
+		}
+	}
+
+	private void useDirectory(File newDir) {
+		directory = newDir;
+		archiveStore.setDirectory(directory);
+		staleLists.addAll(TasklistEnum.savedLists);
+		prefetchedTags = null;
+		restartWatching();
 		System.out.println("{Storage} Directory set | " + directory.getPath());
 	}
 
 
+	/*========================*
+	 * Watch external changes *
+	 *========================*/
+	/**
+	 * Starts watching the PENDING and EXPIRED savefiles for changes made outside Taskey, e.g. by the user
+	 * in a text editor. Logic calls this once it has loaded the task lists, and then polls for the changes with
+	 * {@link #pollExternalChanges()}. The watcher follows any later change of directory or save format.
+	 * If the directory cannot be watched, external changes are only picked up on the next load, as before.
+	 */
+	public synchronized void startWatching() {
+		if (watcher != null) {
+			return;
+		}
+		SavefileWatcher newWatcher = new SavefileWatcher(directory, saveFormat, writeLock);
+		try {
+			newWatcher.start();
+			watcher = newWatcher;
+		} catch (IOException e) {
+			System.err.println("{Storage} Could not watch directory for external changes");
+		}
+	}
+
+	/**
+	 * Stops watching the savefiles for external changes. Changes that were not polled yet are discarded.
+	 */
+	public synchronized void stopWatching() {
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Returns the changes made to the PENDING and EXPIRED savefiles outside Taskey since the last call,
+	 * in the order they were made. Each change only holds the tasks added to or removed from its file,
+	 * so that Logic can apply it on top of any changes made in Taskey that were not saved yet.
+	 * @return the changes, which is an empty list if there are none or the savefiles are not being watched
+	 */
+	public synchronized ArrayList<SavefileChange> pollExternalChanges() {
+		if (watcher == null) {
+			return new ArrayList<SavefileChange>();
+		}
+		return watcher.poll();
+	}
+
+	/**
+	 * Watches the current directory and save format instead, if the savefiles are being watched.
+	 */
+	private synchronized void restartWatching() {
+		if (watcher != null) {
+			stopWatching();
+			startWatching();
+		}
+	}
+
+
 	/*=============*
 	 * For testing *
 	 *=============*/
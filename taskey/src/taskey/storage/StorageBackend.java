@@ -0,0 +1,109 @@
+package taskey.storage;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+import taskey.messenger.TagCategory;
+import taskey.messenger.Task;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This interface is what Logic and PersistenceService use to load and save the task lists and tags,
+ * so that where they are kept can be chosen when Taskey starts, with {@link Storage#createBackend(String)}.
+ * <p>Two implementations are provided:
+ * <br>- {@link Storage}, which keeps the savefiles in a directory on disk, in either the JSON or the binary format
+ * <br>- {@link InMemoryStorage}, which keeps copies of the lists in memory only,
+ * 		 for benchmarks and tests that should not be affected by disk I/O
+ * <p>The superlists passed to and returned from a backend are laid out as described in {@link Storage}.
+ */
+public interface StorageBackend {
+	/**
+	 * Returns the list of task lists, in the same order as the enum constants in TasklistEnum,
+	 * without the THIS_WEEK and ACTION lists. See {@link Storage#loadAllTasklists()}.
+	 */
+	ArrayList<ArrayList<Task>> loadAllTasklists();
+
+	/**
+	 * Returns the state image written when Taskey last exited, or null if there is none that is still valid.
+	 * Logic only calls {@link #loadAllTasklists()} if this returns null. See {@link Storage#loadStateImage()}.
+	 */
+	StateImage loadStateImage();
+
+	/**
+	 * Saves all the saved lists of the given superlist from Logic. See {@link Storage#saveAllTasklists(ArrayList)}.
+	 * @throws IOException when any single list could not be saved
+	 */
+	void saveAllTasklists(ArrayList<ArrayList<Task>> superlist) throws IOException;
+
+	/**
+	 * Saves the saved lists in changedLists, and any other list that the backend knows to be out of date.
+	 * See {@link Storage#saveTasklists(ArrayList, EnumSet)}.
+	 * @throws IOException when any single list could not be saved
+	 */
+	void saveTasklists(ArrayList<ArrayList<Task>> superlist, EnumSet<TasklistEnum> changedLists) throws IOException;
+
+	/**
+	 * Returns the saved lists that {@link #saveTasklists(ArrayList, EnumSet)} would save if given changedLists.
+	 */
+	EnumSet<TasklistEnum> getTasklistsToSave(EnumSet<TasklistEnum> changedLists);
+
+	/**
+	 * Records the changes in the given journal records, instead of saving all the task lists again.
+	 * See {@link Storage#appendToJournal(ArrayList)}.
+	 * @throws IOException when the records could not be saved
+	 */
+	void appendToJournal(ArrayList<JournalRecord> records) throws IOException;
+
+	/**
+	 * Returns true if the task lists should be saved in full on the next save, instead of appending to the journal.
+	 */
+	boolean journalNeedsCompaction();
+
+	/**
+	 * Saves the state image of the given superlist from Logic, for the next launch to start from.
+	 * See {@link Storage#saveStateImage(ArrayList)}.
+	 */
+	void saveStateImage(ArrayList<ArrayList<Task>> superlist);
+
+	/**
+	 * Returns the list of user-defined tags, or an empty list if there are none.
+	 */
+	ArrayList<TagCategory> loadTaglist();
+
+	/**
+	 * Saves the given list of user-defined tags.
+	 * @throws IOException when the taglist could not be saved
+	 */
+	void saveTaglist(ArrayList<TagCategory> tags) throws IOException;
+
+	/**
+	 * Changes the directory that the task lists and tags are kept in.
+	 * See {@link Storage#setDirectory(String, boolean)} for the exceptions thrown.
+	 * @param pathname path of the new directory
+	 * @param shouldMove <code>true</code> if the saved data should be moved to the new directory;
+	 * 					 <code>false</code> to only set the directory, e.g. to load the data already in it
+	 * @throws java.nio.file.FileAlreadyExistsException if shouldMove is true and the new directory already has saved data
+	 */
+	void setDirectory(String pathname, boolean shouldMove) throws InvalidPathException, IOException;
+
+	/**
+	 * Returns the exception that stopped the saved data from being moved by an earlier call to setDirectory, 
+	 * if the move failed after setDirectory returned and has not been reported yet; otherwise returns null.
+	 * See {@link Storage#checkMigrationFailed()}.
+	 */
+	Exception checkMigrationFailed();
+
+	/**
+	 * Starts watching the saved task lists for changes made outside Taskey. See {@link Storage#startWatching()}.
+	 */
+	void startWatching();
+
+	/**
+	 * Returns the changes made to the saved task lists outside Taskey since the last call, if they are being watched.
+	 * See {@link Storage#pollExternalChanges()}.
+	 */
+	ArrayList<SavefileChange> pollExternalChanges();
+}
@@ -0,0 +1,176 @@
+package taskey.storage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import taskey.messenger.Task;
+import taskey.storage.JournalRecord.InvalidRecordException;
+import taskey.storage.Storage.TasklistEnum;
+import taskey.storage.StorageMetrics.Operation;
+
+/**
+ * @@author A0121618M
+ * This class provides methods to Storage for the write-ahead journal.
+ * Instead of rewriting every tasklist file on each save, Storage appends one JournalRecord
+ * per mutating command to the journal file, one compact JSON record per line.
+ * On load, the journal is replayed on top of the last snapshot (the tasklist files).
+ * Once the journal grows past COMPACTION_THRESHOLD records, Storage folds it back into
+ * the snapshot files by saving all the tasklists, and the journal is then cleared.
+ */
+class StorageJournal {
+	static final int COMPACTION_THRESHOLD = 200;
+
+	private Gson gson = JsonAdapters.COMPACT_GSON;
+	private volatile int recordCount = 0; //number of records currently in the journal file; read from other threads
+
+	StorageJournal() {
+	}
+
+	/**
+	 * Returns true if the journal is large enough that it should be folded into the snapshot files.
+	 */
+	boolean needsCompaction() {
+		return recordCount >= COMPACTION_THRESHOLD;
+	}
+
+	/**
+	 * Returns the number of records currently in the journal file.
+	 */
+	int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Sets the number of records in the journal file, when it is known without replaying the journal,
+	 * i.e. when the tasklists are loaded from a StateImage that already includes the journal.
+	 */
+	void setRecordCount(int recordCount) {
+		this.recordCount = recordCount;
+	}
+
+	/**
+	 * Replays the records in the journal file src on top of the given saved lists.
+	 * Replay stops at the first malformed or incomplete record, which could be the partially written
+	 * last line of the journal if Taskey was terminated in the middle of a save. A record is only complete
+	 * once its line separator is written. The journal is then truncated to the end of the last complete record, 
+	 * so that the records appended by later saves follow it and are not lost behind the bad record.
+	 * @param src the journal file
+	 * @param savedLists the PENDING, EXPIRED and COMPLETED lists loaded from the snapshot files
+	 * @return the number of records that were replayed
+	 */
+	int replay(File src, EnumMap<TasklistEnum, ArrayList<Task>> savedLists) {
+		recordCount = 0;
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(src.toPath()); //the journal is bounded by COMPACTION_THRESHOLD
+		} catch (NoSuchFileException e) {
+			return 0; //no commands were journaled since the last snapshot
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("{Storage} Error reading journal");
+			return 0;
+		}
+
+		int validLength = 0; //length of the journal up to the end of the last complete record
+		try {
+			int lineStart = 0;
+			for (int i = 0; i < bytes.length; i++) {
+				if (bytes[i] != '\n') {
+					continue;
+				}
+				String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+				lineStart = i + 1;
+				if (!line.trim().isEmpty()) {
+					JournalRecord record = gson.fromJson(line, JournalRecord.class);
+					if (record == null) {
+						throw new InvalidRecordException();
+					}
+					record.applyTo(savedLists);
+					recordCount++;
+				}
+				validLength = lineStart;
+			}
+		} catch (JsonParseException | InvalidRecordException e) {
+			//stop at the bad record; it and everything after it are truncated below
+		}
+
+		if (validLength < bytes.length) {
+			System.err.println("{Storage} Journal truncated after record " + recordCount);
+			truncate(src, validLength);
+		}
+		if (recordCount > 0) {
+			System.out.println("{Storage} Journal replayed | " + recordCount + " records");
+		}
+		return recordCount;
+	}
+
+	/**
+	 * Truncates the journal file to the given length, discarding the bad records after it.
+	 */
+	private static void truncate(File journalFile, long length) {
+		try {
+			FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE);
+			try {
+				channel.truncate(length);
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("{Storage} Error truncating journal");
+		}
+	}
+
+	/**
+	 * Appends the given records to the end of the journal file dest, one record per line.
+	 * Empty records are skipped.
+	 * @param records the records to be appended
+	 * @param dest the journal file
+	 * @throws FileNotFoundException if the journal file could not be opened, e.g. the directory was deleted
+	 * @throws IOException thrown by the writer
+	 */
+	void append(ArrayList<JournalRecord> records, File dest) throws FileNotFoundException, IOException {
+		long startTime = System.nanoTime();
+		long startLength = dest.length();
+		BufferedWriter writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(dest, true), StandardCharsets.UTF_8));
+		try {
+			for (JournalRecord record : records) {
+				if (!record.isEmpty()) {
+					writer.write(gson.toJson(record));
+					writer.newLine();
+					recordCount++;
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		StorageMetrics.getInstance().record(Operation.SAVE, dest, dest.length() - startLength, 
+											System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Deletes the journal file dest. This is done after its records have been folded into the snapshot files.
+	 * @param dest the journal file
+	 * @throws IOException if the journal exists but could not be deleted
+	 */
+	void clear(File dest) throws IOException {
+		Files.deleteIfExists(dest.toPath());
+		recordCount = 0;
+	}
+}
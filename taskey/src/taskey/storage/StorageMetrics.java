@@ -0,0 +1,290 @@
+package taskey.storage;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * This class counts the I/O done by the storage package, so that it can be seen which savefiles dominate it.
+ * For each operation, i.e. load, save, verify and move, and each file, it keeps the number of operations,
+ * the bytes read or written, the total and maximum latency, and a histogram of the latencies.
+ * It also counts how often each file is forced to disk.
+ * <p>Files are grouped by the list they hold, e.g. the archive segments are all counted as COMPLETED,
+ * and the JSON and binary savefiles of a list are counted together. Other files are counted by name.
+ * <p>The metrics are kept for the whole JVM, since there is usually only one Storage.
+ * They are exposed through JMX as StorageMetricsMBean, and summarized by the stats command.
+ * All methods are thread-safe, since saves run on PersistenceService's background thread.
+ */
+public class StorageMetrics implements StorageMetricsMBean {
+	public static final String OBJECT_NAME = "taskey.storage:type=StorageMetrics";
+	// Upper bounds of the latency histogram buckets, in milliseconds; the last bucket has no upper bound
+	static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+	private static StorageMetrics instance;
+
+	// Metrics of each operation and file, sorted so that the report is in a stable order
+	private final ConcurrentSkipListMap<String, OperationStats> stats = new ConcurrentSkipListMap<String, OperationStats>();
+	private final ConcurrentSkipListMap<String, AtomicLong> fsyncCounts = new ConcurrentSkipListMap<String, AtomicLong>();
+
+	/**
+	 * The I/O operations that are measured.
+	 */
+	public enum Operation {
+		LOAD, 	//reading a savefile
+		SAVE, 	//writing or appending to a savefile
+		VERIFY, //checking the tasks read from a savefile that was changed outside Taskey
+		MOVE	//copying a savefile to a new directory
+	}
+
+	/**
+	 * The metrics of one operation on one file.
+	 */
+	private static class OperationStats {
+		private long count = 0;
+		private long bytes = 0;
+		private long totalNanos = 0;
+		private long maxNanos = 0;
+		private long[] histogram = new long[BUCKET_BOUNDS_MILLIS.length + 1];
+
+		private synchronized void record(long numBytes, long nanos) {
+			count++;
+			bytes += numBytes;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+			histogram[bucketOf(nanos)]++;
+		}
+
+		private synchronized String format(String key) {
+			StringBuilder line = new StringBuilder(String.format(
+					"%-24s %6d ops %,12d bytes | avg %8.2f ms | max %8.2f ms |",
+					key, count, bytes, toMillis(totalNanos) / count, toMillis(maxNanos)));
+			for (int i = 0; i < histogram.length; i++) {
+				if (histogram[i] > 0) {
+					String bound = (i < BUCKET_BOUNDS_MILLIS.length) ? "<" + BUCKET_BOUNDS_MILLIS[i] : ">="
+							+ BUCKET_BOUNDS_MILLIS[BUCKET_BOUNDS_MILLIS.length - 1];
+					line.append(" ").append(bound).append("ms:").append(histogram[i]);
+				}
+			}
+			return line.toString();
+		}
+	}
+
+	private StorageMetrics() {
+	}
+
+	/**
+	 * Returns the metrics of this JVM, which are registered as an MBean when this is first called.
+	 */
+	public static synchronized StorageMetrics getInstance() {
+		if (instance == null) {
+			instance = new StorageMetrics();
+			instance.register();
+		}
+		return instance;
+	}
+
+	private void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (JMException | SecurityException e) {
+			System.err.println("{Storage} Could not register metrics MBean: " + e.getMessage());
+		}
+	}
+
+
+	/*===========*
+	 * Recording *
+	 *===========*/
+	/**
+	 * Records one operation on the given file.
+	 * @param operation the operation
+	 * @param file the file that was read or written
+	 * @param bytes the number of bytes read or written
+	 * @param nanos how long the operation took, in nanoseconds
+	 */
+	void record(Operation operation, File file, long bytes, long nanos) {
+		String key = operation + " " + keyOf(file);
+		OperationStats operationStats = stats.get(key);
+		if (operationStats == null) {
+			OperationStats created = new OperationStats();
+			operationStats = stats.putIfAbsent(key, created);
+			if (operationStats == null) {
+				operationStats = created;
+			}
+		}
+		operationStats.record(bytes, nanos);
+	}
+
+	/**
+	 * Records that the given file was forced to disk.
+	 */
+	void recordFsync(File file) {
+		String key = keyOf(file);
+		AtomicLong count = fsyncCounts.get(key);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = fsyncCounts.putIfAbsent(key, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Returns the name that the given file is counted under: the name of the TasklistEnum constant of
+	 * the list that it holds, or else its own name without any temp file suffix.
+	 */
+	static String keyOf(File file) {
+		String filename = file.getName();
+		if (filename.endsWith(StorageWriter.TEMP_FILE_SUFFIX)) {
+			filename = filename.substring(0, filename.length() - StorageWriter.TEMP_FILE_SUFFIX.length());
+		}
+		TasklistEnum listType = TasklistEnum.enumOf(filename);
+		if (listType != null) {
+			return listType.name();
+		} else if (ArchiveStore.parseMonth(filename) != -1) {
+			return TasklistEnum.COMPLETED.name();
+		}
+		return filename;
+	}
+
+	private static int bucketOf(long nanos) {
+		for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+			if (nanos < BUCKET_BOUNDS_MILLIS[i] * 1000000) {
+				return i;
+			}
+		}
+		return BUCKET_BOUNDS_MILLIS.length;
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1e6;
+	}
+
+
+	/*===========*
+	 * Reporting *
+	 *===========*/
+	@Override
+	public long getBytesRead() {
+		return sumBytes(Operation.LOAD);
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return sumBytes(Operation.SAVE) + sumBytes(Operation.MOVE);
+	}
+
+	@Override
+	public long getFsyncCount() {
+		long total = 0;
+		for (AtomicLong count : fsyncCounts.values()) {
+			total += count.get();
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the number of times the given operation was recorded, on all files.
+	 */
+	public long getCount(Operation operation) {
+		long total = 0;
+		for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+			if (entry.getKey().startsWith(operation + " ")) {
+				synchronized (entry.getValue()) {
+					total += entry.getValue().count;
+				}
+			}
+		}
+		return total;
+	}
+
+	private long sumBytes(Operation operation) {
+		long total = 0;
+		for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+			if (entry.getKey().startsWith(operation + " ")) {
+				synchronized (entry.getValue()) {
+					total += entry.getValue().bytes;
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns a one-line summary, e.g. for the stats command, with the number of each operation,
+	 * the bytes read and written, and the file with the most bytes of I/O.
+	 */
+	@Override
+	public String getSummary() {
+		TreeMap<String, Long> bytesPerFile = new TreeMap<String, Long>();
+		long totalBytes = 0;
+		for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+			if (entry.getKey().startsWith(Operation.VERIFY + " ")) {
+				continue; //the bytes verified were already counted as loaded
+			}
+			String file = entry.getKey().substring(entry.getKey().indexOf(' ') + 1);
+			long bytes;
+			synchronized (entry.getValue()) {
+				bytes = entry.getValue().bytes;
+			}
+			Long fileBytes = bytesPerFile.get(file);
+			bytesPerFile.put(file, (fileBytes == null) ? bytes : fileBytes + bytes);
+			totalBytes += bytes;
+		}
+
+		StringBuilder summary = new StringBuilder(String.format(
+				"I/O: %d loads, %d saves, %d verifies, %d moves, %d fsyncs, %.1f KB read, %.1f KB written",
+				getCount(Operation.LOAD), getCount(Operation.SAVE), getCount(Operation.VERIFY),
+				getCount(Operation.MOVE), getFsyncCount(), getBytesRead() / 1024.0, getBytesWritten() / 1024.0));
+		String busiest = null;
+		for (String file : bytesPerFile.keySet()) {
+			if (busiest == null || bytesPerFile.get(file) > bytesPerFile.get(busiest)) {
+				busiest = file;
+			}
+		}
+		if (busiest != null && totalBytes > 0) {
+			summary.append(String.format(" | busiest %s (%d%%)", busiest, 100 * bytesPerFile.get(busiest) / totalBytes));
+		}
+		return summary.toString();
+	}
+
+	@Override
+	public String[] getReport() {
+		ArrayList<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+			lines.add(entry.getValue().format(entry.getKey()));
+		}
+		for (Map.Entry<String, AtomicLong> entry : fsyncCounts.entrySet()) {
+			lines.add(String.format("%-24s %6d fsyncs", "FSYNC " + entry.getKey(), entry.getValue().get()));
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * Prints the full report to System.out.
+	 */
+	public void printReport() {
+		System.out.println("{Storage} " + getSummary());
+		for (String line : getReport()) {
+			System.out.println("{Storage} " + line);
+		}
+	}
+
+	@Override
+	public void reset() {
+		stats.clear();
+		fsyncCounts.clear();
+	}
+}
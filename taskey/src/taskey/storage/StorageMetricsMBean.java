@@ -0,0 +1,38 @@
+package taskey.storage;
+
+/**
+ * @@author A0121618M
+ * The JMX management interface of {@link StorageMetrics}, registered as StorageMetrics.OBJECT_NAME,
+ * so that the I/O of a running Taskey can be inspected with e.g. JConsole or VisualVM.
+ */
+public interface StorageMetricsMBean {
+	/**
+	 * Returns the number of bytes read from the savefiles by loads.
+	 */
+	long getBytesRead();
+
+	/**
+	 * Returns the number of bytes written to the savefiles by saves and moves.
+	 */
+	long getBytesWritten();
+
+	/**
+	 * Returns the number of times a savefile was forced to disk.
+	 */
+	long getFsyncCount();
+
+	/**
+	 * Returns the one-line summary that is shown for the stats command.
+	 */
+	String getSummary();
+
+	/**
+	 * Returns the full report, one line per operation and file, with its latency histogram.
+	 */
+	String[] getReport();
+
+	/**
+	 * Clears all the metrics.
+	 */
+	void reset();
+}
@@ -1,25 +1,32 @@
 package taskey.storage;
 
-import static taskey.storage.Storage.TasklistEnum.PENDING;
-import static taskey.storage.StorageReader.DerivedList.DEADLINE_TASKLIST;
-import static taskey.storage.StorageReader.DerivedList.EVENT_TASKLIST;
-import static taskey.storage.StorageReader.DerivedList.GENERAL_TASKLIST;
-
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.GZIPInputStream;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
 import taskey.messenger.TagCategory;
 import taskey.messenger.Task;
+import taskey.storage.BinaryFormat.InvalidBinaryFileException;
 import taskey.storage.Storage.TasklistEnum;
+import taskey.storage.StorageMetrics.Operation;
+import taskey.storage.VerificationStamps.ChecksumInputStream;
 import taskey.storage.DataVerifier.InvalidTagException;
 import taskey.storage.DataVerifier.InvalidTaskException;
 
@@ -29,40 +36,13 @@ import taskey.storage.DataVerifier.InvalidTaskException;
  * reading tasklists, taglists and abstract paths from their JSON files.
  * It also uses DataVerifier to perform input validation on the Task and 
  * TagCategory objects read from file.
+ * Tasklist files whose names end with BinaryFormat.BINARY_SUFFIX are read in the binary format instead,
+ * and files whose names end with StorageWriter.COMPRESSED_SUFFIX are decompressed while they are read.
  * This class is public so that it is visible to taskey.junit.StorageTest
  */
 public class StorageReader {
 	DataVerifier verifier = new DataVerifier();
-
-	/**
-	 * These three lists are derived from the PENDING list.
-	 * They are not read from, or written to, disk.
-	 */
-	enum DerivedList {
-		GENERAL_TASKLIST (new ArrayList<Task>()),
-		DEADLINE_TASKLIST (new ArrayList<Task>()),
-		EVENT_TASKLIST (new ArrayList<Task>());
-
-		private ArrayList<Task> tasklist;
-
-		private DerivedList(ArrayList<Task> list) {
-			tasklist = list;
-		}
-
-		private void add(Task t) {
-			tasklist.add(t);
-		}
-
-		private ArrayList<Task> get() {
-			return tasklist;
-		}
-
-		private static void clearAllLists() {
-			for (DerivedList list : DerivedList.values()) {
-				list.get().clear();
-			}
-		}
-	}
+	BinaryFormat binaryFormat = new BinaryFormat();
 
 	/**
 	 * Generic read method.
@@ -71,25 +51,18 @@ public class StorageReader {
 	 * @param typeToken represents the generic type T of the desired object; 
 	 * 		  this is obtained from the Gson TypeToken class
 	 * @return An object of type T generated from the JSON file.
-	 * @throws FileNotFoundException if FileReader constructor fails due to it being unable 
-	 * 		   to open the file for reading. This could be because the file doesn't exist or access was denied.
+	 * @throws FileNotFoundException if the file could not be opened for reading. 
+	 * 		   This could be because the file doesn't exist or access was denied.
 	 * @throws JsonParseException fromJson throws JsonIOException, JsonSyntaxException
 	 */
 	private <T> T readFromFile(File src, TypeToken<T> typeToken) throws FileNotFoundException, 
 																		JsonParseException {
-		FileReader reader = new FileReader(src);
-		Gson gson = new Gson();
+		JsonReader reader = openJsonReader(src, null);
 		T object;
 		try {
-			object = gson.fromJson(reader, typeToken.getType());
-		} catch (JsonParseException e) {
-			throw e;
+			object = JsonAdapters.COMPACT_GSON.fromJson(reader, typeToken.getType());
 		} finally {
-			try {
-				reader.close(); //must close the stream to allow deleting/moving of files
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			closeJsonReader(reader); //must close the stream to allow deleting/moving of files
 		}
 
 		if (object == null) {
@@ -98,92 +71,221 @@ public class StorageReader {
 		return object;
 	}
 
+	/**
+	 * Generic read method for lists.
+	 * Deserializes the JSON array in the file src one element at a time, 
+	 * so that the whole file is never held in memory while it is being parsed.
+	 * @param src JSON file to be read
+	 * @param elementType the class of the list's elements
+	 * @param checksum updated with the bytes of the whole file; may be null
+	 * @return the list of elements read from the JSON array
+	 * @throws FileNotFoundException if the file could not be opened for reading. 
+	 * 		   This could be because the file doesn't exist or access was denied.
+	 * @throws JsonParseException if the file is empty, is not a JSON array, or contains a malformed or null element
+	 */
+	private <E> ArrayList<E> readListFromFile(File src, Class<E> elementType, Checksum checksum) 
+			throws FileNotFoundException, JsonParseException {
+		JsonReader reader = openJsonReader(src, checksum);
+		ArrayList<E> list = new ArrayList<E>();
+		try {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				E element = JsonAdapters.COMPACT_GSON.fromJson(reader, elementType);
+				if (element == null) {
+					throw new JsonParseException("Null element at index " + list.size());
+				}
+				list.add(element);
+			}
+			reader.endArray();
+		} catch (IOException | IllegalStateException e) { //EOF, malformed JSON, or not a JSON array
+			throw new JsonSyntaxException(e);
+		} finally {
+			closeJsonReader(reader); //must close the stream to allow deleting/moving of files
+		}
+		return list;
+	}
+
+	/**
+	 * Opens a lenient JsonReader on the file src. See {@link #openTextReader(File, Checksum)}.
+	 * Leniency is kept the same as Gson's own fromJson methods, to tolerate hand-edited files.
+	 * @throws FileNotFoundException if the file doesn't exist or access was denied
+	 * @throws JsonParseException if the file is compressed but its gzip header is invalid
+	 */
+	private JsonReader openJsonReader(File src, Checksum checksum) throws FileNotFoundException, JsonParseException {
+		JsonReader reader = new JsonReader(openTextReader(src, checksum));
+		reader.setLenient(true);
+		return reader;
+	}
+
+	/**
+	 * Opens a Reader that reads the file src through a FileChannel, or through a GZIPInputStream
+	 * if the file is compressed.
+	 * @throws FileNotFoundException if the file doesn't exist or access was denied
+	 * @throws JsonParseException if the file is compressed but its gzip header is invalid
+	 */
+	static Reader openTextReader(File src) throws FileNotFoundException, JsonParseException {
+		return openTextReader(src, null);
+	}
+
+	/**
+	 * Opens a Reader on the file src as in {@link #openTextReader(File)}, that also updates the given checksum
+	 * with the bytes of the whole file, once the Reader is closed.
+	 * @param checksum the checksum to be updated; if null, this is the same as openTextReader(src)
+	 */
+	static Reader openTextReader(File src, Checksum checksum) throws FileNotFoundException, JsonParseException {
+		FileInputStream in = new FileInputStream(src);
+		InputStream checkedIn = (checksum == null) ? in : new ChecksumInputStream(in, checksum);
+		if (StorageWriter.isCompressed(src)) {
+			try {
+				return new InputStreamReader(new GZIPInputStream(checkedIn), Charset.defaultCharset());
+			} catch (IOException e) {
+				try {
+					in.close();
+				} catch (IOException closeException) {
+					closeException.printStackTrace();
+				}
+				throw new JsonSyntaxException(e);
+			}
+		}
+		if (checksum != null) {
+			return new InputStreamReader(checkedIn, Charset.defaultCharset());
+		}
+		return Channels.newReader(in.getChannel(), Charset.defaultCharset().name());
+	}
+
+	private void closeJsonReader(JsonReader reader) {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/*============*
 	 * Load tasks *
 	 *============*/
 	/**
 	 * Returns the ArrayList of Task objects read from the File src.
 	 * The GENERAL/DEADLINE/EVENT lists are not read from file;
-	 * instead, they are derived from the PENDING list.
-	 * <p>Pre-condition:
-	 * <br>- the PENDING list must be read before the derived lists, 
-	 * 		 so that the derived lists in the enum are populated first.
+	 * instead, they are derived from the PENDING list with {@link DerivedLists#partition(ArrayList)}.
+	 * <p>The tasks are only verified by DataVerifier if the file does not match its VerificationStamps,
+	 * i.e. if it was edited outside Taskey since it was last saved. A file that passes verification unchanged
+	 * is then stamped, so that it is not verified again.
 	 * @param src the source file to be read from
-	 * @param tasklistType the TasklistEnum constant passed from Storage
+	 * @param tasklistType the TasklistEnum constant passed from Storage, which must be one of the saved lists
 	 * @return the tasklist read from file or an empty tasklist if file was not found/is invalid
 	 */
 	ArrayList<Task> loadTasklist(File src, TasklistEnum tasklistType) {
+		assert (TasklistEnum.savedLists.contains(tasklistType));
 		ArrayList<Task> tasklist;
-		switch (tasklistType) {
-			default: //default case is just to avoid compilation error
-			case PENDING:
-			case EXPIRED:
-			case COMPLETED:
-				try {
-					tasklist = readFromFile(src, new TypeToken<ArrayList<Task>>() {});
-					verifier.verifyTasks(tasklist);
-					verifier.checkDates(tasklist);
-				} catch (InvalidTaskException | JsonParseException e) {
-					e.printStackTrace();
-					System.err.println("{Storage} Invalid tasklist: " + src.getName());
-					renameBadFile(src);
-					tasklist = new ArrayList<Task>(); //return empty list
-				} catch (FileNotFoundException e) {
-					tasklist = new ArrayList<Task>();
-				}
+		try {
+			tasklist = readVerifiedTasklist(src);
+		} catch (InvalidTaskException | JsonParseException | InvalidBinaryFileException e) {
+			e.printStackTrace();
+			System.err.println("{Storage} Invalid tasklist: " + src.getName());
+			tasklist = salvageTasklist(src);
+		} catch (FileNotFoundException e) {
+			tasklist = new ArrayList<Task>();
+		}
+		return tasklist;
+	}
 
-				if (tasklistType == PENDING) {
-					// Generate the GENERAL, DEADLINE and EVENT lists from the PENDING list
-					getDerivedLists(tasklist);
-				}
-				break;
+	/**
+	 * Reads the tasklist in the file src, and verifies its tasks with DataVerifier,
+	 * unless the file matches its VerificationStamps. A file that passes verification unchanged is then stamped.
+	 * Unlike {@link #loadTasklist(File, TasklistEnum)}, an invalid file is left as it is, 
+	 * so the SavefileWatcher uses this to read a file that the user may still be editing.
+	 * @param src the tasklist file to be read from
+	 * @return the tasklist read from file
+	 * @throws FileNotFoundException if the file does not exist
+	 * @throws InvalidTaskException if any of the tasks is invalid
+	 * @throws JsonParseException if the JSON file is malformed
+	 * @throws InvalidBinaryFileException if the binary file is invalid
+	 */
+	ArrayList<Task> readVerifiedTasklist(File src) throws FileNotFoundException, InvalidTaskException,
+														  JsonParseException, InvalidBinaryFileException {
+		long length = src.length();
+		CRC32 checksum = new CRC32();
+		ArrayList<Task> tasklist;
+		long startTime = System.nanoTime();
+		if (BinaryFormat.isBinaryFile(src)) {
+			tasklist = binaryFormat.readTasklist(src, checksum);
+		} else {
+			tasklist = readListFromFile(src, Task.class, checksum);
+		}
+		StorageMetrics.getInstance().record(Operation.LOAD, src, length, System.nanoTime() - startTime);
 
-			case GENERAL:
-				return GENERAL_TASKLIST.get();
-			case DEADLINE:
-				return DEADLINE_TASKLIST.get();
-			case EVENT:
-				return EVENT_TASKLIST.get();
+		VerificationStamps stamps = VerificationStamps.ofFile(src);
+		if (!stamps.isVerified(src.getName(), length, checksum.getValue())) {
+			startTime = System.nanoTime();
+			verifier.verifyTasks(tasklist);
+			//binary files are not hand-edited, so their dates need not be checked
+			boolean wasChanged = !BinaryFormat.isBinaryFile(src) && verifier.checkDates(tasklist);
+			if (!wasChanged) { //the file still matches the tasks, which are now known to be valid
+				stamps.put(src.getName(), length, checksum.getValue());
+			}
+			StorageMetrics.getInstance().record(Operation.VERIFY, src, length, System.nanoTime() - startTime);
 		}
 		return tasklist;
 	}
 
+	/**
+	 * Recovers the valid tasks from the given invalid tasklist file, using a TasklistSalvager.
+	 * The bad file is renamed so that it is kept, and the recovered tasks are rewritten to src,
+	 * so that the dropped records are not lost silently, nor salvaged again on the next load.
+	 * What was recovered and dropped is appended to the recovery report in the same directory.
+	 * @param src the invalid tasklist file
+	 * @return the valid tasks in the file; this is an empty list if none could be recovered
+	 */
+	private ArrayList<Task> salvageTasklist(File src) {
+		TasklistSalvager salvager = new TasklistSalvager(verifier);
+		ArrayList<Task> tasklist;
+		try {
+			tasklist = salvager.salvage(src, binaryFormat);
+		} catch (FileNotFoundException e) {
+			return new ArrayList<Task>();
+		}
+		if (!BinaryFormat.isBinaryFile(src)) {
+			verifier.checkDates(tasklist);
+		}
+
+		File badFile = renameBadFile(src);
+		if (!tasklist.isEmpty() && badFile != null) {
+			try {
+				new StorageWriter().saveTasklist(tasklist, src);
+			} catch (IOException e) {
+				System.err.println("{Storage} Could not rewrite salvaged tasklist");
+				e.printStackTrace();
+			}
+		}
+		try {
+			salvager.writeReport(new File(src.getParentFile(), Storage.FILENAME_RECOVERY_REPORT), src, badFile);
+		} catch (IOException e) {
+			System.err.println("{Storage} Could not write recovery report");
+			e.printStackTrace();
+		}
+		System.out.println("{Storage} Salvaged " + tasklist.size() + " of " + salvager.getNumRecords()
+				+ " records from " + src.getName() + ", dropped " + salvager.getNumDropped());
+		return tasklist;
+	}
+
 	/**
 	 * Renames the given file, which could be invalid due to a malformed JSON or invalid tasks.
 	 * This is done so that if the user makes a mistake while editing the task files,
 	 * they can still recover it, instead of losing them when they get overwritten 
 	 * the next time the user saves (which happens on program close!).
 	 * @param src abstract path of the bad file
+	 * @return the renamed file, or null if it could not be renamed
 	 */
-	private void renameBadFile(File src) {
+	private File renameBadFile(File src) {
+		File badFile = new File(src.getParentFile(), "INVALID." + src.getName());
 		try {
-			Files.move(src.toPath(), src.toPath().resolveSibling("INVALID." + src.getName()), 
-					StandardCopyOption.REPLACE_EXISTING);
+			Files.move(src.toPath(), badFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return badFile;
 		} catch (IOException e) {
 			System.err.println("{Storage} Could not rename bad file");
 			e.printStackTrace();
-		}
-	}
-
-	/**
-	 * Derives the GENERAL, DEADLINE, and EVENT tasklists from the PENDING list.
-	 * Post-condition: the tasklists in the enum DerivedList are all populated
-	 * @param pendingList the PENDING list
-	 */
-	private void getDerivedLists(ArrayList<Task> pendingList) {
-		DerivedList.clearAllLists(); //erase the previous data, if any
-		for (Task task : pendingList) {
-			switch (task.getTaskType().toUpperCase()) {
-				case "FLOATING":
-					GENERAL_TASKLIST.add(task);
-					break;
-				case "DEADLINE":
-					DEADLINE_TASKLIST.add(task);
-					break;
-				case "EVENT":
-					EVENT_TASKLIST.add(task);
-					break;
-			}
+			return null;
 		}
 	}
 
@@ -199,7 +301,9 @@ public class StorageReader {
 	ArrayList<TagCategory> loadTaglist(File src) {
 		ArrayList<TagCategory> tags;
 		try {
-			tags = readFromFile(src, new TypeToken<ArrayList<TagCategory>>() {});
+			long startTime = System.nanoTime();
+			tags = readListFromFile(src, TagCategory.class, null);
+			StorageMetrics.getInstance().record(Operation.LOAD, src, src.length(), System.nanoTime() - startTime);
 			verifier.verifyTags(tags);
 		} catch (JsonParseException | InvalidTagException e) {
 			e.printStackTrace();
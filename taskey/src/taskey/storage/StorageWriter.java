@@ -1,39 +1,217 @@
 package taskey.storage;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Checksum;
+import java.util.zip.GZIPOutputStream;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
 import taskey.messenger.TagCategory;
 import taskey.messenger.Task;
+import taskey.storage.StorageMetrics.Operation;
 
 /**
  * @@author A0121618M
  * This class provides methods to classes in the storage package
  * for writing tasklists, taglists and abstract paths to file in the JSON format.
+ * All writes are streamed to disk through a FileChannel instead of being built up as a String first.
+ * Tasklist files whose names end with BinaryFormat.BINARY_SUFFIX are written in the binary format instead,
+ * and files whose names end with COMPRESSED_SUFFIX are compressed with gzip.
  * This class is public so that it is visible to taskey.junit.StorageTest
  */
 public class StorageWriter {
+	private BinaryFormat binaryFormat = new BinaryFormat();
+
+	static final String TEMP_FILE_SUFFIX = ".tmp";
+	static final String COMPRESSED_SUFFIX = ".gz"; //e.g. ARCHIVE-2016-04.taskeybin.gz
+	static final String JSON_INDENT = "  "; //same indentation as Gson's pretty printing
+
 	/**
 	 * Generic write method.
 	 * Serializes the given object of the specified type into its equivalent JSON representation.
+	 * The JSON is streamed straight to file, so the full JSON string is never built in memory.
+	 * See {@link #writeToTempFile(File, Object, Type, boolean, Checksum)} for how dest is replaced.
 	 * @param dest the abstract path of the JSON file to be written
 	 * @param object of type T to be serialized
 	 * @param typeToken represents the generic type T of the given object;
 	 * 		  this is obtained from the Gson TypeToken class
-	 * @throws IOException thrown by FileWriter
+	 * @throws FileNotFoundException if the temp file could not be created, e.g. the directory does not exist
+	 * @throws IOException thrown when writing, forcing or moving the temp file
+	 */
+	private <T> void writeToFile(File dest, T object, TypeToken<T> typeToken) throws FileNotFoundException, 
+																						IOException {
+		writeToTempFile(dest, object, typeToken.getType(), false, null);
+	}
+
+	/**
+	 * Generic write method for lists.
+	 * Serializes the given list into a JSON array, writing one element at a time,
+	 * so that the memory used while saving is bounded by a single element instead of the whole list.
+	 * @param dest the abstract path of the JSON file to be written
+	 * @param list the list to be serialized
+	 * @param elementType the class of the list's elements
+	 * @param checksum updated with the bytes written to the file; may be null
+	 * @throws FileNotFoundException if the temp file could not be created, e.g. the directory does not exist
+	 * @throws IOException thrown when writing, forcing or moving the temp file
+	 */
+	private <E> void writeListToFile(File dest, ArrayList<E> list, Class<E> elementType, Checksum checksum) 
+			throws FileNotFoundException, IOException {
+		writeToTempFile(dest, list, elementType, true, checksum);
+	}
+
+	/**
+	 * Streams the given object as JSON to a sibling temp file of dest and forces it to disk, 
+	 * after which the temp file is atomically moved over dest. Hence, if Taskey is terminated 
+	 * in the middle of a write, dest will still contain either the old or the new data, 
+	 * and never a partially written file.
+	 * @param dest the abstract path of the JSON file to be written
+	 * @param object the object to be serialized
+	 * @param type the type of object, or the type of its elements if isList is true
+	 * @param isList true if object is a list whose elements should be written one at a time
+	 * @param checksum updated with the bytes written to the file; may be null
+	 * @throws FileNotFoundException if the temp file could not be created, e.g. the directory does not exist
+	 * @throws IOException thrown when writing, forcing or moving the temp file
+	 */
+	private void writeToTempFile(File dest, Object object, Type type, boolean isList, Checksum checksum) 
+			throws FileNotFoundException, IOException {
+		Gson gson = JsonAdapters.PRETTY_GSON;
+		File temp = getTempFile(dest);
+		FileOutputStream out = new FileOutputStream(temp);
+		FileChannel channel = out.getChannel();
+		boolean isReplaced = false;
+
+		try {
+			OutputStream checkedOut = (checksum == null) ? out : new CheckedOutputStream(out, checksum);
+			GZIPOutputStream gzip = isCompressed(dest) ? new GZIPOutputStream(checkedOut) : null;
+			Writer fileWriter;
+			if (gzip != null) {
+				fileWriter = new OutputStreamWriter(gzip, Charset.defaultCharset());
+			} else if (checksum != null) {
+				fileWriter = new OutputStreamWriter(checkedOut, Charset.defaultCharset());
+			} else {
+				fileWriter = Channels.newWriter(channel, Charset.defaultCharset().name());
+			}
+			JsonWriter writer = new JsonWriter(fileWriter);
+			writer.setIndent(JSON_INDENT);
+			writer.setSerializeNulls(true);
+			if (isList) {
+				writer.beginArray();
+				for (Object element : (ArrayList<?>) object) {
+					gson.toJson(element, type, writer);
+				}
+				writer.endArray();
+			} else {
+				gson.toJson(object, type, writer);
+			}
+			writer.flush();
+			if (gzip != null) {
+				gzip.finish();
+			}
+			channel.force(true); //make sure the data is on disk before it replaces dest
+			StorageMetrics.getInstance().recordFsync(dest);
+			out.close();
+			replaceFile(temp, dest);
+			isReplaced = true;
+		} catch (JsonIOException e) {
+			throw new IOException(e.getCause());
+		} finally {
+			if (!isReplaced) { //any exception, not only an IOException, must not leave the temp file behind
+				closeAndDelete(out, temp);
+			}
+		}
+	}
+
+	/**
+	 * Writes the given tasklist to dest in the binary format, through a temp file in the same way as
+	 * {@link #writeToTempFile(File, Object, Type, boolean, Checksum)}.
+	 * @param dest the abstract path of the binary file to be written
+	 * @param tasks the tasklist to be written
+	 * @param checksum updated with the bytes written to the file; may be null
+	 * @throws FileNotFoundException if the temp file could not be created, e.g. the directory does not exist
+	 * @throws IOException thrown when writing, forcing or moving the temp file
 	 */
-	private <T> void writeToFile(File dest, T object, TypeToken<T> typeToken) throws IOException {
-		FileWriter writer = new FileWriter(dest);
-		Gson gson = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
-		String jsonOutput = gson.toJson(object, typeToken.getType());
-		writer.write(jsonOutput);
-		writer.close();
+	private void writeBinaryToFile(File dest, ArrayList<Task> tasks, Checksum checksum) throws FileNotFoundException, 
+																							   IOException {
+		File temp = getTempFile(dest);
+		FileOutputStream out = new FileOutputStream(temp);
+		boolean isReplaced = false;
+
+		try {
+			OutputStream checkedOut = (checksum == null) ? out : new CheckedOutputStream(out, checksum);
+			if (isCompressed(dest)) {
+				GZIPOutputStream gzip = new GZIPOutputStream(checkedOut);
+				binaryFormat.writeTasklist(tasks, gzip);
+				gzip.finish();
+			} else {
+				binaryFormat.writeTasklist(tasks, checkedOut);
+			}
+			out.getChannel().force(true); //make sure the data is on disk before it replaces dest
+			StorageMetrics.getInstance().recordFsync(dest);
+			out.close();
+			replaceFile(temp, dest);
+			isReplaced = true;
+		} finally {
+			if (!isReplaced) {
+				closeAndDelete(out, temp);
+			}
+		}
+	}
+
+	/**
+	 * Closes the stream to a temp file that will not replace its destination, and deletes the temp file.
+	 */
+	private static void closeAndDelete(OutputStream out, File temp) {
+		try {
+			out.close(); //must close the stream to allow deleting the file
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		temp.delete();
+	}
+
+	private static File getTempFile(File dest) {
+		return new File(dest.getPath() + TEMP_FILE_SUFFIX);
+	}
+
+	/**
+	 * Returns true if the given file is compressed with gzip, i.e. its name ends with COMPRESSED_SUFFIX.
+	 */
+	static boolean isCompressed(File file) {
+		return file.getName().endsWith(COMPRESSED_SUFFIX);
+	}
+
+	/**
+	 * Moves the src file over the dest file, atomically if the file system supports it.
+	 * @param src the fully written temp file
+	 * @param dest the file to be replaced
+	 * @throws IOException thrown by Files.move
+	 */
+	private void replaceFile(File src, File dest) throws IOException {
+		try {
+			Files.move(src.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE, 
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(src.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
 	}
 
 	/*============*
@@ -44,16 +222,29 @@ public class StorageWriter {
 	 * The file will be created if it doesn't exist; otherwise the existing file will be overwritten.
 	 * Only non-empty tasklists are saved.
 	 * If the given tasklist is empty, its respective file will be deleted.
+	 * The binary format is used if the name of dest ends with BinaryFormat.BINARY_SUFFIX, 
+	 * and the file is compressed if its name ends with COMPRESSED_SUFFIX.
+	 * The file's checksum is recorded in the VerificationStamps of its directory,
+	 * so that its tasks need not be verified again when it is loaded.
 	 * @param tasks the tasklist to be saved
 	 * @param dest the destination file to be written to
-	 * @throws IOException thrown by FileWriter
+	 * @throws IOException thrown when writing or replacing the file
 	 */
 	void saveTasklist(ArrayList<Task> tasks, File dest) throws IOException {
 		try {
 			if (!tasks.isEmpty()) {
-				writeToFile(dest, tasks, new TypeToken<ArrayList<Task>>() {});
+				CRC32 checksum = new CRC32();
+				long startTime = System.nanoTime();
+				if (BinaryFormat.isBinaryFile(dest)) {
+					writeBinaryToFile(dest, tasks, checksum);
+				} else {
+					writeListToFile(dest, tasks, Task.class, checksum);
+				}
+				StorageMetrics.getInstance().record(Operation.SAVE, dest, dest.length(), System.nanoTime() - startTime);
+				VerificationStamps.ofFile(dest).put(dest.getName(), dest.length(), checksum.getValue());
 			} else {
 				dest.delete(); //can safely delete empty tasklist
+				VerificationStamps.ofFile(dest).remove(dest.getName());
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -71,12 +262,14 @@ public class StorageWriter {
 	 * If the given taglist is empty, its respective file will be deleted.
 	 * @param tags the taglist to be saved
 	 * @param dest the destination file to be written to
-	 * @throws IOException thrown by FileWriter
+	 * @throws IOException thrown when writing or replacing the file
 	 */
 	void saveTaglist(ArrayList<TagCategory> tags, File dest) throws IOException {
 		try {
 			if (!tags.isEmpty()) {
-				writeToFile(dest, tags, new TypeToken<ArrayList<TagCategory>>() {});
+				long startTime = System.nanoTime();
+				writeListToFile(dest, tags, TagCategory.class, null);
+				StorageMetrics.getInstance().record(Operation.SAVE, dest, dest.length(), System.nanoTime() - startTime);
 			} else { //can safely delete empty taglist
 				dest.delete();
 			}
@@ -0,0 +1,319 @@
+package taskey.storage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+
+import com.google.gson.JsonParseException;
+
+import taskey.messenger.Task;
+import taskey.storage.DataVerifier.InvalidTaskException;
+
+/**
+ * @@author A0121618M
+ * This class is used by StorageReader to recover the valid tasks from a tasklist file that could not be read,
+ * e.g. because the user made a mistake while editing it, instead of discarding the whole tasklist.
+ * The file is scanned in a single streaming pass, one record (task) at a time, so that at most one record
+ * is held in memory, and only the records that are malformed or invalid are dropped.
+ * <p>For JSON files, the top-level array is split into records by tracking braces and strings,
+ * and each record is then parsed on its own. Since Taskey writes one task per object and never writes
+ * a raw line break inside a string, a record that is missing its closing brace or quote is detected
+ * when the next task begins or the line ends, and scanning resumes from there.
+ * <p>For binary files, see {@link BinaryFormat#salvageTasklist(File, TasklistSalvager)}.
+ * <p>A salvager is used for one file only.
+ */
+class TasklistSalvager {
+	private static final int MAX_RECORD_LENGTH = 1 << 20; //longer JSON records are dropped without being parsed
+	private static final int MAX_REPORTED_RECORDS = 20;
+	private static final int MAX_SNIPPET_LENGTH = 200;
+	private static final String REPORT_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+	private final DataVerifier verifier;
+	private final ArrayList<Task> tasks = new ArrayList<Task>();
+	private int numRecords = 0;
+	private int numDropped = 0;
+	private final ArrayList<String> droppedRecords = new ArrayList<String>(); //descriptions for the report
+
+	TasklistSalvager(DataVerifier verifier) {
+		this.verifier = verifier;
+	}
+
+	/**
+	 * Reads the valid tasks in the given tasklist file, dropping any malformed or invalid records.
+	 * @param src the tasklist file, in either format
+	 * @param binaryFormat the BinaryFormat to read binary files with
+	 * @return the valid tasks, in the order they appear in the file
+	 * @throws FileNotFoundException if the file doesn't exist or access was denied
+	 */
+	ArrayList<Task> salvage(File src, BinaryFormat binaryFormat) throws FileNotFoundException {
+		if (BinaryFormat.isBinaryFile(src)) {
+			binaryFormat.salvageTasklist(src, this);
+		} else {
+			salvageJson(src);
+		}
+		return tasks;
+	}
+
+	int getNumDropped() {
+		return numDropped;
+	}
+
+	int getNumRecords() {
+		return numRecords;
+	}
+
+	/*=====================*
+	 * Collecting records  *
+	 *=====================*/
+	/**
+	 * Adds the task read from the next record, if it is valid.
+	 * @param task the task that was read
+	 * @param text the text of the record, for the report if the task is invalid; may be null
+	 */
+	void addRecord(Task task, String text) {
+		try {
+			verifier.verifyTask(task);
+			numRecords++;
+			tasks.add(task);
+		} catch (InvalidTaskException e) {
+			dropRecord("Invalid task type", text);
+		}
+	}
+
+	/**
+	 * Drops the next record.
+	 * @param reason why the record was dropped
+	 * @param text the text of the record, for the report; may be null
+	 */
+	void dropRecord(String reason, String text) {
+		numRecords++;
+		numDropped++;
+		if (droppedRecords.size() < MAX_REPORTED_RECORDS) {
+			String description = "record " + numRecords + ": " + reason;
+			if (text != null) {
+				description += " | " + toSnippet(text);
+			}
+			droppedRecords.add(description);
+		}
+	}
+
+	/**
+	 * Drops the given number of remaining records, which could not be read at all.
+	 */
+	void dropRecords(int count, String reason) {
+		if (count <= 0) {
+			return;
+		}
+		if (droppedRecords.size() < MAX_REPORTED_RECORDS) {
+			droppedRecords.add("records " + (numRecords + 1) + " to " + (numRecords + count) + ": " + reason);
+		}
+		numRecords += count;
+		numDropped += count;
+	}
+
+	private static String toSnippet(String text) {
+		String snippet = text.replaceAll("\\s+", " ").trim();
+		if (snippet.length() > MAX_SNIPPET_LENGTH) {
+			snippet = snippet.substring(0, MAX_SNIPPET_LENGTH) + "...";
+		}
+		return snippet;
+	}
+
+	/*======*
+	 * JSON *
+	 *======*/
+	private void salvageJson(File src) throws FileNotFoundException {
+		Reader reader;
+		try {
+			reader = StorageReader.openTextReader(src);
+		} catch (JsonParseException e) {
+			dropRecords(1, "Invalid compressed file");
+			return;
+		}
+
+		try {
+			int c;
+			while ((c = reader.read()) != -1 && c != '[') {
+				//skip anything before the array
+			}
+			new RecordScanner().scan(reader);
+		} catch (IOException e) {
+			e.printStackTrace();
+			droppedRecords.add("the rest of the file could not be read: " + e.getMessage());
+		} finally {
+			try {
+				reader.close(); //must close the stream to allow deleting/moving of files
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Splits the elements of a JSON array into records, starting after its opening bracket.
+	 */
+	private class RecordScanner {
+		private StringBuilder record; //null between records
+		private boolean isBroken; //the record is known to be malformed
+		private int depth;
+		private boolean isInString;
+		private boolean isEscaped;
+		private char lastToken; //last character outside a string that is not whitespace
+
+		private void scan(Reader reader) throws IOException {
+			int c;
+			while ((c = reader.read()) != -1) {
+				char ch = (char) c;
+				if (record == null) {
+					if (Character.isWhitespace(ch) || ch == ',') {
+						continue;
+					} else if (ch == ']') {
+						return; //end of the array
+					}
+					startRecord();
+				}
+
+				if (isInString) {
+					scanInString(ch);
+					continue;
+				}
+				switch (ch) {
+					case '"':
+						isInString = true;
+						break;
+					case '{':
+						if (depth == 1 && lastToken == ',') { //a task cannot be a key, so the last task was not closed
+							record.setLength(Math.max(0, record.length() - 1)); //without the trailing comma
+							endRecord("Missing closing brace");
+							startRecord();
+						}
+						depth++;
+						break;
+					case '[':
+						depth++;
+						break;
+					case '}':
+						depth--;
+						break;
+					case ']':
+						if (depth == 0) {
+							endRecord("Not a task");
+							return; //end of the array
+						}
+						depth--;
+						break;
+					case ',':
+						if (depth == 0) {
+							endRecord("Not a task");
+							continue;
+						}
+						break;
+					default:
+						break;
+				}
+				append(ch);
+				if (!Character.isWhitespace(ch)) {
+					lastToken = ch;
+				}
+				if (depth == 0 && ch == '}') {
+					endRecord(null);
+				}
+			}
+			if (record != null) {
+				endRecord("Unexpected end of file");
+			}
+		}
+
+		private void scanInString(char ch) {
+			if (ch == '\n' || ch == '\r') {
+				isInString = false; //strings never contain raw line breaks, so this string was not closed
+				isBroken = true;
+			} else if (isEscaped) {
+				isEscaped = false;
+			} else if (ch == '\\') {
+				isEscaped = true;
+			} else if (ch == '"') {
+				isInString = false;
+			}
+			append(ch);
+		}
+
+		private void startRecord() {
+			record = new StringBuilder();
+			isBroken = false;
+			depth = 0;
+			isInString = false;
+			isEscaped = false;
+			lastToken = 0;
+		}
+
+		private void append(char ch) {
+			if (record.length() < MAX_RECORD_LENGTH) {
+				record.append(ch);
+			} else {
+				isBroken = true;
+			}
+		}
+
+		/**
+		 * Parses the current record, or drops it with the given reason if it is known to be malformed.
+		 */
+		private void endRecord(String reason) {
+			String text = record.toString();
+			record = null;
+			if (reason != null || isBroken) {
+				dropRecord((reason != null) ? reason : "Malformed record", text);
+				return;
+			}
+			try {
+				Task task = JsonAdapters.COMPACT_GSON.fromJson(text, Task.class);
+				if (task == null) {
+					dropRecord("Empty record", text);
+				} else {
+					addRecord(task, text);
+				}
+			} catch (JsonParseException | IllegalStateException e) {
+				dropRecord("Malformed record", text);
+			}
+		}
+	}
+
+	/*========*
+	 * Report *
+	 *========*/
+	/**
+	 * Appends a summary of this salvage to the recovery report, along with the records that were dropped.
+	 * @param reportFile the recovery report
+	 * @param src the tasklist file that was salvaged
+	 * @param badFile where the original file was kept, or null if it could not be kept
+	 * @throws IOException thrown when writing the report
+	 */
+	void writeReport(File reportFile, File src, File badFile) throws IOException {
+		BufferedWriter writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(reportFile, true), StandardCharsets.UTF_8));
+		try {
+			writer.write(new SimpleDateFormat(REPORT_DATE_FORMAT).format(new Date()) + " | " + src.getName()
+					+ " | " + tasks.size() + " of " + numRecords + " records recovered, " + numDropped + " dropped"
+					+ ((badFile == null) ? "" : " | original kept as " + badFile.getName()));
+			writer.newLine();
+			for (String description : droppedRecords) {
+				writer.write("\t" + description);
+				writer.newLine();
+			}
+			if (numDropped > MAX_REPORTED_RECORDS) {
+				writer.write("\t...");
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
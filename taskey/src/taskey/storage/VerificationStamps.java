@@ -0,0 +1,225 @@
+package taskey.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+
+/**
+ * @@author A0121618M
+ * This class keeps the verification stamps of the tasklist files in a directory, as written to VERIFIED.taskeystamps.
+ * When StorageWriter saves a tasklist, it records the file's length and CRC32 checksum here,
+ * since the tasks that Taskey writes are already valid and their dates are consistent.
+ * When StorageReader loads a tasklist whose length and checksum still match its stamp,
+ * i.e. the file was not edited outside Taskey, it skips DataVerifier's checks of every task.
+ * <p>The checksum is computed while the file is read or written, through a {@link ChecksumInputStream}
+ * or a CheckedOutputStream, so the file is never read twice.
+ * Stamps are matched by content, so a stale or missing stamp only causes the full verification to run.
+ *
+ * <p>File layout: the 4 magic bytes "TSKV", 1 version byte, the number of stamps (int),
+ * and then for each stamp: the file name (UTF), and the file's length and checksum (longs).
+ * VERSION should be increased whenever DataVerifier's checks change, so that every file is verified again.
+ */
+class VerificationStamps {
+	static final String FILENAME = "VERIFIED.taskeystamps";
+	static final byte[] MAGIC = {'T', 'S', 'K', 'V'};
+	static final int VERSION = 1;
+	private static final int MAX_STAMPS = 1 << 16; //sanity limit for the number of stamps read from file
+
+	private static final HashMap<File, VerificationStamps> instances = new HashMap<File, VerificationStamps>();
+
+	private final File stampsFile;
+	private HashMap<String, long[]> stamps; //file name -> {length, checksum}; null until read from file
+
+	private VerificationStamps(File directory) {
+		stampsFile = new File(directory, FILENAME);
+	}
+
+	/**
+	 * Returns the verification stamps of the tasklist files in the given directory.
+	 * There is one instance per directory, which reads the stamps file when it is first used.
+	 */
+	static synchronized VerificationStamps of(File directory) {
+		File key = directory.getAbsoluteFile();
+		VerificationStamps instance = instances.get(key);
+		if (instance == null) {
+			instance = new VerificationStamps(key);
+			instances.put(key, instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the verification stamps of the directory of the given tasklist file.
+	 */
+	static VerificationStamps ofFile(File file) {
+		return of(file.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Returns true if the tasklist file with the given name, length and checksum was last written by Taskey.
+	 */
+	synchronized boolean isVerified(String filename, long length, long checksum) {
+		long[] stamp = getStamps().get(filename);
+		return stamp != null && stamp[0] == length && stamp[1] == checksum;
+	}
+
+	/**
+	 * Returns true if the given tasklist file matches its stamp, i.e. it has not changed since Taskey last wrote
+	 * or verified it. Unlike {@link #isVerified(String, long, long)}, this reads the whole file to compute its checksum,
+	 * so it is only used when the file is not about to be parsed anyway.
+	 * @throws IOException if the file could not be read
+	 */
+	boolean matches(File file) throws IOException {
+		long[] stamp = get(file.getName());
+		if (stamp == null || stamp[0] != file.length()) {
+			return false;
+		}
+		CRC32 checksum = new CRC32();
+		InputStream in = new ChecksumInputStream(new FileInputStream(file), checksum);
+		in.close(); //reads the whole file
+		return checksum.getValue() == stamp[1];
+	}
+
+	/**
+	 * Returns the stamp of the tasklist file with the given name as {length, checksum}, or null if it has none.
+	 */
+	synchronized long[] get(String filename) {
+		long[] stamp = getStamps().get(filename);
+		return (stamp == null) ? null : stamp.clone();
+	}
+
+	/**
+	 * Records that the tasklist file with the given name, length and checksum was written by Taskey, or was verified.
+	 */
+	synchronized void put(String filename, long length, long checksum) {
+		long[] stamp = getStamps().get(filename);
+		if (stamp == null || stamp[0] != length || stamp[1] != checksum) {
+			getStamps().put(filename, new long[] {length, checksum});
+			write();
+		}
+	}
+
+	/**
+	 * Removes the stamp of the tasklist file with the given name, e.g. after it is deleted.
+	 */
+	synchronized void remove(String filename) {
+		if (getStamps().remove(filename) != null) {
+			write();
+		}
+	}
+
+	private HashMap<String, long[]> getStamps() {
+		if (stamps == null) {
+			stamps = read();
+		}
+		return stamps;
+	}
+
+	/*=============*
+	 * Read/write  *
+	 *=============*/
+	/**
+	 * Reads the stamps file. A missing or invalid file is read as having no stamps.
+	 */
+	private HashMap<String, long[]> read() {
+		HashMap<String, long[]> stamps = new HashMap<String, long[]>();
+		if (!stampsFile.exists()) {
+			return stamps;
+		}
+
+		DataInputStream data = null;
+		try {
+			data = new DataInputStream(new BufferedInputStream(new FileInputStream(stampsFile)));
+			byte[] magic = new byte[MAGIC.length];
+			data.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || data.readUnsignedByte() != VERSION) {
+				return stamps;
+			}
+			int numStamps = data.readInt();
+			if (numStamps < 0 || numStamps > MAX_STAMPS) {
+				return stamps;
+			}
+			for (int i = 0; i < numStamps; i++) {
+				String filename = data.readUTF();
+				long length = data.readLong();
+				long checksum = data.readLong();
+				stamps.put(filename, new long[] {length, checksum});
+			}
+			return stamps;
+		} catch (IOException e) {
+			return new HashMap<String, long[]>();
+		} finally {
+			if (data != null) {
+				try {
+					data.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the stamps file through a temp file. It is not forced to disk, since losing it
+	 * only causes the tasklist files to be fully verified on the next load.
+	 */
+	private void write() {
+		File temp = new File(stampsFile.getPath() + StorageWriter.TEMP_FILE_SUFFIX);
+		try {
+			DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				data.write(MAGIC);
+				data.writeByte(VERSION);
+				data.writeInt(stamps.size());
+				for (String filename : stamps.keySet()) {
+					long[] stamp = stamps.get(filename);
+					data.writeUTF(filename);
+					data.writeLong(stamp[0]);
+					data.writeLong(stamp[1]);
+				}
+			} finally {
+				data.close();
+			}
+			Files.move(temp.toPath(), stampsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.err.println("{Storage} Could not write verification stamps");
+			e.printStackTrace();
+			temp.delete();
+		}
+	}
+
+	/**
+	 * A CheckedInputStream that reads the rest of the file when it is closed,
+	 * so that its checksum always covers the whole file, even if the reader stopped before the end of it.
+	 */
+	static class ChecksumInputStream extends CheckedInputStream {
+		ChecksumInputStream(InputStream in, Checksum checksum) {
+			super(in, checksum);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				byte[] buffer = new byte[8192];
+				while (read(buffer, 0, buffer.length) != -1) {
+					//updates the checksum
+				}
+			} finally {
+				super.close();
+			}
+		}
+	}
+}
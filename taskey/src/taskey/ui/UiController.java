@@ -3,8 +3,11 @@ package taskey.ui;
 import java.util.ArrayList;
 import java.util.logging.Level;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.collections.ObservableList;
+import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.scene.Parent;
@@ -22,6 +25,7 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import taskey.constants.Triplet;
 import taskey.constants.UiConstants;
 import taskey.constants.UiConstants.ActionMode;
@@ -86,6 +90,7 @@ public class UiController {
 	private ArrayList<String> inputHistory;
 	private int historyIterator;
 	private Timeline shakeNotification; // animation
+	private Timeline externalReload; // polls Logic for edited savefiles
 
 	//----- Used by UiTrayModule ------
 	public Stage getStage() {
@@ -182,8 +187,33 @@ public class UiController {
 	private void setUpLogic() {
 		logic = new Logic();
 		updateAllContents(logic.getTagCategoryList(),logic.getAllTaskLists());
+		setUpExternalReload();
 	}
 	
+	// @@author A0121618M
+	/**
+	 * Polls Logic for changes made to the savefiles outside Taskey, e.g. by the user in a text editor,
+	 * and updates the display whenever any were applied
+	 */
+	private void setUpExternalReload() {
+		logic.watchSavefiles();
+		externalReload = new Timeline(new KeyFrame(new Duration(UiConstants.RELOAD_POLL_INTERVAL), 
+												   new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent event) {
+				if (logic.reloadExternalChanges()) {
+					updateAllContents(logic.getTagCategoryList(),logic.getAllTaskLists());
+					if (updateService != null) {
+						updateAlerts();
+					}
+				}
+			}
+		}));
+		externalReload.setCycleCount(Animation.INDEFINITE);
+		externalReload.play();
+	}
+	// @@author A0125419H
+	
 	private void displayTabContents(ContentBox toContent) {
 		SingleSelectionModel<Tab> selectionModel = myTabs.getSelectionModel();
 		selectionModel.select(toContent.getValue());
@@ -584,6 +614,7 @@ public class UiController {
 	
 	public void doSaveOnExit() {
 		logic.executeCommand(getCurrentContent(), "save");
+		logic.flushSaves(); // saves are written in the background, so wait for them before exiting
 		System.exit(0);
 	}
 }
\ No newline at end of file
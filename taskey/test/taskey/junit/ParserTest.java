@@ -476,6 +476,16 @@ public class ParserTest {
 				parser.parseInput("save").toString());
 	}
 	
+	@Test
+	/**
+	 * @@author A0121618M
+	 * Test the parsing of the stats command 
+	 */
+	public void testStats() {
+		assertEquals("Command: STATS\n",
+				parser.parseInput("stats").toString());
+	}
+	
 	@Test
 	/**
 	 * Test parsing of invalid command
@@ -1,13 +1,19 @@
 package taskey.junit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static taskey.junit.StorageTest.TaskList.taskListsFromStorage;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystemException;
@@ -15,20 +21,37 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.zip.CRC32;
+
+import javax.management.ObjectName;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.gson.Gson;
+
 import taskey.messenger.TagCategory;
 import taskey.messenger.Task;
 import taskey.parser.TimeConverter;
+import taskey.storage.ArchiveList;
+import taskey.storage.InMemoryStorage;
+import taskey.storage.JournalRecord;
+import taskey.storage.PersistenceService;
+import taskey.storage.SavefileChange;
+import taskey.storage.StateImage;
 import taskey.storage.Storage;
+import taskey.storage.Storage.SaveFormat;
 import taskey.storage.Storage.TasklistEnum;
+import taskey.storage.StorageBackend;
+import taskey.storage.StorageMetrics;
+import taskey.storage.StorageMetrics.Operation;
 import taskey.storage.StorageReader;
 import taskey.storage.StorageWriter;
 
@@ -175,7 +198,7 @@ public class StorageTest {
 	public static void tearDownAfterClass() throws IOException {
 		// Delete savefiles
 		for (File file : testDir.listFiles()) {
-			if (Arrays.asList(Storage.FILENAMES).contains(file.getName())) {
+			if (Storage.isSavefileName(file.getName())) {
 				File testfile = new File(testDir, file.getName());
 				Files.delete(testfile.toPath());
 			}
@@ -268,7 +291,7 @@ public class StorageTest {
 		// Move the files
 		storage.setDirectory(dest.getAbsolutePath(), true);
 		for (String filename : dest.list()) {
-			assertTrue(Arrays.asList(Storage.FILENAMES).contains(filename));
+			assertTrue(Storage.isSavefileName(filename));
 		}
 		// Move them back
 		storage.setDirectory(testDir.getAbsolutePath(), true);
@@ -302,6 +325,914 @@ public class StorageTest {
 		//System.out.println(toString(loadedList));
 	}
 
+	/**
+	 * Tests that saving replaces the savefiles through temp files, without leaving any of them behind.
+	 * @throws IOException
+	 */
+	@Test
+	public void saveLeavesNoTempFiles() throws IOException {
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+		storage.saveAllTasklists(TaskList.getSuperlist()); //overwrite the existing savefiles
+
+		for (String filename : testDir.list()) {
+			assertFalse("Temp file left behind: " + filename, filename.endsWith(".tmp"));
+		}
+		assertEquals(TaskList.PENDING.get(), storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1));
+	}
+
+	/**
+	 * Tests that savefiles written by older versions of Taskey, which also contain Task's 
+	 * timeConverter and pinTask fields, can still be loaded, and that these fields are no longer saved.
+	 * @throws IOException
+	 */
+	@Test
+	public void loadOldTasklistFormat() throws IOException {
+		storage.saveAllTasklists(getEmptySuperlist()); //start from a clean snapshot
+		File pendingFile = new File(testDir, TasklistEnum.PENDING.filename());
+		String oldFormat = "[{\"taskName\":\"Old task\",\"taskTags\":[\"tag\"],\"taskType\":\"FLOATING\","
+				+ "\"datesEpoch\":[-1,-1,-1,-1],\"datesHuman\":[\"\",\"\",\"\",\"\"],\"priority\":2,"
+				+ "\"pinTask\":false,\"timeConverter\":{\"currTime\":1460000000}}]";
+		Files.write(pendingFile.toPath(), oldFormat.getBytes());
+
+		ArrayList<Task> pendingList = storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1);
+		assertEquals(1, pendingList.size());
+		Task task = pendingList.get(0);
+		assertEquals("Old task", task.getTaskName());
+		assertEquals(Arrays.asList("tag"), task.getTaskTags());
+		assertEquals(2, task.getPriority());
+
+		ArrayList<ArrayList<Task>> superlist = getEmptySuperlist();
+		superlist.get(TasklistEnum.PENDING.index()).add(task);
+		storage.saveAllTasklists(superlist);
+		String newFormat = new String(Files.readAllBytes(pendingFile.toPath()));
+		assertFalse(newFormat.contains("timeConverter"));
+		assertFalse(newFormat.contains("pinTask"));
+	}
+
+	/**
+	 * Tests that the streamed JSON savefiles load back an empty array as an empty tasklist, 
+	 * and tasks of every type together with their tags, priority and dates.
+	 * @throws IOException
+	 */
+	@Test
+	public void saveAndLoadJsonTasklists() throws IOException {
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+		storage.saveAllTasklists(getEmptySuperlist());
+		ArrayList<ArrayList<Task>> loadedList = storage.loadAllTasklists();
+		assertEquals(TasklistEnum.size(), loadedList.size());
+		for (ArrayList<Task> tasklist : loadedList) {
+			assertTrue(tasklist.isEmpty());
+		}
+		File pendingFile = new File(testDir, TasklistEnum.PENDING.filename(SaveFormat.JSON));
+		assertFalse(pendingFile.exists()); //empty tasklists are not written
+		Files.write(pendingFile.toPath(), "[ ]".getBytes());
+		assertTrue(storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1).isEmpty());
+		assertFalse(new File(testDir, "INVALID." + pendingFile.getName()).exists());
+
+		Task floating = new Task("Floating task", new ArrayList<String>(Arrays.asList("tag", "other tag")));
+		floating.setTaskType("FLOATING");
+		floating.setPriority(3);
+		Task deadline = new Task("Deadline task", new ArrayList<String>(Arrays.asList("tag")));
+		deadline.setTaskType("DEADLINE");
+		deadline.setDeadline(1460000000L);
+		deadline.setPriority(2);
+		Task event = new Task("Event task \"quoted\"", new ArrayList<String>());
+		event.setTaskType("EVENT");
+		event.setStartDate(1460000000L);
+		event.setEndDate(1460003600L);
+		ArrayList<ArrayList<Task>> superlist = getEmptySuperlist();
+		ArrayList<Task> pendingList = superlist.get(TasklistEnum.PENDING.index());
+		pendingList.addAll(Arrays.asList(floating, deadline, event));
+		storage.saveAllTasklists(superlist);
+
+		loadedList = storage.loadAllTasklists();
+		ArrayList<Task> loadedPending = loadedList.get(TasklistEnum.PENDING.index() - 1);
+		assertEquals(pendingList, loadedPending);
+		for (int i = 0; i < pendingList.size(); i++) {
+			assertEquals(pendingList.get(i).getTaskTags(), loadedPending.get(i).getTaskTags());
+		}
+		assertEquals(Arrays.asList(floating), loadedList.get(TasklistEnum.GENERAL.index() - 1));
+		assertEquals(Arrays.asList(deadline), loadedList.get(TasklistEnum.DEADLINE.index() - 1));
+		assertEquals(Arrays.asList(event), loadedList.get(TasklistEnum.EVENT.index() - 1));
+	}
+
+	/**
+	 * Tests that a truncated or malformed JSON savefile is treated as invalid, i.e. it is kept aside and 
+	 * only the tasks before the point where it was cut off are recovered.
+	 * @throws IOException
+	 */
+	@Test
+	public void loadMalformedJsonTasklist() throws IOException {
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+		Task[] tasks = new Task[2];
+		ArrayList<ArrayList<Task>> superlist = getEmptySuperlist();
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new Task("Truncated task " + i);
+			tasks[i].setTaskType("FLOATING");
+			superlist.get(TasklistEnum.PENDING.index()).add(tasks[i]);
+		}
+		storage.saveAllTasklists(superlist);
+		File pendingFile = new File(testDir, TasklistEnum.PENDING.filename(SaveFormat.JSON));
+		File badFile = new File(testDir, "INVALID." + pendingFile.getName());
+		File report = new File(testDir, Storage.FILENAME_RECOVERY_REPORT);
+		String saved = new String(Files.readAllBytes(pendingFile.toPath()));
+
+		try {
+			int secondTask = saved.indexOf("Truncated task 1");
+			Files.write(pendingFile.toPath(), saved.substring(0, secondTask).getBytes()); //cut off mid-record
+			assertEquals(Arrays.asList(tasks[0]), storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1));
+			assertTrue(badFile.exists());
+			Files.delete(badFile.toPath());
+
+			Files.write(pendingFile.toPath(), "{\"taskName\": \"Not a list\"}".getBytes());
+			assertTrue(storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1).isEmpty());
+			assertTrue(badFile.exists());
+		} finally {
+			Files.deleteIfExists(badFile.toPath());
+			Files.deleteIfExists(report.toPath());
+			storage.saveAllTasklists(getEmptySuperlist());
+		}
+	}
+
+	/**
+	 * Tests that only the changed lists are rewritten, unless their savefiles are out of date.
+	 * @throws IOException
+	 */
+	@Test
+	public void saveOnlyChangedTasklists() throws IOException {
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+		ArrayList<ArrayList<Task>> expectedList = storage.loadAllTasklists();
+
+		// The unchanged lists are not written, so emptying them in memory should not affect their savefiles
+		ArrayList<ArrayList<Task>> superlist = TaskList.getSuperlist();
+		superlist.get(TasklistEnum.EXPIRED.index()).clear();
+		superlist.get(TasklistEnum.COMPLETED.index()).clear();
+		storage.saveTasklists(superlist, EnumSet.of(TasklistEnum.PENDING));
+		assertEquals(expectedList, storage.loadAllTasklists());
+
+		superlist.get(TasklistEnum.PENDING.index()).clear();
+		storage.saveTasklists(superlist, EnumSet.of(TasklistEnum.PENDING));
+		ArrayList<ArrayList<Task>> loadedList = storage.loadAllTasklists();
+		assertTrue(loadedList.get(TasklistEnum.PENDING.index() - 1).isEmpty());
+		assertEquals(expectedList.get(TasklistEnum.EXPIRED.index() - 1), 
+					 loadedList.get(TasklistEnum.EXPIRED.index() - 1));
+	}
+
+	/**
+	 * Tests that the archive (the COMPLETED list) is only read from file when its tasks are needed.
+	 * @throws IOException
+	 */
+	@Test
+	public void loadArchiveOnDemand() throws IOException {
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+		ArrayList<Task> expectedArchive = new ArrayList<Task>(TaskList.COMPLETED.get());
+
+		ArrayList<Task> archive = storage.loadAllTasklists().get(TasklistEnum.COMPLETED.index() - 1);
+		assertTrue(archive instanceof ArchiveList);
+		assertFalse(((ArchiveList) archive).isLoaded());
+		assertEquals(expectedArchive.size(), archive.size());
+
+		// Adding a task, or checking for a task that is not archived, should not load the archive
+		Task done = new Task("Done task");
+		done.setTaskType("FLOATING");
+		assertFalse(archive.contains(done));
+		archive.add(done);
+		assertTrue(archive.contains(done));
+		assertEquals(expectedArchive.size() + 1, archive.size());
+		assertFalse(((ArchiveList) archive).isLoaded());
+
+		// Reading the tasks loads the archive, with the added task after the archived tasks
+		expectedArchive.add(done);
+		assertEquals(expectedArchive, new ArrayList<Task>(archive));
+		assertTrue(((ArchiveList) archive).isLoaded());
+	}
+
+	/**
+	 * Tests that an old ARCHIVE.taskey is migrated into monthly segments, that saving a newly archived task
+	 * only writes the current month's segment, and that the archive can be read by month.
+	 * @throws IOException
+	 */
+	@Test
+	public void partitionArchiveByMonth() throws IOException {
+		storage.saveAllTasklists(getEmptySuperlist());
+		Task oldTask = new Task("Old deadline");
+		oldTask.setTaskType("DEADLINE");
+		oldTask.setDeadline(1460000000L); //April 2016
+		File oldArchive = new File(testDir, TasklistEnum.COMPLETED.filename(SaveFormat.JSON));
+		Files.write(oldArchive.toPath(), new Gson().toJson(Arrays.asList(oldTask)).getBytes());
+
+		ArrayList<Task> archive = storage.loadAllTasklists().get(TasklistEnum.COMPLETED.index() - 1);
+		assertEquals(Arrays.asList(oldTask), archive);
+		assertFalse(oldArchive.exists());
+		File oldSegment = new File(testDir, "ARCHIVE-2016-04.taskey");
+		assertTrue(oldSegment.exists());
+		long oldSegmentModified = oldSegment.lastModified();
+
+		// The new task goes into the current month's segment, and the old segment is not rewritten
+		Task newTask = new Task("Newly archived");
+		newTask.setTaskType("FLOATING");
+		ArrayList<ArrayList<Task>> superlist = getEmptySuperlist();
+		superlist.get(TasklistEnum.COMPLETED.index()).addAll(Arrays.asList(oldTask, newTask));
+		storage.saveTasklists(superlist, EnumSet.of(TasklistEnum.COMPLETED));
+		assertEquals(oldSegmentModified, oldSegment.lastModified());
+
+		long now = System.currentTimeMillis() / 1000;
+		assertEquals(Arrays.asList(oldTask), storage.loadArchivedTasks(1460000000L, 1460000000L));
+		assertEquals(Arrays.asList(newTask), storage.loadArchivedTasks(now, now));
+		assertEquals(Arrays.asList(oldTask, newTask), storage.loadAllTasklists().get(TasklistEnum.COMPLETED.index() - 1));
+
+		// Segments of earlier months are compressed on the next save
+		try {
+			storage.setArchiveCompression(true);
+			storage.saveTasklists(superlist, EnumSet.noneOf(TasklistEnum.class));
+			assertFalse(oldSegment.exists());
+			assertTrue(new File(testDir, oldSegment.getName() + ".gz").exists());
+			assertEquals(Arrays.asList(oldTask, newTask), 
+						 storage.loadAllTasklists().get(TasklistEnum.COMPLETED.index() - 1));
+		} finally {
+			storage.setArchiveCompression(false);
+		}
+	}
+
+	/**
+	 * Tests that saves requested through PersistenceService are merged, and written once flushed.
+	 * @throws IOException
+	 */
+	@Test
+	public void coalesceBackgroundSaves() throws IOException {
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(getEmptySuperlist());
+		storage.loadAllTasklists();
+
+		PersistenceService persistence = PersistenceService.getInstance();
+		EnumMap<TasklistEnum, ArrayList<Task>> firstSave = new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+		firstSave.put(TasklistEnum.PENDING, new ArrayList<Task>(TaskList.PENDING.get()));
+		firstSave.put(TasklistEnum.EXPIRED, new ArrayList<Task>(TaskList.EXPIRED.get()));
+		persistence.save(storage, firstSave, new ArrayList<JournalRecord>(), createTaglist());
+
+		// The second save replaces the first save's copy of PENDING, but not of EXPIRED
+		Task journaled = new Task("Journaled task");
+		journaled.setTaskType("FLOATING");
+		JournalRecord record = new JournalRecord();
+		record.addTask(TasklistEnum.COMPLETED, journaled);
+		EnumMap<TasklistEnum, ArrayList<Task>> secondSave = new EnumMap<TasklistEnum, ArrayList<Task>>(TasklistEnum.class);
+		secondSave.put(TasklistEnum.PENDING, new ArrayList<Task>());
+		persistence.save(storage, secondSave, new ArrayList<JournalRecord>(Arrays.asList(record)), createTaglist());
+		persistence.flush();
+		assertFalse(persistence.checkFailed());
+
+		ArrayList<ArrayList<Task>> loadedList = storage.loadAllTasklists();
+		assertTrue(loadedList.get(TasklistEnum.PENDING.index() - 1).isEmpty());
+		assertEquals(TaskList.EXPIRED.get(), loadedList.get(TasklistEnum.EXPIRED.index() - 1));
+		assertEquals(Arrays.asList(journaled), loadedList.get(TasklistEnum.COMPLETED.index() - 1));
+		assertEquals(createTaglist(), storage.loadTaglist());
+	}
+
+	/**
+	 * Tests that JSON savefiles are migrated to the binary format on load, that binary savefiles
+	 * load back the same tasklists, and that they are migrated back when switching to JSON again.
+	 * @throws IOException
+	 */
+	@Test
+	public void migrateBetweenSaveFormats() throws IOException {
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+		ArrayList<ArrayList<Task>> expectedList = storage.loadAllTasklists();
+		File jsonFile = new File(testDir, TasklistEnum.PENDING.filename(SaveFormat.JSON));
+		File binaryFile = new File(testDir, TasklistEnum.PENDING.filename(SaveFormat.BINARY));
+
+		try {
+			storage.setSaveFormat(SaveFormat.BINARY);
+			assertEquals(expectedList, storage.loadAllTasklists()); //migrates the JSON savefiles
+			assertTrue(binaryFile.exists());
+			assertFalse(jsonFile.exists());
+			assertEquals(expectedList, storage.loadAllTasklists()); //reads the binary savefiles
+
+			storage.saveAllTasklists(TaskList.getSuperlist());
+			assertEquals(toString(expectedList), toString(storage.loadAllTasklists()));
+		} finally {
+			storage.setSaveFormat(SaveFormat.JSON);
+		}
+		assertEquals(expectedList, storage.loadAllTasklists()); //migrates back to JSON
+		assertTrue(jsonFile.exists());
+		assertFalse(binaryFile.exists());
+	}
+
+	/**
+	 * Tests that the valid tasks in a corrupted tasklist file are recovered,
+	 * and that the original file is kept and the dropped records are reported.
+	 * @throws IOException
+	 */
+	@Test
+	public void salvageCorruptedTasklist() throws IOException {
+		storage.saveAllTasklists(getEmptySuperlist());
+		Gson gson = new Gson();
+		Task[] tasks = new Task[4];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new Task("Salvaged task " + i);
+			tasks[i].setTaskType("FLOATING");
+		}
+		tasks[1].setTaskType("BOGUS");
+		String unclosed = gson.toJson(tasks[2]);
+		unclosed = unclosed.substring(0, unclosed.length() - 1); //missing its closing brace
+		File pendingFile = new File(testDir, TasklistEnum.PENDING.filename(SaveFormat.JSON));
+		File badFile = new File(testDir, "INVALID." + pendingFile.getName());
+		File report = new File(testDir, Storage.FILENAME_RECOVERY_REPORT);
+		Files.write(pendingFile.toPath(), ("[" + gson.toJson(tasks[0]) + ",\n" + gson.toJson(tasks[1]) + ",\n"
+										   + unclosed + ",\n" + gson.toJson(tasks[3]) + "]").getBytes());
+
+		try {
+			ArrayList<Task> expected = new ArrayList<Task>(Arrays.asList(tasks[0], tasks[3]));
+			assertEquals(expected, storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1));
+			assertTrue(badFile.exists());
+			assertTrue(report.exists());
+			assertEquals(expected, storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1)); //rewritten
+
+			// A binary record whose CRC does not match is dropped on its own
+			storage.setSaveFormat(SaveFormat.BINARY);
+			storage.loadAllTasklists(); //migrates the JSON savefiles
+			File binaryFile = new File(testDir, TasklistEnum.PENDING.filename(SaveFormat.BINARY));
+			byte[] bytes = Files.readAllBytes(binaryFile.toPath());
+			bytes[bytes.length - 1] ^= 1; //the last record's CRC
+			Files.write(binaryFile.toPath(), bytes);
+			assertEquals(Arrays.asList(tasks[0]), storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1));
+		} finally {
+			storage.setSaveFormat(SaveFormat.JSON);
+			Files.deleteIfExists(badFile.toPath());
+			Files.deleteIfExists(new File(testDir, "INVALID." +
+										  TasklistEnum.PENDING.filename(SaveFormat.BINARY)).toPath());
+			Files.deleteIfExists(report.toPath());
+		}
+	}
+
+	/**
+	 * Tests that the dates of a tasklist saved by Taskey are not checked again on load,
+	 * but are checked once the file has been edited outside Taskey.
+	 * @throws IOException
+	 */
+	@Test
+	public void skipVerificationOfUnchangedFiles() throws IOException {
+		Task task = new Task("Stamped deadline");
+		task.setTaskType("DEADLINE");
+		task.setDeadline(1460000000L);
+		String[] datesHuman = task.getDatesHuman().clone();
+		datesHuman[3] = "01 Jan 2016 10:00"; //differs from the epoch date, as if it were edited
+		task.setDates(task.getDatesEpoch(), datesHuman);
+		ArrayList<ArrayList<Task>> superlist = getEmptySuperlist();
+		superlist.get(TasklistEnum.PENDING.index()).add(task);
+		storage.saveAllTasklists(superlist);
+		assertTrue(new File(testDir, Storage.FILENAME_VERIFICATION_STAMPS).exists());
+
+		Task loaded = storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1).get(0);
+		assertEquals(1460000000L, loaded.getDeadlineEpoch());
+
+		File pendingFile = new File(testDir, TasklistEnum.PENDING.filename(SaveFormat.JSON));
+		Files.write(pendingFile.toPath(), (new String(Files.readAllBytes(pendingFile.toPath())) + "\n").getBytes());
+		loaded = storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1).get(0);
+		assertNotEquals(1460000000L, loaded.getDeadlineEpoch());
+	}
+
+	/**
+	 * Tests that the state image written on exit loads back the same lists, including the derived and THIS_WEEK lists,
+	 * and that it is ignored once the journal has changed.
+	 * @throws IOException
+	 */
+	@Test
+	public void loadStateImage() throws IOException {
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		ArrayList<ArrayList<Task>> superlist = TaskList.getSuperlist();
+		superlist.set(TaskList.THIS_WEEK.ordinal(), new ArrayList<Task>(TaskList.DEADLINE.get()));
+		storage.saveAllTasklists(superlist);
+		storage.saveStateImage(superlist);
+
+		StateImage image = storage.loadStateImage();
+		assertTrue(image != null);
+		ArrayList<ArrayList<Task>> loadedList = image.getTaskLists();
+		for (TaskList list : taskListsFromStorage) {
+			assertEquals(list.get(), loadedList.get(list.ordinal() - 1));
+		}
+		assertEquals(TaskList.DEADLINE.get(), image.getThisWeekList());
+		assertTrue(image.getThisWeekList().get(0) == loadedList.get(TasklistEnum.DEADLINE.index() - 1).get(0));
+
+		// Journaling a change invalidates the image
+		Task journaled = new Task("Journaled task");
+		journaled.setTaskType("FLOATING");
+		JournalRecord record = new JournalRecord();
+		record.addTask(TasklistEnum.EXPIRED, journaled);
+		storage.appendToJournal(new ArrayList<JournalRecord>(Arrays.asList(record)));
+		assertTrue(storage.loadStateImage() == null);
+		assertTrue(storage.loadAllTasklists().get(TasklistEnum.EXPIRED.index() - 1).contains(journaled));
+	}
+
+	/**
+	 * Tests that a task completed since the archive was last saved, i.e. only in the journal, 
+	 * is still in the COMPLETED list when the tasklists are loaded from the state image.
+	 * @throws IOException
+	 */
+	@Test
+	public void loadStateImageWithJournaledCompletion() throws IOException {
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+
+		// Mark the expired task as done, as Logic would journal it
+		Task done = TaskList.EXPIRED.get().remove(0);
+		TaskList.COMPLETED.add(done);
+		JournalRecord record = new JournalRecord();
+		record.removeTask(done);
+		record.addTask(TasklistEnum.COMPLETED, done);
+		storage.appendToJournal(new ArrayList<JournalRecord>(Arrays.asList(record)));
+		ArrayList<ArrayList<Task>> superlist = TaskList.getSuperlist();
+		superlist.set(TaskList.THIS_WEEK.ordinal(), new ArrayList<Task>());
+		storage.saveStateImage(superlist);
+
+		StateImage image = storage.loadStateImage();
+		assertTrue(image != null);
+		ArrayList<ArrayList<Task>> loadedList = image.getTaskLists();
+		assertEquals(TaskList.COMPLETED.get(), loadedList.get(TasklistEnum.COMPLETED.index() - 1));
+		assertTrue(loadedList.get(TasklistEnum.EXPIRED.index() - 1).isEmpty());
+		assertEquals(TaskList.COMPLETED.get(), storage.loadAllTasklists().get(TasklistEnum.COMPLETED.index() - 1));
+	}
+
+	/**
+	 * Tests that a binary savefile large enough to be memory-mapped loads back the same tasks,
+	 * and can be replaced by the next save once it has been read.
+	 * @throws IOException
+	 */
+	@Test
+	public void loadLargeBinaryFile() throws IOException {
+		ArrayList<ArrayList<Task>> superlist = getEmptySuperlist();
+		ArrayList<Task> expiredList = superlist.get(TasklistEnum.EXPIRED.index());
+		for (int i = 0; i < 50000; i++) {
+			Task task = new Task("Expired deadline with a long enough name, number " + i);
+			task.setTaskType("DEADLINE");
+			task.setDeadline(1460000000L + i);
+			expiredList.add(task);
+		}
+		File binaryFile = new File(testDir, TasklistEnum.EXPIRED.filename(SaveFormat.BINARY));
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+
+		try {
+			storage.setSaveFormat(SaveFormat.BINARY);
+			storage.saveAllTasklists(superlist);
+			assertTrue(binaryFile.length() >= 1 << 20); //large enough to be mapped
+			assertEquals(expiredList, storage.loadAllTasklists().get(TasklistEnum.EXPIRED.index() - 1));
+
+			expiredList.remove(0);
+			storage.saveAllTasklists(superlist); //replaces the file that was just mapped
+			assertEquals(expiredList, storage.loadAllTasklists().get(TasklistEnum.EXPIRED.index() - 1));
+		} finally {
+			storage.setSaveFormat(SaveFormat.JSON);
+			storage.saveAllTasklists(getEmptySuperlist());
+		}
+	}
+
+	/**
+	 * Tests that binary savefiles written before tasks had ids can still be read, and that a record with a corrupted
+	 * string index is treated as invalid even though its CRC matches.
+	 * @throws IOException
+	 */
+	@Test
+	public void readBinaryFileVersions() throws IOException {
+		File binaryFile = new File(testDir, TasklistEnum.PENDING.filename(SaveFormat.BINARY));
+		File badFile = new File(testDir, "INVALID." + binaryFile.getName());
+		File report = new File(testDir, Storage.FILENAME_RECOVERY_REPORT);
+		byte[] oldRecord = {1, 2, 2, 0, 1, 1, 1, 1, 0, 0, 0, 0}; //name, type, priority 1, no tags, no dates
+		byte[] corruptRecord = {-1, -1, -1, -1, -1, -1, -1, -1, -1, 1, 2, 2, 0, 1, 1, 1, 1, 0, 0, 0, 0, 1}; //name -1
+
+		try {
+			storage.setSaveFormat(SaveFormat.BINARY);
+			storage.saveAllTasklists(getEmptySuperlist());
+			Files.write(binaryFile.toPath(), toBinaryTasklist(1, oldRecord));
+			ArrayList<Task> pendingList = storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1);
+			assertEquals(1, pendingList.size());
+			assertEquals("Old binary task", pendingList.get(0).getTaskName());
+			assertFalse(badFile.exists());
+
+			Files.write(binaryFile.toPath(), toBinaryTasklist(2, corruptRecord));
+			assertTrue(storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1).isEmpty());
+			assertTrue(badFile.exists());
+		} finally {
+			storage.setSaveFormat(SaveFormat.JSON);
+			Files.deleteIfExists(badFile.toPath());
+			Files.deleteIfExists(report.toPath());
+			storage.saveAllTasklists(getEmptySuperlist());
+		}
+	}
+
+	/**
+	 * Returns a binary tasklist file of the given version, with a string table of a task name and FLOATING,
+	 * holding a single record with the given payload.
+	 */
+	private static byte[] toBinaryTasklist(int version, byte[] payload) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeBytes("TSKY");
+		data.writeByte(version);
+		data.writeByte(1); //number of records
+		data.writeByte(2); //number of strings
+		for (String string : new String[] {"Old binary task", "FLOATING"}) {
+			data.writeByte(string.length());
+			data.writeBytes(string);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		data.writeByte(payload.length);
+		data.write(payload);
+		data.writeInt((int) crc.getValue());
+		return bytes.toByteArray();
+	}
+
+	private static ArrayList<ArrayList<Task>> getEmptySuperlist() {
+		ArrayList<ArrayList<Task>> superlist = new ArrayList<ArrayList<Task>>();
+		for (int i = 0; i < TaskList.values().length; i++) {
+			superlist.add(new ArrayList<Task>());
+		}
+		return superlist;
+	}
+
+	/**
+	 * Tests that journaled changes are replayed on top of the saved tasklists when loading,
+	 * and that saving all the tasklists folds the journal into the savefiles.
+	 * @throws IOException
+	 */
+	@Test
+	public void replayJournalOnLoad() throws IOException {
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+
+		// Mark the floating task as done, and add a new expired task
+		Task done = TaskList.PENDING.get().get(0);
+		Task expired = new Task("Journaled task");
+		expired.setTaskType("FLOATING");
+		JournalRecord doneRecord = new JournalRecord();
+		doneRecord.removeTask(done);
+		doneRecord.addTask(TasklistEnum.COMPLETED, done);
+		JournalRecord addRecord = new JournalRecord();
+		addRecord.addTask(TasklistEnum.EXPIRED, expired);
+		storage.appendToJournal(new ArrayList<JournalRecord>(Arrays.asList(doneRecord, addRecord)));
+
+		ArrayList<ArrayList<Task>> loadedList = storage.loadAllTasklists();
+		assertFalse(loadedList.get(TasklistEnum.PENDING.index() - 1).contains(done));
+		assertFalse(loadedList.get(TasklistEnum.GENERAL.index() - 1).contains(done));
+		assertTrue(loadedList.get(TasklistEnum.COMPLETED.index() - 1).contains(done));
+		assertTrue(loadedList.get(TasklistEnum.EXPIRED.index() - 1).contains(expired));
+
+		// Saving all the tasklists should clear the journal
+		storage.saveAllTasklists(TaskList.getSuperlist());
+		assertFalse(new File(testDir, Storage.FILENAME_JOURNAL).exists());
+		assertTrue(storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1).contains(done));
+	}
+
+	/**
+	 * Tests that a partially written last record in the journal, e.g. from a crash during a save,
+	 * does not hide the records appended by the following saves.
+	 * @throws IOException
+	 */
+	@Test
+	public void replayJournalWithTornRecord() throws IOException {
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+		storage.saveAllTasklists(getEmptySuperlist());
+		File journalFile = new File(testDir, Storage.FILENAME_JOURNAL);
+
+		try {
+			storage.appendToJournal(toAddRecords("A"));
+			Files.write(journalFile.toPath(), "{\"additions\":[{\"task".getBytes(StandardCharsets.UTF_8), 
+						StandardOpenOption.APPEND);
+			assertEquals(1, storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1).size());
+
+			storage.appendToJournal(toAddRecords("B", "C"));
+			ArrayList<Task> pendingList = storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1);
+			assertEquals(3, pendingList.size());
+			assertEquals("C", pendingList.get(2).getTaskName());
+		} finally {
+			storage.saveAllTasklists(getEmptySuperlist());
+		}
+		assertFalse(journalFile.exists());
+	}
+
+	/**
+	 * Returns one journal record for each of the given names, each adding a floating task to the PENDING list.
+	 */
+	private static ArrayList<JournalRecord> toAddRecords(String... taskNames) {
+		ArrayList<JournalRecord> records = new ArrayList<JournalRecord>();
+		for (String taskName : taskNames) {
+			Task task = new Task(taskName);
+			task.setTaskType("FLOATING");
+			JournalRecord record = new JournalRecord();
+			record.addTask(TasklistEnum.PENDING, task);
+			records.add(record);
+		}
+		return records;
+	}
+
+	/**
+	 * Tests that while the savefiles are watched, Taskey's own saves are not reported as external changes,
+	 * while a savefile replaced outside Taskey is reported as the tasks added to and removed from it.
+	 * @throws Exception
+	 */
+	@Test
+	public void watchExternalChanges() throws Exception {
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+		File pendingFile = new File(testDir, TasklistEnum.PENDING.filename());
+
+		try {
+			storage.startWatching();
+			Thread.sleep(1000); //let the watcher read the current savefiles
+			storage.saveAllTasklists(TaskList.getSuperlist()); //a save by Taskey itself
+			Thread.sleep(1000);
+			assertTrue(storage.pollExternalChanges().isEmpty());
+
+			// Rename the floating task in the PENDING savefile, as the user would in a text editor
+			Task removed = TaskList.PENDING.get().get(0);
+			Task added = new Task(removed);
+			added.setTaskName("Edited float");
+			String json = new String(Files.readAllBytes(pendingFile.toPath()), "UTF-8");
+			Files.write(pendingFile.toPath(), json.replace("\"Float\"", "\"Edited float\"").getBytes("UTF-8"));
+
+			ArrayList<SavefileChange> changes = new ArrayList<SavefileChange>();
+			for (int i = 0; i < 50 && changes.isEmpty(); i++) {
+				Thread.sleep(100);
+				changes.addAll(storage.pollExternalChanges());
+			}
+			assertEquals(1, changes.size());
+			assertEquals(TasklistEnum.PENDING, changes.get(0).getListType());
+			assertEquals(Arrays.asList(added), changes.get(0).getAddedTasks());
+			assertEquals(Arrays.asList(removed), changes.get(0).getRemovedTasks());
+		} finally {
+			storage.stopWatching();
+		}
+	}
+
+	/**
+	 * Tests that setDirectory moves the savefiles in the background and removes them from the old directory
+	 * once they are copied, and that a move left unfinished by an earlier run is resumed on startup.
+	 * @throws IOException
+	 */
+	@Test
+	public void resumableMigration() throws IOException {
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+		File pendingFile = new File(testDir, TasklistEnum.PENDING.filename());
+		String pendingJson = new String(Files.readAllBytes(pendingFile.toPath()), "UTF-8");
+
+		// Move the files in the background, then move them back; the second move waits for the first
+		File dest = new File(testDir, "migrated");
+		storage.setDirectory(dest.getAbsolutePath(), true);
+		storage.setDirectory(testDir.getAbsolutePath(), true);
+		storage.awaitMigration();
+		assertFalse(dest.exists()); //deleted since it was created by Taskey and is now empty
+		assertEquals(pendingJson, new String(Files.readAllBytes(pendingFile.toPath()), "UTF-8"));
+		assertFalse(new File(testDir, Storage.FILENAME_MIGRATION_JOURNAL).exists());
+
+		// A journal as left by a move that was interrupted before any file was copied
+		Files.createDirectories(dest.toPath());
+		List<String> journal = Arrays.asList("TASKEY MIGRATION 1", "DEST\t" + dest.getAbsolutePath());
+		Files.write(new File(testDir, Storage.FILENAME_MIGRATION_JOURNAL).toPath(), journal, StandardCharsets.UTF_8);
+		Storage restarted = new Storage(); //reads the directory config file, which points to testDir
+		try {
+			assertFalse(pendingFile.exists());
+			assertEquals(pendingJson, new String(Files.readAllBytes(new File(dest, pendingFile.getName()).toPath()), 
+												 "UTF-8"));
+			assertFalse(new File(testDir, Storage.FILENAME_MIGRATION_JOURNAL).exists());
+			assertEquals(TaskList.PENDING.get(), restarted.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1));
+		} finally {
+			restarted.setDirectory(testDir.getAbsolutePath(), true);
+			restarted.awaitMigration();
+			Files.deleteIfExists(dest.toPath());
+			storage.setDirectory(testDir.getAbsolutePath(), false);
+		}
+		assertTrue(pendingFile.exists());
+	}
+
+	/**
+	 * Tests that a move of the savefiles that fails in the background is reported once by checkMigrationFailed,
+	 * and that the savefiles are kept in the current directory.
+	 * @throws IOException
+	 */
+	@Test
+	public void reportFailedMigration() throws IOException {
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+		storage.saveTaglist(new ArrayList<TagCategory>(Arrays.asList(new TagCategory("blocked"))));
+		File dest = new File(testDir, "blocked");
+		File blocker = new File(dest, Storage.FILENAME_TAGS);
+
+		try {
+			Files.createDirectories(blocker.toPath()); //the taglist cannot be copied over a directory
+			storage.setDirectory(dest.getAbsolutePath(), true); //returns before the move fails
+			storage.awaitMigration();
+			assertTrue(storage.checkMigrationFailed() != null);
+			assertTrue(storage.checkMigrationFailed() == null); //only reported once
+			assertTrue(new File(testDir, TasklistEnum.PENDING.filename()).exists());
+			assertEquals(TaskList.PENDING.get(), storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1));
+		} finally {
+			Files.deleteIfExists(blocker.toPath());
+			Files.deleteIfExists(dest.toPath()); //fails if the copies were not deleted
+			storage.setDirectory(testDir.getAbsolutePath(), false);
+			storage.saveTaglist(new ArrayList<TagCategory>());
+		}
+	}
+
+	/**
+	 * Tests that the GENERAL, DEADLINE and EVENT lists derived by one load are not changed by a later load
+	 * from another Storage, since each load derives its own lists.
+	 * @throws IOException
+	 */
+	@Test
+	public void deriveListsPerLoad() throws IOException {
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+
+		File otherDir = new File(testDir, "other");
+		Storage other = new Storage();
+		try {
+			other.setDirectory(otherDir.getAbsolutePath(), false);
+			ArrayList<ArrayList<Task>> otherSuperlist = getEmptySuperlist();
+			Task otherTask = new Task("Other task");
+			otherTask.setTaskType("FLOATING");
+			otherSuperlist.get(TasklistEnum.PENDING.index()).add(otherTask);
+			other.saveAllTasklists(otherSuperlist);
+
+			ArrayList<ArrayList<Task>> loadedList = storage.loadAllTasklists();
+			ArrayList<ArrayList<Task>> otherLoadedList = other.loadAllTasklists();
+			assertEquals(TaskList.FLOATING.get(), loadedList.get(TasklistEnum.GENERAL.index() - 1));
+			assertEquals(TaskList.EVENT.get(), loadedList.get(TasklistEnum.EVENT.index() - 1));
+			assertEquals(Arrays.asList(otherTask), otherLoadedList.get(TasklistEnum.GENERAL.index() - 1));
+			assertTrue(otherLoadedList.get(TasklistEnum.EVENT.index() - 1).isEmpty());
+		} finally {
+			for (File file : otherDir.listFiles()) {
+				Files.delete(file.toPath());
+			}
+			Files.delete(otherDir.toPath());
+			storage.setDirectory(testDir.getAbsolutePath(), false); //also restores the directory config file
+		}
+	}
+
+	/**
+	 * Tests that the task types and tags read from the savefiles are shared between tasks, 
+	 * and with the tag names of the loaded taglist, instead of being a separate copy for every task.
+	 * @throws IOException
+	 */
+	@Test
+	public void internTypesAndTags() throws IOException {
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+		ArrayList<ArrayList<Task>> superlist = getEmptySuperlist();
+		for (TasklistEnum listType : Arrays.asList(TasklistEnum.PENDING, TasklistEnum.EXPIRED)) {
+			Task task = new Task("Tagged task");
+			task.setTaskType(new String("FLOATING"));
+			task.addTaskTag(new String("shared"));
+			superlist.get(listType.index()).add(task);
+		}
+		storage.saveAllTasklists(superlist);
+		storage.saveTaglist(new ArrayList<TagCategory>(Arrays.asList(new TagCategory(new String("shared")))));
+
+		ArrayList<ArrayList<Task>> loadedList = storage.loadAllTasklists();
+		Task pending = loadedList.get(TasklistEnum.PENDING.index() - 1).get(0);
+		Task expired = loadedList.get(TasklistEnum.EXPIRED.index() - 1).get(0);
+		assertSame("FLOATING", pending.getTaskType());
+		assertSame(pending.getTaskTags().get(0), expired.getTaskTags().get(0));
+		assertSame(pending.getTaskTags().get(0), storage.loadTaglist().get(0).getTagName());
+
+		pending.addTaskTag("unshared"); //each task still has its own list of tags
+		assertEquals(1, expired.getTaskTags().size());
+	}
+
+	/**
+	 * Tests that saves, loads and verifications are counted per list, along with the fsyncs,
+	 * and that the metrics are registered as an MBean.
+	 * @throws Exception
+	 */
+	@Test
+	public void storageMetrics() throws Exception {
+		storage.setDirectory(testDir.getAbsolutePath(), false); //in case an earlier test left another directory set
+		StorageMetrics metrics = StorageMetrics.getInstance();
+		metrics.reset();
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		storage.saveAllTasklists(TaskList.getSuperlist());
+		long bytesWritten = metrics.getBytesWritten();
+		assertTrue(bytesWritten >= new File(testDir, TasklistEnum.PENDING.filename()).length());
+		assertTrue(metrics.getFsyncCount() >= 2); //at least PENDING and EXPIRED
+		assertEquals(0, metrics.getCount(Operation.LOAD));
+
+		File pendingFile = new File(testDir, TasklistEnum.PENDING.filename());
+		Files.write(pendingFile.toPath(), " ".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND); //edited outside Taskey
+		storage.loadAllTasklists();
+		assertTrue(metrics.getBytesRead() >= pendingFile.length());
+		assertEquals(1, metrics.getCount(Operation.VERIFY));
+		assertEquals(bytesWritten, metrics.getBytesWritten());
+
+		String report = Arrays.toString(metrics.getReport());
+		assertTrue(report, report.contains("SAVE PENDING") && report.contains("LOAD EXPIRED") 
+				   && report.contains("VERIFY PENDING") && report.contains("FSYNC PENDING"));
+		assertTrue(metrics.getSummary().contains("busiest"));
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(StorageMetrics.OBJECT_NAME)));
+	}
+
+	/**
+	 * Tests that the in-memory backend saves and loads copies of the tasklists and tags without touching the disk,
+	 * applies journal records as they are appended, and moves its data between directories like Storage does.
+	 * @throws IOException
+	 */
+	@Test
+	public void inMemoryBackend() throws IOException {
+		StorageBackend backend = Storage.createBackend(Storage.BACKEND_MEMORY);
+		assertTrue(backend instanceof InMemoryStorage);
+		File memoryDir = new File(testDir, "memory");
+		backend.setDirectory(memoryDir.getPath(), false);
+
+		TaskList.clearAllLists();
+		TaskList.populateLists();
+		ArrayList<ArrayList<Task>> expectedList = new ArrayList<ArrayList<Task>>();
+		for (TaskList list : taskListsFromStorage) {
+			expectedList.add(list.get());
+		}
+		backend.saveAllTasklists(TaskList.getSuperlist());
+		backend.saveTaglist(createTaglist());
+		ArrayList<ArrayList<Task>> loadedList = backend.loadAllTasklists();
+		assertEquals(expectedList, loadedList);
+		assertFalse(loadedList.get(TasklistEnum.PENDING.index() - 1).get(0) == TaskList.PENDING.get().get(0));
+		assertEquals(createTaglist(), backend.loadTaglist());
+		assertFalse(memoryDir.exists());
+
+		// A journaled change is seen by the next load, as well as by a new instance in the same directory
+		Task expired = new Task("Journaled task");
+		expired.setTaskType("FLOATING");
+		JournalRecord record = new JournalRecord();
+		record.addTask(TasklistEnum.EXPIRED, expired);
+		backend.appendToJournal(new ArrayList<JournalRecord>(Arrays.asList(record)));
+		assertTrue(backend.loadAllTasklists().get(TasklistEnum.EXPIRED.index() - 1).contains(expired));
+		StorageBackend other = new InMemoryStorage();
+		other.setDirectory(memoryDir.getPath(), false);
+		assertTrue(other.loadAllTasklists().get(TasklistEnum.EXPIRED.index() - 1).contains(expired));
+
+		// Moving to a directory that already has data is refused, so that Logic loads that data instead
+		File movedDir = new File(testDir, "memory_moved");
+		backend.setDirectory(movedDir.getPath(), true);
+		assertEquals(expectedList.get(0), backend.loadAllTasklists().get(0));
+		try {
+			other.setDirectory(movedDir.getPath(), true);
+			fail();
+		} catch (FileAlreadyExistsException e) {
+			other.setDirectory(movedDir.getPath(), false);
+			assertEquals(expectedList.get(0), other.loadAllTasklists().get(0));
+		}
+		assertFalse(movedDir.exists());
+	}
+
+	/**
+	 * Tests that task ids are kept in both the JSON and binary savefiles,
+	 * and that a task from an older savefile without an id is given a new one.
+	 * @throws IOException
+	 */
+	@Test
+	public void keepTaskIds() throws IOException {
+		Task task = new Task("Task with id");
+		task.setTaskType("FLOATING");
+		Task copy = new Task(task);
+		assertEquals(task.getId(), copy.getId());
+		assertNotEquals(task.getId(), new Task("Another task").getId());
+
+		ArrayList<ArrayList<Task>> superlist = getEmptySuperlist();
+		superlist.get(TasklistEnum.PENDING.index()).add(task);
+		try {
+			for (SaveFormat format : new SaveFormat[] {SaveFormat.JSON, SaveFormat.BINARY}) {
+				storage.setSaveFormat(format);
+				storage.saveAllTasklists(superlist);
+				Task loaded = storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1).get(0);
+				assertEquals(task, loaded);
+				assertEquals(task.getId(), loaded.getId());
+			}
+		} finally {
+			storage.setSaveFormat(SaveFormat.JSON);
+		}
+
+		File pendingFile = new File(testDir, TasklistEnum.PENDING.filename());
+		Files.write(pendingFile.toPath(), ("[{\"taskName\":\"Old task\",\"taskType\":\"FLOATING\"}]").getBytes());
+		Task oldTask = storage.loadAllTasklists().get(TasklistEnum.PENDING.index() - 1).get(0);
+		assertTrue(oldTask.getId() > task.getId());
+	}
+
 
 	/*===========*
 	 * Test tags *
@@ -1,9 +1,13 @@
 package taskey.junit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
 import org.junit.Before;
@@ -20,6 +24,8 @@ import taskey.messenger.TagCategory;
 import taskey.messenger.Task;
 import taskey.parser.Parser;
 import taskey.parser.TimeConverter;
+import taskey.storage.Storage;
+import taskey.storage.StorageMetrics;
 
 /**
  * @@author A0134177E
@@ -195,6 +201,28 @@ public class SystemTest {
 		assertEquals(expected, actual);
 	}
 	
+	// Tasks whose names differ only in case sort the same, and should be listed in the order they were added.
+	@Test
+	public void tasksThatSortTheSameShouldStayInTheOrderTheyWereAdded() {
+		logic.executeCommand(ContentBox.PENDING, "add task");
+		logic.executeCommand(ContentBox.PENDING, "add TASK");
+		ArrayList<Task> before = logic.getAllTaskLists().get(LogicMemory.INDEX_PENDING);
+		assertEquals("Task", before.get(0).getTaskName());
+		assertEquals("TASK", before.get(1).getTaskName());
+
+		logic.executeCommand(ContentBox.PENDING, "del 1");
+		logic.executeCommand(ContentBox.PENDING, "add task");
+		ArrayList<Task> after = logic.getAllTaskLists().get(LogicMemory.INDEX_PENDING);
+		assertEquals("TASK", after.get(0).getTaskName());
+		assertEquals("Task", after.get(1).getTaskName());
+		assertEquals("TASK", logic.getAllTaskLists().get(LogicMemory.INDEX_FLOATING).get(0).getTaskName());
+
+		// The list handed out before the changes should not have changed
+		assertEquals(2, before.size());
+		assertEquals("Task", before.get(0).getTaskName());
+		assertEquals("TASK", before.get(1).getTaskName());
+	}
+
 	@Test
 	public void deletingFloatingTaskByIndexShouldUpdatePendingAndGeneralLists() {
 		logic.executeCommand(ContentBox.PENDING, "add task");
@@ -669,6 +697,152 @@ public class SystemTest {
 		assertEquals(expected, actual);
 	}
 	
+	// @@author A0121618M
+	@Test
+	public void undoingSeveralCommandsShouldRestoreEachStateInTurn() {
+		String[] inputs = {"add task a #tag1", "add task b on 31 dec 5pm #tag2", "add task c from 30 dec 5pm to 31 dec 5pm",
+		                   "set 2 \"new name\"", "set 1 !!!", "done 3", "del 1", "add task d #tag1"};
+		ArrayList<ArrayList<ArrayList<Task>>> expectedLists = new ArrayList<ArrayList<ArrayList<Task>>>();
+		ArrayList<ArrayList<TagCategory>> expectedTags = new ArrayList<ArrayList<TagCategory>>();
+		for (String input : inputs) {
+			expectedLists.add(logic.getAllTaskLists());
+			expectedTags.add(logic.getTagCategoryList());
+			logic.executeCommand(ContentBox.PENDING, input);
+		}
+		
+		for (int i = inputs.length - 1; i >= 0; i--) {
+			logic.executeCommand(ContentBox.PENDING, "undo");
+			assertEquals(inputs[i], expectedLists.get(i), logic.getAllTaskLists());
+			assertEquals(inputs[i], expectedTags.get(i), logic.getTagCategoryList());
+		}
+	}
+	
+	@Test
+	public void undoShouldReachEntriesSpilledToDisk() {
+		System.setProperty("taskey.history.maxbytes", "1"); // Every undo entry is spilled
+		System.setProperty("taskey.history.maxentries", "5");
+		try {
+			logic = new Logic();
+			ArrayList<ArrayList<ArrayList<Task>>> expectedLists = new ArrayList<ArrayList<ArrayList<Task>>>();
+			for (int i = 0; i < 7; i++) {
+				expectedLists.add(logic.getAllTaskLists());
+				logic.executeCommand(ContentBox.PENDING, "add task " + i + " #tag" + (i % 2));
+			}
+			String stats = logic.executeCommand(ContentBox.PENDING, "stats").getException().getMessage();
+			assertTrue(stats, stats.contains("5 on disk"));
+			
+			for (int i = 6; i >= 2; i--) {
+				logic.executeCommand(ContentBox.PENDING, "undo");
+				assertEquals(expectedLists.get(i), logic.getAllTaskLists());
+			}
+			assertEquals(LogicException.MSG_ERROR_UNDO, 
+			             logic.executeCommand(ContentBox.PENDING, "undo").getException().getMessage());
+			assertEquals(expectedLists.get(2), logic.getAllTaskLists());
+		} finally {
+			System.clearProperty("taskey.history.maxbytes");
+			System.clearProperty("taskey.history.maxentries");
+		}
+	}
+	
+	// A task's human dates are not always the ones its epoch dates would give, e.g. if it was saved in another time
+	// zone, so History must restore them as they were rather than derive them again.
+	@Test
+	public void undoShouldRestoreDatesOfTasksSpilledToDisk() throws IOException {
+		Task task = new Task("Saved deadline");
+		task.setTaskType("DEADLINE");
+		task.setDeadline(1460000000L);
+		String[] datesHuman = task.getDatesHuman();
+		datesHuman[3] = "07 Apr 2016 11:33"; // As shown in another time zone
+		task.setDates(task.getDatesEpoch(), datesHuman);
+		ArrayList<ArrayList<Task>> saved = getEmptyLists();
+		saved.get(LogicMemory.INDEX_EXPIRED).add(task);
+		new Storage().saveAllTasklists(saved);
+		
+		System.setProperty("taskey.history.maxbytes", "1"); // Every undo entry is spilled
+		try {
+			logic = new Logic();
+			ArrayList<ArrayList<Task>> expected = logic.getAllTaskLists();
+			assertEquals(task, expected.get(LogicMemory.INDEX_EXPIRED).get(0));
+			
+			logic.executeCommand(ContentBox.PENDING, "clear");
+			logic.executeCommand(ContentBox.PENDING, "add task");
+			logic.executeCommand(ContentBox.PENDING, "add task2");
+			for (int i = 0; i < 3; i++) {
+				logic.executeCommand(ContentBox.PENDING, "undo"); // The clear is undone from its spilled entry
+			}
+			assertEquals(expected, logic.getAllTaskLists());
+		} finally {
+			System.clearProperty("taskey.history.maxbytes");
+		}
+	}
+	
+	@Test
+	public void snapshotsShouldOnlyCopyChangedLists() {
+		ArrayList<ArrayList<Task>> before = logic.getAllTaskLists();
+		assertSame(before.get(LogicMemory.INDEX_PENDING), logic.getAllTaskLists().get(LogicMemory.INDEX_PENDING));
+		
+		logic.executeCommand(ContentBox.PENDING, "add task");
+		ArrayList<ArrayList<Task>> after = logic.getAllTaskLists();
+		assertTrue(before.get(LogicMemory.INDEX_PENDING).isEmpty());
+		assertEquals(1, after.get(LogicMemory.INDEX_PENDING).size());
+		assertSame(after.get(LogicMemory.INDEX_PENDING).get(0), after.get(LogicMemory.INDEX_FLOATING).get(0));
+		assertSame(before.get(LogicMemory.INDEX_EXPIRED), after.get(LogicMemory.INDEX_EXPIRED));
+	}
+
+	@Test
+	public void deletingFromActionListAfterUndoShouldRemoveTaskFromAllLists() {
+		logic.executeCommand(ContentBox.PENDING, "add task !!!");
+		logic.executeCommand(ContentBox.PENDING, "add task2");
+		logic.executeCommand(ContentBox.PENDING, "undo"); // Task lists are restored from History
+		logic.executeCommand(ContentBox.PENDING, "view high");
+		assertEquals(1, logic.getAllTaskLists().get(LogicMemory.INDEX_ACTION).size());
+
+		logic.executeCommand(ContentBox.ACTION, "del 1");
+		for (ArrayList<Task> list : logic.getAllTaskLists()) {
+			assertTrue(list.isEmpty());
+		}
+	}
+
+	@Test
+	public void undoShouldBeSavedToJournalOnly() {
+		logic.executeCommand(ContentBox.PENDING, "add task");
+		logic.executeCommand(ContentBox.PENDING, "save");
+		logic.flushSaves();
+		logic.executeCommand(ContentBox.PENDING, "add task2");
+		
+		StorageMetrics metrics = StorageMetrics.getInstance();
+		metrics.reset();
+		logic.executeCommand(ContentBox.PENDING, "undo");
+		logic.executeCommand(ContentBox.PENDING, "save");
+		logic.flushSaves();
+		String report = Arrays.toString(metrics.getReport());
+		assertTrue(report, report.contains("SAVE JOURNAL"));
+		assertFalse(report, report.contains("SAVE PENDING"));
+		
+		ArrayList<ArrayList<Task>> expected = logic.getAllTaskLists();
+		logic = new Logic(); // To simulate exiting and reloading the software
+		assertEquals(expected, logic.getAllTaskLists());
+		assertEquals(1, expected.get(LogicMemory.INDEX_PENDING).size());
+	}
+
+	@Test
+	public void updatingTaskShouldKeepItsIdAndStillDetectDuplicates() {
+		logic.executeCommand(ContentBox.PENDING, "add task");
+		long id = logic.getAllTaskLists().get(LogicMemory.INDEX_PENDING).get(0).getId();
+
+		logic.executeCommand(ContentBox.PENDING, "set 1 \"Renamed\"");
+		logic.executeCommand(ContentBox.PENDING, "set 1 !!");
+		assertEquals(id, logic.getAllTaskLists().get(LogicMemory.INDEX_PENDING).get(0).getId());
+
+		logic.executeCommand(ContentBox.PENDING, "done 1");
+		assertEquals(LogicException.MSG_ERROR_DUPLICATE_TASKS,
+		             logic.executeCommand(ContentBox.PENDING, "add Renamed !!").getException().getMessage());
+		assertEquals(LogicException.MSG_SUCCESS_ADD,
+		             logic.executeCommand(ContentBox.PENDING, "add task").getException().getMessage());
+	}
+	
+	// @@author A0134177E
+	
 	@Test
 	public void addingTaggedFloatingTaskShouldUpdateTagDatabase() {
 		logic.executeCommand(ContentBox.PENDING, "add task #tag1 #tag2");
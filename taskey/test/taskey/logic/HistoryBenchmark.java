@@ -0,0 +1,136 @@
+package taskey.logic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import taskey.messenger.TagCategory;
+import taskey.messenger.Task;
+
+/**
+ * @@author A0121618M
+ * Memory benchmark for History. This is not a unit test; run its main method directly.
+ * Usage: HistoryBenchmark [number of tasks] [number of commands]
+ * <p>Starts from task lists holding the given number of tasks, then adds one task per command,
+ * adding the changes that TaskStore recorded to History after each command as Logic does. Measures the heap retained
+ * per command by History, against the heap retained by keeping a full copy of the task lists per command, as History
+ * used to.
+ * <p>The full copies also copy every task, as Logic used to.
+ */
+public class HistoryBenchmark {
+	private static final int DEFAULT_NUM_TASKS = 20000;
+	private static final int DEFAULT_NUM_COMMANDS = 50;
+
+	public static void main(String[] args) {
+		int numTasks = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NUM_TASKS;
+		int numCommands = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_NUM_COMMANDS;
+		ArrayList<ArrayList<Task>> taskLists = generateTaskLists(numTasks);
+		ArrayList<TagCategory> tagCategoryList = new ArrayList<TagCategory>();
+		System.out.println("Tasks: " + numTasks + ", commands: " + numCommands);
+
+		long baseline = usedHeap();
+		ArrayDeque<ArrayList<ArrayList<Task>>> snapshots = new ArrayDeque<ArrayList<ArrayList<Task>>>();
+		snapshots.push(deepCopy(taskLists));
+		long firstBytes = usedHeap() - baseline;
+		for (int i = 0; i < numCommands; i++) {
+			snapshots.push(deepCopy(addTask(taskLists, numTasks + i)));
+		}
+		long snapshotBytes = usedHeap() - baseline - firstBytes;
+		snapshots = null;
+
+		TaskStore taskStore = new TaskStore(generateTaskLists(numTasks));
+		baseline = usedHeap();
+		History history = new History();
+		history.add(taskStore.takeChanges(), tagCategoryList);
+		firstBytes = usedHeap() - baseline;
+		for (int i = 0; i < numCommands; i++) {
+			Task task = generateTask(numTasks + i);
+			taskStore.add(LogicMemory.INDEX_PENDING, task);
+			taskStore.add(getTypeListIndex(task), task);
+			history.add(taskStore.takeChanges(), tagCategoryList);
+		}
+		long deltaBytes = usedHeap() - baseline - firstBytes;
+		for (int i = 0; i < numCommands; i++) {
+			assert (history.undo().size() == 2);
+		}
+
+		System.out.printf("Heap per command | full copies %,12.1f KB | deltas %,10.1f KB%n",
+				snapshotBytes / 1e3 / numCommands, deltaBytes / 1e3 / numCommands);
+	}
+
+	private static ArrayList<ArrayList<Task>> deepCopy(ArrayList<ArrayList<Task>> taskLists) {
+		ArrayList<ArrayList<Task>> copy = new ArrayList<ArrayList<Task>>();
+		for (ArrayList<Task> list : taskLists) {
+			ArrayList<Task> listCopy = new ArrayList<Task>();
+			for (Task task : list) {
+				listCopy.add(new Task(task));
+			}
+			copy.add(listCopy);
+		}
+		return copy;
+	}
+
+	/**
+	 * Generates the 8 task lists, with the tasks split between the GENERAL, DEADLINE and EVENT lists, all pending.
+	 */
+	private static ArrayList<ArrayList<Task>> generateTaskLists(int numTasks) {
+		ArrayList<ArrayList<Task>> taskLists = new ArrayList<ArrayList<Task>>();
+		while (taskLists.size() < LogicMemory.NUM_TASK_LISTS) {
+			taskLists.add(new ArrayList<Task>());
+		}
+		for (int i = 0; i < numTasks; i++) {
+			addTask(taskLists, i);
+		}
+		return taskLists;
+	}
+
+	private static ArrayList<ArrayList<Task>> addTask(ArrayList<ArrayList<Task>> taskLists, int i) {
+		Task task = generateTask(i);
+		taskLists.get(getTypeListIndex(task)).add(task);
+		taskLists.get(LogicMemory.INDEX_PENDING).add(task);
+		for (ArrayList<Task> list : taskLists) {
+			Collections.sort(list, Collections.reverseOrder()); // As LogicMemory sorts them
+		}
+		return taskLists;
+	}
+
+	private static Task generateTask(int i) {
+		long baseTime = 1460000000L;
+		Task task = new Task("Benchmark task number " + i);
+		switch (i % 3) {
+			case 0:
+				task.setTaskType("FLOATING");
+				break;
+			case 1:
+				task.setTaskType("DEADLINE");
+				task.setDeadline(baseTime + i * 60L);
+				break;
+			default:
+				task.setTaskType("EVENT");
+				task.setStartDate(baseTime + i * 60L);
+				task.setEndDate(baseTime + i * 60L + 3600);
+				break;
+		}
+		task.setPriority(1 + i % 3);
+		return task;
+	}
+
+	private static int getTypeListIndex(Task task) {
+		switch (task.getTaskType()) {
+			case "FLOATING":
+				return LogicMemory.INDEX_FLOATING;
+			case "DEADLINE":
+				return LogicMemory.INDEX_DEADLINE;
+			default:
+				return LogicMemory.INDEX_EVENT;
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,262 @@
+package taskey.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import taskey.messenger.Task;
+import taskey.storage.Storage.SaveFormat;
+import taskey.storage.Storage.TasklistEnum;
+
+/**
+ * @@author A0121618M
+ * Throughput benchmark for the storage package. This is not a unit test; run its main method directly.
+ * Usage: StorageBenchmark [number of tasks]
+ * <p>Compares the save and load throughput of tasklists using Gson's default reflective binding 
+ * (how Taskey used to serialize tasks) against the hand-written TypeAdapters in JsonAdapters.
+ * <p>Also compares the JSON and binary savefile formats, through the same StorageWriter/StorageReader 
+ * methods that Storage uses. For a 1M-task archive, run with e.g. -Xmx4g and an argument of 1000000.
+ * <p>Finally, measures how long Storage takes to load all the savefiles at startup, 
+ * with the tasks split across the PENDING, EXPIRED and COMPLETED lists, loading sequentially and in parallel.
+ * <p>The heap retained by a loaded JSON archive is measured as well, with the task types and tags interned
+ * as StorageReader does, and with a separate copy of them for every task, as they were read before.
+ */
+public class StorageBenchmark {
+	private static final int DEFAULT_NUM_TASKS = 100000;
+	private static final int NUM_WARMUP_RUNS = 2;
+	private static final int NUM_TIMED_RUNS = 5;
+	private static final int MAX_LOAD_THREADS = 4;
+
+	public static void main(String[] args) throws IOException {
+		int numTasks = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NUM_TASKS;
+		File dir = Files.createTempDirectory("taskey_benchmark").toFile();
+		ArrayList<Task> tasks = generateTasks(numTasks);
+		System.out.println("Tasks: " + numTasks);
+
+		Gson reflectiveGson = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+		benchmarkGson("Reflective", reflectiveGson, reflectiveGson, tasks, new File(dir, "reflective.taskey"));
+		benchmarkGson("TypeAdapter", JsonAdapters.PRETTY_GSON, JsonAdapters.COMPACT_GSON, 
+				tasks, new File(dir, "adapter.taskey"));
+		benchmarkSavefile("JSON file", tasks, new File(dir, TasklistEnum.COMPLETED.filename(SaveFormat.JSON)));
+		benchmarkSavefile("Binary file", tasks, new File(dir, TasklistEnum.COMPLETED.filename(SaveFormat.BINARY)));
+		benchmarkStartup(tasks, new File(dir, "startup"));
+		benchmarkHeap(tasks, new File(dir, "heap.taskey"));
+
+		deleteDirectory(dir);
+	}
+
+	/**
+	 * Generates a mix of floating, deadline and event tasks, some with tags and priorities.
+	 */
+	static ArrayList<Task> generateTasks(int numTasks) {
+		ArrayList<Task> tasks = new ArrayList<Task>(numTasks);
+		long baseTime = 1460000000L;
+		for (int i = 0; i < numTasks; i++) {
+			Task task = new Task("Benchmark task number " + i);
+			switch (i % 3) {
+				case 0:
+					task.setTaskType("FLOATING");
+					break;
+				case 1:
+					task.setTaskType("DEADLINE");
+					task.setDeadline(baseTime + i * 60L);
+					break;
+				default:
+					task.setTaskType("EVENT");
+					task.setStartDate(baseTime + i * 60L);
+					task.setEndDate(baseTime + i * 60L + 3600);
+					break;
+			}
+			if (i % 4 == 0) {
+				task.addTaskTag("tag" + (i % 20));
+			}
+			task.setPriority(1 + i % 3);
+			tasks.add(task);
+		}
+		return tasks;
+	}
+
+	private static void benchmarkGson(String label, Gson writeGson, Gson readGson, 
+									  ArrayList<Task> tasks, File file) throws IOException {
+		for (int i = 0; i < NUM_WARMUP_RUNS; i++) {
+			save(writeGson, tasks, file);
+			load(readGson, file);
+		}
+
+		long saveNanos = 0;
+		long loadNanos = 0;
+		for (int i = 0; i < NUM_TIMED_RUNS; i++) {
+			long start = System.nanoTime();
+			save(writeGson, tasks, file);
+			saveNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			ArrayList<Task> loaded = load(readGson, file);
+			loadNanos += System.nanoTime() - start;
+			assert (loaded.equals(tasks));
+		}
+
+		report(label, tasks.size(), file.length(), saveNanos / NUM_TIMED_RUNS, loadNanos / NUM_TIMED_RUNS);
+	}
+
+	/**
+	 * Times saving and loading the given tasks as the COMPLETED list, in the format given by the file's name.
+	 */
+	private static void benchmarkSavefile(String label, ArrayList<Task> tasks, File file) throws IOException {
+		StorageWriter writer = new StorageWriter();
+		StorageReader reader = new StorageReader();
+		for (int i = 0; i < NUM_WARMUP_RUNS; i++) {
+			writer.saveTasklist(tasks, file);
+			reader.loadTasklist(file, TasklistEnum.COMPLETED);
+		}
+
+		long saveNanos = 0;
+		long loadNanos = 0;
+		for (int i = 0; i < NUM_TIMED_RUNS; i++) {
+			long start = System.nanoTime();
+			writer.saveTasklist(tasks, file);
+			saveNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			ArrayList<Task> loaded = reader.loadTasklist(file, TasklistEnum.COMPLETED);
+			loadNanos += System.nanoTime() - start;
+			assert (loaded.equals(tasks));
+		}
+
+		report(label, tasks.size(), file.length(), saveNanos / NUM_TIMED_RUNS, loadNanos / NUM_TIMED_RUNS);
+	}
+
+	/**
+	 * Times Storage's startup load, i.e. loadAllTasklists followed by loadTaglist, using 1 thread and then 
+	 * MAX_LOAD_THREADS threads, the most that Storage uses by default. The first load of each is reported separately as the cold load.
+	 */
+	private static void benchmarkStartup(ArrayList<Task> tasks, File dir) throws IOException {
+		ArrayList<ArrayList<Task>> superlist = new ArrayList<ArrayList<Task>>();
+		for (int i = 0; i < Storage.NUM_TASKLISTS_FROM_LOGIC; i++) {
+			superlist.add(new ArrayList<Task>());
+		}
+		int quarter = tasks.size() / 4;
+		superlist.get(TasklistEnum.PENDING.index()).addAll(tasks.subList(0, quarter));
+		superlist.get(TasklistEnum.EXPIRED.index()).addAll(tasks.subList(quarter, 2 * quarter));
+		superlist.get(TasklistEnum.COMPLETED.index()).addAll(tasks.subList(2 * quarter, tasks.size()));
+		new Storage(dir).saveAllTasklists(superlist);
+
+		for (int numThreads : new int[] {1, MAX_LOAD_THREADS}) {
+			System.setProperty(Storage.PROPERTY_LOAD_THREADS, String.valueOf(numThreads));
+			Storage storage = new Storage(dir);
+			long coldNanos = timeStartupLoad(storage);
+			for (int i = 1; i < NUM_WARMUP_RUNS; i++) {
+				timeStartupLoad(storage);
+			}
+			long loadNanos = 0;
+			for (int i = 0; i < NUM_TIMED_RUNS; i++) {
+				loadNanos += timeStartupLoad(storage);
+			}
+			System.out.printf("Startup, %d thread(s) | cold %,8.1f ms | warm %,8.1f ms%n", 
+					numThreads, coldNanos / 1e6, loadNanos / NUM_TIMED_RUNS / 1e6);
+		}
+		System.clearProperty(Storage.PROPERTY_LOAD_THREADS);
+	}
+
+	/**
+	 * Measures the heap retained by the tasks loaded from a JSON savefile, first with a fresh copy of the task type
+	 * and tags for every task, and then as loaded, i.e. interned. The heap usage is only approximate,
+	 * since it is taken from Runtime after requesting garbage collection.
+	 */
+	private static void benchmarkHeap(ArrayList<Task> tasks, File file) throws IOException {
+		new StorageWriter().saveTasklist(tasks, file);
+		StorageReader reader = new StorageReader();
+
+		long baseline = usedHeap();
+		ArrayList<Task> loaded = reader.loadTasklist(file, TasklistEnum.COMPLETED);
+		for (Task task : loaded) {
+			uninternTask(task);
+		}
+		long copiedBytes = usedHeap() - baseline;
+		loaded = null;
+
+		baseline = usedHeap();
+		loaded = reader.loadTasklist(file, TasklistEnum.COMPLETED);
+		long internedBytes = usedHeap() - baseline;
+		assert (loaded.equals(tasks));
+
+		System.out.printf("Heap, %,d tasks | copied %,8.1f MB | interned %,8.1f MB | saved %4.1f%%%n", loaded.size(),
+				copiedBytes / 1e6, internedBytes / 1e6, 100.0 * (copiedBytes - internedBytes) / copiedBytes);
+	}
+
+	/**
+	 * Gives the task its own copy of its type and tags, in a list that has grown as readTags used to grow it.
+	 */
+	private static void uninternTask(Task task) {
+		task.setTaskType(new String(task.getTaskType()));
+		if (task.getTaskTags() != null) {
+			ArrayList<String> tags = new ArrayList<String>();
+			for (String tag : task.getTaskTags()) {
+				tags.add(new String(tag));
+			}
+			task.setTaskTags(tags);
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long timeStartupLoad(Storage storage) {
+		long start = System.nanoTime();
+		storage.loadAllTasklists();
+		storage.loadTaglist();
+		return System.nanoTime() - start;
+	}
+
+	private static void save(Gson gson, ArrayList<Task> tasks, File dest) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(dest));
+		try {
+			gson.toJson(tasks, new TypeToken<ArrayList<Task>>() {}.getType(), writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static ArrayList<Task> load(Gson gson, File src) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(src));
+		try {
+			return gson.fromJson(reader, new TypeToken<ArrayList<Task>>() {}.getType());
+		} finally {
+			reader.close();
+		}
+	}
+
+	static void report(String label, int numTasks, long fileSize, long saveNanos, long loadNanos) {
+		System.out.printf("%-12s | file %,10d bytes | save %,8.1f ms (%,10.0f tasks/s) | load %,8.1f ms (%,10.0f tasks/s)%n",
+				label, fileSize, 
+				saveNanos / 1e6, numTasks / (saveNanos / 1e9), 
+				loadNanos / 1e6, numTasks / (loadNanos / 1e9));
+	}
+
+	static void deleteDirectory(File dir) {
+		for (File file : dir.listFiles()) {
+			if (file.isDirectory()) {
+				deleteDirectory(file);
+			} else {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+}